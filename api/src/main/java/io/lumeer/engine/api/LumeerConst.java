@@ -45,15 +45,55 @@ public final class LumeerConst {
    public static final String SYSTEM_DB_PASSWORD_PROPERTY = "sys_db_passwd";
    public static final String SYSTEM_DB_USE_SSL = "sys_db_ssl";
 
+   public static final String DB_POOL_MIN_SIZE_PROPERTY = "db_pool_min_size";
+   public static final String DB_POOL_MAX_SIZE_PROPERTY = "db_pool_max_size";
+   public static final String DB_POOL_MAX_WAIT_TIME_PROPERTY = "db_pool_max_wait_time";
+   public static final String DB_POOL_MAX_IDLE_TIME_PROPERTY = "db_pool_max_idle_time";
+   public static final String DB_CONNECT_TIMEOUT_PROPERTY = "db_connect_timeout";
+   public static final String DB_SOCKET_TIMEOUT_PROPERTY = "db_socket_timeout";
+   public static final String DB_SLOW_OPERATION_THRESHOLD_PROPERTY = "db_slow_operation_threshold";
+   public static final String DB_SLOW_OPERATION_LOG_SIZE_PROPERTY = "db_slow_operation_log_size";
+   public static final String DB_EXPLAIN_SLOW_OPERATIONS_PROPERTY = "db_explain_slow_operations";
+   public static final String DB_DATA_DIRECTORY_PROPERTY = "db_data_directory";
+   public static final String DB_WATCH_CHANGES_PROPERTY = "db_watch_changes";
+   public static final String DB_WRITE_DURABILITY_PROPERTY = "db_write_durability";
+   public static final String DB_USAGE_WRITE_DURABILITY_PROPERTY = "db_usage_write_durability";
+   public static final String DB_INDEX_ADVISOR_PROPERTY = "db_index_advisor";
+   public static final String DB_AUTO_INDEX_BUDGET_PROPERTY = "db_auto_index_budget";
+
+   public static final String SEARCH_READ_PREFERENCE_PROPERTY = "search_read_preference";
+   public static final String SEARCH_MAX_STALENESS_PROPERTY = "search_max_staleness";
+
    public static final String USER_LOCALE_PROPERTY = "locale";
 
    public static final String DEFAULT_LIMIT_PROPERTY = "result_limit";
 
+   public static final String QUERY_CACHE_SIZE_PROPERTY = "query_cache_size";
+   public static final String QUERY_CACHE_TTL_PROPERTY = "query_cache_ttl";
+
+   public static final int DEFAULT_BATCH_SIZE = 1000;
+
    public static final int SORT_ASCENDING_ORDER = 1;
    public static final int SORT_DESCENDING_ORDER = -1;
 
    public static final String NUMBER_OF_RECENT_DOCS_PROPERTY = "number_recently_used_documents";
 
+   /**
+    * Number of sequence values reserved at once, can be overridden for a single sequence by appending a dot and the sequence name.
+    */
+   public static final String SEQUENCE_BLOCK_SIZE_PROPERTY = "sequence_block_size";
+
+   /**
+    * Limits of the caches, the times are in seconds and the off-heap size is in megabytes. Each of them can be overridden
+    * for a single cache by appending a dot and the cache name. The off-heap size has no default and is set only for a single cache
+    * the same way. The limits are applied only by the cache implementations that support them.
+    */
+   public static final String CACHE_MAXIMUM_SIZE_PROPERTY = "cache_maximum_size";
+   public static final String CACHE_EXPIRE_AFTER_WRITE_PROPERTY = "cache_expire_after_write";
+   public static final String CACHE_EXPIRE_AFTER_ACCESS_PROPERTY = "cache_expire_after_access";
+   public static final String CACHE_REFRESH_AFTER_WRITE_PROPERTY = "cache_refresh_after_write";
+   public static final String CACHE_OFF_HEAP_SIZE_PROPERTY = "cache_off_heap_size";
+
    private LumeerConst() {
       // we do not want any instances to be created
       throw new UnsupportedOperationException(String.format("Creation of %s is forbidden.", this.getClass().getCanonicalName()));
@@ -246,6 +286,7 @@ public final class LumeerConst {
 
    public static class Configuration {
 
+      public static final String COLLECTION_PREFIX = "_config_";
       public static final String NAMEVALUE = "namevalue";
       public static final String CONFIGS = "configs";
       public static final String CONFIGS_CONFIG_KEY = "key";
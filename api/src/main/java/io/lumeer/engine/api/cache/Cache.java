@@ -19,10 +19,13 @@
  */
 package io.lumeer.engine.api.cache;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
- * Cache of values of given type. It is possible to lock on particular cache entry.
+ * Cache of values of given type. It is possible to lock on particular cache entry. Bounded caches can evict or expire
+ * their entries at any time according to their {@link CacheConfiguration}, so the values must always be possible to compute again.
  *
  * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
  */
@@ -70,6 +73,33 @@ public interface Cache<T> {
       return computeIfAbsent(DEFAULT_ENTRY_KEY, fce);
    }
 
+   /**
+    * Gets a value from the cache or loads it asynchronously when it is absent. Unlike {@link #computeIfAbsent(String, Function)},
+    * the loader does not block the callers of other keys. Concurrent callers of the same key share a single load.
+    * Caches configured to {@link CacheConfiguration#getRefreshAfterWrite() refresh} their entries return the current value
+    * and reload it in the background when it is old enough. A value that was removed from the cache while being loaded is not stored.
+    *
+    * @param key
+    *       Entry key.
+    * @param loader
+    *       Starts loading a new value, the loaded value is not stored when it is null or the loading fails.
+    * @return Entry value, completed immediately when present in the cache.
+    */
+   default CompletableFuture<T> getAsync(final String key, final Function<String, CompletableFuture<T>> loader) {
+      final T t = get(key);
+
+      if (t != null) {
+         return CompletableFuture.completedFuture(t);
+      }
+
+      return loader.apply(key).thenApply(value -> {
+         if (value != null) {
+            set(key, value);
+         }
+         return value;
+      });
+   }
+
    /**
     * Stores a value to the cache.
     *
@@ -125,7 +155,46 @@ public interface Cache<T> {
    boolean tryLock(final String key);
 
    /**
-    * Clears the cache including all locks.
+    * Tries to obtain lock on the given key, waits at most the given time for the lock to become available.
+    * Different keys may share the same lock, so the threads holding locks of other keys should prefer this method to {@link #lock(String)}.
+    *
+    * @param key
+    *       Entry key.
+    * @param timeout
+    *       Maximal time to wait for the lock.
+    * @param unit
+    *       Unit of the timeout.
+    * @return True if and only if a key was obtained.
+    */
+   boolean tryLock(final String key, final long timeout, final TimeUnit unit);
+
+   /**
+    * Clears the cache. The locks held are not affected.
     */
    void clear();
+
+   /**
+    * Gets the limits of this cache.
+    *
+    * @return The limits applied to this cache, an empty configuration for unbounded caches.
+    */
+   default CacheConfiguration getConfiguration() {
+      return new CacheConfiguration();
+   }
+
+   /**
+    * Gets the statistics of this cache.
+    *
+    * @return The statistics, empty when the cache does not record any.
+    */
+   default CacheStats getStats() {
+      return new CacheStats();
+   }
+
+   /**
+    * Removes the expired entries and performs other pending maintenance. Bounded caches do this regularly on their own,
+    * calling this is needed only to get up-to-date contents immediately.
+    */
+   default void cleanUp() {
+   }
 }
@@ -0,0 +1,147 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.cache;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * Limits of a cache. The limits that are not set are not applied, so an empty configuration describes an unbounded cache
+ * that never expires its entries. Caches that do not support some of the limits ignore them.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class CacheConfiguration {
+
+   /**
+    * Maximal number of entries, the entries least likely to be used again are evicted first.
+    */
+   private Long maximumSize;
+
+   /**
+    * Maximal total weight of entries, it is used instead of the maximal size when set.
+    */
+   private Long maximumWeight;
+
+   /**
+    * Computes weights of entry values, each entry weights 1 when not set.
+    */
+   private ToLongFunction<Object> weigher;
+
+   /**
+    * Time in milliseconds after which an entry expires since it was stored.
+    */
+   private Long expireAfterWrite;
+
+   /**
+    * Time in milliseconds after which an entry expires since it was last read or stored.
+    */
+   private Long expireAfterAccess;
+
+   /**
+    * Time in milliseconds after which an entry read by {@link Cache#getAsync(String, java.util.function.Function)}
+    * is reloaded in the background since it was stored. The current value is served until the new one is loaded,
+    * so it should be shorter than the expiration times.
+    */
+   private Long refreshAfterWrite;
+
+   /**
+    * Size in bytes of the memory outside of the heap used to keep serialized copies of the values, so that the values
+    * evicted from the heap can still be read without computing them again.
+    */
+   private Long offHeapSize;
+
+   public Long getMaximumSize() {
+      return maximumSize;
+   }
+
+   public void setMaximumSize(final Long maximumSize) {
+      this.maximumSize = maximumSize;
+   }
+
+   public Long getMaximumWeight() {
+      return maximumWeight;
+   }
+
+   public void setMaximumWeight(final Long maximumWeight) {
+      this.maximumWeight = maximumWeight;
+   }
+
+   public ToLongFunction<Object> getWeigher() {
+      return weigher;
+   }
+
+   public void setWeigher(final ToLongFunction<Object> weigher) {
+      this.weigher = weigher;
+   }
+
+   public Long getExpireAfterWrite() {
+      return expireAfterWrite;
+   }
+
+   public void setExpireAfterWrite(final Long expireAfterWrite) {
+      this.expireAfterWrite = expireAfterWrite;
+   }
+
+   public Long getExpireAfterAccess() {
+      return expireAfterAccess;
+   }
+
+   public void setExpireAfterAccess(final Long expireAfterAccess) {
+      this.expireAfterAccess = expireAfterAccess;
+   }
+
+   public Long getRefreshAfterWrite() {
+      return refreshAfterWrite;
+   }
+
+   public void setRefreshAfterWrite(final Long refreshAfterWrite) {
+      this.refreshAfterWrite = refreshAfterWrite;
+   }
+
+   public Long getOffHeapSize() {
+      return offHeapSize;
+   }
+
+   public void setOffHeapSize(final Long offHeapSize) {
+      this.offHeapSize = offHeapSize;
+   }
+
+   /**
+    * Checks whether any of the limits is set.
+    *
+    * @return True if and only if the values kept on the heap are bounded by their size, weight or expiration.
+    */
+   public boolean isBounded() {
+      return maximumSize != null || maximumWeight != null || expireAfterWrite != null || expireAfterAccess != null || refreshAfterWrite != null;
+   }
+
+   @Override
+   public String toString() {
+      return "CacheConfiguration{"
+            + "maximumSize=" + maximumSize
+            + ", maximumWeight=" + maximumWeight
+            + ", weigher=" + weigher
+            + ", expireAfterWrite=" + expireAfterWrite
+            + ", expireAfterAccess=" + expireAfterAccess
+            + ", refreshAfterWrite=" + refreshAfterWrite
+            + ", offHeapSize=" + offHeapSize
+            + '}';
+   }
+}
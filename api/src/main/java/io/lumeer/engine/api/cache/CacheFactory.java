@@ -34,4 +34,19 @@ public interface CacheFactory {
     * @return A fresh cache of given type.
     */
    <T> Cache<T> getCache();
+
+   /**
+    * Obtains a fresh cache of given type with the given limits. Factories of caches that do not support limits
+    * ignore the configuration. A limited cache can drop any entry at any time, so its users must read the missing
+    * values again from their source, and must not keep any state about an entry outside of the entry itself.
+    *
+    * @param configuration
+    *       Limits of the new cache.
+    * @param <T>
+    *       Type of values stored in the cache.
+    * @return A fresh cache of given type.
+    */
+   default <T> Cache<T> getCache(final CacheConfiguration configuration) {
+      return getCache();
+   }
 }
@@ -19,6 +19,10 @@
  */
 package io.lumeer.engine.api.cache;
 
+import io.lumeer.engine.api.data.DataChangeEvent;
+
+import java.util.Map;
+
 /**
  * Allows obtaining various cache providers so that individual classes can create and maintain their own cache
  * and we are still able to distinguish between caches from multiple instances of the same class.
@@ -49,4 +53,33 @@ public interface CacheManager {
     */
    <T> Cache<T> getCache(final String cacheName);
 
+   /**
+    * Invalidates the cached values affected by a change of the data made by this or any other node.
+    * The entries keyed by the name of the changed collection or by the id of the changed document are removed
+    * from all the caches, all the caches are dropped when some changes might have been missed.
+    *
+    * @param event
+    *       The change of the data.
+    */
+   void invalidate(final DataChangeEvent event);
+
+   /**
+    * Invalidates the cached values of a single organization affected by a change of the data of the organization
+    * made by this or any other node. Only the caches of the projects of the organization are touched.
+    *
+    * @param organizationCode
+    *       Code of the organization whose data changed.
+    * @param event
+    *       The change of the data.
+    */
+   void invalidate(final String organizationCode, final DataChangeEvent event);
+
+   /**
+    * Gets the statistics of all the caches currently in use, aggregated per tenant (organization and project)
+    * and per namespace. The caches not belonging to any namespace are reported under their own names.
+    *
+    * @return Statistics by namespace by tenant.
+    */
+   Map<String, Map<String, CacheStats>> getCacheStats();
+
 }
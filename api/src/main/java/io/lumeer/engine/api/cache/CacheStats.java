@@ -0,0 +1,171 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.cache;
+
+/**
+ * Carries statistics of a cache or of a group of caches. The counts are cumulative since the caches were created.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class CacheStats {
+
+   /**
+    * Number of reads that found a value.
+    */
+   private long hitCount;
+
+   /**
+    * Number of reads that did not find any value.
+    */
+   private long missCount;
+
+   /**
+    * Number of values computed by the cache on a miss.
+    */
+   private long loadCount;
+
+   /**
+    * Total time in nanoseconds spent computing values on a miss.
+    */
+   private long totalLoadTime;
+
+   /**
+    * Number of entries removed because of the size limits or expiration, explicit removals are not counted.
+    */
+   private long evictionCount;
+
+   /**
+    * Current number of entries.
+    */
+   private long size;
+
+   /**
+    * Total time in nanoseconds threads spent waiting for entry locks held by other threads.
+    */
+   private long lockWaitTime;
+
+   public long getHitCount() {
+      return hitCount;
+   }
+
+   public void setHitCount(final long hitCount) {
+      this.hitCount = hitCount;
+   }
+
+   public long getMissCount() {
+      return missCount;
+   }
+
+   public void setMissCount(final long missCount) {
+      this.missCount = missCount;
+   }
+
+   public long getLoadCount() {
+      return loadCount;
+   }
+
+   public void setLoadCount(final long loadCount) {
+      this.loadCount = loadCount;
+   }
+
+   public long getTotalLoadTime() {
+      return totalLoadTime;
+   }
+
+   public void setTotalLoadTime(final long totalLoadTime) {
+      this.totalLoadTime = totalLoadTime;
+   }
+
+   public long getEvictionCount() {
+      return evictionCount;
+   }
+
+   public void setEvictionCount(final long evictionCount) {
+      this.evictionCount = evictionCount;
+   }
+
+   public long getSize() {
+      return size;
+   }
+
+   public void setSize(final long size) {
+      this.size = size;
+   }
+
+   public long getLockWaitTime() {
+      return lockWaitTime;
+   }
+
+   public void setLockWaitTime(final long lockWaitTime) {
+      this.lockWaitTime = lockWaitTime;
+   }
+
+   /**
+    * Gets the ratio of reads that found a value.
+    *
+    * @return The hit rate between 0 and 1, or 1 when there were no reads.
+    */
+   public double getHitRate() {
+      final long requestCount = hitCount + missCount;
+
+      return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+   }
+
+   /**
+    * Gets the average time needed to compute a value.
+    *
+    * @return The average load time in nanoseconds, or 0 when there were no loads.
+    */
+   public double getAverageLoadTime() {
+      return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+   }
+
+   /**
+    * Adds the statistics of another cache to these statistics.
+    *
+    * @param other
+    *       The statistics to add.
+    * @return These statistics.
+    */
+   public CacheStats add(final CacheStats other) {
+      hitCount += other.hitCount;
+      missCount += other.missCount;
+      loadCount += other.loadCount;
+      totalLoadTime += other.totalLoadTime;
+      evictionCount += other.evictionCount;
+      size += other.size;
+      lockWaitTime += other.lockWaitTime;
+
+      return this;
+   }
+
+   @Override
+   public String toString() {
+      return "CacheStats{"
+            + "hitCount=" + hitCount
+            + ", missCount=" + missCount
+            + ", loadCount=" + loadCount
+            + ", totalLoadTime=" + totalLoadTime
+            + ", evictionCount=" + evictionCount
+            + ", size=" + size
+            + ", lockWaitTime=" + lockWaitTime
+            + '}';
+   }
+}
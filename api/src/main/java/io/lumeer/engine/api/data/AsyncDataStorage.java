@@ -0,0 +1,235 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Represents a data storage with non-blocking operations. Every operation returns immediately and its result
+ * is delivered through the returned {@link CompletableFuture}, which makes it possible to issue several independent
+ * requests at once and overlap their I/O.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public interface AsyncDataStorage extends Serializable {
+
+   void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl, final StorageConnectionOptions options);
+
+   default void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl) {
+      connect(connections, database, useSsl, new StorageConnectionOptions());
+   }
+
+   default void connect(final StorageConnection connection, final String database, final Boolean useSsl) {
+      connect(Collections.singletonList(connection), database, useSsl);
+   }
+
+   void disconnect();
+
+   /**
+    * Gets a view of this storage that routes reads according to the given read preference. The view shares connections with this storage,
+    * it must not be disconnected on its own.
+    *
+    * @param readPreference
+    *       Members of the replicated database to read from.
+    * @param maxStaleness
+    *       Maximal replication lag in seconds of the secondaries to read from, 0 means no limit. Ignored for {@link ReadPreference#PRIMARY}.
+    * @return The storage view, or this storage when it does not support replication.
+    */
+   default AsyncDataStorage withReadPreference(final ReadPreference readPreference, final long maxStaleness) {
+      return this;
+   }
+
+   /**
+    * Gets statistics of the pools of connections to the database servers.
+    *
+    * @return Statistics of the connection pool of each server, empty when the storage does not pool connections.
+    */
+   default List<ConnectionPoolStats> getConnectionPoolStats() {
+      return Collections.emptyList();
+   }
+
+   /**
+    * Creates and inserts a new document to specified collection.
+    *
+    * @param collectionName
+    *       the name of the collection where the document will be created
+    * @param document
+    *       the DataDocument object representing a document to be created
+    * @return the future completed with the id of the newly created document
+    */
+   CompletableFuture<String> createDocument(final String collectionName, final DataDocument document);
+
+   /**
+    * Creates and inserts new documents to specified collection.
+    *
+    * @param collectionName
+    *       the name of the collection where the documents will be created
+    * @param dataDocuments
+    *       the DataDocument objects representing documents to be created
+    * @return the future completed with the list of ids of the newly created documents
+    */
+   CompletableFuture<List<String>> createDocuments(final String collectionName, final List<DataDocument> dataDocuments);
+
+   /**
+    * Reads the specified document in given collection by its id.
+    *
+    * @param collectionName
+    *       the name of the collection where the given document is located
+    * @param filter
+    *       filter to find the document
+    * @return the future completed with the read document or with null when no such document exists
+    */
+   CompletableFuture<DataDocument> readDocument(final String collectionName, final DataFilter filter);
+
+   /**
+    * Reads the specified document in given collection by its id and includes only specified attributes.
+    *
+    * @param collectionName
+    *       the name of the collection where the given document is located
+    * @param filter
+    *       filter to find the document
+    * @param attributes
+    *       list of attribute names to include
+    * @return the future completed with the read document or with null when no such document exists
+    */
+   CompletableFuture<DataDocument> readDocumentIncludeAttrs(final String collectionName, final DataFilter filter, final List<String> attributes);
+
+   /**
+    * Modifies an existing document in given collection by its id.
+    *
+    * @param collectionName
+    *       the name of the collection where the existing document is located
+    * @param updatedDocument
+    *       the DataDocument object representing a document with changes to update
+    * @param filter
+    *       filter to find the document
+    * @return the future completed when the update is finished
+    */
+   CompletableFuture<Void> updateDocument(final String collectionName, final DataDocument updatedDocument, final DataFilter filter);
+
+   /**
+    * Replace an existing document in given collection by its id.
+    *
+    * @param collectionName
+    *       the name of the collection where the existing document is located
+    * @param replaceDocument
+    *       the DataDocument object representing a document to replace with
+    * @param filter
+    *       filter to find the document
+    * @return the future completed when the replacement is finished
+    */
+   CompletableFuture<Void> replaceDocument(final String collectionName, final DataDocument replaceDocument, final DataFilter filter);
+
+   /**
+    * Drops an existing document in given collection by its id.
+    *
+    * @param collectionName
+    *       the name of the collection where the document is located
+    * @param filter
+    *       filter to find the document
+    * @return the future completed when the document is dropped
+    */
+   CompletableFuture<Void> dropDocument(final String collectionName, final DataFilter filter);
+
+   /**
+    * Drops all documents matching the filter in given collection.
+    *
+    * @param collectionName
+    *       the name of the collection where the documents are located
+    * @param filter
+    *       filter to find the documents
+    * @return the future completed when the documents are dropped
+    */
+   CompletableFuture<Void> dropManyDocuments(final String collectionName, final DataFilter filter);
+
+   /**
+    * Searches the specified collection for specified documents using filter, sort, skip and limit option.
+    *
+    * @param collectionName
+    *       the name of the collection where the run will be performed
+    * @param filter
+    *       the query predicate. If unspecified, then all documents in the collection will match the predicate.
+    * @param sort
+    *       the sort specification for the ordering of the results. If unspecified, then a sort is equivalent to setting no sort.
+    * @param skip
+    *       the number of documents to skip
+    * @param limit
+    *       the maximum number of documents to return. A limit of 0 is equivalent to setting no limit.
+    * @return the future completed with the list of the found documents
+    */
+   default CompletableFuture<List<DataDocument>> search(final String collectionName, final DataFilter filter, final DataSort sort, final int skip, final int limit) {
+      return search(collectionName, filter, sort, null, skip, limit);
+   }
+
+   /**
+    * Searches the specified collection for specified documents using filter, sort, skip and limit option
+    * and returns only the given attributes.
+    *
+    * @param collectionName
+    *       the name of the collection where the run will be performed
+    * @param filter
+    *       the query predicate. If unspecified, then all documents in the collection will match the predicate.
+    * @param sort
+    *       the sort specification for the ordering of the results. If unspecified, then a sort is equivalent to setting no sort.
+    * @param attributes
+    *       list of attribute names. If unspecified, then the documents contain all their attributes.
+    * @param skip
+    *       the number of documents to skip
+    * @param limit
+    *       the maximum number of documents to return. A limit of 0 is equivalent to setting no limit.
+    * @return the future completed with the list of the found documents
+    */
+   CompletableFuture<List<DataDocument>> search(final String collectionName, final DataFilter filter, final DataSort sort, final List<String> attributes, final int skip, final int limit);
+
+   /**
+    * Counts the number of documents in the collection optionally matching the filter.
+    *
+    * @param collectionName
+    *       the name of the collection where the run will be performed
+    * @param filter
+    *       the query predicate. If unspecified, then all documents in the collection will be counted.
+    * @return the future completed with the number of documents
+    */
+   CompletableFuture<Long> count(final String collectionName, final DataFilter filter);
+
+   /**
+    * Queries the database using the provided query and returns the result. Collections of the query are
+    * queried concurrently and their results are concatenated in the order of the collections.
+    *
+    * @param query
+    *       query to execute
+    * @return the future completed with the query result
+    */
+   CompletableFuture<List<DataDocument>> query(final Query query);
+
+   /**
+    * Executes an aggregation pipeline on the specified collection.
+    *
+    * @param collectionName
+    *       the name of the collection where the aggregation will be performed
+    * @param stages
+    *       the aggregation pipeline stages
+    * @return the future completed with the aggregation result
+    */
+   CompletableFuture<List<DataDocument>> aggregate(final String collectionName, final DataDocument... stages);
+}
@@ -0,0 +1,238 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A compact binary encoding of documents and their values. Each value starts with a type tag, the numbers
+ * are stored as zig-zag variable length integers, so small numbers take a single byte, and the strings
+ * and collections are prefixed by their variable length size. The encoding keeps the types of the values,
+ * so the decoded document is equal to the encoded one. Maps are encoded as documents, so they are decoded as {@link DataDocument}.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public final class BinaryDocumentCodec {
+
+   private static final byte NULL = 0;
+   private static final byte FALSE = 1;
+   private static final byte TRUE = 2;
+   private static final byte INTEGER = 3;
+   private static final byte LONG = 4;
+   private static final byte DOUBLE = 5;
+   private static final byte STRING = 6;
+   private static final byte DATE = 7;
+   private static final byte DOCUMENT = 8;
+   private static final byte LIST = 9;
+   private static final byte BINARY = 10;
+   private static final byte DECIMAL = 11;
+   private static final byte PATTERN = 12;
+
+   private byte[] buffer = new byte[256];
+   private int size;
+
+   private BinaryDocumentCodec() {
+      // instances are used only internally while encoding
+   }
+
+   /**
+    * Encodes a value into a new byte array.
+    *
+    * @param value
+    *       The value to encode.
+    * @return The encoded value.
+    * @throws IllegalArgumentException
+    *       When the value or any of its nested values is of an unsupported type.
+    */
+   public static byte[] encode(final Object value) {
+      final BinaryDocumentCodec codec = new BinaryDocumentCodec();
+      codec.writeValue(value);
+
+      return Arrays.copyOf(codec.buffer, codec.size);
+   }
+
+   /**
+    * Decodes a value from the current position of the buffer, the position is moved after the value.
+    *
+    * @param buffer
+    *       The buffer to read from.
+    * @return The decoded value.
+    * @throws IllegalArgumentException
+    *       When the buffer does not contain a valid value.
+    */
+   public static Object decode(final ByteBuffer buffer) {
+      final byte type = buffer.get();
+
+      switch (type) {
+         case NULL:
+            return null;
+         case FALSE:
+            return false;
+         case TRUE:
+            return true;
+         case INTEGER:
+            return (int) readVarLong(buffer);
+         case LONG:
+            return readVarLong(buffer);
+         case DOUBLE:
+            return buffer.getDouble();
+         case STRING:
+            return readString(buffer);
+         case DATE:
+            return new Date(readVarLong(buffer));
+         case DOCUMENT:
+            final int attributes = (int) readVarLong(buffer);
+            final DataDocument document = new DataDocument();
+            for (int i = 0; i < attributes; i++) {
+               final String key = readString(buffer);
+               document.put(key, decode(buffer));
+            }
+            return document;
+         case LIST:
+            final int items = (int) readVarLong(buffer);
+            final List<Object> list = new ArrayList<>(items);
+            for (int i = 0; i < items; i++) {
+               list.add(decode(buffer));
+            }
+            return list;
+         case BINARY:
+            final byte[] bytes = new byte[(int) readVarLong(buffer)];
+            buffer.get(bytes);
+            return bytes;
+         case DECIMAL:
+            return new BigDecimal(readString(buffer));
+         case PATTERN:
+            final int flags = (int) readVarLong(buffer);
+            return Pattern.compile(readString(buffer), flags);
+         default:
+            throw new IllegalArgumentException("Unknown value type: " + type);
+      }
+   }
+
+   private void writeValue(final Object value) {
+      if (value == null) {
+         writeByte(NULL);
+      } else if (value instanceof Boolean) {
+         writeByte((Boolean) value ? TRUE : FALSE);
+      } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+         writeByte(INTEGER);
+         writeVarLong(((Number) value).intValue());
+      } else if (value instanceof Long) {
+         writeByte(LONG);
+         writeVarLong((Long) value);
+      } else if (value instanceof Double || value instanceof Float) {
+         writeByte(DOUBLE);
+         ensureCapacity(Double.BYTES);
+         ByteBuffer.wrap(buffer, size, Double.BYTES).putDouble(((Number) value).doubleValue());
+         size += Double.BYTES;
+      } else if (value instanceof String) {
+         writeByte(STRING);
+         writeString((String) value);
+      } else if (value instanceof Date) {
+         writeByte(DATE);
+         writeVarLong(((Date) value).getTime());
+      } else if (value instanceof Map) {
+         writeByte(DOCUMENT);
+         writeVarLong(((Map<?, ?>) value).size());
+         ((Map<?, ?>) value).forEach((k, v) -> {
+            writeString(k.toString());
+            writeValue(v);
+         });
+      } else if (value instanceof List) {
+         writeByte(LIST);
+         writeVarLong(((List<?>) value).size());
+         ((List<?>) value).forEach(this::writeValue);
+      } else if (value instanceof byte[]) {
+         writeByte(BINARY);
+         writeBytes((byte[]) value);
+      } else if (value instanceof BigDecimal) {
+         writeByte(DECIMAL);
+         writeString(value.toString());
+      } else if (value instanceof Pattern) {
+         writeByte(PATTERN);
+         writeVarLong(((Pattern) value).flags());
+         writeString(((Pattern) value).pattern());
+      } else {
+         throw new IllegalArgumentException("Unsupported value type: " + value.getClass().getName());
+      }
+   }
+
+   private void writeString(final String value) {
+      writeBytes(value.getBytes(StandardCharsets.UTF_8));
+   }
+
+   private void writeBytes(final byte[] bytes) {
+      writeVarLong(bytes.length);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, size, bytes.length);
+      size += bytes.length;
+   }
+
+   private void writeVarLong(final long value) {
+      long zigZag = (value << 1) ^ (value >> 63);
+      while ((zigZag & ~0x7FL) != 0) {
+         writeByte((byte) ((zigZag & 0x7F) | 0x80));
+         zigZag >>>= 7;
+      }
+      writeByte((byte) zigZag);
+   }
+
+   private void writeByte(final byte value) {
+      ensureCapacity(1);
+      buffer[size++] = value;
+   }
+
+   private void ensureCapacity(final int bytes) {
+      if (size + bytes > buffer.length) {
+         buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + bytes));
+      }
+   }
+
+   private static String readString(final ByteBuffer buffer) {
+      final byte[] bytes = new byte[(int) readVarLong(buffer)];
+      buffer.get(bytes);
+
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   private static long readVarLong(final ByteBuffer buffer) {
+      long zigZag = 0;
+      int shift = 0;
+      byte b;
+      do {
+         if (shift > 63) {
+            throw new IllegalArgumentException("Malformed variable length number.");
+         }
+         b = buffer.get();
+         zigZag |= (long) (b & 0x7F) << shift;
+         shift += 7;
+      } while ((b & 0x80) != 0);
+
+      return (zigZag >>> 1) ^ -(zigZag & 1);
+   }
+}
@@ -0,0 +1,174 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Carries statistics about the pool of connections to a single database server.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class ConnectionPoolStats {
+
+   /**
+    * Host name of the server.
+    */
+   private String host;
+
+   /**
+    * Port of the server.
+    */
+   private int port;
+
+   /**
+    * Configured minimal size of the pool.
+    */
+   private int minSize;
+
+   /**
+    * Configured maximal size of the pool.
+    */
+   private int maxSize;
+
+   /**
+    * Number of connections currently in the pool, both checked out and available.
+    */
+   private int size;
+
+   /**
+    * Number of connections currently checked out of the pool.
+    */
+   private int checkedOutCount;
+
+   /**
+    * Number of threads currently waiting for a connection.
+    */
+   private int waitQueueSize;
+
+   /**
+    * Number of operations executed on the server by their duration. Keys are the upper bounds of the duration
+    * buckets in milliseconds in ascending order, the last bucket is bounded by {@link Long#MAX_VALUE}.
+    */
+   private Map<Long, Long> latencyHistogram;
+
+   public String getHost() {
+      return host;
+   }
+
+   public void setHost(final String host) {
+      this.host = host;
+   }
+
+   public int getPort() {
+      return port;
+   }
+
+   public void setPort(final int port) {
+      this.port = port;
+   }
+
+   public int getMinSize() {
+      return minSize;
+   }
+
+   public void setMinSize(final int minSize) {
+      this.minSize = minSize;
+   }
+
+   public int getMaxSize() {
+      return maxSize;
+   }
+
+   public void setMaxSize(final int maxSize) {
+      this.maxSize = maxSize;
+   }
+
+   public int getSize() {
+      return size;
+   }
+
+   public void setSize(final int size) {
+      this.size = size;
+   }
+
+   public int getCheckedOutCount() {
+      return checkedOutCount;
+   }
+
+   public void setCheckedOutCount(final int checkedOutCount) {
+      this.checkedOutCount = checkedOutCount;
+   }
+
+   public int getWaitQueueSize() {
+      return waitQueueSize;
+   }
+
+   public void setWaitQueueSize(final int waitQueueSize) {
+      this.waitQueueSize = waitQueueSize;
+   }
+
+   public Map<Long, Long> getLatencyHistogram() {
+      return latencyHistogram;
+   }
+
+   public void setLatencyHistogram(final Map<Long, Long> latencyHistogram) {
+      this.latencyHistogram = latencyHistogram;
+   }
+
+   /**
+    * Adds the statistics of another pool of connections to the same server to these statistics.
+    *
+    * @param other
+    *       The statistics to add.
+    * @return These statistics.
+    */
+   public ConnectionPoolStats add(final ConnectionPoolStats other) {
+      minSize += other.minSize;
+      maxSize += other.maxSize;
+      size += other.size;
+      checkedOutCount += other.checkedOutCount;
+      waitQueueSize += other.waitQueueSize;
+
+      if (other.latencyHistogram != null) {
+         if (latencyHistogram == null) {
+            latencyHistogram = new LinkedHashMap<>();
+         }
+         other.latencyHistogram.forEach((bucket, count) -> latencyHistogram.merge(bucket, count, Long::sum));
+      }
+
+      return this;
+   }
+
+   @Override
+   public String toString() {
+      return "ConnectionPoolStats{"
+            + "host='" + host + '\''
+            + ", port=" + port
+            + ", minSize=" + minSize
+            + ", maxSize=" + maxSize
+            + ", size=" + size
+            + ", checkedOutCount=" + checkedOutCount
+            + ", waitQueueSize=" + waitQueueSize
+            + ", latencyHistogram=" + latencyHistogram
+            + '}';
+   }
+}
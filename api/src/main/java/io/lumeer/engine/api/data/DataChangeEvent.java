@@ -0,0 +1,160 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import java.io.Serializable;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A change made to the database by any of its clients, published by {@link DataStorage#watchChanges(Set, Consumer)}.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class DataChangeEvent implements Serializable {
+
+   private static final long serialVersionUID = -4125783413478432810L;
+
+   /**
+    * Type of the change.
+    */
+   public enum Type {
+      /**
+       * A collection was created.
+       */
+      COLLECTION_CREATED,
+
+      /**
+       * A collection was dropped.
+       */
+      COLLECTION_DROPPED,
+
+      /**
+       * A collection was renamed, the new name is in {@link #getNewCollectionName()}.
+       */
+      COLLECTION_RENAMED,
+
+      /**
+       * A document was created, updated or dropped.
+       */
+      DOCUMENT_CHANGED,
+
+      /**
+       * Some changes might have been missed, for example because the connection was lost,
+       * so everything derived from the database must be considered stale.
+       */
+      RESYNC
+   }
+
+   private final Type type;
+   private final String collectionName;
+   private final String newCollectionName;
+   private final String documentId;
+
+   private DataChangeEvent(final Type type, final String collectionName, final String newCollectionName, final String documentId) {
+      this.type = type;
+      this.collectionName = collectionName;
+      this.newCollectionName = newCollectionName;
+      this.documentId = documentId;
+   }
+
+   /**
+    * A collection was created.
+    *
+    * @param collectionName
+    *       the name of the collection
+    * @return the change event
+    */
+   public static DataChangeEvent collectionCreated(final String collectionName) {
+      return new DataChangeEvent(Type.COLLECTION_CREATED, collectionName, null, null);
+   }
+
+   /**
+    * A collection was dropped.
+    *
+    * @param collectionName
+    *       the name of the collection
+    * @return the change event
+    */
+   public static DataChangeEvent collectionDropped(final String collectionName) {
+      return new DataChangeEvent(Type.COLLECTION_DROPPED, collectionName, null, null);
+   }
+
+   /**
+    * A collection was renamed.
+    *
+    * @param oldCollectionName
+    *       the original name of the collection
+    * @param newCollectionName
+    *       the new name of the collection
+    * @return the change event
+    */
+   public static DataChangeEvent collectionRenamed(final String oldCollectionName, final String newCollectionName) {
+      return new DataChangeEvent(Type.COLLECTION_RENAMED, oldCollectionName, newCollectionName, null);
+   }
+
+   /**
+    * A document was created, updated or dropped.
+    *
+    * @param collectionName
+    *       the name of the collection
+    * @param documentId
+    *       the id of the document
+    * @return the change event
+    */
+   public static DataChangeEvent documentChanged(final String collectionName, final String documentId) {
+      return new DataChangeEvent(Type.DOCUMENT_CHANGED, collectionName, null, documentId);
+   }
+
+   /**
+    * Some changes might have been missed.
+    *
+    * @return the change event
+    */
+   public static DataChangeEvent resync() {
+      return new DataChangeEvent(Type.RESYNC, null, null, null);
+   }
+
+   public Type getType() {
+      return type;
+   }
+
+   public String getCollectionName() {
+      return collectionName;
+   }
+
+   public String getNewCollectionName() {
+      return newCollectionName;
+   }
+
+   public String getDocumentId() {
+      return documentId;
+   }
+
+   @Override
+   public String toString() {
+      return "DataChangeEvent{"
+            + "type=" + type
+            + ", collectionName='" + collectionName + '\''
+            + ", newCollectionName='" + newCollectionName + '\''
+            + ", documentId='" + documentId + '\''
+            + '}';
+   }
+}
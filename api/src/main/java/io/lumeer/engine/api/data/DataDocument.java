@@ -67,6 +67,33 @@ public class DataDocument extends LinkedHashMap<String, Object> {
       return this;
    }
 
+   /**
+    * Creates a copy of this document that shares no mutable state with it. Nested documents, lists and dates are copied as well.
+    *
+    * @return The copy of this document.
+    */
+   public DataDocument deepCopy() {
+      final DataDocument copy = new DataDocument();
+      forEach((key, value) -> copy.put(key, copyValue(value)));
+
+      return copy;
+   }
+
+   private static Object copyValue(final Object value) {
+      if (value instanceof DataDocument) {
+         return ((DataDocument) value).deepCopy();
+      } else if (value instanceof List) {
+         final List<Object> copy = new ArrayList<>();
+         ((List<?>) value).forEach(item -> copy.add(copyValue(item)));
+
+         return copy;
+      } else if (value instanceof Date) {
+         return new Date(((Date) value).getTime());
+      }
+
+      return value;
+   }
+
    /**
     * Gets the document id.
     *
@@ -0,0 +1,275 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import io.lumeer.engine.api.LumeerConst;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Supplier;
+
+/**
+ * Orders documents the same way as a database sort specification does, i.e. by the given attributes in the given directions.
+ * Values of different types are ordered by their type first (missing values, numbers, strings, documents, arrays,
+ * other values, booleans and dates) and then by their natural order.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class DataDocumentComparator implements Comparator<DataDocument> {
+
+   private final List<String> attributes = new ArrayList<>();
+   private final List<Integer> directions = new ArrayList<>();
+
+   /**
+    * Creates a comparator for the given sort specification.
+    *
+    * @param sorting
+    *       The sort specification mapping attribute names (including nested paths) to 1 for ascending and -1 for descending order.
+    */
+   public DataDocumentComparator(final DataDocument sorting) {
+      if (sorting != null) {
+         sorting.forEach((attribute, direction) -> {
+            attributes.add(attribute);
+            directions.add(direction instanceof Number && ((Number) direction).intValue() < 0 ? -1 : 1);
+         });
+      }
+   }
+
+   /**
+    * Gets whether the comparator actually orders any documents.
+    *
+    * @return True if and only if there was at least one attribute in the sort specification.
+    */
+   public boolean isSorting() {
+      return !attributes.isEmpty();
+   }
+
+   @Override
+   public int compare(final DataDocument document1, final DataDocument document2) {
+      for (int i = 0; i < attributes.size(); i++) {
+         final int result = compareValues(getValue(document1, attributes.get(i)), getValue(document2, attributes.get(i)));
+
+         if (result != 0) {
+            return result * directions.get(i);
+         }
+      }
+
+      return 0;
+   }
+
+   /**
+    * Merges already sorted sources of documents into a single sorted list. Only the documents needed to fill the requested
+    * page are read from the sources. Each returned document has the name of its source set under {@link LumeerConst.Document#COLLECTION_NAME}.
+    * Documents that are equal according to the comparator keep the order of their sources.
+    *
+    * @param sources
+    *       Sources of the sorted documents identified by their collection names. The iterators are obtained lazily
+    *       and closed after the merge when they are {@link AutoCloseable}.
+    * @param skip
+    *       The number of documents to skip in the merged result.
+    * @param limit
+    *       The maximum number of documents to return, 0 for no limit.
+    * @return The requested page of the merged documents.
+    */
+   public List<DataDocument> merge(final Map<String, Supplier<Iterator<DataDocument>>> sources, final int skip, final int limit) {
+      final List<DataDocument> result = new ArrayList<>();
+      final List<Iterator<DataDocument>> opened = new ArrayList<>();
+      int skipped = 0;
+
+      try {
+         if (!isSorting()) { // the sources are simply concatenated, so there is no need to touch the ones after the page
+            for (final Map.Entry<String, Supplier<Iterator<DataDocument>>> source : sources.entrySet()) {
+               final Iterator<DataDocument> iterator = source.getValue().get();
+               opened.add(iterator);
+
+               while (iterator.hasNext() && (limit <= 0 || result.size() < limit)) {
+                  final DataDocument document = iterator.next();
+
+                  if (skipped++ >= skip) {
+                     result.add(tag(document, source.getKey()));
+                  }
+               }
+
+               if (limit > 0 && result.size() >= limit) {
+                  break;
+               }
+            }
+
+            return result;
+         }
+
+         final PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, sources.size()));
+         int order = 0;
+
+         for (final Map.Entry<String, Supplier<Iterator<DataDocument>>> source : sources.entrySet()) {
+            final Iterator<DataDocument> iterator = source.getValue().get();
+            opened.add(iterator);
+
+            if (iterator.hasNext()) {
+               heads.add(new Head(source.getKey(), order++, iterator));
+            }
+         }
+
+         while (!heads.isEmpty() && (limit <= 0 || result.size() < limit)) {
+            final Head head = heads.poll();
+
+            if (skipped++ >= skip) {
+               result.add(tag(head.document, head.collectionName));
+            }
+
+            if (head.advance()) {
+               heads.add(head);
+            }
+         }
+
+         return result;
+      } finally {
+         opened.forEach(DataDocumentComparator::close);
+      }
+   }
+
+   private static DataDocument tag(final DataDocument document, final String collectionName) {
+      document.put(LumeerConst.Document.COLLECTION_NAME, collectionName);
+      return document;
+   }
+
+   private static void close(final Iterator<DataDocument> iterator) {
+      if (iterator instanceof AutoCloseable) {
+         try {
+            ((AutoCloseable) iterator).close();
+         } catch (Exception e) {
+            // nothing to do about it, the documents were already read
+         }
+      }
+   }
+
+   private static Object getValue(final DataDocument document, final String attribute) {
+      Object value = document;
+
+      for (final String key : attribute.split("\\.")) {
+         if (!(value instanceof Map)) {
+            return null;
+         }
+         value = ((Map<?, ?>) value).get(key);
+      }
+
+      return value;
+   }
+
+   /**
+    * Compares two attribute values in the order used by this comparator.
+    *
+    * @param value1
+    *       The first value to compare, null for a missing value.
+    * @param value2
+    *       The second value to compare, null for a missing value.
+    * @return A negative number, zero or a positive number when the first value is less than, equal to or greater than the second one.
+    */
+   @SuppressWarnings("unchecked")
+   public static int compareValues(final Object value1, final Object value2) {
+      final int type1 = getTypeOrder(value1);
+      final int type2 = getTypeOrder(value2);
+
+      if (type1 != type2) {
+         return Integer.compare(type1, type2);
+      }
+
+      if (value1 == null) {
+         return 0;
+      }
+
+      if (value1 instanceof Number) {
+         return Double.compare(((Number) value1).doubleValue(), ((Number) value2).doubleValue());
+      }
+
+      if (value1 instanceof Comparable && value1.getClass().isInstance(value2)) {
+         return ((Comparable<Object>) value1).compareTo(value2);
+      }
+
+      return value1.toString().compareTo(value2.toString());
+   }
+
+   /**
+    * Gets the position of the value type in the order of types used by this comparator.
+    *
+    * @param value
+    *       The value to get the type order of, null for a missing value.
+    * @return The type order, values of the same type have the same order.
+    */
+   public static int getTypeOrder(final Object value) {
+      if (value == null) {
+         return 0;
+      } else if (value instanceof Number) {
+         return 1;
+      } else if (value instanceof String) {
+         return 2;
+      } else if (value instanceof Map) {
+         return 3;
+      } else if (value instanceof Collection) {
+         return 4;
+      } else if (value instanceof Boolean) {
+         return 6;
+      } else if (value instanceof Date) {
+         return 7;
+      }
+
+      return 5;
+   }
+
+   /**
+    * The current document of a merged source.
+    */
+   private class Head implements Comparable<Head> {
+
+      private final String collectionName;
+      private final int order;
+      private final Iterator<DataDocument> iterator;
+      private DataDocument document;
+
+      private Head(final String collectionName, final int order, final Iterator<DataDocument> iterator) {
+         this.collectionName = collectionName;
+         this.order = order;
+         this.iterator = iterator;
+         this.document = iterator.next();
+      }
+
+      private boolean advance() {
+         if (iterator.hasNext()) {
+            document = iterator.next();
+            return true;
+         }
+
+         return false;
+      }
+
+      @Override
+      public int compareTo(final Head other) {
+         final int result = compare(document, other.document);
+
+         return result != 0 ? result : Integer.compare(order, other.order);
+      }
+   }
+}
@@ -0,0 +1,85 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of documents read using keyset pagination together with the token to read the following page.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class DataPage implements Serializable {
+
+   private static final long serialVersionUID = 2834418936206511370L;
+
+   private List<DataDocument> documents;
+   private String nextPageToken;
+
+   public DataPage() {
+   }
+
+   /**
+    * Defines a new page.
+    *
+    * @param documents
+    *       The documents on the page.
+    * @param nextPageToken
+    *       The opaque token to read the following page, null when this is the last page.
+    */
+   public DataPage(final List<DataDocument> documents, final String nextPageToken) {
+      this.documents = documents;
+      this.nextPageToken = nextPageToken;
+   }
+
+   public List<DataDocument> getDocuments() {
+      return documents;
+   }
+
+   public void setDocuments(final List<DataDocument> documents) {
+      this.documents = documents;
+   }
+
+   public String getNextPageToken() {
+      return nextPageToken;
+   }
+
+   public void setNextPageToken(final String nextPageToken) {
+      this.nextPageToken = nextPageToken;
+   }
+
+   /**
+    * Gets whether there are more documents after this page.
+    *
+    * @return True if and only if there is a following page to read.
+    */
+   public boolean hasNextPage() {
+      return nextPageToken != null;
+   }
+
+   @Override
+   public String toString() {
+      return "DataPage{"
+            + "documents=" + documents
+            + ", nextPageToken='" + nextPageToken + '\''
+            + '}';
+   }
+}
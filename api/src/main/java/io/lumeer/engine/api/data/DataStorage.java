@@ -24,8 +24,14 @@ import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
 
 import java.io.Serializable;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * Represents a data storage.
@@ -38,7 +44,11 @@ public interface DataStorage extends Serializable {
 
    void setCacheProvider(final CacheProvider cacheProvider);
 
-   void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl);
+   void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl, final StorageConnectionOptions options);
+
+   default void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl) {
+      connect(connections, database, useSsl, new StorageConnectionOptions());
+   }
 
    default void connect(final StorageConnection connection, final String database, final Boolean useSsl) {
       connect(Collections.singletonList(connection), database, useSsl);
@@ -46,6 +56,32 @@ public interface DataStorage extends Serializable {
 
    void disconnect();
 
+   /**
+    * Gets a view of this storage that routes reads according to the given read preference. The view shares connections with this storage,
+    * it must not be disconnected on its own.
+    *
+    * @param readPreference
+    *       Members of the replicated database to read from.
+    * @param maxStaleness
+    *       Maximal replication lag in seconds of the secondaries to read from, 0 means no limit. Ignored for {@link ReadPreference#PRIMARY}.
+    * @return The storage view, or this storage when it does not support replication.
+    */
+   default DataStorage withReadPreference(final ReadPreference readPreference, final long maxStaleness) {
+      return this;
+   }
+
+   /**
+    * Gets a view of this storage that performs writes with the given durability. The view shares connections with this storage,
+    * it must not be disconnected on its own.
+    *
+    * @param writeDurability
+    *       Confirmation the writes wait for.
+    * @return The storage view, or this storage when it does not distinguish write durability.
+    */
+   default DataStorage withWriteDurability(final WriteDurability writeDurability) {
+      return this;
+   }
+
    /**
     * Returns a List object of all collection names in the database.
     *
@@ -97,6 +133,18 @@ public interface DataStorage extends Serializable {
     */
    long documentCount(final String collectionName);
 
+   /**
+    * Gets the number of documents in collection from the collection metadata without reading any documents.
+    * The number can be slightly off, e.g. after an unclean shutdown or while chunks are being migrated in a sharded cluster.
+    *
+    * @param collectionName
+    *       The name of the collection to check for.
+    * @return estimated number of documents in collection, 0 if the collection does not exist
+    */
+   default long estimatedDocumentCount(final String collectionName) {
+      return documentCount(collectionName);
+   }
+
    /**
     * Checks whether the document exists in given collection.
     *
@@ -130,6 +178,22 @@ public interface DataStorage extends Serializable {
     */
    List<String> createDocuments(final String collectionName, final List<DataDocument> dataDocuments);
 
+   /**
+    * Executes a mixed list of write operations on the specified collection in a single round trip to the database.
+    * In the ordered mode, the operations are executed one by one and the execution stops at the first failure.
+    * In the unordered mode, all operations are attempted regardless of failures of the others and they might be executed in any order.
+    * Failures of individual operations are reported in the results instead of being thrown.
+    *
+    * @param collectionName
+    *       The name of the collection where the operations will be executed.
+    * @param operations
+    *       The write operations to execute.
+    * @param ordered
+    *       True to execute the operations in the given order and stop at the first failure.
+    * @return The results of the operations in the same order as the operations were given.
+    */
+   List<WriteOperationResult> bulkWrite(final String collectionName, final List<WriteOperation> operations, final boolean ordered);
+
    /**
     * Creates and inserts an old document to specified collection.
     *
@@ -374,6 +438,47 @@ public interface DataStorage extends Serializable {
     */
    List<DataDocument> search(final String collectionName, final DataFilter filter, final DataSort sort, final List<String> attributes, final int skip, final int limit);
 
+   /**
+    * Searches the specified collection for specified documents and returns them lazily as they are read from the database.
+    * Documents are fetched in batches of the given size so that arbitrarily large collections can be processed in constant memory.
+    * The returned stream holds an open database cursor and must be closed after use, preferably in a try-with-resources block.
+    *
+    * @param collectionName
+    *       the name of the collection where the run will be performed
+    * @param filter
+    *       the query predicate. If unspecified, then all documents in the collection will match the predicate.
+    * @param sort
+    *       the sort specification for the ordering of the results. If unspecified, then a sort is equivalent to setting no sort.
+    * @param attributes
+    *       list of attribute names. If unspecified, then the documents contain all their attributes.
+    * @param batchSize
+    *       the number of documents fetched from the database at once. A batch size of 0 uses the database default.
+    * @return the stream of the found documents
+    */
+   Stream<DataDocument> searchStream(final String collectionName, final DataFilter filter, final DataSort sort, final List<String> attributes, final int batchSize);
+
+   /**
+    * Searches the specified collection for specified documents page by page. Instead of skipping the documents of the previous
+    * pages, the next page continues right after the last document of the previous page identified by the page token,
+    * so reading any page costs the same regardless of its depth. The documents are ordered by the sort specification
+    * and then by their id. The sort attributes are expected to hold values of a single type.
+    *
+    * @param collectionName
+    *       the name of the collection where the search will be performed
+    * @param filter
+    *       the query predicate. If unspecified, then all documents in the collection will match the predicate.
+    * @param sort
+    *       the sort specification for the ordering of the results. If unspecified, the documents are ordered by their id.
+    * @param pageToken
+    *       the token returned with the previous page, null to read the first page
+    * @param limit
+    *       the maximum number of documents on the page. A limit of 0 returns all the remaining documents.
+    * @return the page of the found documents
+    * @throws IllegalArgumentException
+    *       When the page token is not valid.
+    */
+   DataPage searchPage(final String collectionName, final DataFilter filter, final DataSort sort, final String pageToken, final int limit);
+
    /**
     * Counts the number of document in the collection optionally meeting the filter criteria.
     *
@@ -394,6 +499,44 @@ public interface DataStorage extends Serializable {
     */
    List<DataDocument> query(final Query query);
 
+   /**
+    * Executes the provided query over all its collections at once as if they were a single collection.
+    * Unlike {@link #query(Query)}, the sorting, skip and limit are applied to the merged result, so each collection
+    * contributes only the documents that make it to the requested page. The name of the source collection is set
+    * under {@link io.lumeer.engine.api.LumeerConst.Document#COLLECTION_NAME} in each returned document. Documents that
+    * are equal according to the sorting are returned in the iteration order of the query collections.
+    * Grouping and output are not supported by this kind of query.
+    *
+    * @param query
+    *       Query to execute. The query needs to have real database collection names filled in.
+    * @return Results of the query.
+    */
+   default List<DataDocument> unionQuery(final Query query) {
+      final int skip = query.getSkip() != null ? Math.max(query.getSkip(), 0) : 0;
+      final int limit = query.getLimit() != null ? Math.max(query.getLimit(), 0) : 0;
+      final Map<String, Supplier<Iterator<DataDocument>>> sources = new LinkedHashMap<>();
+
+      query.getCollections().forEach(collection -> sources.put(collection, () ->
+            query(new Query(Collections.singleton(collection), query.getFilters(), query.getProjections(), query.getSorting(), limit > 0 ? skip + limit : null, null)).iterator()));
+
+      return new DataDocumentComparator(query.getSorting()).merge(sources, skip, limit);
+   }
+
+   /**
+    * Executes the provided query over all its collections at once like {@link #unionQuery(Query)} but reads the result page by page
+    * the same way as {@link #searchPage(String, DataFilter, DataSort, String, int)} does. The skip of the query is ignored.
+    * The documents are ordered by the sorting of the query, then by the iteration order of the query collections and then by their id.
+    *
+    * @param query
+    *       Query to execute. The query needs to have real database collection names filled in.
+    * @param pageToken
+    *       The token returned with the previous page, null to read the first page.
+    * @return The page of the query results.
+    * @throws IllegalArgumentException
+    *       When the page token is not valid.
+    */
+   DataPage unionQueryPage(final Query query, final String pageToken);
+
    /**
     * Executes series of database operations.
     *
@@ -405,6 +548,20 @@ public interface DataStorage extends Serializable {
     */
    List<DataDocument> aggregate(final String collectionName, final DataDocument... stages);
 
+   /**
+    * Executes series of database operations and returns the resulting documents lazily as they are read from the database.
+    * The returned stream holds an open database cursor and must be closed after use, preferably in a try-with-resources block.
+    *
+    * @param collectionName
+    *       Collection on which to execute the operations.
+    * @param batchSize
+    *       The number of documents fetched from the database at once. A batch size of 0 uses the database default.
+    * @param stages
+    *       Operation stages to execute one by one.
+    * @return Stream of the resulting documents.
+    */
+   Stream<DataDocument> aggregateStream(final String collectionName, final int batchSize, final DataDocument... stages);
+
    /**
     * Increment attribute value of document by specified amount. If the field does not exist, it creates the field and sets the field to the specified value.
     *
@@ -444,6 +601,22 @@ public interface DataStorage extends Serializable {
     */
    void resetSequence(final String collectionName, final String indexAttribute, final String index);
 
+   /**
+    * Reserves a block of consecutive values of a sequence. The reservation is a single atomic operation in the database
+    * so that clients sharing the sequence never obtain overlapping blocks. The first block of a new sequence starts with zero.
+    *
+    * @param collectionName
+    *       Name of the collection with sequences.
+    * @param indexAttribute
+    *       Name of the attribute that identifies the sequence document.
+    * @param index
+    *       Value of the index attribute to identify the sequence.
+    * @param blockSize
+    *       Number of values to reserve.
+    * @return The first value of the reserved block, the last one is the returned value plus block size minus one.
+    */
+   int allocateSequenceBlock(final String collectionName, final String indexAttribute, final String index, final int blockSize);
+
    /**
     * Creates defined indexes on a collection.
     *
@@ -495,4 +668,47 @@ public interface DataStorage extends Serializable {
     * @return Statistics about collection usage.
     */
    DataStorageStats getCollectionStats(final String collectionName);
+
+   /**
+    * Gets statistics of the pools of connections to the database servers.
+    *
+    * @return Statistics of the connection pool of each server, empty when the storage does not pool connections.
+    */
+   default List<ConnectionPoolStats> getConnectionPoolStats() {
+      return Collections.emptyList();
+   }
+
+   /**
+    * Gets the recently recorded operations that took longer than the configured threshold.
+    *
+    * @return The slow operations, the most recent first. Empty when slow operations are not recorded.
+    */
+   default List<SlowOperation> getSlowOperations() {
+      return Collections.emptyList();
+   }
+
+   /**
+    * Gets the indexes that would serve the frequently observed queries and are not covered by the existing indexes.
+    *
+    * @return The recommended indexes including those created automatically, the most frequently used first. Empty when queries are not observed.
+    */
+   default List<IndexRecommendation> getIndexRecommendations() {
+      return Collections.emptyList();
+   }
+
+   /**
+    * Starts publishing the changes made to the database by any of its clients, including the other nodes of a cluster.
+    * Collection creates, drops and renames are always published, document changes only in the collections whose
+    * names start with one of the given prefixes. The listener is called from a background thread until the storage
+    * is disconnected.
+    *
+    * @param documentCollectionPrefixes
+    *       Prefixes of the names of the collections to publish document changes for.
+    * @param listener
+    *       Receives the changes.
+    * @return True when the changes are published, false when the storage is not able to watch the changes.
+    */
+   default boolean watchChanges(final Set<String> documentCollectionPrefixes, final Consumer<DataChangeEvent> listener) {
+      return false;
+   }
 }
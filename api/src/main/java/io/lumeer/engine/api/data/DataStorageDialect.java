@@ -34,6 +34,18 @@ public interface DataStorageDialect extends Serializable {
 
    DataDocument[] usersOfGroupAggregate(final String organization, final String group);
 
+   /**
+    * Creates an aggregation counting the occurrences of the values of the given attribute. The resulting documents contain
+    * the value in the field value and the number of documents having it in the field count, ordered from the most frequent value.
+    *
+    * @param attributeName
+    *       the name of the attribute
+    * @param limit
+    *       the maximal number of returned values
+    * @return the aggregation stages
+    */
+   DataDocument[] attributeValueCountsAggregate(final String attributeName, final int limit);
+
    DataFilter fieldValueFilter(final String fieldName, final Object value);
 
    DataFilter fieldValueWildcardFilter(final String fieldName, final Object valuePart);
@@ -32,10 +32,32 @@ import java.util.List;
  */
 public interface DataStorageFactory {
 
-   DataStorage getStorage(final CacheProvider cacheProvider, final List<StorageConnection> connections, final String database, final Boolean useSsl);
+   DataStorage getStorage(final CacheProvider cacheProvider, final List<StorageConnection> connections, final String database, final Boolean useSsl, final StorageConnectionOptions options);
+
+   default DataStorage getStorage(final CacheProvider cacheProvider, final List<StorageConnection> connections, final String database, final Boolean useSsl) {
+      return getStorage(cacheProvider, connections, database, useSsl, new StorageConnectionOptions());
+   }
 
    default DataStorage getStorage(final CacheProvider cacheProvider, final StorageConnection connection, final String database, final Boolean useSsl) {
       return getStorage(cacheProvider, Collections.singletonList(connection), database, useSsl);
    }
 
+   default DataStorage getStorage(final CacheProvider cacheProvider, final StorageConnection connection, final String database, final Boolean useSsl, final StorageConnectionOptions options) {
+      return getStorage(cacheProvider, Collections.singletonList(connection), database, useSsl, options);
+   }
+
+   AsyncDataStorage getAsyncStorage(final List<StorageConnection> connections, final String database, final Boolean useSsl, final StorageConnectionOptions options);
+
+   default AsyncDataStorage getAsyncStorage(final List<StorageConnection> connections, final String database, final Boolean useSsl) {
+      return getAsyncStorage(connections, database, useSsl, new StorageConnectionOptions());
+   }
+
+   default AsyncDataStorage getAsyncStorage(final StorageConnection connection, final String database, final Boolean useSsl) {
+      return getAsyncStorage(Collections.singletonList(connection), database, useSsl);
+   }
+
+   default AsyncDataStorage getAsyncStorage(final StorageConnection connection, final String database, final Boolean useSsl, final StorageConnectionOptions options) {
+      return getAsyncStorage(Collections.singletonList(connection), database, useSsl, options);
+   }
+
 }
@@ -0,0 +1,105 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+/**
+ * Describes a compound index that would serve frequently observed queries of a collection. The index keys follow
+ * the equality, sort, range order of the fields in the observed filters and sorts.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class IndexRecommendation {
+
+   /**
+    * Name of the collection.
+    */
+   private String collectionName;
+
+   /**
+    * Name of the index.
+    */
+   private String indexName;
+
+   /**
+    * Index keys with their directions in the order of the index.
+    */
+   private DataDocument keys;
+
+   /**
+    * Number of observed queries the index would serve, older observations fade out over time.
+    */
+   private long frequency;
+
+   /**
+    * Whether the index was created automatically.
+    */
+   private boolean created;
+
+   public String getCollectionName() {
+      return collectionName;
+   }
+
+   public void setCollectionName(final String collectionName) {
+      this.collectionName = collectionName;
+   }
+
+   public String getIndexName() {
+      return indexName;
+   }
+
+   public void setIndexName(final String indexName) {
+      this.indexName = indexName;
+   }
+
+   public DataDocument getKeys() {
+      return keys;
+   }
+
+   public void setKeys(final DataDocument keys) {
+      this.keys = keys;
+   }
+
+   public long getFrequency() {
+      return frequency;
+   }
+
+   public void setFrequency(final long frequency) {
+      this.frequency = frequency;
+   }
+
+   public boolean isCreated() {
+      return created;
+   }
+
+   public void setCreated(final boolean created) {
+      this.created = created;
+   }
+
+   @Override
+   public String toString() {
+      return "IndexRecommendation{"
+            + "collectionName='" + collectionName + '\''
+            + ", indexName='" + indexName + '\''
+            + ", keys=" + keys
+            + ", frequency=" + frequency
+            + ", created=" + created
+            + '}';
+   }
+}
@@ -0,0 +1,53 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+/**
+ * Determines which members of a replicated database serve reads.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public enum ReadPreference {
+
+   /**
+    * All reads go to the primary, reads always see the latest writes.
+    */
+   PRIMARY,
+
+   /**
+    * Reads go to the primary, secondaries are used only when the primary is not available.
+    */
+   PRIMARY_PREFERRED,
+
+   /**
+    * All reads go to secondaries, they can return stale data.
+    */
+   SECONDARY,
+
+   /**
+    * Reads go to secondaries, the primary is used only when no secondary is available.
+    */
+   SECONDARY_PREFERRED,
+
+   /**
+    * Reads go to the member with the lowest network latency regardless of its type.
+    */
+   NEAREST
+}
@@ -0,0 +1,175 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+/**
+ * Describes a database operation that took longer than the configured threshold. Values in the filter are replaced
+ * by placeholders so that no user data is kept.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class SlowOperation {
+
+   /**
+    * Time when the operation finished in milliseconds since the epoch.
+    */
+   private long timestamp;
+
+   /**
+    * Name of the database.
+    */
+   private String databaseName;
+
+   /**
+    * Name of the collection when applicable.
+    */
+   private String collectionName;
+
+   /**
+    * Name of the database command, e.g. find or aggregate.
+    */
+   private String commandName;
+
+   /**
+    * Shape of the operation filter with all values replaced by placeholders.
+    */
+   private String filterShape;
+
+   /**
+    * Duration of the operation in milliseconds.
+    */
+   private long duration;
+
+   /**
+    * Whether the operation failed.
+    */
+   private boolean failed;
+
+   /**
+    * Number of documents examined by the operation, null when the operation was not explained.
+    */
+   private Long documentsExamined;
+
+   /**
+    * Number of index keys examined by the operation, null when the operation was not explained.
+    */
+   private Long keysExamined;
+
+   /**
+    * Winning query plan of the operation, null when the operation was not explained.
+    */
+   private String plan;
+
+   public long getTimestamp() {
+      return timestamp;
+   }
+
+   public void setTimestamp(final long timestamp) {
+      this.timestamp = timestamp;
+   }
+
+   public String getDatabaseName() {
+      return databaseName;
+   }
+
+   public void setDatabaseName(final String databaseName) {
+      this.databaseName = databaseName;
+   }
+
+   public String getCollectionName() {
+      return collectionName;
+   }
+
+   public void setCollectionName(final String collectionName) {
+      this.collectionName = collectionName;
+   }
+
+   public String getCommandName() {
+      return commandName;
+   }
+
+   public void setCommandName(final String commandName) {
+      this.commandName = commandName;
+   }
+
+   public String getFilterShape() {
+      return filterShape;
+   }
+
+   public void setFilterShape(final String filterShape) {
+      this.filterShape = filterShape;
+   }
+
+   public long getDuration() {
+      return duration;
+   }
+
+   public void setDuration(final long duration) {
+      this.duration = duration;
+   }
+
+   public boolean isFailed() {
+      return failed;
+   }
+
+   public void setFailed(final boolean failed) {
+      this.failed = failed;
+   }
+
+   public Long getDocumentsExamined() {
+      return documentsExamined;
+   }
+
+   public void setDocumentsExamined(final Long documentsExamined) {
+      this.documentsExamined = documentsExamined;
+   }
+
+   public Long getKeysExamined() {
+      return keysExamined;
+   }
+
+   public void setKeysExamined(final Long keysExamined) {
+      this.keysExamined = keysExamined;
+   }
+
+   public String getPlan() {
+      return plan;
+   }
+
+   public void setPlan(final String plan) {
+      this.plan = plan;
+   }
+
+   @Override
+   public String toString() {
+      return "SlowOperation{"
+            + "timestamp=" + timestamp
+            + ", databaseName='" + databaseName + '\''
+            + ", collectionName='" + collectionName + '\''
+            + ", commandName='" + commandName + '\''
+            + ", filterShape='" + filterShape + '\''
+            + ", duration=" + duration
+            + ", failed=" + failed
+            + ", documentsExamined=" + documentsExamined
+            + ", keysExamined=" + keysExamined
+            + ", plan='" + plan + '\''
+            + '}';
+   }
+}
@@ -0,0 +1,206 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import java.io.Serializable;
+
+/**
+ * Tuning options of database connections. Values that are not set are left to the defaults of the underlying driver.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class StorageConnectionOptions implements Serializable {
+
+   private static final long serialVersionUID = 4790373606358437187L;
+
+   /**
+    * Minimal number of connections kept open to each server.
+    */
+   private Integer minPoolSize;
+
+   /**
+    * Maximal number of connections open to each server.
+    */
+   private Integer maxPoolSize;
+
+   /**
+    * Maximal time in milliseconds a thread waits for a connection to become available.
+    */
+   private Integer maxWaitTime;
+
+   /**
+    * Maximal time in milliseconds a pooled connection can be idle before it is closed.
+    */
+   private Integer maxConnectionIdleTime;
+
+   /**
+    * Timeout in milliseconds for establishing a new connection.
+    */
+   private Integer connectTimeout;
+
+   /**
+    * Timeout in milliseconds for reading from and writing to an open connection.
+    */
+   private Integer socketTimeout;
+
+   /**
+    * Minimal duration in milliseconds of operations recorded as slow, no operations are recorded when not set.
+    */
+   private Integer slowOperationThreshold;
+
+   /**
+    * Maximal number of recorded slow operations, the oldest ones are discarded first.
+    */
+   private Integer slowOperationLogSize;
+
+   /**
+    * Whether to explain the recorded slow operations to find out their query plan.
+    */
+   private Boolean explainSlowOperations;
+
+   /**
+    * Directory where the storages embedded in the application keep their data files.
+    */
+   private String dataDirectory;
+
+   /**
+    * Whether the filters and sorts of queries are observed to recommend indexes.
+    */
+   private Boolean indexAdvisor;
+
+   /**
+    * Maximal number of recommended indexes created automatically on a single collection, no indexes are created when not set.
+    */
+   private Integer autoIndexBudget;
+
+   public Integer getMinPoolSize() {
+      return minPoolSize;
+   }
+
+   public void setMinPoolSize(final Integer minPoolSize) {
+      this.minPoolSize = minPoolSize;
+   }
+
+   public Integer getMaxPoolSize() {
+      return maxPoolSize;
+   }
+
+   public void setMaxPoolSize(final Integer maxPoolSize) {
+      this.maxPoolSize = maxPoolSize;
+   }
+
+   public Integer getMaxWaitTime() {
+      return maxWaitTime;
+   }
+
+   public void setMaxWaitTime(final Integer maxWaitTime) {
+      this.maxWaitTime = maxWaitTime;
+   }
+
+   public Integer getMaxConnectionIdleTime() {
+      return maxConnectionIdleTime;
+   }
+
+   public void setMaxConnectionIdleTime(final Integer maxConnectionIdleTime) {
+      this.maxConnectionIdleTime = maxConnectionIdleTime;
+   }
+
+   public Integer getConnectTimeout() {
+      return connectTimeout;
+   }
+
+   public void setConnectTimeout(final Integer connectTimeout) {
+      this.connectTimeout = connectTimeout;
+   }
+
+   public Integer getSocketTimeout() {
+      return socketTimeout;
+   }
+
+   public void setSocketTimeout(final Integer socketTimeout) {
+      this.socketTimeout = socketTimeout;
+   }
+
+   public Integer getSlowOperationThreshold() {
+      return slowOperationThreshold;
+   }
+
+   public void setSlowOperationThreshold(final Integer slowOperationThreshold) {
+      this.slowOperationThreshold = slowOperationThreshold;
+   }
+
+   public Integer getSlowOperationLogSize() {
+      return slowOperationLogSize;
+   }
+
+   public void setSlowOperationLogSize(final Integer slowOperationLogSize) {
+      this.slowOperationLogSize = slowOperationLogSize;
+   }
+
+   public Boolean getExplainSlowOperations() {
+      return explainSlowOperations;
+   }
+
+   public void setExplainSlowOperations(final Boolean explainSlowOperations) {
+      this.explainSlowOperations = explainSlowOperations;
+   }
+
+   public String getDataDirectory() {
+      return dataDirectory;
+   }
+
+   public void setDataDirectory(final String dataDirectory) {
+      this.dataDirectory = dataDirectory;
+   }
+
+   public Boolean getIndexAdvisor() {
+      return indexAdvisor;
+   }
+
+   public void setIndexAdvisor(final Boolean indexAdvisor) {
+      this.indexAdvisor = indexAdvisor;
+   }
+
+   public Integer getAutoIndexBudget() {
+      return autoIndexBudget;
+   }
+
+   public void setAutoIndexBudget(final Integer autoIndexBudget) {
+      this.autoIndexBudget = autoIndexBudget;
+   }
+
+   @Override
+   public String toString() {
+      return "StorageConnectionOptions{"
+            + "minPoolSize=" + minPoolSize
+            + ", maxPoolSize=" + maxPoolSize
+            + ", maxWaitTime=" + maxWaitTime
+            + ", maxConnectionIdleTime=" + maxConnectionIdleTime
+            + ", connectTimeout=" + connectTimeout
+            + ", socketTimeout=" + socketTimeout
+            + ", slowOperationThreshold=" + slowOperationThreshold
+            + ", slowOperationLogSize=" + slowOperationLogSize
+            + ", explainSlowOperations=" + explainSlowOperations
+            + ", dataDirectory='" + dataDirectory + '\''
+            + ", indexAdvisor=" + indexAdvisor
+            + ", autoIndexBudget=" + autoIndexBudget
+            + '}';
+   }
+}
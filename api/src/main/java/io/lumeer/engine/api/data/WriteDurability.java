@@ -0,0 +1,48 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+/**
+ * Determines how much confirmation a write waits for before it returns.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public enum WriteDurability {
+
+   /**
+    * The write is not acknowledged at all, errors are not reported and later reads might not see it yet.
+    */
+   UNACKNOWLEDGED,
+
+   /**
+    * The write is acknowledged by the primary once applied in memory.
+    */
+   ACKNOWLEDGED,
+
+   /**
+    * The write is acknowledged by the primary once committed to its journal.
+    */
+   JOURNALED,
+
+   /**
+    * The write is acknowledged once replicated to the majority of the members.
+    */
+   MAJORITY
+}
@@ -0,0 +1,254 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single write operation to be executed as a part of {@link DataStorage#bulkWrite(String, List, boolean)}.
+ * Each type of the operation has the same semantics as the corresponding single document method of {@link DataStorage}.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class WriteOperation implements Serializable {
+
+   private static final long serialVersionUID = 2870271416412352196L;
+
+   /**
+    * Type of the write operation.
+    */
+   public enum Type {
+      /**
+       * @see DataStorage#createDocument(String, DataDocument)
+       */
+      CREATE,
+
+      /**
+       * @see DataStorage#updateDocument(String, DataDocument, DataFilter)
+       */
+      UPDATE,
+
+      /**
+       * @see DataStorage#replaceDocument(String, DataDocument, DataFilter)
+       */
+      REPLACE,
+
+      /**
+       * @see DataStorage#dropDocument(String, DataFilter)
+       */
+      DROP,
+
+      /**
+       * @see DataStorage#dropManyDocuments(String, DataFilter)
+       */
+      DROP_MANY,
+
+      /**
+       * @see DataStorage#dropAttribute(String, DataFilter, String)
+       */
+      DROP_ATTRIBUTE,
+
+      /**
+       * @see DataStorage#incrementAttributeValueBy(String, DataFilter, String, int)
+       */
+      INCREMENT,
+
+      /**
+       * @see DataStorage#addItemsToArray(String, DataFilter, String, List)
+       */
+      ADD_ITEMS_TO_ARRAY,
+
+      /**
+       * @see DataStorage#removeItemsFromArray(String, DataFilter, String, List)
+       */
+      REMOVE_ITEMS_FROM_ARRAY
+   }
+
+   private final Type type;
+   private final DataFilter filter;
+   private final DataDocument document;
+   private final String attributeName;
+   private final List<?> items;
+   private final int incBy;
+
+   private WriteOperation(final Type type, final DataFilter filter, final DataDocument document, final String attributeName, final List<?> items, final int incBy) {
+      this.type = type;
+      this.filter = filter;
+      this.document = document;
+      this.attributeName = attributeName;
+      this.items = items;
+      this.incBy = incBy;
+   }
+
+   /**
+    * Creates a new document.
+    *
+    * @param document
+    *       the document to create
+    * @return the write operation
+    */
+   public static WriteOperation create(final DataDocument document) {
+      return new WriteOperation(Type.CREATE, null, document, null, Collections.emptyList(), 0);
+   }
+
+   /**
+    * Updates the document matching the filter, the document is created when it does not exist.
+    *
+    * @param filter
+    *       the filter to obtain the document
+    * @param document
+    *       the attributes to set
+    * @return the write operation
+    */
+   public static WriteOperation update(final DataFilter filter, final DataDocument document) {
+      return new WriteOperation(Type.UPDATE, filter, document, null, Collections.emptyList(), 0);
+   }
+
+   /**
+    * Replaces the document matching the filter, the document is created when it does not exist.
+    *
+    * @param filter
+    *       the filter to obtain the document
+    * @param document
+    *       the new document
+    * @return the write operation
+    */
+   public static WriteOperation replace(final DataFilter filter, final DataDocument document) {
+      return new WriteOperation(Type.REPLACE, filter, document, null, Collections.emptyList(), 0);
+   }
+
+   /**
+    * Drops the first document matching the filter.
+    *
+    * @param filter
+    *       the filter to obtain the document
+    * @return the write operation
+    */
+   public static WriteOperation drop(final DataFilter filter) {
+      return new WriteOperation(Type.DROP, filter, null, null, Collections.emptyList(), 0);
+   }
+
+   /**
+    * Drops all documents matching the filter.
+    *
+    * @param filter
+    *       the filter to obtain the documents
+    * @return the write operation
+    */
+   public static WriteOperation dropMany(final DataFilter filter) {
+      return new WriteOperation(Type.DROP_MANY, filter, null, null, Collections.emptyList(), 0);
+   }
+
+   /**
+    * Removes the attribute from the document matching the filter.
+    *
+    * @param filter
+    *       the filter to obtain the document
+    * @param attributeName
+    *       the name of the attribute to remove
+    * @return the write operation
+    */
+   public static WriteOperation dropAttribute(final DataFilter filter, final String attributeName) {
+      return new WriteOperation(Type.DROP_ATTRIBUTE, filter, null, attributeName, Collections.emptyList(), 0);
+   }
+
+   /**
+    * Increments the attribute value of the document matching the filter.
+    *
+    * @param filter
+    *       the filter to obtain the document
+    * @param attributeName
+    *       the name of the attribute to increment
+    * @param incBy
+    *       the value by which the attribute is incremented
+    * @return the write operation
+    */
+   public static WriteOperation increment(final DataFilter filter, final String attributeName, final int incBy) {
+      return new WriteOperation(Type.INCREMENT, filter, null, attributeName, Collections.emptyList(), incBy);
+   }
+
+   /**
+    * Adds the items to the array attribute of the document matching the filter.
+    *
+    * @param filter
+    *       the filter to obtain the document
+    * @param attributeName
+    *       the name of the array attribute
+    * @param items
+    *       the items to add
+    * @return the write operation
+    */
+   public static WriteOperation addItemsToArray(final DataFilter filter, final String attributeName, final List<?> items) {
+      return new WriteOperation(Type.ADD_ITEMS_TO_ARRAY, filter, null, attributeName, items, 0);
+   }
+
+   /**
+    * Removes the items from the array attribute of all documents matching the filter.
+    *
+    * @param filter
+    *       the filter to obtain the documents
+    * @param attributeName
+    *       the name of the array attribute
+    * @param items
+    *       the items to remove
+    * @return the write operation
+    */
+   public static WriteOperation removeItemsFromArray(final DataFilter filter, final String attributeName, final List<?> items) {
+      return new WriteOperation(Type.REMOVE_ITEMS_FROM_ARRAY, filter, null, attributeName, items, 0);
+   }
+
+   public Type getType() {
+      return type;
+   }
+
+   public DataFilter getFilter() {
+      return filter;
+   }
+
+   public DataDocument getDocument() {
+      return document;
+   }
+
+   public String getAttributeName() {
+      return attributeName;
+   }
+
+   public List<?> getItems() {
+      return items;
+   }
+
+   public int getIncBy() {
+      return incBy;
+   }
+
+   @Override
+   public String toString() {
+      return "WriteOperation{"
+            + "type=" + type
+            + ", filter=" + filter
+            + ", document=" + document
+            + ", attributeName='" + attributeName + '\''
+            + ", items=" + items
+            + ", incBy=" + incBy
+            + '}';
+   }
+}
@@ -0,0 +1,106 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of a single {@link WriteOperation} executed in a bulk write.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class WriteOperationResult implements Serializable {
+
+   private static final long serialVersionUID = -3290128853364519406L;
+
+   /**
+    * State of the write operation after the bulk write finished.
+    */
+   public enum Status {
+      /**
+       * The operation was executed successfully.
+       */
+      SUCCEEDED,
+
+      /**
+       * The operation was executed and failed.
+       */
+      FAILED,
+
+      /**
+       * The operation was not executed because an earlier operation of an ordered bulk write failed.
+       */
+      NOT_EXECUTED
+   }
+
+   private final WriteOperation operation;
+   private final Status status;
+   private final String documentId;
+   private final String errorMessage;
+
+   /**
+    * Defines a result of the write operation.
+    *
+    * @param operation
+    *       The write operation.
+    * @param status
+    *       The final state of the operation.
+    * @param documentId
+    *       The id of the created or upserted document, null when no document was created.
+    * @param errorMessage
+    *       The reason of the failure, null when the operation did not fail.
+    */
+   public WriteOperationResult(final WriteOperation operation, final Status status, final String documentId, final String errorMessage) {
+      this.operation = operation;
+      this.status = status;
+      this.documentId = documentId;
+      this.errorMessage = errorMessage;
+   }
+
+   public WriteOperation getOperation() {
+      return operation;
+   }
+
+   public Status getStatus() {
+      return status;
+   }
+
+   public boolean isSucceeded() {
+      return status == Status.SUCCEEDED;
+   }
+
+   public String getDocumentId() {
+      return documentId;
+   }
+
+   public String getErrorMessage() {
+      return errorMessage;
+   }
+
+   @Override
+   public String toString() {
+      return "WriteOperationResult{"
+            + "operation=" + operation
+            + ", status=" + status
+            + ", documentId='" + documentId + '\''
+            + ", errorMessage='" + errorMessage + '\''
+            + '}';
+   }
+}
@@ -0,0 +1,65 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class BinaryDocumentCodecTest {
+
+   @Test
+   public void testEncodeAndDecode() {
+      final DataDocument document = new DataDocument("string", "hodnota ěščř")
+            .append("int", -42)
+            .append("long", 1L << 40)
+            .append("double", 3.14)
+            .append("boolean", true)
+            .append("null", null)
+            .append("date", new Date(1234567890L))
+            .append("decimal", new BigDecimal("1.25"))
+            .append("list", Arrays.asList(1, "a", new DataDocument("b", Long.MIN_VALUE)))
+            .append("nested", new DataDocument("c", new DataDocument("d", Integer.MAX_VALUE)));
+
+      final byte[] encoded = BinaryDocumentCodec.encode(document);
+      assertThat(BinaryDocumentCodec.decode(ByteBuffer.wrap(encoded))).isEqualTo(document);
+      assertThat(BinaryDocumentCodec.encode(new DataDocument("a", 1))).hasSize(6);
+
+      final Map<String, Object> map = new LinkedHashMap<>();
+      map.put("b", 2);
+      map.put("a", 1);
+      final Object decoded = BinaryDocumentCodec.decode(ByteBuffer.wrap(BinaryDocumentCodec.encode(map)));
+      assertThat(decoded).isInstanceOf(DataDocument.class).isEqualTo(map);
+      assertThat(((DataDocument) decoded).keySet()).containsExactly("b", "a");
+
+      assertThatThrownBy(() -> BinaryDocumentCodec.encode(new DataDocument("a", new Object()))).isInstanceOf(IllegalArgumentException.class);
+   }
+}
@@ -0,0 +1,73 @@
+package io.lumeer.engine.api.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.LumeerConst;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class DataDocumentComparatorTest {
+
+   @Test
+   public void testCompare() {
+      final DataDocumentComparator comparator = new DataDocumentComparator(new DataDocument("a", 1).append("b.c", -1));
+
+      assertThat(comparator.compare(new DataDocument("a", 1), new DataDocument("a", 2.5))).isNegative();
+      assertThat(comparator.compare(new DataDocument("a", "x"), new DataDocument("a", 100))).isPositive();
+      assertThat(comparator.compare(new DataDocument(), new DataDocument("a", 1))).isNegative();
+      assertThat(comparator.compare(new DataDocument("a", 1).append("b", new DataDocument("c", 1)), new DataDocument("a", 1).append("b", new DataDocument("c", 2)))).isPositive();
+      assertThat(comparator.compare(new DataDocument("a", 1), new DataDocument("a", 1L))).isZero();
+   }
+
+   @Test
+   public void testMerge() {
+      final Map<String, Supplier<Iterator<DataDocument>>> sources = new LinkedHashMap<>();
+      sources.put("c1", () -> documents(1, 4, 4, 9).iterator());
+      sources.put("c2", () -> documents(2, 4, 8).iterator());
+      sources.put("c3", () -> documents().iterator());
+
+      final List<DataDocument> result = new DataDocumentComparator(new DataDocument("v", 1)).merge(sources, 1, 4);
+
+      assertThat(result).extracting(d -> d.getInteger("v")).containsExactly(2, 4, 4, 4);
+      assertThat(result).extracting(d -> d.getString(LumeerConst.Document.COLLECTION_NAME)).containsExactly("c2", "c1", "c1", "c2");
+   }
+
+   @Test
+   public void testMergeWithoutSorting() {
+      final AtomicInteger opened = new AtomicInteger();
+      final Map<String, Supplier<Iterator<DataDocument>>> sources = new LinkedHashMap<>();
+      sources.put("c1", () -> {
+         opened.incrementAndGet();
+         return documents(3, 1).iterator();
+      });
+      sources.put("c2", () -> {
+         opened.incrementAndGet();
+         return documents(2).iterator();
+      });
+
+      final List<DataDocument> result = new DataDocumentComparator(null).merge(sources, 0, 2);
+
+      assertThat(result).extracting(d -> d.getInteger("v")).containsExactly(3, 1);
+      assertThat(opened.get()).isEqualTo(1);
+   }
+
+   private static List<DataDocument> documents(final Integer... values) {
+      final DataDocument[] documents = new DataDocument[values.length];
+      for (int i = 0; i < values.length; i++) {
+         documents[i] = new DataDocument("v", values[i]);
+      }
+
+      return Arrays.asList(documents);
+   }
+}
@@ -0,0 +1,445 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.embedded;
+
+import io.lumeer.engine.api.data.BinaryDocumentCodec;
+import io.lumeer.inmemory.InMemoryJournal;
+import io.lumeer.inmemory.InMemoryStorage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Persists the changes of an in-memory database to a directory. The changes are appended as records to memory-mapped
+ * segment files, so a write costs a memory copy and survives a crash of the JVM. The segments are forced to the disk
+ * in the background once in {@link #FLUSH_INTERVAL} milliseconds. Each record is prefixed by its length and checksum,
+ * so a record torn by a crash of the operating system is detected and the log is replayed up to it.
+ *
+ * <p>When the segments grow bigger than the last snapshot, they are compacted in the background. The writes are held back
+ * only while the references to the current documents are collected, then the documents are written to a new snapshot
+ * and the segments covered by the snapshot are deleted. The database is loaded from the latest snapshot and the segments
+ * written after it.</p>
+ *
+ * <p>The segments are used for durability only. The reads and the secondary indexes are served by the in-memory storage
+ * the journal is loaded into, so the whole data set is kept on the heap as documents. Reading the documents and indexes
+ * from the segments directly is out of the scope of this storage; it targets the deployments whose data fit in the heap
+ * and a warning is logged when the loaded data are likely to exceed {@link #HEAP_SHARE} of it.</p>
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+class EmbeddedJournal extends RecordingJournal {
+
+   static final int SEGMENT_SIZE = 64 << 20;
+   static final long FLUSH_INTERVAL = 1000;
+   static final long MIN_COMPACTION_SIZE = 16 << 20;
+
+   /**
+    * Share of the maximal heap size the loaded documents should not exceed.
+    */
+   static final double HEAP_SHARE = 0.5;
+
+   /**
+    * Approximate ratio of the heap size of the documents to their encoded size.
+    */
+   private static final int HEAP_OVERHEAD = 4;
+
+   private static final Logger log = Logger.getLogger(EmbeddedJournal.class.getName());
+
+   private static final int HEADER_SIZE = 2 * Integer.BYTES;
+   private static final String LOCK_FILE = "lock";
+   private static final String SEGMENT_PREFIX = "segment-";
+   private static final String SEGMENT_SUFFIX = ".log";
+   private static final String SNAPSHOT_PREFIX = "snapshot-";
+   private static final String SNAPSHOT_SUFFIX = ".dat";
+   private static final String TEMPORARY_SUFFIX = ".tmp";
+
+   private final Path directory;
+   private final int segmentSize;
+   private final long minCompactionSize;
+   private final FileChannel lockChannel;
+   private final FileLock fileLock;
+   private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+   private final Object compactionLock = new Object();
+   private final AtomicInteger references = new AtomicInteger(1);
+   private final ScheduledExecutorService executor;
+   private Consumer<InMemoryJournal> snapshotSource;
+
+   // guarded by this
+   private long segmentNumber;
+   private MappedByteBuffer segment;
+   private boolean dirty;
+   private long logSize;
+   private long snapshotSize;
+
+   private EmbeddedJournal(final Path directory, final int segmentSize, final long minCompactionSize) throws IOException {
+      this.directory = directory;
+      this.segmentSize = segmentSize;
+      this.minCompactionSize = minCompactionSize;
+
+      Files.createDirectories(directory);
+      lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      FileLock lock;
+      try {
+         lock = lockChannel.tryLock();
+      } catch (OverlappingFileLockException e) {
+         lock = null;
+      }
+      fileLock = lock;
+      if (fileLock == null) {
+         lockChannel.close();
+         throw new IllegalStateException("The data directory is used by another process: " + directory);
+      }
+
+      executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+         final Thread thread = new Thread(runnable, "embedded-storage-journal");
+         thread.setDaemon(true);
+         return thread;
+      });
+   }
+
+   /**
+    * Opens the journal in the given directory and loads its content into the storage.
+    *
+    * @param directory
+    *       The directory with the data files, it is created when it does not exist.
+    * @param storage
+    *       An empty storage to load the data into.
+    * @param snapshotSource
+    *       Reports the whole current content of the storage to the given journal, see {@link InMemoryStorage#replay(InMemoryJournal)}.
+    * @return The opened journal.
+    * @throws UncheckedIOException
+    *       When the data files cannot be read or created.
+    * @throws IllegalStateException
+    *       When the directory is used by another process.
+    */
+   static EmbeddedJournal open(final Path directory, final InMemoryStorage storage, final Consumer<InMemoryJournal> snapshotSource) {
+      return open(directory, storage, snapshotSource, SEGMENT_SIZE, MIN_COMPACTION_SIZE);
+   }
+
+   static EmbeddedJournal open(final Path directory, final InMemoryStorage storage, final Consumer<InMemoryJournal> snapshotSource, final int segmentSize, final long minCompactionSize) {
+      try {
+         final EmbeddedJournal journal = new EmbeddedJournal(directory, segmentSize, minCompactionSize);
+         try {
+            journal.load(storage);
+            journal.snapshotSource = snapshotSource;
+         } catch (IOException | RuntimeException e) {
+            journal.closeFiles();
+            throw e;
+         }
+         journal.executor.scheduleWithFixedDelay(journal::maintain, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+
+         return journal;
+      } catch (IOException e) {
+         throw new UncheckedIOException("Unable to open the data directory: " + directory, e);
+      }
+   }
+
+   private void load(final InMemoryStorage storage) throws IOException {
+      final TreeMap<Long, Path> snapshots = listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+      final TreeMap<Long, Path> segments = listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+      final long firstSegment = snapshots.isEmpty() ? 0 : snapshots.lastKey();
+
+      if (!snapshots.isEmpty()) {
+         snapshotSize = replay(snapshots.lastEntry().getValue(), storage);
+      }
+      for (final Path path : segments.tailMap(firstSegment).values()) {
+         logSize += replay(path, storage);
+      }
+      deleteObsoleteFiles(firstSegment);
+
+      final long heapSize = HEAP_OVERHEAD * (snapshotSize + logSize);
+      if (heapSize > HEAP_SHARE * Runtime.getRuntime().maxMemory()) {
+         log.warning("The data in " + directory + " take about " + (heapSize >> 20) + " MB of the heap of " + (Runtime.getRuntime().maxMemory() >> 20)
+               + " MB, the embedded storage keeps all the data in memory and it needs a bigger heap or a MongoDB storage.");
+      }
+
+      synchronized (this) {
+         segmentNumber = Math.max(firstSegment, segments.isEmpty() ? 0 : segments.lastKey() + 1) - 1;
+         rotate(0);
+      }
+   }
+
+   private TreeMap<Long, Path> listFiles(final String prefix, final String suffix) throws IOException {
+      final TreeMap<Long, Path> files = new TreeMap<>();
+
+      try (Stream<Path> paths = Files.list(directory)) {
+         paths.forEach(path -> {
+            final String name = path.getFileName().toString();
+            if (name.startsWith(prefix) && name.endsWith(suffix)) {
+               files.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), path);
+            }
+         });
+      }
+
+      return files;
+   }
+
+   private Path getFile(final String prefix, final long number, final String suffix) {
+      return directory.resolve(String.format("%s%019d%s", prefix, number, suffix));
+   }
+
+   // removes the files covered by the snapshot that starts at the given segment and the unfinished snapshots
+   private void deleteObsoleteFiles(final long firstSegment) throws IOException {
+      for (final Path path : listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX).headMap(firstSegment).values()) {
+         Files.deleteIfExists(path);
+      }
+      for (final Path path : listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).headMap(firstSegment).values()) {
+         Files.deleteIfExists(path);
+      }
+      for (final Path path : listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX + TEMPORARY_SUFFIX).values()) {
+         Files.deleteIfExists(path);
+      }
+   }
+
+   // applies all the valid records of the file and returns the number of their bytes
+   private static long replay(final Path path, final InMemoryStorage storage) throws IOException {
+      final MappedByteBuffer buffer;
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+         buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+
+      final CRC32 crc = new CRC32();
+      while (buffer.remaining() >= HEADER_SIZE) {
+         final int start = buffer.position();
+         final int length = buffer.getInt();
+         final int checksum = buffer.getInt();
+         if (length <= 0 || length > buffer.remaining()) {
+            break;
+         }
+
+         final ByteBuffer payload = buffer.slice();
+         payload.limit(length);
+         crc.reset();
+         crc.update(payload.duplicate());
+         if ((int) crc.getValue() != checksum) {
+            log.log(Level.WARNING, "Corrupted record at position " + start + " of " + path + ", the rest of the file is ignored.");
+            buffer.position(start);
+            break;
+         }
+
+         RecordingJournal.apply(storage, (List<?>) BinaryDocumentCodec.decode(payload));
+         buffer.position(start + HEADER_SIZE + length);
+      }
+
+      return buffer.position();
+   }
+
+   @Override
+   public <T> T write(final Supplier<T> operation) {
+      snapshotLock.readLock().lock();
+      try {
+         return operation.get();
+      } finally {
+         snapshotLock.readLock().unlock();
+      }
+   }
+
+   @Override
+   protected void record(final List<Object> record) {
+      append(BinaryDocumentCodec.encode(record));
+   }
+
+   private synchronized void append(final byte[] payload) {
+      if (segment == null) {
+         throw new IllegalStateException("The journal is closed.");
+      }
+      if (segment.remaining() < HEADER_SIZE + payload.length) {
+         rotate(HEADER_SIZE + payload.length);
+      }
+
+      final CRC32 crc = new CRC32();
+      crc.update(payload);
+
+      // the length is written last, so the record is not replayed until it is complete
+      final int start = segment.position();
+      segment.position(start + HEADER_SIZE);
+      segment.put(payload);
+      segment.putInt(start + Integer.BYTES, (int) crc.getValue());
+      segment.putInt(start, payload.length);
+
+      logSize += HEADER_SIZE + payload.length;
+      dirty = true;
+   }
+
+   // starts a new segment big enough for the given number of bytes
+   private synchronized void rotate(final int minimumSize) {
+      if (segment != null) {
+         segment.force();
+      }
+
+      final Path path = getFile(SEGMENT_PREFIX, segmentNumber + 1, SEGMENT_SUFFIX);
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+         segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, minimumSize));
+         segmentNumber++;
+         dirty = false;
+      } catch (IOException e) {
+         throw new UncheckedIOException("Unable to create a journal segment: " + path, e);
+      }
+   }
+
+   /**
+    * Forces the recent changes to the disk.
+    */
+   synchronized void flush() {
+      if (dirty && segment != null) {
+         segment.force();
+         dirty = false;
+      }
+   }
+
+   private synchronized boolean shouldCompact() {
+      return segment != null && logSize > Math.max(minCompactionSize, snapshotSize);
+   }
+
+   private void maintain() {
+      try {
+         flush();
+         if (shouldCompact()) {
+            compact();
+         }
+      } catch (RuntimeException | IOException e) {
+         log.log(Level.SEVERE, "Unable to maintain the journal in " + directory, e);
+      }
+   }
+
+   /**
+    * Writes all the current data to a new snapshot and deletes the segments it replaces.
+    *
+    * @throws IOException
+    *       When the snapshot cannot be written.
+    */
+   void compact() throws IOException {
+      synchronized (compactionLock) {
+         final List<List<Object>> records = new ArrayList<>();
+         final long firstSegment;
+
+         // the stored documents are never modified, so it is enough to collect their references while the writes wait
+         snapshotLock.writeLock().lock();
+         try {
+            synchronized (this) {
+               if (segment == null) {
+                  return;
+               }
+               rotate(0);
+               firstSegment = segmentNumber;
+               logSize = 0;
+            }
+            snapshotSource.accept(new RecordingJournal() {
+               @Override
+               protected void record(final List<Object> record) {
+                  records.add(record);
+               }
+            });
+         } finally {
+            snapshotLock.writeLock().unlock();
+         }
+
+         final Path temporary = getFile(SNAPSHOT_PREFIX, firstSegment, SNAPSHOT_SUFFIX + TEMPORARY_SUFFIX);
+         try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            final CRC32 crc = new CRC32();
+            for (final List<Object> record : records) {
+               final byte[] payload = BinaryDocumentCodec.encode(record);
+               crc.reset();
+               crc.update(payload);
+               output.writeInt(payload.length);
+               output.writeInt((int) crc.getValue());
+               output.write(payload);
+            }
+            output.flush();
+            channel.force(true);
+         }
+
+         final Path snapshot = getFile(SNAPSHOT_PREFIX, firstSegment, SNAPSHOT_SUFFIX);
+         Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+         synchronized (this) {
+            snapshotSize = Files.size(snapshot);
+         }
+         deleteObsoleteFiles(firstSegment);
+      }
+   }
+
+   /**
+    * Registers another user of the journal.
+    */
+   void retain() {
+      references.incrementAndGet();
+   }
+
+   /**
+    * Unregisters a user of the journal, the journal is closed when there are no more users.
+    *
+    * @return True when the journal was closed.
+    */
+   boolean release() {
+      if (references.decrementAndGet() > 0) {
+         return false;
+      }
+
+      executor.shutdown();
+      try {
+         executor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      closeFiles();
+
+      return true;
+   }
+
+   private synchronized void closeFiles() {
+      flush();
+      segment = null;
+      executor.shutdownNow();
+
+      try {
+         fileLock.release();
+         lockChannel.close();
+      } catch (IOException e) {
+         log.log(Level.WARNING, "Unable to unlock the data directory " + directory, e);
+      }
+   }
+}
@@ -0,0 +1,108 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.embedded;
+
+import io.lumeer.engine.api.data.StorageConnection;
+import io.lumeer.engine.api.data.StorageConnectionOptions;
+import io.lumeer.inmemory.InMemoryStorage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * A data storage embedded in the application that keeps all the data in memory and persists them to a local directory.
+ * The reads are served from memory without any network hop, the same way as {@link InMemoryStorage} does, and the writes
+ * are appended to a journal of memory-mapped segment files, see {@link EmbeddedJournal}. The data are loaded into memory
+ * including all the indexes when the first storage connects to the database, so they must fit in the heap. This makes
+ * the storage suitable for single-node deployments only.
+ *
+ * <p>The data of each database are kept in its own subdirectory of {@link StorageConnectionOptions#getDataDirectory()},
+ * which defaults to {@code .lumeer/data} in the user home directory. Only a single process can use the directory
+ * at a time, all the storages connected to the same database in the process share the data.</p>
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class EmbeddedStorage extends InMemoryStorage {
+
+   private static final long serialVersionUID = -2436620406226405437L;
+
+   private static final Path DEFAULT_DATA_DIRECTORY = Paths.get(System.getProperty("user.home"), ".lumeer", "data");
+
+   private transient String key;
+   private transient EmbeddedJournal journal;
+
+   @Override
+   public void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl, final StorageConnectionOptions options) {
+      final Path dataDirectory = options != null && options.getDataDirectory() != null ? Paths.get(options.getDataDirectory()) : DEFAULT_DATA_DIRECTORY;
+      final Path directory = dataDirectory.resolve(database).toAbsolutePath().normalize();
+
+      synchronized (EmbeddedStorage.class) {
+         final boolean[] loaded = { false };
+         key = "embedded:" + directory;
+         connect(key, database, storage -> {
+            loaded[0] = true;
+            return EmbeddedJournal.open(directory, storage, this::replay);
+         });
+
+         journal = (EmbeddedJournal) getJournal();
+         if (!loaded[0]) {
+            journal.retain();
+         }
+      }
+   }
+
+   @Override
+   public void disconnect() {
+      synchronized (EmbeddedStorage.class) {
+         if (journal != null && journal.release()) {
+            unload(key);
+         }
+         journal = null;
+      }
+   }
+
+   /**
+    * Drops all the collections of the database this storage is connected to. The data files are compacted later in the background.
+    */
+   @Override
+   public void dropDatabase() {
+      getAllCollections().forEach(this::dropCollection);
+   }
+
+   /**
+    * Forces all the recent changes to the disk. The changes are forced periodically in the background,
+    * so this is needed only when the changes must survive a crash of the operating system right away.
+    */
+   public void flush() {
+      journal.flush();
+   }
+
+   /**
+    * Compacts the data files right away instead of waiting for the background compaction.
+    *
+    * @throws IOException
+    *       When the data files cannot be written.
+    */
+   public void compact() throws IOException {
+      journal.compact();
+   }
+}
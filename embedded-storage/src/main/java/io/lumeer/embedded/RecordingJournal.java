@@ -0,0 +1,135 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.embedded;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.BinaryDocumentCodec;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.inmemory.InMemoryJournal;
+import io.lumeer.inmemory.InMemoryStorage;
+import io.lumeer.inmemory.InMemoryStorageDialect;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A journal turning the changes of an in-memory database into records. A record is a list of its type followed
+ * by its arguments, so it can be encoded by {@link BinaryDocumentCodec} and later applied to a storage again.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+abstract class RecordingJournal implements InMemoryJournal {
+
+   private static final int COLLECTION_CREATED = 1;
+   private static final int COLLECTION_DROPPED = 2;
+   private static final int COLLECTION_RENAMED = 3;
+   private static final int INDEX_CREATED = 4;
+   private static final int INDEX_DROPPED = 5;
+   private static final int DOCUMENT_WRITTEN = 6;
+   private static final int DOCUMENT_REMOVED = 7;
+
+   private static final InMemoryStorageDialect DIALECT = new InMemoryStorageDialect();
+
+   /**
+    * Receives a new record.
+    *
+    * @param record
+    *       The record type followed by its arguments.
+    */
+   protected abstract void record(final List<Object> record);
+
+   @Override
+   public void collectionCreated(final String collectionName) {
+      record(Arrays.asList(COLLECTION_CREATED, collectionName));
+   }
+
+   @Override
+   public void collectionDropped(final String collectionName) {
+      record(Arrays.asList(COLLECTION_DROPPED, collectionName));
+   }
+
+   @Override
+   public void collectionRenamed(final String oldCollectionName, final String newCollectionName) {
+      record(Arrays.asList(COLLECTION_RENAMED, oldCollectionName, newCollectionName));
+   }
+
+   @Override
+   public void indexCreated(final String collectionName, final DataDocument keys, final boolean unique) {
+      record(Arrays.asList(INDEX_CREATED, collectionName, keys, unique));
+   }
+
+   @Override
+   public void indexDropped(final String collectionName, final String indexName) {
+      record(Arrays.asList(INDEX_DROPPED, collectionName, indexName));
+   }
+
+   @Override
+   public void documentWritten(final String collectionName, final DataDocument document) {
+      record(Arrays.asList(DOCUMENT_WRITTEN, collectionName, document));
+   }
+
+   @Override
+   public void documentRemoved(final String collectionName, final Object documentId) {
+      record(Arrays.asList(DOCUMENT_REMOVED, collectionName, documentId));
+   }
+
+   /**
+    * Applies a record to the storage. The records must be applied in the same order they were recorded.
+    *
+    * @param storage
+    *       The storage to apply the record to.
+    * @param record
+    *       The record to apply.
+    * @throws IllegalArgumentException
+    *       When the record is not valid.
+    */
+   static void apply(final InMemoryStorage storage, final List<?> record) {
+      final String collectionName = (String) record.get(1);
+
+      switch ((Integer) record.get(0)) {
+         case COLLECTION_CREATED:
+            if (!storage.hasCollection(collectionName)) {
+               storage.createCollection(collectionName);
+            }
+            break;
+         case COLLECTION_DROPPED:
+            storage.dropCollection(collectionName);
+            break;
+         case COLLECTION_RENAMED:
+            storage.renameCollection(collectionName, (String) record.get(2));
+            break;
+         case INDEX_CREATED:
+            storage.createIndex(collectionName, (DataDocument) record.get(2), (Boolean) record.get(3));
+            break;
+         case INDEX_DROPPED:
+            storage.dropIndex(collectionName, (String) record.get(2));
+            break;
+         case DOCUMENT_WRITTEN:
+            final DataDocument document = (DataDocument) record.get(2);
+            storage.replaceDocument(collectionName, document, DIALECT.fieldValueFilter(LumeerConst.Document.ID, document.get(LumeerConst.Document.ID)));
+            break;
+         case DOCUMENT_REMOVED:
+            storage.dropDocument(collectionName, DIALECT.fieldValueFilter(LumeerConst.Document.ID, record.get(2)));
+            break;
+         default:
+            throw new IllegalArgumentException("Unknown record type: " + record.get(0));
+      }
+   }
+}
@@ -0,0 +1,192 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.embedded;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.StorageConnection;
+import io.lumeer.engine.api.data.StorageConnectionOptions;
+import io.lumeer.inmemory.DuplicateKeyException;
+import io.lumeer.inmemory.InMemoryStorageDialect;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class EmbeddedStorageTest {
+
+   private static final String DB_NAME = "lumeer-test";
+   private static final String COLLECTION = "collection";
+   private static final String COLLECTION_II = "collection_II";
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   private StorageConnectionOptions options;
+   private EmbeddedStorage storage;
+   private InMemoryStorageDialect dialect;
+
+   @Before
+   public void setUp() {
+      options = new StorageConnectionOptions();
+      options.setDataDirectory(folder.getRoot().getAbsolutePath());
+      storage = connect();
+      dialect = new InMemoryStorageDialect();
+   }
+
+   @After
+   public void tearDown() {
+      storage.disconnect();
+   }
+
+   private EmbeddedStorage connect() {
+      return (EmbeddedStorage) new EmbeddedStorageFactory().getStorage(null, new StorageConnection("localhost", 27017, "", ""), DB_NAME, false, options);
+   }
+
+   private void reconnect() {
+      storage.disconnect();
+      storage = connect();
+   }
+
+   private Path getDirectory() {
+      return folder.getRoot().toPath().resolve(DB_NAME);
+   }
+
+   private List<String> listFiles(final String prefix) throws IOException {
+      try (Stream<Path> paths = Files.list(getDirectory())) {
+         return paths.map(path -> path.getFileName().toString()).filter(name -> name.startsWith(prefix)).sorted().collect(Collectors.toList());
+      }
+   }
+
+   @Test
+   public void testPersistence() {
+      final String id = storage.createDocument(COLLECTION, new DataDocument("name", "Alice").append("age", 30));
+      storage.createDocument(COLLECTION, new DataDocument("name", "Bob").append("age", 25));
+      storage.createDocument(COLLECTION, new DataDocument("name", "Carol").append("age", 35));
+      storage.updateDocument(COLLECTION, new DataDocument("age", 31), dialect.documentIdFilter(id));
+      storage.dropDocument(COLLECTION, dialect.fieldValueFilter("name", "Bob"));
+      storage.createIndex(COLLECTION, new DataDocument("name", LumeerConst.Index.ASCENDING), true);
+      storage.createCollection(COLLECTION_II);
+      storage.createDocument(COLLECTION_II, new DataDocument("a", 1));
+      storage.renameCollection(COLLECTION_II, "renamed");
+
+      reconnect();
+
+      assertThat(storage.getAllCollections()).containsOnly(COLLECTION, "renamed");
+      assertThat(storage.documentCount(COLLECTION)).isEqualTo(2);
+      assertThat(storage.readDocument(COLLECTION, dialect.documentIdFilter(id))).containsEntry("age", 31);
+      assertThat(storage.listIndexes(COLLECTION)).extracting(index -> index.getString("name")).containsExactly("_id_", "name_1");
+      assertThatThrownBy(() -> storage.createDocument(COLLECTION, new DataDocument("name", "Alice"))).isInstanceOf(DuplicateKeyException.class);
+      assertThat(storage.documentCount("renamed")).isEqualTo(1);
+
+      storage.dropCollection("renamed");
+      reconnect();
+
+      assertThat(storage.getAllCollections()).containsOnly(COLLECTION);
+   }
+
+   @Test
+   public void testSharedDatabase() {
+      final DataStorage other = connect();
+      try {
+         other.createDocument(COLLECTION, new DataDocument("a", 1));
+         assertThat(storage.documentCount(COLLECTION)).isEqualTo(1);
+      } finally {
+         other.disconnect();
+      }
+
+      // the database stays open for the remaining storage
+      storage.createDocument(COLLECTION, new DataDocument("a", 2));
+      reconnect();
+      assertThat(storage.documentCount(COLLECTION)).isEqualTo(2);
+   }
+
+   @Test
+   public void testDirectoryLocked() {
+      assertThatThrownBy(() -> EmbeddedJournal.open(getDirectory(), storage, journal -> {
+      })).isInstanceOf(IllegalStateException.class);
+   }
+
+   @Test
+   public void testCompaction() throws IOException {
+      for (int i = 0; i < 100; i++) {
+         storage.createDocument(COLLECTION, new DataDocument("i", i));
+      }
+      storage.dropManyDocuments(COLLECTION, dialect.documentFilter("{i: {$gte: 10}}"));
+      storage.createIndex(COLLECTION, new DataDocument("i", LumeerConst.Index.DESCENDING), false);
+
+      storage.compact();
+      storage.createDocument(COLLECTION, new DataDocument("i", 100));
+
+      assertThat(listFiles("snapshot-")).hasSize(1);
+      assertThat(listFiles("segment-")).hasSize(1);
+
+      reconnect();
+
+      assertThat(storage.documentCount(COLLECTION)).isEqualTo(11);
+      assertThat(storage.listIndexes(COLLECTION)).extracting(index -> index.getString("name")).containsExactly("_id_", "i_-1");
+      assertThat(listFiles("segment-")).hasSize(2);
+   }
+
+   @Test
+   public void testTornRecord() throws IOException {
+      storage.createDocument(COLLECTION, new DataDocument("a", 1));
+      storage.createDocument(COLLECTION, new DataDocument("a", 2));
+      storage.disconnect();
+
+      // damages the payload of the last record as if it was not written completely
+      final Path segment = getDirectory().resolve(listFiles("segment-").get(0));
+      final int end;
+      try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+         final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+         int position = 0;
+         int last = 0;
+         while (buffer.getInt(position) > 0) {
+            last = position;
+            position += 8 + buffer.getInt(position);
+         }
+         end = last + 8;
+         buffer.put(end, (byte) (buffer.get(end) + 1));
+      }
+
+      storage = connect();
+      assertThat(end).isGreaterThan(8);
+      assertThat(storage.search(COLLECTION, null, null, 0, 0)).extracting(document -> document.getInteger("a")).containsExactly(1);
+   }
+}
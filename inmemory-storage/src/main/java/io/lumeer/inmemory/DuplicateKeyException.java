@@ -0,0 +1,42 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+/**
+ * Thrown when a write would violate a unique index of an in-memory collection.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class DuplicateKeyException extends RuntimeException {
+
+   private static final long serialVersionUID = -1822313738412736562L;
+
+   /**
+    * Creates the exception for the violated index.
+    *
+    * @param index
+    *       The name of the violated index.
+    * @param key
+    *       The duplicate key.
+    */
+   public DuplicateKeyException(final String index, final Object key) {
+      super("E11000 duplicate key error index: " + index + " dup key: " + key);
+   }
+}
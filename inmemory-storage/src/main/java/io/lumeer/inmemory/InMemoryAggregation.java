@@ -0,0 +1,323 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataDocumentComparator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Runs MongoDB aggregation pipelines over the documents kept in memory. Supports the $match, $project, $addFields,
+ * $unwind, $group, $sort, $skip, $limit and $count stages. The $out stage is handled by the storage.
+ * Expressions can refer to fields by $-prefixed paths and can use $literal, $concat, $toLower, $toUpper, $size, $ifNull and $add.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+final class InMemoryAggregation {
+
+   static final String OUT_STAGE = "$out";
+
+   private InMemoryAggregation() {
+      // utility class
+   }
+
+   /**
+    * Runs the pipeline.
+    *
+    * @param documents
+    *       The input documents, they are not modified.
+    * @param stages
+    *       The pipeline stages without the final $out stage.
+    * @return The output documents.
+    * @throws IllegalArgumentException
+    *       When the pipeline contains an unsupported stage or expression.
+    */
+   static List<DataDocument> aggregate(final List<DataDocument> documents, final List<DataDocument> stages) {
+      List<DataDocument> result = documents;
+
+      for (final DataDocument stage : stages) {
+         if (stage.size() != 1) {
+            throw new IllegalArgumentException("A pipeline stage specification object must contain exactly one field.");
+         }
+
+         final String name = stage.keySet().iterator().next();
+         final Object argument = stage.get(name);
+         result = runStage(result, name, argument);
+      }
+
+      return result;
+   }
+
+   @SuppressWarnings("unchecked")
+   private static List<DataDocument> runStage(final List<DataDocument> documents, final String name, final Object argument) {
+      switch (name) {
+         case "$match":
+            return documents.stream().filter(d -> InMemoryMatcher.matches(d, (Map<String, ?>) argument)).collect(Collectors.toList());
+         case "$project":
+            return documents.stream().map(d -> project(d, (Map<String, ?>) argument)).collect(Collectors.toList());
+         case "$addFields":
+            return documents.stream().map(d -> {
+               final DataDocument result = d.deepCopy();
+               ((Map<String, ?>) argument).forEach((path, expression) -> InMemoryUtils.setValue(result, path, evaluate(d, expression)));
+               return result;
+            }).collect(Collectors.toList());
+         case "$unwind":
+            return unwind(documents, argument);
+         case "$group":
+            return group(documents, (Map<String, ?>) argument);
+         case "$sort":
+            final List<DataDocument> sorted = new ArrayList<>(documents);
+            sorted.sort(new DataDocumentComparator(InMemoryUtils.normalize((Map<String, ?>) argument)));
+            return sorted;
+         case "$skip":
+            return documents.stream().skip(((Number) argument).longValue()).collect(Collectors.toList());
+         case "$limit":
+            return documents.stream().limit(((Number) argument).longValue()).collect(Collectors.toList());
+         case "$count":
+            final List<DataDocument> count = new ArrayList<>();
+            if (!documents.isEmpty()) {
+               count.add(new DataDocument(argument.toString(), documents.size()));
+            }
+            return count;
+         default:
+            throw new IllegalArgumentException("Unsupported pipeline stage: " + name);
+      }
+   }
+
+   /**
+    * Applies a projection to the document. In the inclusion mode, the included fields can be computed by expressions.
+    *
+    * @param document
+    *       The document to project.
+    * @param projection
+    *       The projection specification, null or empty to keep the whole document.
+    * @return A new document with the projected fields.
+    */
+   static DataDocument project(final DataDocument document, final Map<String, ?> projection) {
+      if (projection == null || projection.isEmpty()) {
+         return new DataDocument(document);
+      }
+
+      final boolean inclusion = projection.entrySet().stream()
+                                          .anyMatch(e -> !LumeerConst.Document.ID.equals(e.getKey()) && (!(e.getValue() instanceof Number || e.getValue() instanceof Boolean) || InMemoryUtils.isTrue(e.getValue())));
+
+      if (!inclusion) {
+         final DataDocument result = document.deepCopy();
+         projection.keySet().forEach(path -> InMemoryUtils.removeValue(result, path));
+
+         return result;
+      }
+
+      final DataDocument result = new DataDocument();
+      if (document.containsKey(LumeerConst.Document.ID) && (!projection.containsKey(LumeerConst.Document.ID) || InMemoryUtils.isTrue(projection.get(LumeerConst.Document.ID)))) {
+         result.put(LumeerConst.Document.ID, document.get(LumeerConst.Document.ID));
+      }
+
+      projection.forEach((path, value) -> {
+         if (value instanceof Number || value instanceof Boolean) {
+            if (InMemoryUtils.isTrue(value) && InMemoryUtils.hasValue(document, path)) {
+               InMemoryUtils.setValue(result, path, InMemoryUtils.getValue(document, path));
+            }
+         } else {
+            InMemoryUtils.setValue(result, path, evaluate(document, value));
+         }
+      });
+
+      return result;
+   }
+
+   @SuppressWarnings("unchecked")
+   private static List<DataDocument> unwind(final List<DataDocument> documents, final Object argument) {
+      final String path;
+      final boolean preserve;
+
+      if (argument instanceof Map) {
+         path = ((Map<String, ?>) argument).get("path").toString();
+         preserve = InMemoryUtils.isTrue(((Map<String, ?>) argument).get("preserveNullAndEmptyArrays"));
+      } else {
+         path = argument.toString();
+         preserve = false;
+      }
+
+      if (!path.startsWith("$")) {
+         throw new IllegalArgumentException("The path option to $unwind stage should be prefixed with a '$': " + path);
+      }
+
+      final String field = path.substring(1);
+      final List<DataDocument> result = new ArrayList<>();
+
+      documents.forEach(document -> {
+         final Object value = InMemoryUtils.getValue(document, field);
+
+         if (value instanceof List && !((List<?>) value).isEmpty()) {
+            ((List<?>) value).forEach(item -> {
+               final DataDocument unwound = document.deepCopy();
+               InMemoryUtils.setValue(unwound, field, item);
+               result.add(unwound);
+            });
+         } else if ((value != null && !(value instanceof List)) || preserve) {
+            result.add(document);
+         }
+      });
+
+      return result;
+   }
+
+   @SuppressWarnings("unchecked")
+   private static List<DataDocument> group(final List<DataDocument> documents, final Map<String, ?> specification) {
+      if (!specification.containsKey(LumeerConst.Document.ID)) {
+         throw new IllegalArgumentException("A group specification must include an _id.");
+      }
+
+      final Map<Object, List<DataDocument>> groups = new LinkedHashMap<>();
+      final Map<Object, Object> ids = new LinkedHashMap<>();
+
+      documents.forEach(document -> {
+         final Object id = evaluate(document, specification.get(LumeerConst.Document.ID));
+         final Object key = InMemoryUtils.getKey(id);
+
+         ids.putIfAbsent(key, id);
+         groups.computeIfAbsent(key, k -> new ArrayList<>()).add(document);
+      });
+
+      final List<DataDocument> result = new ArrayList<>();
+      groups.forEach((key, members) -> {
+         final DataDocument groupDocument = new DataDocument(LumeerConst.Document.ID, ids.get(key));
+
+         specification.forEach((field, accumulator) -> {
+            if (!LumeerConst.Document.ID.equals(field)) {
+               if (!(accumulator instanceof Map) || ((Map<?, ?>) accumulator).size() != 1) {
+                  throw new IllegalArgumentException("The field '" + field + "' must be an accumulator object.");
+               }
+
+               final Map.Entry<String, ?> entry = ((Map<String, ?>) accumulator).entrySet().iterator().next();
+               groupDocument.put(field, accumulate(members, entry.getKey(), entry.getValue()));
+            }
+         });
+
+         result.add(groupDocument);
+      });
+
+      return result;
+   }
+
+   private static Object accumulate(final List<DataDocument> documents, final String accumulator, final Object expression) {
+      final List<Object> values = documents.stream().map(d -> evaluate(d, expression)).collect(Collectors.toList());
+
+      switch (accumulator) {
+         case "$sum":
+            return sum(values.stream().filter(v -> v instanceof Number).collect(Collectors.toList()));
+         case "$avg":
+            final List<Object> numbers = values.stream().filter(v -> v instanceof Number).collect(Collectors.toList());
+            return numbers.isEmpty() ? null : numbers.stream().mapToDouble(v -> ((Number) v).doubleValue()).average().getAsDouble();
+         case "$min":
+            return values.stream().filter(v -> v != null).min(DataDocumentComparator::compareValues).orElse(null);
+         case "$max":
+            return values.stream().filter(v -> v != null).max(DataDocumentComparator::compareValues).orElse(null);
+         case "$first":
+            return values.isEmpty() ? null : values.get(0);
+         case "$last":
+            return values.isEmpty() ? null : values.get(values.size() - 1);
+         case "$push":
+            return values;
+         case "$addToSet":
+            final List<Object> set = new ArrayList<>();
+            values.stream().filter(v -> set.stream().noneMatch(e -> InMemoryUtils.valuesEqual(e, v))).forEach(set::add);
+            return set;
+         default:
+            throw new IllegalArgumentException("Unsupported accumulator: " + accumulator);
+      }
+   }
+
+   private static Number sum(final List<Object> values) {
+      if (values.stream().allMatch(v -> v instanceof Integer || v instanceof Long)) {
+         final long sum = values.stream().mapToLong(v -> ((Number) v).longValue()).sum();
+
+         return sum == (int) sum ? (Number) (int) sum : (Number) sum;
+      }
+
+      return values.stream().mapToDouble(v -> ((Number) v).doubleValue()).sum();
+   }
+
+   /**
+    * Evaluates an aggregation expression.
+    *
+    * @param document
+    *       The document to evaluate the expression for.
+    * @param expression
+    *       The expression.
+    * @return The value of the expression.
+    */
+   @SuppressWarnings("unchecked")
+   static Object evaluate(final DataDocument document, final Object expression) {
+      if (expression instanceof String && ((String) expression).startsWith("$")) {
+         return InMemoryUtils.getValue(document, ((String) expression).substring(1));
+      } else if (expression instanceof List) {
+         return ((List<?>) expression).stream().map(e -> evaluate(document, e)).collect(Collectors.toList());
+      } else if (InMemoryUtils.isOperatorDocument(expression)) {
+         final Map.Entry<String, ?> operator = ((Map<String, ?>) expression).entrySet().iterator().next();
+
+         return evaluateOperator(document, operator.getKey(), operator.getValue());
+      } else if (expression instanceof Map) {
+         final DataDocument result = new DataDocument();
+         ((Map<String, ?>) expression).forEach((key, value) -> result.put(key, evaluate(document, value)));
+
+         return result;
+      }
+
+      return expression;
+   }
+
+   private static Object evaluateOperator(final DataDocument document, final String operator, final Object argument) {
+      if ("$literal".equals(operator)) {
+         return argument;
+      }
+
+      final Object value = evaluate(document, argument);
+      final List<?> arguments = value instanceof List && argument instanceof List ? (List<?>) value : Collections.singletonList(value);
+
+      switch (operator) {
+         case "$concat":
+            return arguments.stream().anyMatch(a -> a == null) ? null : arguments.stream().map(Object::toString).collect(Collectors.joining());
+         case "$toLower":
+            return arguments.get(0) != null ? arguments.get(0).toString().toLowerCase() : "";
+         case "$toUpper":
+            return arguments.get(0) != null ? arguments.get(0).toString().toUpperCase() : "";
+         case "$size":
+            if (!(arguments.get(0) instanceof List)) {
+               throw new IllegalArgumentException("The argument to $size must be an array.");
+            }
+            return ((List<?>) arguments.get(0)).size();
+         case "$ifNull":
+            return arguments.stream().filter(a -> a != null).findFirst().orElse(null);
+         case "$add":
+            return arguments.stream().anyMatch(a -> a == null) ? null : sum(new ArrayList<>(arguments));
+         default:
+            throw new IllegalArgumentException("Unsupported expression operator: " + operator);
+      }
+   }
+}
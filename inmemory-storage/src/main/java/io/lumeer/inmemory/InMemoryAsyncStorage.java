@@ -0,0 +1,148 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+import io.lumeer.engine.api.data.AsyncDataStorage;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataFilter;
+import io.lumeer.engine.api.data.DataSort;
+import io.lumeer.engine.api.data.Query;
+import io.lumeer.engine.api.data.StorageConnection;
+import io.lumeer.engine.api.data.StorageConnectionOptions;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * An asynchronous view of {@link InMemoryStorage}. The operations run synchronously in the calling thread
+ * as they never wait for any I/O, the returned futures are always completed.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class InMemoryAsyncStorage implements AsyncDataStorage {
+
+   private static final long serialVersionUID = -6263474651519393567L;
+
+   private final InMemoryStorage storage;
+
+   public InMemoryAsyncStorage() {
+      this(new InMemoryStorage());
+   }
+
+   /**
+    * Creates an asynchronous view of the given storage, the storage gets connected and disconnected by this view.
+    *
+    * @param storage
+    *       The storage to run the operations on.
+    */
+   public InMemoryAsyncStorage(final InMemoryStorage storage) {
+      this.storage = storage;
+   }
+
+   @Override
+   public void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl, final StorageConnectionOptions options) {
+      storage.connect(connections, database, useSsl, options);
+   }
+
+   @Override
+   public void disconnect() {
+      storage.disconnect();
+   }
+
+   private static <T> CompletableFuture<T> complete(final Supplier<T> operation) {
+      final CompletableFuture<T> future = new CompletableFuture<>();
+
+      try {
+         future.complete(operation.get());
+      } catch (RuntimeException e) {
+         future.completeExceptionally(e);
+      }
+
+      return future;
+   }
+
+   private static CompletableFuture<Void> complete(final Runnable operation) {
+      return complete(() -> {
+         operation.run();
+         return null;
+      });
+   }
+
+   @Override
+   public CompletableFuture<String> createDocument(final String collectionName, final DataDocument document) {
+      return complete(() -> storage.createDocument(collectionName, document));
+   }
+
+   @Override
+   public CompletableFuture<List<String>> createDocuments(final String collectionName, final List<DataDocument> dataDocuments) {
+      return complete(() -> storage.createDocuments(collectionName, dataDocuments));
+   }
+
+   @Override
+   public CompletableFuture<DataDocument> readDocument(final String collectionName, final DataFilter filter) {
+      return complete(() -> storage.readDocument(collectionName, filter));
+   }
+
+   @Override
+   public CompletableFuture<DataDocument> readDocumentIncludeAttrs(final String collectionName, final DataFilter filter, final List<String> attributes) {
+      return complete(() -> storage.readDocumentIncludeAttrs(collectionName, filter, attributes));
+   }
+
+   @Override
+   public CompletableFuture<Void> updateDocument(final String collectionName, final DataDocument updatedDocument, final DataFilter filter) {
+      return complete(() -> storage.updateDocument(collectionName, updatedDocument, filter));
+   }
+
+   @Override
+   public CompletableFuture<Void> replaceDocument(final String collectionName, final DataDocument replaceDocument, final DataFilter filter) {
+      return complete(() -> storage.replaceDocument(collectionName, replaceDocument, filter));
+   }
+
+   @Override
+   public CompletableFuture<Void> dropDocument(final String collectionName, final DataFilter filter) {
+      return complete(() -> storage.dropDocument(collectionName, filter));
+   }
+
+   @Override
+   public CompletableFuture<Void> dropManyDocuments(final String collectionName, final DataFilter filter) {
+      return complete(() -> storage.dropManyDocuments(collectionName, filter));
+   }
+
+   @Override
+   public CompletableFuture<List<DataDocument>> search(final String collectionName, final DataFilter filter, final DataSort sort, final List<String> attributes, final int skip, final int limit) {
+      return complete(() -> storage.search(collectionName, filter, sort, attributes, skip, limit));
+   }
+
+   @Override
+   public CompletableFuture<Long> count(final String collectionName, final DataFilter filter) {
+      return complete(() -> storage.count(collectionName, filter));
+   }
+
+   @Override
+   public CompletableFuture<List<DataDocument>> query(final Query query) {
+      return complete(() -> storage.query(query));
+   }
+
+   @Override
+   public CompletableFuture<List<DataDocument>> aggregate(final String collectionName, final DataDocument... stages) {
+      return complete(() -> storage.aggregate(collectionName, stages));
+   }
+}
@@ -0,0 +1,436 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A collection of documents kept in memory. The stored documents are never modified, each write replaces the document
+ * with an updated copy, so the documents can be read without locking. The writes are serialized by a lock to keep
+ * the indexes consistent with the documents.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+class InMemoryCollection {
+
+   private static final String ID_INDEX = "_id_";
+   private static final List<String> RANGE_OPERATORS = Arrays.asList("$gt", "$gte", "$lt", "$lte");
+
+   private final ConcurrentSkipListMap<Long, DataDocument> documents = new ConcurrentSkipListMap<>();
+   private final ConcurrentMap<Object, Long> ids = new ConcurrentHashMap<>();
+   private final List<InMemoryIndex> indexes = new CopyOnWriteArrayList<>();
+   private final AtomicLong sequence = new AtomicLong();
+   private final ReentrantLock lock = new ReentrantLock();
+   private final InMemoryDatabase database;
+   private volatile String name;
+
+   InMemoryCollection(final InMemoryDatabase database, final String name) {
+      this.database = database;
+      this.name = name;
+   }
+
+   void setName(final String name) {
+      this.name = name;
+   }
+
+   /**
+    * Runs the write operation while holding the write lock of the collection. The changes made by the operation
+    * are reported to the journal of the database.
+    *
+    * @param operation
+    *       The write operation.
+    * @param <T>
+    *       The type of the operation result.
+    * @return The result of the operation.
+    */
+   <T> T write(final Supplier<T> operation) {
+      return database.getJournal().write(() -> {
+         lock.lock();
+         try {
+            return operation.get();
+         } finally {
+            lock.unlock();
+         }
+      });
+   }
+
+   /**
+    * Inserts a new document. The document gets a generated id when it does not have any.
+    *
+    * @param document
+    *       The document to insert, it is not modified.
+    * @return The inserted document.
+    * @throws DuplicateKeyException
+    *       When the document violates a unique index.
+    */
+   DataDocument insert(final DataDocument document) {
+      final DataDocument stored = InMemoryUtils.normalize(document);
+      if (stored.get(LumeerConst.Document.ID) == null) {
+         final DataDocument withId = new DataDocument(LumeerConst.Document.ID, new ObjectId().toHexString());
+         stored.forEach((k, v) -> {
+            if (!LumeerConst.Document.ID.equals(k)) {
+               withId.put(k, v);
+            }
+         });
+
+         return insertDocument(withId);
+      }
+
+      return insertDocument(stored);
+   }
+
+   private DataDocument insertDocument(final DataDocument document) {
+      return write(() -> {
+         final Object idKey = InMemoryUtils.getKey(document.get(LumeerConst.Document.ID));
+         if (ids.containsKey(idKey)) {
+            throw new DuplicateKeyException(ID_INDEX, document.get(LumeerConst.Document.ID));
+         }
+         checkUnique(document, -1L);
+
+         final long documentId = sequence.incrementAndGet();
+         documents.put(documentId, document);
+         ids.put(idKey, documentId);
+         indexes.forEach(index -> index.add(document, documentId));
+         database.getJournal().documentWritten(name, document);
+
+         return document;
+      });
+   }
+
+   /**
+    * Replaces a stored document with its new version. The id of the document cannot be changed.
+    *
+    * @param documentId
+    *       The internal id of the stored document.
+    * @param document
+    *       The new version of the document.
+    * @throws DuplicateKeyException
+    *       When the new version violates a unique index.
+    */
+   void replace(final long documentId, final DataDocument document) {
+      write(() -> {
+         final DataDocument original = documents.get(documentId);
+         if (original == null) {
+            return null;
+         }
+         if (!InMemoryUtils.valuesEqual(original.get(LumeerConst.Document.ID), document.get(LumeerConst.Document.ID))) {
+            throw new IllegalArgumentException("The _id field cannot be changed.");
+         }
+         checkUnique(document, documentId);
+
+         indexes.forEach(index -> index.remove(original, documentId));
+         documents.put(documentId, document);
+         indexes.forEach(index -> index.add(document, documentId));
+         database.getJournal().documentWritten(name, document);
+
+         return null;
+      });
+   }
+
+   /**
+    * Removes a stored document.
+    *
+    * @param documentId
+    *       The internal id of the stored document.
+    */
+   void remove(final long documentId) {
+      write(() -> {
+         final DataDocument original = documents.remove(documentId);
+         if (original != null) {
+            ids.remove(InMemoryUtils.getKey(original.get(LumeerConst.Document.ID)));
+            indexes.forEach(index -> index.remove(original, documentId));
+            database.getJournal().documentRemoved(name, original.get(LumeerConst.Document.ID));
+         }
+
+         return null;
+      });
+   }
+
+   private void checkUnique(final DataDocument document, final long documentId) {
+      for (final InMemoryIndex index : indexes) {
+         final List<Object> duplicate = index.findDuplicateKey(document, documentId);
+         if (duplicate != null) {
+            throw new DuplicateKeyException(index.getName(), duplicate);
+         }
+      }
+   }
+
+   /**
+    * Gets the stored document. The document must not be modified.
+    *
+    * @param documentId
+    *       The internal id of the document.
+    * @return The stored document or null when it does not exist.
+    */
+   DataDocument get(final long documentId) {
+      return documents.get(documentId);
+   }
+
+   /**
+    * Finds the internal ids of the documents matching the filter in their insertion order. The filter is evaluated
+    * only for the candidate documents found by the most selective usable index.
+    *
+    * @param filter
+    *       The filter, null to match all the documents.
+    * @param limit
+    *       The maximum number of ids to return, 0 for no limit.
+    * @return The internal ids of the matching documents.
+    */
+   List<Long> find(final Map<String, ?> filter, final int limit) {
+      final Collection<Long> candidates = findCandidates(filter);
+      final List<Long> result = new ArrayList<>();
+
+      for (final Long documentId : candidates) {
+         final DataDocument document = documents.get(documentId);
+         if (document != null && InMemoryMatcher.matches(document, filter)) {
+            result.add(documentId);
+            if (limit > 0 && result.size() >= limit) {
+               break;
+            }
+         }
+      }
+
+      return result;
+   }
+
+   /**
+    * Finds the documents matching the filter in their insertion order. The documents must not be modified.
+    *
+    * @param filter
+    *       The filter, null to match all the documents.
+    * @return The matching documents.
+    */
+   List<DataDocument> findDocuments(final Map<String, ?> filter) {
+      return find(filter, 0).stream().map(documents::get).filter(Objects::nonNull).collect(Collectors.toList());
+   }
+
+   private Collection<Long> findCandidates(final Map<String, ?> filter) {
+      if (filter == null || filter.isEmpty()) {
+         return documents.keySet();
+      }
+
+      final Map<String, Object> conditions = new HashMap<>();
+      collectConditions(filter, conditions);
+
+      Set<Long> best = null;
+      final Object id = conditions.get(LumeerConst.Document.ID);
+      if (id != null && isEqualityValue(id)) {
+         final Long documentId = ids.get(InMemoryUtils.getKey(getEqualityValue(id)));
+         best = documentId != null ? Collections.singleton(documentId) : Collections.emptySet();
+      }
+
+      for (final InMemoryIndex index : indexes) {
+         if (best != null && best.size() <= 1) {
+            break;
+         }
+
+         final Set<Long> found = findByIndex(index, conditions);
+         if (found != null && (best == null || found.size() < best.size())) {
+            best = found;
+         }
+      }
+
+      if (best == null) {
+         return documents.keySet();
+      }
+
+      final List<Long> sorted = new ArrayList<>(best);
+      Collections.sort(sorted);
+
+      return sorted;
+   }
+
+   @SuppressWarnings("unchecked")
+   private static void collectConditions(final Map<String, ?> filter, final Map<String, Object> conditions) {
+      filter.forEach((key, value) -> {
+         if ("$and".equals(key) && value instanceof List) {
+            ((List<?>) value).stream().filter(c -> c instanceof Map).forEach(c -> collectConditions((Map<String, ?>) c, conditions));
+         } else if (!key.startsWith("$") && value != null) {
+            conditions.putIfAbsent(key, value);
+         }
+      });
+   }
+
+   private static boolean isEqualityValue(final Object condition) {
+      final Object value = getEqualityValue(condition);
+
+      return value != null && !(value instanceof List) && !(value instanceof Pattern) && !InMemoryUtils.isOperatorDocument(value);
+   }
+
+   private static Object getEqualityValue(final Object condition) {
+      if (InMemoryUtils.isOperatorDocument(condition) && ((Map<?, ?>) condition).size() == 1 && ((Map<?, ?>) condition).containsKey("$eq")) {
+         return ((Map<?, ?>) condition).get("$eq");
+      }
+
+      return condition;
+   }
+
+   private static Set<Long> findByIndex(final InMemoryIndex index, final Map<String, Object> conditions) {
+      final List<String> attributes = index.getAttributes();
+
+      if (attributes.stream().allMatch(a -> conditions.containsKey(a) && isEqualityValue(conditions.get(a)))) {
+         return index.findEqual(attributes.stream().map(a -> getEqualityValue(conditions.get(a))).collect(Collectors.toList()));
+      }
+
+      final Object condition = conditions.get(attributes.get(0));
+      if (condition == null || !index.isOrdered()) {
+         return null;
+      }
+
+      if (isEqualityValue(condition)) {
+         final Object value = getEqualityValue(condition);
+         return index.findRange(value, true, value, true);
+      }
+
+      if (InMemoryUtils.isOperatorDocument(condition)) {
+         final Map<?, ?> operators = (Map<?, ?>) condition;
+
+         if (operators.size() == 1 && operators.get("$in") instanceof List && ((List<?>) operators.get("$in")).stream().allMatch(InMemoryCollection::isEqualityValue)) {
+            final Set<Long> result = new HashSet<>();
+            ((List<?>) operators.get("$in")).forEach(value -> result.addAll(index.findRange(value, true, value, true)));
+            return result;
+         }
+
+         if (operators.keySet().stream().allMatch(RANGE_OPERATORS::contains)) {
+            final Object from = operators.containsKey("$gt") ? operators.get("$gt") : operators.get("$gte");
+            final Object to = operators.containsKey("$lt") ? operators.get("$lt") : operators.get("$lte");
+
+            return index.findRange(from, !operators.containsKey("$gt"), to, !operators.containsKey("$lt"));
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Creates a secondary index, the existing documents are indexed immediately.
+    *
+    * @param keys
+    *       The indexed attributes mapped to 1 or -1 for an ordered index or to "hashed" for a hash index.
+    * @param unique
+    *       Whether the index should enforce unique keys.
+    * @throws DuplicateKeyException
+    *       When the existing documents violate the uniqueness of the new index.
+    */
+   void createIndex(final DataDocument keys, final boolean unique) {
+      write(() -> {
+         final InMemoryIndex index = new InMemoryIndex(keys, unique);
+         if (indexes.stream().anyMatch(i -> i.getName().equals(index.getName()))) {
+            return null;
+         }
+
+         for (final Map.Entry<Long, DataDocument> document : documents.entrySet()) {
+            final List<Object> duplicate = index.findDuplicateKey(document.getValue(), document.getKey());
+            if (duplicate != null) {
+               throw new DuplicateKeyException(index.getName(), duplicate);
+            }
+            index.add(document.getValue(), document.getKey());
+         }
+         indexes.add(index);
+         database.getJournal().indexCreated(name, keys, unique);
+
+         return null;
+      });
+   }
+
+   /**
+    * Drops a secondary index.
+    *
+    * @param indexName
+    *       The name of the index.
+    * @throws IllegalArgumentException
+    *       When there is no such index.
+    */
+   void dropIndex(final String indexName) {
+      write(() -> {
+         if (!indexes.removeIf(index -> index.getName().equals(indexName))) {
+            throw new IllegalArgumentException("index not found with name [" + indexName + "]");
+         }
+         database.getJournal().indexDropped(name, indexName);
+
+         return null;
+      });
+   }
+
+   /**
+    * Lists the descriptions of the indexes in the same format as MongoDB does, including the implicit index of the document ids.
+    *
+    * @param namespace
+    *       The namespace of the collection.
+    * @return The index descriptions.
+    */
+   List<DataDocument> listIndexes(final String namespace) {
+      final List<DataDocument> result = new ArrayList<>();
+      result.add(new DataDocument("v", 2).append("key", new DataDocument(LumeerConst.Document.ID, 1)).append("name", ID_INDEX).append("ns", namespace));
+      indexes.forEach(index -> result.add(index.getDescription(namespace)));
+
+      return result;
+   }
+
+   int getIndexCount() {
+      return indexes.size() + 1;
+   }
+
+   long getIndexSize() {
+      return 16L * (ids.size() + indexes.stream().mapToLong(InMemoryIndex::size).sum());
+   }
+
+   long size() {
+      return documents.size();
+   }
+
+   long getDataSize() {
+      return documents.values().stream().mapToLong(InMemoryUtils::getSize).sum();
+   }
+
+   /**
+    * Reports all the indexes and documents of the collection to the journal as if they were written from scratch.
+    *
+    * @param journal
+    *       The journal to report to.
+    */
+   void replay(final InMemoryJournal journal) {
+      indexes.forEach(index -> journal.indexCreated(name, index.getKeys(), index.isUnique()));
+      documents.values().forEach(document -> journal.documentWritten(name, document));
+   }
+}
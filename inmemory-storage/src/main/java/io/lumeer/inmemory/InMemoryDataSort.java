@@ -0,0 +1,61 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataSort;
+
+import java.util.ArrayList;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class InMemoryDataSort implements DataSort {
+
+   private final DataDocument sort;
+
+   InMemoryDataSort(final DataDocument sort) {
+      this.sort = sort;
+   }
+
+   @Override
+   @SuppressWarnings("unchecked")
+   public DataDocument get() {
+      return sort;
+   }
+
+   @Override
+   public boolean equals(final Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+         return false;
+      }
+
+      // the order of the sort attributes matters
+      return new ArrayList<>(sort.entrySet()).equals(new ArrayList<>(((InMemoryDataSort) o).sort.entrySet()));
+   }
+
+   @Override
+   public int hashCode() {
+      return new ArrayList<>(sort.entrySet()).hashCode();
+   }
+}
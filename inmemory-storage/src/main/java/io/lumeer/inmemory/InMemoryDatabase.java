@@ -0,0 +1,101 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * A named set of in-memory collections. The databases live as long as the class is loaded, so all the storages connected
+ * to the same database name share the same data, just like the clients of a database server do.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+class InMemoryDatabase {
+
+   private static final ConcurrentMap<String, InMemoryDatabase> DATABASES = new ConcurrentHashMap<>();
+
+   private final String name;
+   private final ConcurrentMap<String, InMemoryCollection> collections = new ConcurrentHashMap<>();
+   private volatile InMemoryJournal journal = InMemoryJournal.NONE;
+
+   private InMemoryDatabase(final String name) {
+      this.name = name;
+   }
+
+   /**
+    * Gets the database of the given name, the database is created when it does not exist yet.
+    *
+    * @param name
+    *       The database name.
+    * @return The database.
+    */
+   static InMemoryDatabase getDatabase(final String name) {
+      return DATABASES.computeIfAbsent(name, InMemoryDatabase::new);
+   }
+
+   /**
+    * Gets the database registered under the given key. When the database does not exist yet, it is created
+    * and initialized before any other caller can get it.
+    *
+    * @param key
+    *       The key the database is registered under.
+    * @param name
+    *       The database name.
+    * @param initializer
+    *       Initializes a newly created database.
+    * @return The database.
+    */
+   static InMemoryDatabase getDatabase(final String key, final String name, final Consumer<InMemoryDatabase> initializer) {
+      return DATABASES.computeIfAbsent(key, k -> {
+         final InMemoryDatabase database = new InMemoryDatabase(name);
+         initializer.accept(database);
+
+         return database;
+      });
+   }
+
+   /**
+    * Drops the database registered under the given key with all its collections.
+    *
+    * @param key
+    *       The key the database is registered under, the database name for the databases without a key.
+    */
+   static void dropDatabase(final String key) {
+      DATABASES.remove(key);
+   }
+
+   String getName() {
+      return name;
+   }
+
+   ConcurrentMap<String, InMemoryCollection> getCollections() {
+      return collections;
+   }
+
+   InMemoryJournal getJournal() {
+      return journal;
+   }
+
+   void setJournal(final InMemoryJournal journal) {
+      this.journal = journal;
+   }
+}
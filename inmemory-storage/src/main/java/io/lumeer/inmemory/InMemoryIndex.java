@@ -0,0 +1,247 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataDocumentComparator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A secondary index of a collection. Each index keeps a hash map from the complete keys to the documents, which serves
+ * equality lookups and enforces the uniqueness. Indexes that are not hashed keep an ordered map from the values of their
+ * first attribute as well, which serves range lookups. Arrays are indexed by their elements and missing values are indexed as null.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+class InMemoryIndex {
+
+   private static final String HASHED = "hashed";
+   private static final Object NULL_KEY = new Object();
+
+   private final String name;
+   private final DataDocument keys;
+   private final List<String> attributes;
+   private final boolean unique;
+   private final boolean hashed;
+
+   private final ConcurrentMap<List<Object>, Set<Long>> entries = new ConcurrentHashMap<>();
+   private final ConcurrentSkipListMap<Object, Set<Long>> ordered;
+
+   InMemoryIndex(final DataDocument keys, final boolean unique) {
+      this.keys = new DataDocument(keys);
+      this.attributes = new ArrayList<>(keys.keySet());
+      this.unique = unique;
+      this.hashed = keys.values().stream().anyMatch(HASHED::equals);
+      this.ordered = hashed ? null : new ConcurrentSkipListMap<>((key1, key2) -> DataDocumentComparator.compareValues(unwrap(key1), unwrap(key2)));
+
+      final StringBuilder indexName = new StringBuilder();
+      keys.forEach((attribute, direction) -> indexName.append(indexName.length() > 0 ? "_" : "").append(attribute).append("_").append(direction));
+      this.name = indexName.toString();
+   }
+
+   String getName() {
+      return name;
+   }
+
+   DataDocument getKeys() {
+      return keys;
+   }
+
+   List<String> getAttributes() {
+      return attributes;
+   }
+
+   boolean isUnique() {
+      return unique;
+   }
+
+   boolean isHashed() {
+      return hashed;
+   }
+
+   /**
+    * Gets all the keys the document is indexed under.
+    *
+    * @param document
+    *       The document.
+    * @return The keys of the document.
+    */
+   Set<List<Object>> getDocumentKeys(final DataDocument document) {
+      Set<List<Object>> documentKeys = Collections.singleton(Collections.emptyList());
+
+      for (final String attribute : attributes) {
+         final List<Object> values = new ArrayList<>();
+         InMemoryUtils.getValues(document, attribute).forEach(value -> {
+            if (value instanceof List && !((List<?>) value).isEmpty()) {
+               ((List<?>) value).forEach(item -> values.add(InMemoryUtils.getKey(item)));
+            } else {
+               values.add(value instanceof List ? null : InMemoryUtils.getKey(value));
+            }
+         });
+         if (values.isEmpty()) {
+            values.add(null);
+         }
+
+         final Set<List<Object>> combined = new HashSet<>();
+         for (final List<Object> prefix : documentKeys) {
+            for (final Object value : values) {
+               final List<Object> key = new ArrayList<>(prefix);
+               key.add(value);
+               combined.add(key);
+            }
+         }
+         documentKeys = combined;
+      }
+
+      return documentKeys;
+   }
+
+   /**
+    * Finds a key of the document that violates the uniqueness of this index.
+    *
+    * @param document
+    *       The document to check.
+    * @param documentId
+    *       The id of the document to check, the document does not conflict with itself.
+    * @return The conflicting key or null when there is no conflict.
+    */
+   List<Object> findDuplicateKey(final DataDocument document, final long documentId) {
+      if (!unique) {
+         return null;
+      }
+
+      for (final List<Object> key : getDocumentKeys(document)) {
+         final Set<Long> documents = entries.get(key);
+         if (documents != null && documents.stream().anyMatch(id -> id != documentId)) {
+            return key;
+         }
+      }
+
+      return null;
+   }
+
+   void add(final DataDocument document, final long documentId) {
+      getDocumentKeys(document).forEach(key -> {
+         entries.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(documentId);
+         if (ordered != null) {
+            ordered.computeIfAbsent(wrap(key.get(0)), k -> ConcurrentHashMap.newKeySet()).add(documentId);
+         }
+      });
+   }
+
+   void remove(final DataDocument document, final long documentId) {
+      getDocumentKeys(document).forEach(key -> {
+         entries.computeIfPresent(key, (k, v) -> v.remove(documentId) && v.isEmpty() ? null : v);
+         if (ordered != null) {
+            ordered.computeIfPresent(wrap(key.get(0)), (k, v) -> v.remove(documentId) && v.isEmpty() ? null : v);
+         }
+      });
+   }
+
+   /**
+    * Finds the documents having the given values of all the index attributes.
+    *
+    * @param values
+    *       The values of the index attributes in the order of the attributes.
+    * @return The ids of the documents.
+    */
+   Set<Long> findEqual(final List<Object> values) {
+      final List<Object> key = new ArrayList<>();
+      values.forEach(value -> key.add(InMemoryUtils.getKey(value)));
+
+      return entries.getOrDefault(key, Collections.emptySet());
+   }
+
+   /**
+    * Finds the documents with the value of the first index attribute in the given range.
+    *
+    * @param from
+    *       The lower bound, null for no lower bound.
+    * @param fromInclusive
+    *       Whether the lower bound is included.
+    * @param to
+    *       The upper bound, null for no upper bound.
+    * @param toInclusive
+    *       Whether the upper bound is included.
+    * @return The ids of the documents.
+    */
+   Set<Long> findRange(final Object from, final boolean fromInclusive, final Object to, final boolean toInclusive) {
+      NavigableMap<Object, Set<Long>> range = ordered;
+      if (from != null) {
+         range = range.tailMap(wrap(InMemoryUtils.getKey(from)), fromInclusive);
+      }
+      if (to != null) {
+         range = range.headMap(wrap(InMemoryUtils.getKey(to)), toInclusive);
+      }
+
+      final Set<Long> result = new HashSet<>();
+      range.values().forEach(result::addAll);
+
+      return result;
+   }
+
+   /**
+    * Gets whether the range lookups are supported.
+    *
+    * @return True if and only if the index is ordered.
+    */
+   boolean isOrdered() {
+      return ordered != null;
+   }
+
+   /**
+    * Gets the number of distinct keys in the index.
+    *
+    * @return The number of distinct keys.
+    */
+   int size() {
+      return entries.size();
+   }
+
+   DataDocument getDescription(final String namespace) {
+      final DataDocument description = new DataDocument("v", 2)
+            .append("key", new DataDocument(keys))
+            .append("name", name)
+            .append("ns", namespace);
+      if (unique) {
+         description.append("unique", true);
+      }
+
+      return description;
+   }
+
+   // the skip list does not allow null keys, so missing values are kept under a marker ordered as null
+   private static Object wrap(final Object key) {
+      return key == null ? NULL_KEY : key;
+   }
+
+   private static Object unwrap(final Object key) {
+      return key == NULL_KEY ? null : key;
+   }
+}
@@ -0,0 +1,129 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+import io.lumeer.engine.api.data.DataDocument;
+
+import java.util.function.Supplier;
+
+/**
+ * Receives all the changes of an in-memory database, so that they can be persisted and replayed later.
+ * The changes of a single collection are reported in the order they were made while holding the write lock
+ * of the collection. The reported documents are never modified afterwards and must not be modified by the journal.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public interface InMemoryJournal {
+
+   /**
+    * A journal ignoring all the changes.
+    */
+   InMemoryJournal NONE = new InMemoryJournal() {
+   };
+
+   /**
+    * Runs a write operation that reports its changes to this journal. The journal can hold the writes back
+    * while it takes a consistent snapshot of the whole database.
+    *
+    * @param operation
+    *       The write operation.
+    * @param <T>
+    *       The type of the operation result.
+    * @return The result of the operation.
+    */
+   default <T> T write(final Supplier<T> operation) {
+      return operation.get();
+   }
+
+   /**
+    * An empty collection was created.
+    *
+    * @param collectionName
+    *       The name of the collection.
+    */
+   default void collectionCreated(final String collectionName) {
+   }
+
+   /**
+    * A collection was dropped with all its documents and indexes.
+    *
+    * @param collectionName
+    *       The name of the collection.
+    */
+   default void collectionDropped(final String collectionName) {
+   }
+
+   /**
+    * A collection was renamed.
+    *
+    * @param oldCollectionName
+    *       The original name of the collection.
+    * @param newCollectionName
+    *       The new name of the collection.
+    */
+   default void collectionRenamed(final String oldCollectionName, final String newCollectionName) {
+   }
+
+   /**
+    * A secondary index was created, the collection is created implicitly when it does not exist.
+    *
+    * @param collectionName
+    *       The name of the collection.
+    * @param keys
+    *       The indexed attributes as passed to {@link io.lumeer.engine.api.data.DataStorage#createIndex(String, DataDocument, boolean)}.
+    * @param unique
+    *       Whether the index enforces unique keys.
+    */
+   default void indexCreated(final String collectionName, final DataDocument keys, final boolean unique) {
+   }
+
+   /**
+    * A secondary index was dropped.
+    *
+    * @param collectionName
+    *       The name of the collection.
+    * @param indexName
+    *       The name of the index.
+    */
+   default void indexDropped(final String collectionName, final String indexName) {
+   }
+
+   /**
+    * A document was inserted or replaced by its new version, the collection is created implicitly when it does not exist.
+    *
+    * @param collectionName
+    *       The name of the collection.
+    * @param document
+    *       The complete document including its id.
+    */
+   default void documentWritten(final String collectionName, final DataDocument document) {
+   }
+
+   /**
+    * A document was removed.
+    *
+    * @param collectionName
+    *       The name of the collection.
+    * @param documentId
+    *       The id of the removed document.
+    */
+   default void documentRemoved(final String collectionName, final Object documentId) {
+   }
+}
@@ -0,0 +1,215 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+import io.lumeer.engine.api.data.DataDocumentComparator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates MongoDB query documents against the documents kept in memory. Supports the comparison operators ($eq, $ne,
+ * $gt, $gte, $lt, $lte, $in, $nin), the logical operators ($and, $or, $nor, $not), the element operator $exists,
+ * regular expressions and the array operators ($all, $elemMatch, $size).
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+final class InMemoryMatcher {
+
+   private InMemoryMatcher() {
+      // utility class
+   }
+
+   /**
+    * Gets whether the document matches the filter.
+    *
+    * @param document
+    *       The document to check.
+    * @param filter
+    *       The query document, null or empty matches all documents.
+    * @return True if and only if the document matches the filter.
+    * @throws IllegalArgumentException
+    *       When the filter contains an unsupported operator.
+    */
+   static boolean matches(final Map<String, ?> document, final Map<String, ?> filter) {
+      if (filter == null) {
+         return true;
+      }
+
+      for (final Map.Entry<String, ?> condition : filter.entrySet()) {
+         if (!matchesCondition(document, condition.getKey(), condition.getValue())) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   @SuppressWarnings("unchecked")
+   private static boolean matchesCondition(final Map<String, ?> document, final String key, final Object value) {
+      switch (key) {
+         case "$and":
+            return getConditions(key, value).stream().allMatch(c -> matches(document, c));
+         case "$or":
+            return getConditions(key, value).stream().anyMatch(c -> matches(document, c));
+         case "$nor":
+            return getConditions(key, value).stream().noneMatch(c -> matches(document, c));
+         case "$comment":
+            return true;
+         default:
+            if (key.startsWith("$")) {
+               throw new IllegalArgumentException("Unsupported query operator: " + key);
+            }
+
+            return matchesValues(InMemoryUtils.getValues(document, key), value);
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   private static List<Map<String, ?>> getConditions(final String operator, final Object value) {
+      if (!(value instanceof List)) {
+         throw new IllegalArgumentException(operator + " needs an array.");
+      }
+
+      return (List<Map<String, ?>>) value;
+   }
+
+   /**
+    * Gets whether the values found for a field match the condition on the field.
+    *
+    * @param values
+    *       The values of the field as returned by {@link InMemoryUtils#getValues(Map, String)}.
+    * @param condition
+    *       A value to be equal to, a regular expression or a document with operators.
+    * @return True if and only if the values match the condition.
+    */
+   static boolean matchesValues(final List<Object> values, final Object condition) {
+      if (condition instanceof Pattern) {
+         return matchesPattern(values, (Pattern) condition);
+      }
+
+      if (InMemoryUtils.isOperatorDocument(condition)) {
+         final Map<?, ?> operators = (Map<?, ?>) condition;
+
+         for (final Map.Entry<?, ?> operator : operators.entrySet()) {
+            if (!matchesOperator(values, operator.getKey().toString(), operator.getValue(), operators)) {
+               return false;
+            }
+         }
+
+         return true;
+      }
+
+      return matchesEqual(values, condition);
+   }
+
+   private static boolean matchesOperator(final List<Object> values, final String operator, final Object argument, final Map<?, ?> operators) {
+      switch (operator) {
+         case "$eq":
+            return matchesEqual(values, argument);
+         case "$ne":
+            return !matchesEqual(values, argument);
+         case "$gt":
+            return matchesComparison(values, argument, c -> c > 0);
+         case "$gte":
+            return matchesComparison(values, argument, c -> c >= 0);
+         case "$lt":
+            return matchesComparison(values, argument, c -> c < 0);
+         case "$lte":
+            return matchesComparison(values, argument, c -> c <= 0);
+         case "$in":
+            return matchesIn(values, argument);
+         case "$nin":
+            return !matchesIn(values, argument);
+         case "$exists":
+            return !values.isEmpty() == InMemoryUtils.isTrue(argument);
+         case "$regex":
+            final Object options = operators.get("$options");
+            final Pattern pattern = argument instanceof Pattern ? (Pattern) argument : InMemoryUtils.createPattern(argument.toString(), options != null ? options.toString() : null);
+            return matchesPattern(values, pattern);
+         case "$options":
+            return true;
+         case "$not":
+            return !matchesValues(values, argument);
+         case "$size":
+            return values.stream().anyMatch(v -> v instanceof List && argument instanceof Number && ((List<?>) v).size() == ((Number) argument).intValue());
+         case "$all":
+            return argument instanceof List && !((List<?>) argument).isEmpty() && ((List<?>) argument).stream().allMatch(item -> matchesValues(values, item));
+         case "$elemMatch":
+            return matchesElement(values, argument);
+         default:
+            throw new IllegalArgumentException("Unsupported query operator: " + operator);
+      }
+   }
+
+   private static boolean matchesEqual(final List<Object> values, final Object argument) {
+      if (argument == null && values.isEmpty()) {
+         return true;
+      }
+
+      return expand(values).stream().anyMatch(v -> InMemoryUtils.valuesEqual(v, argument));
+   }
+
+   private static boolean matchesIn(final List<Object> values, final Object argument) {
+      if (!(argument instanceof List)) {
+         throw new IllegalArgumentException("$in needs an array.");
+      }
+
+      return ((List<?>) argument).stream().anyMatch(item -> item instanceof Pattern ? matchesPattern(values, (Pattern) item) : matchesEqual(values, item));
+   }
+
+   private static boolean matchesPattern(final List<Object> values, final Pattern pattern) {
+      return expand(values).stream().anyMatch(v -> v instanceof String && pattern.matcher((String) v).find());
+   }
+
+   private static boolean matchesComparison(final List<Object> values, final Object argument, final IntPredicate result) {
+      final int type = DataDocumentComparator.getTypeOrder(argument);
+
+      // only the values of the same type are compared, just like in MongoDB
+      return expand(values).stream().anyMatch(v -> DataDocumentComparator.getTypeOrder(v) == type && result.test(DataDocumentComparator.compareValues(v, argument)));
+   }
+
+   @SuppressWarnings("unchecked")
+   private static boolean matchesElement(final List<Object> values, final Object argument) {
+      if (!(argument instanceof Map)) {
+         throw new IllegalArgumentException("$elemMatch needs an object.");
+      }
+
+      final Map<String, ?> condition = (Map<String, ?>) argument;
+      final boolean operators = InMemoryUtils.isOperatorDocument(condition) && !condition.containsKey("$and") && !condition.containsKey("$or") && !condition.containsKey("$nor");
+
+      return values.stream().filter(v -> v instanceof List).flatMap(v -> ((List<?>) v).stream()).anyMatch(element ->
+            operators ? matchesValues(Collections.singletonList(element), condition) : element instanceof Map && matches((Map<String, ?>) element, condition));
+   }
+
+   /**
+    * Adds the array elements to the values, a condition on a field holding an array is matched by the array itself or by any of its elements.
+    */
+   private static List<Object> expand(final List<Object> values) {
+      final List<Object> expanded = new ArrayList<>(values);
+      values.stream().filter(v -> v instanceof List).forEach(v -> expanded.addAll((List<?>) v));
+
+      return expanded;
+   }
+}
@@ -0,0 +1,958 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.cache.CacheProvider;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataDocumentComparator;
+import io.lumeer.engine.api.data.DataFilter;
+import io.lumeer.engine.api.data.DataPage;
+import io.lumeer.engine.api.data.DataSort;
+import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.DataStorageStats;
+import io.lumeer.engine.api.data.Query;
+import io.lumeer.engine.api.data.StorageConnection;
+import io.lumeer.engine.api.data.StorageConnectionOptions;
+import io.lumeer.engine.api.data.WriteOperation;
+import io.lumeer.engine.api.data.WriteOperationResult;
+import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
+
+import org.bson.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A data storage keeping all the data in memory of the current JVM. It understands the same filters, sorts, updates
+ * and aggregation pipelines as MongoDB does, so it can replace {@code MongoDbStorage} in tests and benchmarks.
+ * Only the commonly used subset of the query language is supported, see {@link InMemoryMatcher}, {@link InMemoryUpdater}
+ * and {@link InMemoryAggregation}. The filters and sorts must be created by {@link InMemoryStorageDialect}.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class InMemoryStorage implements DataStorage {
+
+   private static final long serialVersionUID = 3530233874719432170L;
+
+   private static final String PAGE_TOKEN_VALUES = "v";
+   private static final String PAGE_TOKEN_COLLECTION = "c";
+   private static final String SEQUENCE_ATTRIBUTE = "seq";
+   private static final int ATTRIBUTE_VALUES_LIMIT = 100;
+
+   private transient InMemoryDatabase database;
+
+   @Override
+   public void setCacheProvider(final CacheProvider cacheProvider) {
+      // the collections are known without asking anybody, so there is nothing to cache
+   }
+
+   @Override
+   public void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl, final StorageConnectionOptions options) {
+      this.database = InMemoryDatabase.getDatabase(database);
+   }
+
+   @Override
+   public void disconnect() {
+      // the data are kept for other storages connected to the same database
+   }
+
+   /**
+    * Connects the storage to a database registered under the given key instead of its name. When the database is
+    * not loaded yet, the loader fills it through this storage and returns the journal that receives all the
+    * following changes of the database. The changes made by the loader are not reported to any journal.
+    *
+    * @param key
+    *       The key the database is registered under.
+    * @param database
+    *       The database name.
+    * @param loader
+    *       Loads a newly created database and returns its journal.
+    */
+   protected void connect(final String key, final String database, final Function<InMemoryStorage, InMemoryJournal> loader) {
+      this.database = InMemoryDatabase.getDatabase(key, database, newDatabase -> {
+         this.database = newDatabase;
+         newDatabase.setJournal(loader.apply(this));
+      });
+   }
+
+   /**
+    * Removes the database registered under the given key from memory. The next connection to the key loads the database again.
+    *
+    * @param key
+    *       The key the database is registered under.
+    */
+   protected static void unload(final String key) {
+      InMemoryDatabase.dropDatabase(key);
+   }
+
+   /**
+    * Gets the journal receiving the changes of the database this storage is connected to.
+    *
+    * @return The journal of the database.
+    */
+   protected InMemoryJournal getJournal() {
+      return database.getJournal();
+   }
+
+   /**
+    * Reports the whole content of the database to the given journal as if it was written from scratch. The content
+    * is consistent only when no writes run at the same time, which is up to the caller to ensure.
+    *
+    * @param journal
+    *       The journal to report to.
+    */
+   protected void replay(final InMemoryJournal journal) {
+      database.getCollections().forEach((collectionName, collection) -> {
+         journal.collectionCreated(collectionName);
+         collection.replay(journal);
+      });
+   }
+
+   /**
+    * Drops the whole database this storage is connected to.
+    */
+   public void dropDatabase() {
+      InMemoryDatabase.dropDatabase(database.getName());
+      database = InMemoryDatabase.getDatabase(database.getName());
+   }
+
+   private InMemoryCollection getCollection(final String collectionName) {
+      return database.getCollections().get(collectionName);
+   }
+
+   private InMemoryCollection getOrCreateCollection(final String collectionName) {
+      return database.getCollections().computeIfAbsent(collectionName, k -> new InMemoryCollection(database, k));
+   }
+
+   private static DataDocument getFilter(final DataFilter filter) {
+      return filter != null ? filter.get() : null;
+   }
+
+   @Override
+   public List<String> getAllCollections() {
+      return new ArrayList<>(database.getCollections().keySet());
+   }
+
+   @Override
+   public void createCollection(final String collectionName) {
+      database.getJournal().write(() -> {
+         if (database.getCollections().putIfAbsent(collectionName, new InMemoryCollection(database, collectionName)) != null) {
+            throw new IllegalStateException("Collection already exists: " + collectionName);
+         }
+         database.getJournal().collectionCreated(collectionName);
+
+         return null;
+      });
+   }
+
+   @Override
+   public void dropCollection(final String collectionName) {
+      database.getJournal().write(() -> {
+         if (database.getCollections().remove(collectionName) != null) {
+            database.getJournal().collectionDropped(collectionName);
+         }
+
+         return null;
+      });
+   }
+
+   @Override
+   public void renameCollection(final String oldCollectionName, final String newCollectionName) {
+      database.getJournal().write(() -> {
+         final InMemoryCollection collection = getCollection(oldCollectionName);
+
+         if (collection != null) {
+            collection.write(() -> {
+               if (database.getCollections().putIfAbsent(newCollectionName, collection) != null) {
+                  throw new IllegalStateException("Target collection already exists: " + newCollectionName);
+               }
+               database.getCollections().remove(oldCollectionName, collection);
+               collection.setName(newCollectionName);
+               database.getJournal().collectionRenamed(oldCollectionName, newCollectionName);
+
+               return null;
+            });
+         }
+
+         return null;
+      });
+   }
+
+   @Override
+   public boolean hasCollection(final String collectionName) {
+      return database.getCollections().containsKey(collectionName);
+   }
+
+   @Override
+   public long documentCount(final String collectionName) {
+      final InMemoryCollection collection = getCollection(collectionName);
+
+      return collection != null ? collection.size() : 0L;
+   }
+
+   @Override
+   public boolean collectionHasDocument(final String collectionName, final DataFilter filter) {
+      final InMemoryCollection collection = getCollection(collectionName);
+
+      return collection != null && !collection.find(getFilter(filter), 1).isEmpty();
+   }
+
+   @Override
+   public String createDocument(final String collectionName, final DataDocument document) {
+      return getOrCreateCollection(collectionName).insert(document).get(LumeerConst.Document.ID).toString();
+   }
+
+   @Override
+   public List<String> createDocuments(final String collectionName, final List<DataDocument> dataDocuments) {
+      final InMemoryCollection collection = getOrCreateCollection(collectionName);
+      final List<String> ids = new ArrayList<>();
+      RuntimeException failure = null;
+
+      // the inserts are not ordered, so all the documents are tried before reporting a failure
+      for (final DataDocument document : dataDocuments) {
+         try {
+            ids.add(collection.insert(document).get(LumeerConst.Document.ID).toString());
+         } catch (RuntimeException e) {
+            failure = failure == null ? e : failure;
+         }
+      }
+
+      if (failure != null) {
+         throw failure;
+      }
+
+      return ids;
+   }
+
+   @Override
+   public List<WriteOperationResult> bulkWrite(final String collectionName, final List<WriteOperation> operations, final boolean ordered) {
+      final List<WriteOperationResult> results = new ArrayList<>(operations.size());
+      boolean failed = false;
+
+      for (final WriteOperation operation : operations) {
+         if (failed && ordered) {
+            results.add(new WriteOperationResult(operation, WriteOperationResult.Status.NOT_EXECUTED, null, null));
+            continue;
+         }
+
+         try {
+            results.add(new WriteOperationResult(operation, WriteOperationResult.Status.SUCCEEDED, write(collectionName, operation), null));
+         } catch (RuntimeException e) {
+            results.add(new WriteOperationResult(operation, WriteOperationResult.Status.FAILED, null, e.getMessage()));
+            failed = true;
+         }
+      }
+
+      return results;
+   }
+
+   private String write(final String collectionName, final WriteOperation operation) {
+      final DataDocument filter = getFilter(operation.getFilter());
+
+      switch (operation.getType()) {
+         case CREATE:
+            return createDocument(collectionName, operation.getDocument());
+         case UPDATE:
+            return update(collectionName, filter, new DataDocument("$set", withoutId(operation.getDocument())), true, false);
+         case REPLACE:
+            return replace(collectionName, filter, operation.getDocument(), true);
+         case DROP:
+            delete(collectionName, filter, 1);
+            return null;
+         case DROP_MANY:
+            delete(collectionName, filter, 0);
+            return null;
+         case DROP_ATTRIBUTE:
+            return update(collectionName, filter, new DataDocument("$unset", new DataDocument(operation.getAttributeName(), "")), false, false);
+         case INCREMENT:
+            return update(collectionName, filter, new DataDocument("$inc", new DataDocument(operation.getAttributeName(), operation.getIncBy())), false, false);
+         case ADD_ITEMS_TO_ARRAY:
+            return update(collectionName, filter, new DataDocument("$addToSet", new DataDocument(operation.getAttributeName(), new DataDocument("$each", operation.getItems()))), false, false);
+         case REMOVE_ITEMS_FROM_ARRAY:
+            return update(collectionName, filter, new DataDocument("$pullAll", new DataDocument(operation.getAttributeName(), operation.getItems())), false, true);
+         default:
+            throw new IllegalArgumentException("Unsupported write operation: " + operation.getType());
+      }
+   }
+
+   private static DataDocument withoutId(final DataDocument document) {
+      final DataDocument result = new DataDocument(document);
+      result.remove(LumeerConst.Document.ID);
+
+      return result;
+   }
+
+   /**
+    * Applies the update operators to the documents matching the filter.
+    *
+    * @return The id of the upserted document or null when no document was upserted.
+    */
+   private String update(final String collectionName, final DataDocument filter, final DataDocument update, final boolean upsert, final boolean multi) {
+      final InMemoryCollection collection = upsert ? getOrCreateCollection(collectionName) : getCollection(collectionName);
+      if (collection == null) {
+         return null;
+      }
+
+      return collection.write(() -> {
+         final List<Long> found = collection.find(filter, multi ? 0 : 1);
+
+         for (final Long documentId : found) {
+            final DataDocument document = collection.get(documentId).deepCopy();
+            InMemoryUpdater.update(document, update);
+            collection.replace(documentId, document);
+         }
+
+         if (found.isEmpty() && upsert) {
+            final DataDocument document = InMemoryUpdater.createUpsertDocument(filter);
+            InMemoryUpdater.update(document, update);
+            InMemoryUpdater.setOnInsert(document, update);
+
+            return collection.insert(document).get(LumeerConst.Document.ID).toString();
+         }
+
+         return null;
+      });
+   }
+
+   /**
+    * Replaces the first document matching the filter, the replaced document keeps its id.
+    *
+    * @return The id of the upserted document or null when no document was upserted.
+    */
+   private String replace(final String collectionName, final DataDocument filter, final DataDocument replacement, final boolean upsert) {
+      final InMemoryCollection collection = upsert ? getOrCreateCollection(collectionName) : getCollection(collectionName);
+      if (collection == null) {
+         return null;
+      }
+
+      return collection.write(() -> {
+         final List<Long> found = collection.find(filter, 1);
+
+         if (!found.isEmpty()) {
+            final DataDocument document = new DataDocument(LumeerConst.Document.ID, collection.get(found.get(0)).get(LumeerConst.Document.ID));
+            document.putAll(InMemoryUtils.normalize(withoutId(replacement)));
+            collection.replace(found.get(0), document);
+         } else if (upsert) {
+            final Object id = InMemoryUpdater.createUpsertDocument(filter).get(LumeerConst.Document.ID);
+            final DataDocument document = id != null ? new DataDocument(LumeerConst.Document.ID, id) : new DataDocument();
+            document.putAll(withoutId(replacement));
+
+            return collection.insert(document).get(LumeerConst.Document.ID).toString();
+         }
+
+         return null;
+      });
+   }
+
+   private void delete(final String collectionName, final DataDocument filter, final int limit) {
+      final InMemoryCollection collection = getCollection(collectionName);
+
+      if (collection != null) {
+         collection.write(() -> {
+            collection.find(filter, limit).forEach(collection::remove);
+            return null;
+         });
+      }
+   }
+
+   @Override
+   public void createOldDocument(final String collectionName, final DataDocument document, final String documentId, final int version) throws UnsuccessfulOperationException {
+      final DataDocument oldDocument = new DataDocument(document);
+      oldDocument.put(LumeerConst.Document.ID, new DataDocument(LumeerConst.Document.ID, documentId).append(LumeerConst.Document.METADATA_VERSION_KEY, version));
+
+      try {
+         getOrCreateCollection(collectionName).insert(oldDocument);
+      } catch (DuplicateKeyException e) {
+         throw new UnsuccessfulOperationException(e.getMessage(), e.getCause());
+      }
+   }
+
+   @Override
+   public DataDocument readDocumentIncludeAttrs(final String collectionName, final DataFilter filter, final List<String> attributes) {
+      final List<DataDocument> documents = search(collectionName, filter, null, attributes, 0, 1);
+
+      return documents.isEmpty() ? null : documents.get(0);
+   }
+
+   @Override
+   public DataDocument readDocument(final String collectionName, final DataFilter filter) {
+      return readDocumentIncludeAttrs(collectionName, filter, null);
+   }
+
+   @Override
+   public void updateDocument(final String collectionName, final DataDocument updatedDocument, final DataFilter filter) {
+      update(collectionName, getFilter(filter), new DataDocument("$set", withoutId(updatedDocument)), true, false);
+   }
+
+   @Override
+   public void replaceDocument(final String collectionName, final DataDocument replaceDocument, final DataFilter filter) {
+      replace(collectionName, getFilter(filter), replaceDocument, true);
+   }
+
+   @Override
+   public void dropDocument(final String collectionName, final DataFilter filter) {
+      delete(collectionName, getFilter(filter), 1);
+   }
+
+   @Override
+   public void dropManyDocuments(final String collectionName, final DataFilter filter) {
+      delete(collectionName, getFilter(filter), 0);
+   }
+
+   @Override
+   public void renameAttribute(final String collectionName, final String oldName, final String newName) {
+      update(collectionName, null, new DataDocument("$rename", new DataDocument(oldName, newName)), false, true);
+   }
+
+   @Override
+   public void dropAttribute(final String collectionName, final DataFilter filter, final String attributeName) {
+      update(collectionName, getFilter(filter), new DataDocument("$unset", new DataDocument(attributeName, "")), false, false);
+   }
+
+   @Override
+   public <T> void addItemToArray(final String collectionName, final DataFilter filter, final String attributeName, final T item) {
+      update(collectionName, getFilter(filter), new DataDocument("$addToSet", new DataDocument(attributeName, item)), false, false);
+   }
+
+   @Override
+   public <T> void addItemsToArray(final String collectionName, final DataFilter filter, final String attributeName, final List<T> items) {
+      if (!items.isEmpty()) {
+         update(collectionName, getFilter(filter), new DataDocument("$addToSet", new DataDocument(attributeName, new DataDocument("$each", items))), false, false);
+      }
+   }
+
+   @Override
+   public <T> void removeItemFromArray(final String collectionName, final DataFilter filter, final String attributeName, final T item) {
+      update(collectionName, getFilter(filter), new DataDocument("$pull", new DataDocument(attributeName, item)), false, true);
+   }
+
+   @Override
+   public <T> void removeItemsFromArray(final String collectionName, final DataFilter filter, final String attributeName, final List<T> items) {
+      if (!items.isEmpty()) {
+         update(collectionName, getFilter(filter), new DataDocument("$pullAll", new DataDocument(attributeName, items)), false, true);
+      }
+   }
+
+   @Override
+   public Set<String> getAttributeValues(final String collectionName, final String attributeName) {
+      final InMemoryCollection collection = getCollection(collectionName);
+      if (collection == null) {
+         return new HashSet<>();
+      }
+
+      // the same values as MongoDB returns, the greatest distinct values of the attribute
+      final Set<Object> values = new TreeSet<>(Collections.reverseOrder(DataDocumentComparator::compareValues));
+      collection.findDocuments(new DataDocument(attributeName, new DataDocument("$exists", true)))
+                .forEach(document -> values.add(InMemoryUtils.getValue(document, attributeName)));
+
+      return values.stream().limit(ATTRIBUTE_VALUES_LIMIT).map(String::valueOf).collect(Collectors.toSet());
+   }
+
+   @Override
+   public List<DataDocument> run(final String command) {
+      return run(InMemoryUtils.parse(command));
+   }
+
+   /**
+    * Runs a command. The find and aggregate commands return their results, the findAndModify command returns an empty list
+    * the same way as {@code MongoDbStorage} does for the commands that do not return a cursor.
+    *
+    * @param command
+    *       The command to run.
+    * @return The documents returned by the command.
+    * @throws IllegalArgumentException
+    *       When the command is not supported.
+    */
+   @Override
+   @SuppressWarnings("unchecked")
+   public List<DataDocument> run(final DataDocument command) {
+      final String name = command.isEmpty() ? "" : command.keySet().iterator().next();
+      final String collectionName = String.valueOf(command.get(name));
+
+      switch (name) {
+         case "find":
+            return searchDocuments(collectionName, command.getDataDocument("filter"), command.getDataDocument("sort"), command.getDataDocument("projection"),
+                  command.getInteger("skip", 0), command.getInteger("limit", 0));
+         case "aggregate":
+            final List<DataDocument> pipeline = (List<DataDocument>) command.get("pipeline");
+            return aggregate(collectionName, pipeline.toArray(new DataDocument[pipeline.size()]));
+         case "findAndModify":
+            findAndModify(collectionName, command);
+            return new ArrayList<>();
+         default:
+            throw new IllegalArgumentException("Unsupported command: " + name);
+      }
+   }
+
+   private void findAndModify(final String collectionName, final DataDocument command) {
+      final DataDocument filter = command.getDataDocument("query");
+      final DataDocument sort = command.getDataDocument("sort");
+      final DataDocument update = command.getDataDocument("update");
+      final boolean upsert = command.getBoolean("upsert", false);
+
+      final InMemoryCollection collection = upsert ? getOrCreateCollection(collectionName) : getCollection(collectionName);
+      if (collection == null) {
+         return;
+      }
+
+      collection.write(() -> {
+         final List<Long> found = collection.find(filter, sort == null || sort.isEmpty() ? 1 : 0);
+         if (sort != null && !sort.isEmpty()) {
+            final DataDocumentComparator comparator = new DataDocumentComparator(sort);
+            found.sort((id1, id2) -> comparator.compare(collection.get(id1), collection.get(id2)));
+         }
+
+         if (found.isEmpty()) {
+            if (upsert && update != null) {
+               final DataDocument document = InMemoryUpdater.createUpsertDocument(filter);
+               if (InMemoryUtils.isOperatorDocument(update)) {
+                  InMemoryUpdater.update(document, update);
+                  InMemoryUpdater.setOnInsert(document, update);
+               } else {
+                  document.putAll(update);
+               }
+               collection.insert(document);
+            }
+         } else if (command.getBoolean("remove", false)) {
+            collection.remove(found.get(0));
+         } else if (update != null) {
+            final DataDocument original = collection.get(found.get(0));
+            final DataDocument document;
+            if (InMemoryUtils.isOperatorDocument(update)) {
+               document = original.deepCopy();
+               InMemoryUpdater.update(document, update);
+            } else {
+               document = new DataDocument(LumeerConst.Document.ID, original.get(LumeerConst.Document.ID));
+               document.putAll(InMemoryUtils.normalize(withoutId(update)));
+            }
+            collection.replace(found.get(0), document);
+         }
+
+         return null;
+      });
+   }
+
+   @Override
+   public List<DataDocument> search(final String collectionName, final DataFilter filter, final List<String> attributes) {
+      return search(collectionName, filter, null, attributes, 0, 0);
+   }
+
+   @Override
+   public List<DataDocument> search(final String collectionName, final DataFilter filter, final DataSort sort, final int skip, final int limit) {
+      return search(collectionName, filter, sort, null, skip, limit);
+   }
+
+   @Override
+   public List<DataDocument> search(final String collectionName, final DataFilter filter, final DataSort sort, final List<String> attributes, final int skip, final int limit) {
+      return searchDocuments(collectionName, getFilter(filter), sort != null ? sort.<DataDocument>get() : null, getProjection(attributes), skip, limit);
+   }
+
+   private List<DataDocument> searchDocuments(final String collectionName, final DataDocument filter, final DataDocument sort, final DataDocument projection, final int skip, final int limit) {
+      final InMemoryCollection collection = getCollection(collectionName);
+      if (collection == null) {
+         return new ArrayList<>();
+      }
+
+      final boolean sorting = sort != null && !sort.isEmpty();
+      final List<DataDocument> documents;
+      if (sorting) {
+         documents = collection.findDocuments(filter);
+         documents.sort(new DataDocumentComparator(sort));
+      } else { // the documents are already in their natural order, so only the documents on the page need to be matched
+         documents = collection.find(filter, limit > 0 ? Math.max(skip, 0) + limit : 0).stream().map(collection::get).collect(Collectors.toList());
+      }
+
+      return documents.stream()
+                      .skip(Math.max(skip, 0))
+                      .limit(limit > 0 ? limit : Long.MAX_VALUE)
+                      .map(document -> InMemoryAggregation.project(document, projection).deepCopy())
+                      .collect(Collectors.toList());
+   }
+
+   private static DataDocument getProjection(final List<String> attributes) {
+      if (attributes == null || attributes.isEmpty()) {
+         return null;
+      }
+
+      final DataDocument projection = new DataDocument();
+      attributes.forEach(attribute -> projection.put(attribute, 1));
+
+      return projection;
+   }
+
+   @Override
+   public Stream<DataDocument> searchStream(final String collectionName, final DataFilter filter, final DataSort sort, final List<String> attributes, final int batchSize) {
+      return search(collectionName, filter, sort, attributes, 0, 0).stream();
+   }
+
+   @Override
+   public DataPage searchPage(final String collectionName, final DataFilter filter, final DataSort sort, final String pageToken, final int limit) {
+      final LinkedHashMap<String, Integer> sortKeys = getSortKeys(sort != null ? sort.get() : null);
+      final DataDocumentComparator comparator = new DataDocumentComparator(new DataDocument(new LinkedHashMap<>(sortKeys)));
+      final InMemoryCollection collection = getCollection(collectionName);
+
+      List<DataDocument> documents = collection != null ? collection.findDocuments(getFilter(filter)) : new ArrayList<>();
+      documents.sort(comparator);
+
+      if (pageToken != null) {
+         final DataDocument position = getPosition(sortKeys, getPageTokenValues(decodePageToken(pageToken), sortKeys.size()));
+         documents = documents.stream().filter(document -> comparator.compare(document, position) > 0).collect(Collectors.toList());
+      }
+
+      final List<DataDocument> result = documents.stream().limit(limit > 0 ? limit : Long.MAX_VALUE).map(DataDocument::deepCopy).collect(Collectors.toList());
+      if (limit > 0 && documents.size() > limit) {
+         return new DataPage(result, encodePageToken(new DataDocument(PAGE_TOKEN_VALUES, getSortValues(result.get(limit - 1), sortKeys.keySet()))));
+      }
+
+      return new DataPage(result, null);
+   }
+
+   @Override
+   public long count(final String collectionName, final DataFilter filter) {
+      final InMemoryCollection collection = getCollection(collectionName);
+
+      return collection != null ? collection.find(getFilter(filter), 0).size() : 0L;
+   }
+
+   @Override
+   public List<DataDocument> query(final Query query) {
+      final List<DataDocument> result = new ArrayList<>();
+      final DataDocument[] stages = queryStages(query);
+
+      query.getCollections().forEach(collection -> result.addAll(aggregate(collection, stages)));
+
+      return result;
+   }
+
+   private static DataDocument[] queryStages(final Query query) {
+      final List<DataDocument> stages = new ArrayList<>();
+
+      if (query.getFilters().size() > 0) {
+         stages.add(new DataDocument("$match", query.getFilters()));
+      }
+      if (query.getGrouping().size() > 0) {
+         stages.add(new DataDocument("$group", query.getGrouping()));
+      }
+      if (query.getProjections().size() > 0) {
+         stages.add(new DataDocument("$project", query.getProjections()));
+      }
+      if (query.getSorting().size() > 0) {
+         stages.add(new DataDocument("$sort", query.getSorting()));
+      }
+      if (query.getSkip() != null && query.getSkip() > 0) {
+         stages.add(new DataDocument("$skip", query.getSkip()));
+      }
+      if (query.getLimit() != null && query.getLimit() > 0) {
+         stages.add(new DataDocument("$limit", query.getLimit()));
+      }
+      if (query.getOutput() != null && !query.getOutput().isEmpty()) {
+         stages.add(new DataDocument(InMemoryAggregation.OUT_STAGE, query.getOutput()));
+      }
+
+      return stages.toArray(new DataDocument[stages.size()]);
+   }
+
+   @Override
+   public DataPage unionQueryPage(final Query query, final String pageToken) {
+      final int limit = query.getLimit() != null ? Math.max(query.getLimit(), 0) : 0;
+      final DataDocument sorting = query.getSorting() != null ? query.getSorting() : new DataDocument();
+      final LinkedHashMap<String, Integer> sortKeys = getSortKeys(sorting);
+
+      // across the collections, the documents are ordered by the query sorting, then by the collection and then by the id
+      final LinkedHashMap<String, Integer> querySortKeys = new LinkedHashMap<>(sortKeys);
+      if (!sorting.containsKey(LumeerConst.Document.ID)) {
+         querySortKeys.remove(LumeerConst.Document.ID);
+      }
+      final DataDocumentComparator queryComparator = new DataDocumentComparator(new DataDocument(new LinkedHashMap<>(querySortKeys)));
+      final DataDocumentComparator idComparator = new DataDocumentComparator(new DataDocument(new LinkedHashMap<>(sortKeys)));
+      final List<String> collections = new ArrayList<>(query.getCollections());
+      final Comparator<PagedDocument> comparator = Comparator.<PagedDocument, DataDocument>comparing(d -> d.document, queryComparator)
+            .thenComparingInt(d -> d.collection)
+            .thenComparing(d -> d.document, idComparator);
+
+      final List<PagedDocument> documents = new ArrayList<>();
+      for (int i = 0; i < collections.size(); i++) {
+         final InMemoryCollection collection = getCollection(collections.get(i));
+         if (collection != null) {
+            final int index = i;
+            collection.findDocuments(query.getFilters()).forEach(document -> documents.add(new PagedDocument(document, index)));
+         }
+      }
+      documents.sort(comparator);
+
+      Stream<PagedDocument> page = documents.stream();
+      if (pageToken != null) {
+         final Document token = decodePageToken(pageToken);
+         final Object pageCollection = token.get(PAGE_TOKEN_COLLECTION);
+         final PagedDocument position = new PagedDocument(getPosition(sortKeys, getPageTokenValues(token, sortKeys.size())), pageCollection instanceof Number ? ((Number) pageCollection).intValue() : -1);
+         page = page.filter(document -> comparator.compare(document, position) > 0);
+      }
+
+      final List<PagedDocument> selected = page.limit(limit > 0 ? limit + 1 : Long.MAX_VALUE).collect(Collectors.toList());
+      final DataDocument projection = getPageProjection(query.getProjections(), sortKeys.keySet());
+      final List<DataDocument> result = selected.stream().limit(limit > 0 ? limit : Long.MAX_VALUE).map(document -> {
+         final DataDocument projected = InMemoryAggregation.project(document.document, projection).deepCopy();
+         projected.put(LumeerConst.Document.COLLECTION_NAME, collections.get(document.collection));
+         return projected;
+      }).collect(Collectors.toList());
+
+      if (limit > 0 && selected.size() > limit) {
+         final PagedDocument last = selected.get(limit - 1);
+         return new DataPage(result, encodePageToken(new DataDocument(PAGE_TOKEN_VALUES, getSortValues(last.document, sortKeys.keySet())).append(PAGE_TOKEN_COLLECTION, last.collection)));
+      }
+
+      return new DataPage(result, null);
+   }
+
+   private static DataDocument getPageProjection(final DataDocument projections, final Set<String> sortAttributes) {
+      if (projections == null || projections.isEmpty()) {
+         return null;
+      }
+
+      // the sort attributes are needed to create the next page token
+      final DataDocument projection = new DataDocument(projections);
+      if (projections.values().stream().anyMatch(InMemoryUtils::isTrue)) {
+         sortAttributes.forEach(attribute -> projection.putIfAbsent(attribute, 1));
+      }
+
+      return projection;
+   }
+
+   private static LinkedHashMap<String, Integer> getSortKeys(final Map<String, ?> sort) {
+      final LinkedHashMap<String, Integer> sortKeys = new LinkedHashMap<>();
+
+      if (sort != null) {
+         sort.forEach((attribute, direction) -> sortKeys.put(attribute, direction instanceof Number && ((Number) direction).intValue() < 0 ? -1 : 1));
+      }
+      sortKeys.putIfAbsent(LumeerConst.Document.ID, 1);
+
+      return sortKeys;
+   }
+
+   private static List<Object> getSortValues(final DataDocument document, final Set<String> attributes) {
+      return attributes.stream().map(attribute -> InMemoryUtils.hasValue(document, attribute) ? InMemoryUtils.getValue(document, attribute) : null).collect(Collectors.toList());
+   }
+
+   private static DataDocument getPosition(final LinkedHashMap<String, Integer> sortKeys, final List<Object> values) {
+      final DataDocument position = new DataDocument();
+      int i = 0;
+      for (final String attribute : sortKeys.keySet()) {
+         InMemoryUtils.setValue(position, attribute, values.get(i++));
+      }
+
+      return position;
+   }
+
+   private static List<Object> getPageTokenValues(final Document token, final int size) {
+      final Object values = token.get(PAGE_TOKEN_VALUES);
+
+      if (!(values instanceof List) || ((List<?>) values).size() != size) {
+         throw new IllegalArgumentException("The page token does not match the sort specification.");
+      }
+
+      return ((List<?>) values).stream().map(InMemoryUtils::normalizeValue).collect(Collectors.toList());
+   }
+
+   private static String encodePageToken(final DataDocument token) {
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(new Document(token).toJson().getBytes(StandardCharsets.UTF_8));
+   }
+
+   private static Document decodePageToken(final String pageToken) {
+      try {
+         return Document.parse(new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8));
+      } catch (RuntimeException e) {
+         throw new IllegalArgumentException("Invalid page token.", e);
+      }
+   }
+
+   @Override
+   public List<DataDocument> aggregate(final String collectionName, final DataDocument... stages) {
+      if (stages == null || stages.length == 0) {
+         return Collections.emptyList();
+      }
+
+      final List<DataDocument> pipeline = new ArrayList<>();
+      for (final DataDocument stage : stages) {
+         pipeline.add(InMemoryUtils.normalize(stage));
+      }
+
+      String output = null;
+      if (pipeline.get(pipeline.size() - 1).containsKey(InMemoryAggregation.OUT_STAGE)) {
+         output = pipeline.remove(pipeline.size() - 1).getString(InMemoryAggregation.OUT_STAGE);
+      }
+
+      // the first match is evaluated by the collection so that its indexes are used
+      final InMemoryCollection collection = getCollection(collectionName);
+      List<DataDocument> documents = new ArrayList<>();
+      if (collection != null) {
+         final boolean match = !pipeline.isEmpty() && pipeline.get(0).containsKey("$match");
+         documents = collection.findDocuments(match ? pipeline.remove(0).getDataDocument("$match") : null);
+      }
+
+      final List<DataDocument> result = InMemoryAggregation.aggregate(documents, pipeline).stream().map(DataDocument::deepCopy).collect(Collectors.toList());
+
+      if (output != null) {
+         final String outputName = output;
+         database.getJournal().write(() -> {
+            final InMemoryCollection outputCollection = new InMemoryCollection(database, outputName);
+            final InMemoryCollection previous = getCollection(outputName);
+            if (previous != null) {
+               database.getJournal().collectionDropped(outputName);
+               previous.listIndexes(outputName).stream().skip(1).forEach(index -> outputCollection.createIndex(index.getDataDocument("key"), index.getBoolean("unique", false)));
+            }
+            result.forEach(outputCollection::insert);
+            database.getCollections().put(outputName, outputCollection);
+
+            return null;
+         });
+      }
+
+      return result;
+   }
+
+   @Override
+   public Stream<DataDocument> aggregateStream(final String collectionName, final int batchSize, final DataDocument... stages) {
+      return aggregate(collectionName, stages).stream();
+   }
+
+   @Override
+   public void incrementAttributeValueBy(final String collectionName, final DataFilter filter, final String attributeName, final int incBy) {
+      update(collectionName, getFilter(filter), new DataDocument("$inc", new DataDocument(attributeName, incBy)), false, false);
+   }
+
+   @Override
+   public int getNextSequenceNo(final String collectionName, final String indexAttribute, final String index) {
+      return allocateSequenceBlock(collectionName, indexAttribute, index, 1);
+   }
+
+   @Override
+   public void resetSequence(final String collectionName, final String indexAttribute, final String index) {
+      update(collectionName, new DataDocument(indexAttribute, index), new DataDocument("$set", new DataDocument(SEQUENCE_ATTRIBUTE, 0)), true, false);
+   }
+
+   @Override
+   public int allocateSequenceBlock(final String collectionName, final String indexAttribute, final String index, final int blockSize) {
+      final InMemoryCollection collection = getOrCreateCollection(collectionName);
+
+      return collection.write(() -> {
+         final List<Long> found = collection.find(new DataDocument(indexAttribute, index), 1);
+
+         if (found.isEmpty()) {
+            collection.insert(new DataDocument(indexAttribute, index).append(SEQUENCE_ATTRIBUTE, blockSize - 1));
+            return 0;
+         }
+
+         final DataDocument document = collection.get(found.get(0)).deepCopy();
+         InMemoryUpdater.update(document, new DataDocument("$inc", new DataDocument(SEQUENCE_ATTRIBUTE, blockSize)));
+         collection.replace(found.get(0), document);
+
+         return document.getInteger(SEQUENCE_ATTRIBUTE) - blockSize + 1;
+      });
+   }
+
+   @Override
+   public void createIndex(final String collectionName, final DataDocument indexAttributes, final boolean unique) {
+      getOrCreateCollection(collectionName).createIndex(InMemoryUtils.normalize(indexAttributes), unique);
+   }
+
+   @Override
+   public List<DataDocument> listIndexes(final String collectionName) {
+      final InMemoryCollection collection = getCollection(collectionName);
+
+      return collection != null ? collection.listIndexes(database.getName() + "." + collectionName) : new ArrayList<>();
+   }
+
+   @Override
+   public void dropIndex(final String collectionName, final String indexName) {
+      final InMemoryCollection collection = getCollection(collectionName);
+      if (collection == null) {
+         throw new IllegalArgumentException("ns not found: " + collectionName);
+      }
+
+      collection.dropIndex(indexName);
+   }
+
+   @Override
+   public void invalidateCaches() {
+      // there are no caches
+   }
+
+   @Override
+   public DataStorageStats getDbStats() {
+      final DataStorageStats dss = new DataStorageStats();
+
+      dss.setDatabaseName(database.getName());
+      dss.setCollections(database.getCollections().size());
+      database.getCollections().values().forEach(collection -> {
+         dss.setDocuments(dss.getDocuments() + collection.size());
+         dss.setDataSize(dss.getDataSize() + collection.getDataSize());
+         dss.setIndexes(dss.getIndexes() + collection.getIndexCount());
+         dss.setIndexSize(dss.getIndexSize() + collection.getIndexSize());
+      });
+      dss.setStorageSize(dss.getDataSize());
+
+      return dss;
+   }
+
+   @Override
+   public DataStorageStats getCollectionStats(final String collectionName) {
+      final DataStorageStats dss = new DataStorageStats();
+      final InMemoryCollection collection = getCollection(collectionName);
+
+      dss.setDatabaseName(database.getName());
+      dss.setCollectionName(collectionName);
+      if (collection != null) {
+         dss.setDocuments(collection.size());
+         dss.setDataSize(collection.getDataSize());
+         dss.setStorageSize(collection.getDataSize());
+         dss.setIndexes(collection.getIndexCount());
+         dss.setIndexSize(collection.getIndexSize());
+      }
+
+      return dss;
+   }
+
+   /**
+    * A document of a union query together with the position of its collection in the query.
+    */
+   private static class PagedDocument {
+
+      private final DataDocument document;
+      private final int collection;
+
+      private PagedDocument(final DataDocument document, final int collection) {
+         this.document = document;
+         this.collection = collection;
+      }
+   }
+}
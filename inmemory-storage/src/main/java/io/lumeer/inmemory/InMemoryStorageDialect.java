@@ -0,0 +1,182 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataFilter;
+import io.lumeer.engine.api.data.DataSort;
+import io.lumeer.engine.api.data.DataStorageDialect;
+
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Alternative;
+
+/**
+ * Creates the filters and sorts understood by {@link InMemoryStorage}. They are plain MongoDB query documents.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@Alternative
+@ApplicationScoped
+public class InMemoryStorageDialect implements DataStorageDialect {
+
+   private static final long serialVersionUID = 8409127623584330547L;
+
+   @Override
+   public DataDocument renameAttributeQuery(final String metadataCollection, final String collection, final String oldName, final String newName) {
+      return new DataDocument()
+            .append("findAndModify", metadataCollection)
+            .append("query", new DataDocument(LumeerConst.Collection.INTERNAL_NAME_KEY, collection))
+            .append("update", new DataDocument()
+                  .append("$rename", new DataDocument(
+                        concatFields(LumeerConst.Collection.ATTRIBUTES_KEY, oldName),
+                        concatFields(LumeerConst.Collection.ATTRIBUTES_KEY, newName))));
+   }
+
+   @Override
+   public DataDocument addRecentlyUsedDocumentQuery(final String metadataCollection, final String collection, final String id, final int listSize) {
+      return new DataDocument()
+            .append("findAndModify", metadataCollection)
+            .append("query", new DataDocument(LumeerConst.Collection.INTERNAL_NAME_KEY, collection))
+            .append("update", new DataDocument()
+                  .append("$push", new DataDocument()
+                        .append(LumeerConst.Collection.RECENTLY_USED_DOCUMENTS_KEY, new DataDocument()
+                              .append("$each", Collections.singletonList(id))
+                              .append("$position", 0)
+                              .append("$slice", listSize))));
+   }
+
+   @Override
+   public DataDocument[] usersOfGroupAggregate(final String organization, final String group) {
+      return new DataDocument[] { new DataDocument("$match", new DataDocument(LumeerConst.UserGroup.ATTR_ORG_ID, organization)),
+            new DataDocument("$unwind", "$" + LumeerConst.UserGroup.ATTR_USERS),
+            new DataDocument("$match", new DataDocument(concatFields(LumeerConst.UserGroup.ATTR_USERS, LumeerConst.UserGroup.ATTR_USERS_GROUPS), group)),
+            new DataDocument("$project", new DataDocument(LumeerConst.UserGroup.ATTR_USERS_USER, concatFields("$" + LumeerConst.UserGroup.ATTR_USERS, LumeerConst.UserGroup.ATTR_USERS_USER))) };
+   }
+
+   @Override
+   public DataDocument[] attributeValueCountsAggregate(final String attributeName, final int limit) {
+      return new DataDocument[] { new DataDocument("$match", new DataDocument(attributeName, new DataDocument("$exists", true))),
+            new DataDocument("$group", new DataDocument(LumeerConst.Document.ID, "$" + attributeName).append("count", new DataDocument("$sum", 1))),
+            new DataDocument("$sort", new DataDocument("count", -1)),
+            new DataDocument("$limit", limit),
+            new DataDocument("$project", new DataDocument("value", "$" + LumeerConst.Document.ID).append("count", 1).append(LumeerConst.Document.ID, 0)) };
+   }
+
+   private DataFilter createFilter(final DataDocument filter) {
+      return new InMemoryDataFilter(filter);
+   }
+
+   @Override
+   public DataFilter fieldValueFilter(final String fieldName, final Object value) {
+      return createFilter(new DataDocument(fieldName, InMemoryUtils.normalizeValue(value)));
+   }
+
+   @Override
+   public DataFilter fieldValueWildcardFilter(final String fieldName, final Object valuePart) {
+      return createFilter(new DataDocument(fieldName, InMemoryUtils.createPattern(".*" + valuePart + ".*", "i")));
+   }
+
+   @Override
+   public DataFilter fieldValueWildcardFilterOneSided(final String fieldName, final Object valuePart) {
+      return createFilter(new DataDocument(fieldName, InMemoryUtils.createPattern(valuePart + ".*", "i")));
+   }
+
+   @Override
+   public DataFilter documentFilter(final String documentFilter) {
+      return createFilter(InMemoryUtils.parse(documentFilter));
+   }
+
+   @Override
+   public DataFilter documentNestedIdFilter(final String documentId) {
+      return fieldValueFilter(concatFields(LumeerConst.Document.ID, LumeerConst.Document.ID), checkId(documentId));
+   }
+
+   @Override
+   public DataFilter documentNestedIdFilterWithVersion(final String documentId, final int version) {
+      return createFilter(new DataDocument(LumeerConst.Document.ID, new DataDocument(LumeerConst.Document.ID, checkId(documentId)).append(LumeerConst.Document.METADATA_VERSION_KEY, version)));
+   }
+
+   @Override
+   public DataFilter documentIdFilter(final String documentId) {
+      return fieldValueFilter(LumeerConst.Document.ID, checkId(documentId));
+   }
+
+   // the ids are kept as strings, but they must be valid object ids the same way as with MongoDB
+   private static String checkId(final String documentId) {
+      if (!ObjectId.isValid(documentId)) {
+         throw new IllegalArgumentException("invalid hexadecimal representation of an ObjectId: [" + documentId + "]");
+      }
+
+      return documentId;
+   }
+
+   @Override
+   public DataFilter multipleFieldsValueFilter(final Map<String, Object> fields) {
+      final List<DataDocument> filters = new ArrayList<>();
+      fields.forEach((key, value) -> filters.add(new DataDocument(key, InMemoryUtils.normalizeValue(value))));
+
+      return createFilter(new DataDocument("$and", filters));
+   }
+
+   @Override
+   public DataFilter combineFilters(final DataFilter... filters) {
+      final List<DataDocument> inMemoryFilters = Arrays.stream(filters)
+                                                        .map(DataFilter::<DataDocument>get)
+                                                        .collect(Collectors.toList());
+
+      return createFilter(new DataDocument("$and", inMemoryFilters));
+   }
+
+   private DataSort createSort(final DataDocument sort) {
+      return new InMemoryDataSort(sort);
+   }
+
+   @Override
+   public DataSort documentSort(final String documentSort) {
+      return createSort(InMemoryUtils.parse(documentSort));
+   }
+
+   @Override
+   public DataSort documentFieldSort(final String fieldName, final int sortOrder) {
+      if (sortOrder == LumeerConst.SORT_ASCENDING_ORDER) {
+         return createSort(new DataDocument(fieldName, LumeerConst.SORT_ASCENDING_ORDER));
+      }
+
+      if (sortOrder == LumeerConst.SORT_DESCENDING_ORDER) {
+         return createSort(new DataDocument(fieldName, LumeerConst.SORT_DESCENDING_ORDER));
+      }
+
+      return null;
+   }
+
+   @Override
+   public String concatFields(final String... fields) {
+      return String.join(".", fields);
+   }
+}
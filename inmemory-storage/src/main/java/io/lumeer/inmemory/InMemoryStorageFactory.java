@@ -0,0 +1,59 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+import io.lumeer.engine.api.cache.CacheProvider;
+import io.lumeer.engine.api.data.AsyncDataStorage;
+import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.DataStorageFactory;
+import io.lumeer.engine.api.data.StorageConnection;
+import io.lumeer.engine.api.data.StorageConnectionOptions;
+
+import java.util.List;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Alternative;
+
+/**
+ * Creates in-memory data storages. To use them instead of the default ones, the factory and {@link InMemoryStorageDialect}
+ * need to be enabled as alternatives in beans.xml. The connections are ignored, the storages share data by the database name.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@Alternative
+@ApplicationScoped
+public class InMemoryStorageFactory implements DataStorageFactory {
+
+   @Override
+   public DataStorage getStorage(final CacheProvider cacheProvider, final List<StorageConnection> connections, final String database, final Boolean useSsl, final StorageConnectionOptions options) {
+      final DataStorage storage = new InMemoryStorage();
+      storage.setCacheProvider(cacheProvider);
+      storage.connect(connections, database, useSsl, options);
+
+      return storage;
+   }
+
+   @Override
+   public AsyncDataStorage getAsyncStorage(final List<StorageConnection> connections, final String database, final Boolean useSsl, final StorageConnectionOptions options) {
+      final AsyncDataStorage storage = new InMemoryAsyncStorage();
+      storage.connect(connections, database, useSsl, options);
+
+      return storage;
+   }
+}
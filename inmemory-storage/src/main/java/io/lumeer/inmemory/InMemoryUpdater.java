@@ -0,0 +1,274 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataDocumentComparator;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Applies MongoDB update documents to the documents kept in memory. Supports the field operators ($set, $unset, $inc,
+ * $min, $max, $rename, $currentDate) and the array operators ($push with $each, $position and $slice, $addToSet, $pull
+ * and $pullAll).
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+final class InMemoryUpdater {
+
+   private InMemoryUpdater() {
+      // utility class
+   }
+
+   /**
+    * Applies the update operators to the document.
+    *
+    * @param document
+    *       The document to update, it is modified in place.
+    * @param update
+    *       The update document with operators.
+    * @throws IllegalArgumentException
+    *       When the update contains an unsupported operator or when it cannot be applied to the document.
+    */
+   @SuppressWarnings("unchecked")
+   static void update(final DataDocument document, final Map<String, ?> update) {
+      update.forEach((operator, fields) -> {
+         if (!(fields instanceof Map)) {
+            throw new IllegalArgumentException("Modifiers operate on fields but we found another type instead: " + operator);
+         }
+
+         ((Map<String, Object>) fields).forEach((path, argument) -> {
+            if (LumeerConst.Document.ID.equals(path) && !"$setOnInsert".equals(operator)) {
+               throw new IllegalArgumentException("Performing an update on the path '_id' would modify the immutable field '_id'.");
+            }
+
+            apply(document, operator, path, InMemoryUtils.normalizeValue(argument));
+         });
+      });
+   }
+
+   private static void apply(final DataDocument document, final String operator, final String path, final Object argument) {
+      switch (operator) {
+         case "$set":
+            InMemoryUtils.setValue(document, path, argument);
+            break;
+         case "$setOnInsert":
+            break;
+         case "$unset":
+            InMemoryUtils.removeValue(document, path);
+            break;
+         case "$inc":
+            InMemoryUtils.setValue(document, path, add(getNumber(document, path, operator), getNumber(argument, operator)));
+            break;
+         case "$min":
+         case "$max":
+            final Object current = InMemoryUtils.hasValue(document, path) ? InMemoryUtils.getValue(document, path) : null;
+            final int comparison = DataDocumentComparator.compareValues(argument, current);
+            if (!InMemoryUtils.hasValue(document, path) || ("$min".equals(operator) ? comparison < 0 : comparison > 0)) {
+               InMemoryUtils.setValue(document, path, argument);
+            }
+            break;
+         case "$rename":
+            if (InMemoryUtils.hasValue(document, path)) {
+               final Object value = InMemoryUtils.removeValue(document, path);
+               InMemoryUtils.setValue(document, argument.toString(), value);
+            }
+            break;
+         case "$currentDate":
+            InMemoryUtils.setValue(document, path, new Date());
+            break;
+         case "$push":
+            push(document, path, argument);
+            break;
+         case "$addToSet":
+            final List<Object> set = getArray(document, path, operator);
+            getEach(argument).stream().filter(item -> set.stream().noneMatch(e -> InMemoryUtils.valuesEqual(e, item))).forEach(set::add);
+            InMemoryUtils.setValue(document, path, set);
+            break;
+         case "$pull":
+            if (InMemoryUtils.hasValue(document, path)) {
+               final List<Object> array = getArray(document, path, operator);
+               array.removeIf(item -> matchesPull(item, argument));
+               InMemoryUtils.setValue(document, path, array);
+            }
+            break;
+         case "$pullAll":
+            if (!(argument instanceof List)) {
+               throw new IllegalArgumentException("$pullAll requires an array argument.");
+            }
+            if (InMemoryUtils.hasValue(document, path)) {
+               final List<Object> array = getArray(document, path, operator);
+               array.removeIf(item -> ((List<?>) argument).stream().anyMatch(a -> InMemoryUtils.valuesEqual(item, a)));
+               InMemoryUtils.setValue(document, path, array);
+            }
+            break;
+         default:
+            throw new IllegalArgumentException("Unsupported update operator: " + operator);
+      }
+   }
+
+   private static void push(final DataDocument document, final String path, final Object argument) {
+      final List<Object> array = getArray(document, path, "$push");
+      final List<Object> items = getEach(argument);
+      final Map<?, ?> modifiers = argument instanceof Map && ((Map<?, ?>) argument).containsKey("$each") ? (Map<?, ?>) argument : Collections.emptyMap();
+
+      int position = array.size();
+      if (modifiers.get("$position") instanceof Number) {
+         position = ((Number) modifiers.get("$position")).intValue();
+         position = position < 0 ? Math.max(0, array.size() + position) : Math.min(position, array.size());
+      }
+      array.addAll(position, items);
+
+      if (modifiers.get("$sort") != null) {
+         final Object sort = modifiers.get("$sort");
+         array.sort(sort instanceof Map ? (a, b) -> new DataDocumentComparator(InMemoryUtils.normalize((Map<String, ?>) sort)).compare(toDocument(a), toDocument(b))
+               : (a, b) -> DataDocumentComparator.compareValues(a, b) * (sort instanceof Number && ((Number) sort).intValue() < 0 ? -1 : 1));
+      }
+
+      if (modifiers.get("$slice") instanceof Number) {
+         final int slice = ((Number) modifiers.get("$slice")).intValue();
+         final List<Object> sliced = slice >= 0 ? array.subList(0, Math.min(slice, array.size())) : array.subList(Math.max(0, array.size() + slice), array.size());
+         InMemoryUtils.setValue(document, path, new ArrayList<>(sliced));
+      } else {
+         InMemoryUtils.setValue(document, path, array);
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   private static DataDocument toDocument(final Object value) {
+      return value instanceof DataDocument ? (DataDocument) value : new DataDocument();
+   }
+
+   private static List<Object> getEach(final Object argument) {
+      if (argument instanceof Map && ((Map<?, ?>) argument).containsKey("$each")) {
+         final Object each = ((Map<?, ?>) argument).get("$each");
+         if (!(each instanceof List)) {
+            throw new IllegalArgumentException("The argument to $each must be an array.");
+         }
+
+         return new ArrayList<>((List<?>) each);
+      }
+
+      return new ArrayList<>(Collections.singletonList(argument));
+   }
+
+   @SuppressWarnings("unchecked")
+   private static boolean matchesPull(final Object item, final Object condition) {
+      if (condition instanceof Pattern || InMemoryUtils.isOperatorDocument(condition)) {
+         return InMemoryMatcher.matchesValues(Collections.singletonList(item), condition);
+      }
+
+      if (condition instanceof Map && item instanceof Map) {
+         return InMemoryMatcher.matches((Map<String, ?>) item, (Map<String, ?>) condition);
+      }
+
+      return InMemoryUtils.valuesEqual(item, condition);
+   }
+
+   private static List<Object> getArray(final DataDocument document, final String path, final String operator) {
+      if (!InMemoryUtils.hasValue(document, path)) {
+         return new ArrayList<>();
+      }
+
+      final Object value = InMemoryUtils.getValue(document, path);
+      if (!(value instanceof List)) {
+         throw new IllegalArgumentException("The field '" + path + "' must be an array to apply " + operator + ".");
+      }
+
+      return new ArrayList<>((List<?>) value);
+   }
+
+   private static Number getNumber(final DataDocument document, final String path, final String operator) {
+      return InMemoryUtils.hasValue(document, path) ? getNumber(InMemoryUtils.getValue(document, path), operator) : 0;
+   }
+
+   private static Number getNumber(final Object value, final String operator) {
+      if (!(value instanceof Number)) {
+         throw new IllegalArgumentException("Cannot apply " + operator + " to a value of non-numeric type.");
+      }
+
+      return (Number) value;
+   }
+
+   private static Number add(final Number number1, final Number number2) {
+      if (number1 instanceof BigDecimal || number2 instanceof BigDecimal) {
+         return new BigDecimal(number1.toString()).add(new BigDecimal(number2.toString()));
+      } else if (number1 instanceof Double || number1 instanceof Float || number2 instanceof Double || number2 instanceof Float) {
+         return number1.doubleValue() + number2.doubleValue();
+      } else if (number1 instanceof Long || number2 instanceof Long) {
+         return number1.longValue() + number2.longValue();
+      }
+
+      final long sum = number1.longValue() + number2.longValue();
+
+      return sum == (int) sum ? (Number) (int) sum : (Number) sum;
+   }
+
+   /**
+    * Creates the base of a document inserted by an upsert. It contains the values of all the fields compared for equality in the filter.
+    *
+    * @param filter
+    *       The filter of the upsert.
+    * @return The new document.
+    */
+   @SuppressWarnings("unchecked")
+   static DataDocument createUpsertDocument(final Map<String, ?> filter) {
+      final DataDocument document = new DataDocument();
+
+      if (filter != null) {
+         filter.forEach((key, value) -> {
+            if ("$and".equals(key) && value instanceof List) {
+               ((List<Map<String, ?>>) value).forEach(condition -> createUpsertDocument(condition).forEach((k, v) -> InMemoryUtils.setValue(document, k, v)));
+            } else if (!key.startsWith("$") && !(value instanceof Pattern)) {
+               if (!InMemoryUtils.isOperatorDocument(value)) {
+                  InMemoryUtils.setValue(document, key, InMemoryUtils.normalizeValue(value));
+               } else if (((Map<?, ?>) value).containsKey("$eq")) {
+                  InMemoryUtils.setValue(document, key, InMemoryUtils.normalizeValue(((Map<?, ?>) value).get("$eq")));
+               }
+            }
+         });
+      }
+
+      return document;
+   }
+
+   /**
+    * Applies the $setOnInsert operator of an update used for an upsert.
+    *
+    * @param document
+    *       The inserted document.
+    * @param update
+    *       The update document.
+    */
+   @SuppressWarnings("unchecked")
+   static void setOnInsert(final DataDocument document, final Map<String, ?> update) {
+      final Object fields = update.get("$setOnInsert");
+      if (fields instanceof Map) {
+         ((Map<String, Object>) fields).forEach((path, value) -> InMemoryUtils.setValue(document, path, InMemoryUtils.normalizeValue(value)));
+      }
+   }
+}
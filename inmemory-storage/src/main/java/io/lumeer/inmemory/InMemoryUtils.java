@@ -0,0 +1,435 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataDocumentComparator;
+
+import org.bson.BsonRegularExpression;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Helper methods for working with the documents kept in memory. The documents use the same representation as the documents
+ * read from MongoDB, nested maps are {@link DataDocument DataDocuments}, arrays are lists and all {@link ObjectId ObjectIds}
+ * are kept as their hexadecimal strings.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+final class InMemoryUtils {
+
+   private static final String PATH_SEPARATOR = "\\.";
+
+   private InMemoryUtils() {
+      // utility class
+   }
+
+   /**
+    * Parses a document in the MongoDB extended JSON format.
+    *
+    * @param json
+    *       The JSON to parse.
+    * @return The parsed document.
+    */
+   static DataDocument parse(final String json) {
+      return normalize(Document.parse(json));
+   }
+
+   /**
+    * Creates a copy of the given document in the representation used for the stored documents.
+    *
+    * @param document
+    *       The document to copy.
+    * @return The normalized copy of the document.
+    */
+   static DataDocument normalize(final Map<String, ?> document) {
+      final DataDocument result = new DataDocument();
+      document.forEach((key, value) -> result.put(key, normalizeValue(value)));
+
+      return result;
+   }
+
+   @SuppressWarnings("unchecked")
+   static Object normalizeValue(final Object value) {
+      if (value instanceof Map) {
+         return normalize((Map<String, ?>) value);
+      } else if (value instanceof Collection) {
+         final List<Object> list = new ArrayList<>();
+         ((Collection<?>) value).forEach(item -> list.add(normalizeValue(item)));
+
+         return list;
+      } else if (value instanceof Object[]) {
+         final List<Object> list = new ArrayList<>();
+         for (final Object item : (Object[]) value) {
+            list.add(normalizeValue(item));
+         }
+
+         return list;
+      } else if (value instanceof ObjectId) {
+         return ((ObjectId) value).toHexString();
+      } else if (value instanceof BsonRegularExpression) {
+         return createPattern(((BsonRegularExpression) value).getPattern(), ((BsonRegularExpression) value).getOptions());
+      } else if (value instanceof Date) {
+         return new Date(((Date) value).getTime());
+      }
+
+      return value;
+   }
+
+   /**
+    * Compiles a regular expression with MongoDB options. Unknown options are ignored.
+    *
+    * @param regex
+    *       The regular expression.
+    * @param options
+    *       The MongoDB regular expression options, null for no options.
+    * @return The compiled pattern.
+    */
+   static Pattern createPattern(final String regex, final String options) {
+      int flags = 0;
+
+      if (options != null) {
+         for (final char option : options.toCharArray()) {
+            switch (option) {
+               case 'i':
+                  flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+                  break;
+               case 'm':
+                  flags |= Pattern.MULTILINE;
+                  break;
+               case 's':
+                  flags |= Pattern.DOTALL;
+                  break;
+               case 'x':
+                  flags |= Pattern.COMMENTS;
+                  break;
+               default:
+                  break;
+            }
+         }
+      }
+
+      return Pattern.compile(regex, flags);
+   }
+
+   /**
+    * Gets all the values reachable by a dotted path. Arrays on the path are traversed the same way as MongoDB does it,
+    * numeric path elements index the arrays and other path elements are resolved in all the documents in the arrays.
+    *
+    * @param document
+    *       The document to search in.
+    * @param path
+    *       The dotted path.
+    * @return The values found, an empty list when the path does not exist.
+    */
+   static List<Object> getValues(final Map<String, ?> document, final String path) {
+      final List<Object> values = new ArrayList<>();
+      collectValues(document, path.split(PATH_SEPARATOR), 0, values);
+
+      return values;
+   }
+
+   private static void collectValues(final Object current, final String[] path, final int position, final List<Object> values) {
+      if (position == path.length) {
+         values.add(current);
+      } else if (current instanceof Map) {
+         final Map<?, ?> map = (Map<?, ?>) current;
+         if (map.containsKey(path[position])) {
+            collectValues(map.get(path[position]), path, position + 1, values);
+         }
+      } else if (current instanceof List) {
+         final List<?> list = (List<?>) current;
+         final int index = getIndex(path[position]);
+
+         if (index >= 0 && index < list.size()) {
+            collectValues(list.get(index), path, position + 1, values);
+         }
+         list.stream().filter(item -> item instanceof Map).forEach(item -> collectValues(item, path, position, values));
+      }
+   }
+
+   /**
+    * Gets the value of a dotted path as used in aggregation expressions. When there is an array on the path, the values
+    * found in all its documents are returned as a list.
+    *
+    * @param document
+    *       The document to search in.
+    * @param path
+    *       The dotted path.
+    * @return The value found, null when the path does not exist.
+    */
+   static Object getValue(final Map<String, ?> document, final String path) {
+      Object value = document;
+
+      for (final String key : path.split(PATH_SEPARATOR)) {
+         if (value instanceof Map) {
+            value = ((Map<?, ?>) value).get(key);
+         } else if (value instanceof List) {
+            final List<Object> items = new ArrayList<>();
+            ((List<?>) value).stream().filter(item -> item instanceof Map && ((Map<?, ?>) item).containsKey(key))
+                             .forEach(item -> items.add(((Map<?, ?>) item).get(key)));
+            value = items;
+         } else {
+            return null;
+         }
+      }
+
+      return value;
+   }
+
+   /**
+    * Gets whether a dotted path exists in the document without traversing arrays.
+    *
+    * @param document
+    *       The document to search in.
+    * @param path
+    *       The dotted path.
+    * @return True if and only if the path exists.
+    */
+   static boolean hasValue(final Map<String, ?> document, final String path) {
+      Object value = document;
+
+      for (final String key : path.split(PATH_SEPARATOR)) {
+         if (value instanceof Map && ((Map<?, ?>) value).containsKey(key)) {
+            value = ((Map<?, ?>) value).get(key);
+         } else if (value instanceof List && getIndex(key) >= 0 && getIndex(key) < ((List<?>) value).size()) {
+            value = ((List<?>) value).get(getIndex(key));
+         } else {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Sets the value of a dotted path, the missing documents on the path are created.
+    *
+    * @param document
+    *       The document to update.
+    * @param path
+    *       The dotted path.
+    * @param value
+    *       The value to set.
+    * @throws IllegalArgumentException
+    *       When the path traverses a value that is neither a document nor an array.
+    */
+   @SuppressWarnings("unchecked")
+   static void setValue(final Map<String, Object> document, final String path, final Object value) {
+      final String[] keys = path.split(PATH_SEPARATOR);
+      Object current = document;
+
+      for (int i = 0; i < keys.length; i++) {
+         final boolean last = i == keys.length - 1;
+
+         if (current instanceof Map) {
+            final Map<String, Object> map = (Map<String, Object>) current;
+            if (last) {
+               map.put(keys[i], value);
+            } else {
+               current = map.computeIfAbsent(keys[i], k -> new DataDocument());
+            }
+         } else if (current instanceof List && getIndex(keys[i]) >= 0) {
+            final List<Object> list = (List<Object>) current;
+            final int index = getIndex(keys[i]);
+            while (list.size() <= index) {
+               list.add(null);
+            }
+
+            if (last) {
+               list.set(index, value);
+            } else {
+               if (list.get(index) == null) {
+                  list.set(index, new DataDocument());
+               }
+               current = list.get(index);
+            }
+         } else {
+            throw new IllegalArgumentException("Cannot create field '" + keys[i] + "' in path '" + path + "'.");
+         }
+      }
+   }
+
+   /**
+    * Removes the value of a dotted path.
+    *
+    * @param document
+    *       The document to update.
+    * @param path
+    *       The dotted path.
+    * @return The removed value, null when the path did not exist.
+    */
+   @SuppressWarnings("unchecked")
+   static Object removeValue(final Map<String, Object> document, final String path) {
+      final String[] keys = path.split(PATH_SEPARATOR);
+      Object current = document;
+
+      for (int i = 0; i < keys.length - 1 && current != null; i++) {
+         if (current instanceof Map) {
+            current = ((Map<String, Object>) current).get(keys[i]);
+         } else if (current instanceof List && getIndex(keys[i]) >= 0 && getIndex(keys[i]) < ((List<?>) current).size()) {
+            current = ((List<Object>) current).get(getIndex(keys[i]));
+         } else {
+            current = null;
+         }
+      }
+
+      final String key = keys[keys.length - 1];
+      if (current instanceof Map) {
+         return ((Map<String, Object>) current).remove(key);
+      } else if (current instanceof List && getIndex(key) >= 0 && getIndex(key) < ((List<?>) current).size()) {
+         // array elements are not removed but set to null to keep the positions of the others
+         return ((List<Object>) current).set(getIndex(key), null);
+      }
+
+      return null;
+   }
+
+   private static int getIndex(final String key) {
+      if (key.isEmpty() || key.length() > 9) {
+         return -1;
+      }
+
+      for (final char c : key.toCharArray()) {
+         if (!Character.isDigit(c)) {
+            return -1;
+         }
+      }
+
+      return Integer.parseInt(key);
+   }
+
+   /**
+    * Compares two values for equality the same way as MongoDB does it. Numbers of different types are equal when
+    * they have the same value, documents and arrays are compared recursively.
+    *
+    * @param value1
+    *       The first value.
+    * @param value2
+    *       The second value.
+    * @return True if and only if the values are equal.
+    */
+   static boolean valuesEqual(final Object value1, final Object value2) {
+      if (value1 instanceof Number && value2 instanceof Number) {
+         return DataDocumentComparator.compareValues(value1, value2) == 0;
+      } else if (value1 instanceof Map && value2 instanceof Map) {
+         final Map<?, ?> map1 = (Map<?, ?>) value1;
+         final Map<?, ?> map2 = (Map<?, ?>) value2;
+
+         return map1.size() == map2.size() && map1.entrySet().stream().allMatch(e -> map2.containsKey(e.getKey()) && valuesEqual(e.getValue(), map2.get(e.getKey())));
+      } else if (value1 instanceof List && value2 instanceof List) {
+         final List<?> list1 = (List<?>) value1;
+         final List<?> list2 = (List<?>) value2;
+
+         if (list1.size() != list2.size()) {
+            return false;
+         }
+         for (int i = 0; i < list1.size(); i++) {
+            if (!valuesEqual(list1.get(i), list2.get(i))) {
+               return false;
+            }
+         }
+
+         return true;
+      }
+
+      return Objects.equals(value1, value2);
+   }
+
+   /**
+    * Gets a key representing the value in hash based structures. Keys of the values that are {@link #valuesEqual(Object, Object) equal}
+    * are equal as well.
+    *
+    * @param value
+    *       The value to get the key of.
+    * @return The key of the value.
+    */
+   static Object getKey(final Object value) {
+      if (value instanceof Number) {
+         final double number = ((Number) value).doubleValue();
+         if (number == Math.rint(number) && !Double.isInfinite(number) && Math.abs(number) < Long.MAX_VALUE) {
+            return (value instanceof Double || value instanceof Float) ? (long) number : ((Number) value).longValue();
+         }
+
+         return number;
+      } else if (value instanceof Map) {
+         final DataDocument key = new DataDocument();
+         ((Map<?, ?>) value).forEach((k, v) -> key.put(k.toString(), getKey(v)));
+
+         return key;
+      } else if (value instanceof List) {
+         final List<Object> key = new ArrayList<>();
+         ((List<?>) value).forEach(item -> key.add(getKey(item)));
+
+         return key;
+      }
+
+      return value;
+   }
+
+   /**
+    * Gets whether a projection or an update value is considered to be true.
+    *
+    * @param value
+    *       The value to check.
+    * @return True if and only if the value is true or a non-zero number.
+    */
+   static boolean isTrue(final Object value) {
+      return Boolean.TRUE.equals(value) || (value instanceof Number && ((Number) value).doubleValue() != 0);
+   }
+
+   /**
+    * Gets whether the document contains query or update operators rather than plain values.
+    *
+    * @param value
+    *       The value to check.
+    * @return True if and only if the value is a document with the first key starting with $.
+    */
+   static boolean isOperatorDocument(final Object value) {
+      return value instanceof Map && !((Map<?, ?>) value).isEmpty() && ((Map<?, ?>) value).keySet().iterator().next().toString().startsWith("$");
+   }
+
+   /**
+    * Approximates the memory taken by a value.
+    *
+    * @param value
+    *       The value to measure.
+    * @return The approximate size in bytes.
+    */
+   static long getSize(final Object value) {
+      if (value instanceof Map) {
+         return ((Map<?, ?>) value).entrySet().stream().mapToLong(e -> 2L * e.getKey().toString().length() + getSize(e.getValue())).sum() + 16L;
+      } else if (value instanceof List) {
+         return ((List<?>) value).stream().mapToLong(InMemoryUtils::getSize).sum() + 16L;
+      } else if (value instanceof String) {
+         return 2L * ((String) value).length() + 16L;
+      }
+
+      return 16L;
+   }
+}
@@ -0,0 +1,326 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.inmemory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.AsyncDataStorage;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataFilter;
+import io.lumeer.engine.api.data.DataPage;
+import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.DataStorageStats;
+import io.lumeer.engine.api.data.Query;
+import io.lumeer.engine.api.data.StorageConnection;
+import io.lumeer.engine.api.data.WriteOperation;
+import io.lumeer.engine.api.data.WriteOperationResult;
+import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class InMemoryStorageTest {
+
+   private static final String DB_NAME = "lumeer-test";
+   private static final String COLLECTION = "collection";
+   private static final String COLLECTION_II = "collection_II";
+
+   private InMemoryStorage storage;
+   private InMemoryStorageDialect dialect;
+
+   @Before
+   public void setUp() {
+      storage = (InMemoryStorage) new InMemoryStorageFactory().getStorage(null, new StorageConnection("localhost", 27017, "", ""), DB_NAME, false);
+      dialect = new InMemoryStorageDialect();
+   }
+
+   @After
+   public void tearDown() {
+      storage.dropDatabase();
+   }
+
+   @Test
+   public void testCollections() {
+      storage.createCollection(COLLECTION);
+      storage.createDocument(COLLECTION_II, new DataDocument("a", 1));
+
+      assertThat(storage.getAllCollections()).containsOnly(COLLECTION, COLLECTION_II);
+      assertThatThrownBy(() -> storage.createCollection(COLLECTION)).isInstanceOf(IllegalStateException.class);
+
+      storage.renameCollection(COLLECTION_II, "renamed");
+      assertThat(storage.hasCollection(COLLECTION_II)).isFalse();
+      assertThat(storage.documentCount("renamed")).isEqualTo(1);
+
+      storage.dropCollection("renamed");
+      assertThat(storage.getAllCollections()).containsOnly(COLLECTION);
+   }
+
+   @Test
+   public void testCreateAndReadDocument() {
+      final String id = storage.createDocument(COLLECTION, new DataDocument("name", "first").append("nested", new DataDocument("value", 1)));
+
+      final DataDocument document = storage.readDocument(COLLECTION, dialect.documentIdFilter(id));
+      assertThat(document.getId()).isEqualTo(id);
+      assertThat(document.getString("name")).isEqualTo("first");
+
+      // the stored documents are not affected by the changes of the returned ones
+      document.getDataDocument("nested").put("value", 2);
+      assertThat(storage.readDocument(COLLECTION, dialect.documentIdFilter(id)).getDataDocument("nested").getInteger("value")).isEqualTo(1);
+
+      assertThat(storage.readDocumentIncludeAttrs(COLLECTION, dialect.documentIdFilter(id), Collections.singletonList("name"))).containsOnlyKeys(LumeerConst.Document.ID, "name");
+      assertThatThrownBy(() -> dialect.documentIdFilter("invalid")).isInstanceOf(IllegalArgumentException.class);
+   }
+
+   @Test
+   public void testFilters() {
+      storage.createDocuments(COLLECTION, Arrays.asList(
+            new DataDocument("name", "Alice").append("age", 30).append("tags", Arrays.asList("a", "b")),
+            new DataDocument("name", "Bob").append("age", 25L).append("tags", Collections.singletonList("b")),
+            new DataDocument("name", "Carol").append("age", 35.0).append("address", new DataDocument("city", "Brno"))));
+
+      assertThat(names(dialect.fieldValueFilter("age", 25))).containsExactly("Bob");
+      assertThat(names(dialect.fieldValueFilter("tags", "b"))).containsExactly("Alice", "Bob");
+      assertThat(names(dialect.fieldValueWildcardFilter("name", "o"))).containsExactly("Bob", "Carol");
+      assertThat(names(dialect.fieldValueWildcardFilterOneSided("name", "b"))).containsExactly("Bob");
+      assertThat(names(dialect.fieldValueFilter("address.city", "Brno"))).containsExactly("Carol");
+      assertThat(names(dialect.documentFilter("{ age: { $gte: 30 } }"))).containsExactly("Alice", "Carol");
+      assertThat(names(dialect.documentFilter("{ $or: [ { age: { $lt: 26 } }, { name: 'Carol' } ] }"))).containsExactly("Bob", "Carol");
+      assertThat(names(dialect.documentFilter("{ tags: { $all: ['a', 'b'] } }"))).containsExactly("Alice");
+      assertThat(names(dialect.documentFilter("{ tags: { $size: 1 } }"))).containsExactly("Bob");
+      assertThat(names(dialect.documentFilter("{ address: { $exists: false } }"))).containsExactly("Alice", "Bob");
+      assertThat(names(dialect.documentFilter("{ name: { $nin: ['Alice', 'Bob'] } }"))).containsExactly("Carol");
+      assertThat(names(dialect.combineFilters(dialect.documentFilter("{ age: { $gt: 20 } }"), dialect.fieldValueFilter("tags", "a")))).containsExactly("Alice");
+
+      final DataDocument fields = new DataDocument("name", "Alice").append("age", 30);
+      assertThat(names(dialect.multipleFieldsValueFilter(fields))).containsExactly("Alice");
+      assertThat(storage.count(COLLECTION, dialect.documentFilter("{ age: { $ne: 30 } }"))).isEqualTo(2);
+   }
+
+   @Test
+   public void testSearchSortAndLimit() {
+      for (int i = 0; i < 10; i++) {
+         storage.createDocument(COLLECTION, new DataDocument("i", i).append("group", i % 2));
+      }
+
+      final List<DataDocument> documents = storage.search(COLLECTION, dialect.fieldValueFilter("group", 0), dialect.documentSort("{ i: -1 }"), 1, 2);
+      assertThat(documents).extracting(d -> d.getInteger("i")).containsExactly(6, 4);
+
+      assertThat(storage.search(COLLECTION, null, null, 7, 0)).extracting(d -> d.getInteger("i")).containsExactly(7, 8, 9);
+      assertThat(storage.searchStream(COLLECTION, null, dialect.documentFieldSort("i", LumeerConst.SORT_DESCENDING_ORDER), null, 10).findFirst().get().getInteger("i")).isEqualTo(9);
+   }
+
+   @Test
+   public void testUpdates() throws Exception {
+      final String id = storage.createDocument(COLLECTION, new DataDocument("name", "doc").append("count", 1).append("items", new ArrayList<>(Arrays.asList(1, 2))));
+
+      storage.updateDocument(COLLECTION, new DataDocument("name", "updated").append("nested.value", true), dialect.documentIdFilter(id));
+      storage.incrementAttributeValueBy(COLLECTION, dialect.documentIdFilter(id), "count", 2);
+      storage.addItemsToArray(COLLECTION, dialect.documentIdFilter(id), "items", Arrays.asList(2, 3));
+      storage.removeItemFromArray(COLLECTION, dialect.documentIdFilter(id), "items", 1);
+      storage.renameAttribute(COLLECTION, "name", "title");
+
+      DataDocument document = storage.readDocument(COLLECTION, dialect.documentIdFilter(id));
+      assertThat(document.getString("title")).isEqualTo("updated");
+      assertThat(document.containsKey("name")).isFalse();
+      assertThat(document.getDataDocument("nested").getBoolean("value")).isTrue();
+      assertThat(document.getInteger("count")).isEqualTo(3);
+      assertThat(document.getArrayList("items", Integer.class)).containsExactly(2, 3);
+
+      storage.dropAttribute(COLLECTION, dialect.documentIdFilter(id), "count");
+      storage.replaceDocument(COLLECTION, new DataDocument("replaced", true), dialect.documentIdFilter(id));
+      document = storage.readDocument(COLLECTION, dialect.documentIdFilter(id));
+      assertThat(document).containsOnlyKeys(LumeerConst.Document.ID, "replaced");
+
+      // updates of missing documents are upserts
+      storage.updateDocument(COLLECTION, new DataDocument("value", 1), dialect.fieldValueFilter("key", "upserted"));
+      assertThat(storage.readDocument(COLLECTION, dialect.fieldValueFilter("key", "upserted")).getInteger("value")).isEqualTo(1);
+
+      storage.dropManyDocuments(COLLECTION, dialect.documentFilter("{}"));
+      assertThat(storage.documentCount(COLLECTION)).isZero();
+   }
+
+   @Test
+   public void testRunFindAndModify() {
+      storage.createDocument(COLLECTION, new DataDocument(LumeerConst.Collection.INTERNAL_NAME_KEY, "c1").append(LumeerConst.Collection.ATTRIBUTES_KEY, new DataDocument("old", 1)));
+
+      for (int i = 0; i < 4; i++) {
+         storage.run(dialect.addRecentlyUsedDocumentQuery(COLLECTION, "c1", "id" + i, 3));
+      }
+      storage.run(dialect.renameAttributeQuery(COLLECTION, "c1", "old", "new"));
+
+      final DataDocument metadata = storage.readDocument(COLLECTION, dialect.fieldValueFilter(LumeerConst.Collection.INTERNAL_NAME_KEY, "c1"));
+      assertThat(metadata.getArrayList(LumeerConst.Collection.RECENTLY_USED_DOCUMENTS_KEY, String.class)).containsExactly("id3", "id2", "id1");
+      assertThat(metadata.getDataDocument(LumeerConst.Collection.ATTRIBUTES_KEY)).containsOnlyKeys("new");
+
+      assertThat(storage.run("{ find: '" + COLLECTION + "', filter: { " + LumeerConst.Collection.INTERNAL_NAME_KEY + ": 'c1' } }")).hasSize(1);
+      assertThatThrownBy(() -> storage.run("{ unknownCommand: 1 }")).isInstanceOf(IllegalArgumentException.class);
+   }
+
+   @Test
+   public void testIndexes() {
+      for (int i = 0; i < 100; i++) {
+         storage.createDocument(COLLECTION, new DataDocument("code", "c" + i).append("value", i).append("tags", Arrays.asList(i % 3, i % 5)));
+      }
+
+      storage.createIndex(COLLECTION, new DataDocument("code", LumeerConst.Index.ASCENDING), true);
+      storage.createIndex(COLLECTION, new DataDocument("value", LumeerConst.Index.DESCENDING), false);
+      storage.createIndex(COLLECTION, new DataDocument("tags", "hashed"), false);
+
+      assertThat(storage.listIndexes(COLLECTION)).extracting(i -> i.getString("name")).containsExactly("_id_", "code_1", "value_-1", "tags_hashed");
+      assertThatThrownBy(() -> storage.createDocument(COLLECTION, new DataDocument("code", "c1"))).isInstanceOf(DuplicateKeyException.class);
+      assertThatThrownBy(() -> storage.createIndex(COLLECTION, new DataDocument("tags", 1), true)).isInstanceOf(DuplicateKeyException.class);
+
+      // the results found by the indexes are the same as the ones found by scanning the collection
+      assertThat(storage.count(COLLECTION, dialect.fieldValueFilter("code", "c42"))).isEqualTo(1);
+      assertThat(storage.count(COLLECTION, dialect.documentFilter("{ value: { $gte: 10, $lt: 20 } }"))).isEqualTo(10);
+      assertThat(storage.count(COLLECTION, dialect.documentFilter("{ value: { $in: [1, 2.0, 300] } }"))).isEqualTo(2);
+      assertThat(storage.count(COLLECTION, dialect.fieldValueFilter("tags", 4))).isEqualTo(20);
+      assertThat(storage.count(COLLECTION, dialect.documentFilter("{ tags: 2, value: { $lt: 10 } }"))).isEqualTo(4);
+
+      storage.updateDocument(COLLECTION, new DataDocument("value", 1000), dialect.fieldValueFilter("code", "c42"));
+      assertThat(storage.count(COLLECTION, dialect.documentFilter("{ value: { $gt: 99 } }"))).isEqualTo(1);
+      storage.dropDocument(COLLECTION, dialect.fieldValueFilter("code", "c42"));
+      assertThat(storage.count(COLLECTION, dialect.documentFilter("{ value: { $gt: 99 } }"))).isZero();
+
+      storage.dropIndex(COLLECTION, "tags_hashed");
+      assertThat(storage.listIndexes(COLLECTION)).hasSize(3);
+   }
+
+   @Test
+   public void testAggregate() {
+      storage.createDocument(LumeerConst.UserGroup.COLLECTION_NAME, new DataDocument(LumeerConst.UserGroup.ATTR_ORG_ID, "org")
+            .append(LumeerConst.UserGroup.ATTR_USERS, Arrays.asList(
+                  new DataDocument(LumeerConst.UserGroup.ATTR_USERS_USER, "user1").append(LumeerConst.UserGroup.ATTR_USERS_GROUPS, Arrays.asList("g1", "g2")),
+                  new DataDocument(LumeerConst.UserGroup.ATTR_USERS_USER, "user2").append(LumeerConst.UserGroup.ATTR_USERS_GROUPS, Collections.singletonList("g2")))));
+
+      assertThat(storage.aggregate(LumeerConst.UserGroup.COLLECTION_NAME, dialect.usersOfGroupAggregate("org", "g2")))
+            .extracting(d -> d.getString(LumeerConst.UserGroup.ATTR_USERS_USER)).containsExactly("user1", "user2");
+      assertThat(storage.aggregate(LumeerConst.UserGroup.COLLECTION_NAME, dialect.usersOfGroupAggregate("org", "g1")))
+            .extracting(d -> d.getString(LumeerConst.UserGroup.ATTR_USERS_USER)).containsExactly("user1");
+
+      for (int i = 0; i < 6; i++) {
+         storage.createDocument(COLLECTION, new DataDocument("group", i % 2).append("value", i));
+      }
+      final List<DataDocument> groups = storage.aggregate(COLLECTION,
+            new DataDocument("$group", new DataDocument(LumeerConst.Document.ID, "$group").append("sum", new DataDocument("$sum", "$value"))),
+            new DataDocument("$sort", new DataDocument(LumeerConst.Document.ID, 1)),
+            new DataDocument("$out", COLLECTION_II));
+      assertThat(groups).extracting(d -> d.getInteger("sum")).containsExactly(6, 9);
+      assertThat(storage.documentCount(COLLECTION_II)).isEqualTo(2);
+
+      final Query query = new Query(Collections.singleton(COLLECTION), new DataDocument("group", 1), new DataDocument("value", 1), new DataDocument("value", -1), 2, null);
+      assertThat(storage.query(query)).extracting(d -> d.getInteger("value")).containsExactly(5, 3);
+      assertThat(storage.getAttributeValues(COLLECTION, "value")).containsOnly("0", "1", "2", "3", "4", "5");
+
+      final List<DataDocument> counts = storage.aggregate(COLLECTION, dialect.attributeValueCountsAggregate("group", 10));
+      assertThat(counts).extracting(d -> d.getInteger("count")).containsExactly(3, 3);
+      assertThat(counts).extracting(d -> d.getInteger("value")).containsOnly(0, 1);
+   }
+
+   @Test
+   public void testPages() {
+      for (int i = 0; i < 7; i++) {
+         storage.createDocument(COLLECTION, new DataDocument("value", i % 3));
+         storage.createDocument(COLLECTION_II, new DataDocument("value", i % 2));
+      }
+
+      final List<Integer> values = new ArrayList<>();
+      DataPage page = storage.searchPage(COLLECTION, null, dialect.documentSort("{ value: 1 }"), null, 3);
+      values.addAll(page.getDocuments().stream().map(d -> d.getInteger("value")).collect(Collectors.toList()));
+      while (page.hasNextPage()) {
+         page = storage.searchPage(COLLECTION, null, dialect.documentSort("{ value: 1 }"), page.getNextPageToken(), 3);
+         values.addAll(page.getDocuments().stream().map(d -> d.getInteger("value")).collect(Collectors.toList()));
+      }
+      assertThat(values).containsExactly(0, 0, 0, 1, 1, 2, 2);
+
+      final Query query = new Query(new LinkedHashSet<>(Arrays.asList(COLLECTION, COLLECTION_II)), new DataDocument("value", new DataDocument("$gt", 0)), null, new DataDocument("value", -1), 4, null);
+      final List<String> seen = new ArrayList<>();
+      page = storage.unionQueryPage(query, null);
+      page.getDocuments().forEach(d -> seen.add(d.getString(LumeerConst.Document.COLLECTION_NAME) + ":" + d.getInteger("value")));
+      while (page.hasNextPage()) {
+         page = storage.unionQueryPage(query, page.getNextPageToken());
+         page.getDocuments().forEach(d -> seen.add(d.getString(LumeerConst.Document.COLLECTION_NAME) + ":" + d.getInteger("value")));
+      }
+      assertThat(seen).containsExactly("collection:2", "collection:2", "collection:1", "collection:1", "collection_II:1", "collection_II:1", "collection_II:1");
+
+      assertThatThrownBy(() -> storage.searchPage(COLLECTION, null, null, "invalid", 3)).isInstanceOf(IllegalArgumentException.class);
+   }
+
+   @Test
+   public void testBulkWriteAndOldDocuments() throws Exception {
+      storage.createIndex(COLLECTION, new DataDocument("key", LumeerConst.Index.ASCENDING), true);
+
+      final List<WriteOperationResult> results = storage.bulkWrite(COLLECTION, Arrays.asList(
+            WriteOperation.create(new DataDocument("key", 1)),
+            WriteOperation.create(new DataDocument("key", 1)),
+            WriteOperation.update(dialect.fieldValueFilter("key", 2), new DataDocument("value", true))), true);
+      assertThat(results).extracting(WriteOperationResult::getStatus)
+                         .containsExactly(WriteOperationResult.Status.SUCCEEDED, WriteOperationResult.Status.FAILED, WriteOperationResult.Status.NOT_EXECUTED);
+
+      final String id = storage.createDocument(COLLECTION_II, new DataDocument("version", 1));
+      storage.createOldDocument(COLLECTION_II + ".shadow", new DataDocument("version", 1), id, 1);
+      assertThatThrownBy(() -> storage.createOldDocument(COLLECTION_II + ".shadow", new DataDocument("version", 1), id, 1)).isInstanceOf(UnsuccessfulOperationException.class);
+      assertThat(storage.readDocument(COLLECTION_II + ".shadow", dialect.documentNestedIdFilterWithVersion(id, 1))).isNotNull();
+      assertThat(storage.readDocument(COLLECTION_II + ".shadow", dialect.documentNestedIdFilter(id))).isNotNull();
+   }
+
+   @Test
+   public void testSequences() {
+      assertThat(storage.getNextSequenceNo(COLLECTION, "name", "seq")).isEqualTo(0);
+      assertThat(storage.allocateSequenceBlock(COLLECTION, "name", "seq", 10)).isEqualTo(1);
+      assertThat(storage.getNextSequenceNo(COLLECTION, "name", "seq")).isEqualTo(11);
+
+      storage.resetSequence(COLLECTION, "name", "seq");
+      assertThat(storage.getNextSequenceNo(COLLECTION, "name", "seq")).isEqualTo(1);
+   }
+
+   @Test
+   public void testSharedDatabaseAndStats() throws Exception {
+      final DataStorage other = new InMemoryStorageFactory().getStorage(null, new StorageConnection("localhost", 27017, "", ""), DB_NAME, false);
+      final AsyncDataStorage async = new InMemoryStorageFactory().getAsyncStorage(new StorageConnection("localhost", 27017, "", ""), DB_NAME, false);
+
+      final String id = async.createDocument(COLLECTION, new DataDocument("async", true)).get();
+      assertThat(other.readDocument(COLLECTION, dialect.documentIdFilter(id)).getBoolean("async")).isTrue();
+      assertThat(async.count(COLLECTION, null).get()).isEqualTo(1L);
+      assertThat(async.readDocument(COLLECTION, dialect.fieldValueFilter("async", false)).get()).isNull();
+
+      final DataStorageStats stats = storage.getCollectionStats(COLLECTION);
+      assertThat(stats.getDocuments()).isEqualTo(1);
+      assertThat(stats.getIndexes()).isEqualTo(1);
+      assertThat(storage.getDbStats().getCollections()).isEqualTo(1);
+   }
+
+   private List<String> names(final DataFilter filter) {
+      return storage.search(COLLECTION, filter, null).stream().map(d -> d.getString("name")).collect(Collectors.toList());
+   }
+}
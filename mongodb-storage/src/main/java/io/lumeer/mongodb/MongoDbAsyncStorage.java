@@ -0,0 +1,324 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.AsyncDataStorage;
+import io.lumeer.engine.api.data.ConnectionPoolStats;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataFilter;
+import io.lumeer.engine.api.data.DataSort;
+import io.lumeer.engine.api.data.Query;
+import io.lumeer.engine.api.data.ReadPreference;
+import io.lumeer.engine.api.data.StorageConnection;
+import io.lumeer.engine.api.data.StorageConnectionOptions;
+
+import com.mongodb.MongoCredential;
+import com.mongodb.ServerAddress;
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.FindIterable;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoClientSettings;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoDatabase;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.connection.ClusterSettings;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.SocketSettings;
+import com.mongodb.connection.SslSettings;
+import com.mongodb.connection.netty.NettyStreamFactoryFactory;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * MongoDB storage built on the asynchronous driver. No thread is blocked while waiting for the database,
+ * results are delivered through {@link CompletableFuture CompletableFutures} completed by the driver's I/O threads.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class MongoDbAsyncStorage implements AsyncDataStorage {
+
+   private MongoDatabase database;
+   private MongoClient mongoClient = null;
+   private MongoDbPoolMonitor poolMonitor;
+   private final Map<String, MongoDbAsyncStorage> views = new ConcurrentHashMap<>();
+
+   @Override
+   public void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl, final StorageConnectionOptions options) {
+      final List<ServerAddress> addresses = new ArrayList<>();
+      final List<MongoCredential> credentials = new ArrayList<>();
+
+      connections.forEach(c -> {
+         addresses.add(new ServerAddress(c.getHost(), c.getPort()));
+         if (c.getUserName() != null && !c.getUserName().isEmpty()) {
+            credentials.add(MongoCredential.createScramSha1Credential(c.getUserName(), database, c.getPassword()));
+         }
+      });
+
+      final SocketSettings.Builder socketSettings = SocketSettings.builder().connectTimeout(30000, TimeUnit.MILLISECONDS);
+      if (options.getConnectTimeout() != null) {
+         socketSettings.connectTimeout(options.getConnectTimeout(), TimeUnit.MILLISECONDS);
+      }
+      if (options.getSocketTimeout() != null) {
+         socketSettings.readTimeout(options.getSocketTimeout(), TimeUnit.MILLISECONDS);
+      }
+
+      final ConnectionPoolSettings.Builder poolSettings = ConnectionPoolSettings.builder();
+      if (options.getMinPoolSize() != null) {
+         poolSettings.minSize(options.getMinPoolSize());
+      }
+      if (options.getMaxPoolSize() != null) {
+         poolSettings.maxSize(options.getMaxPoolSize());
+      }
+      if (options.getMaxWaitTime() != null) {
+         poolSettings.maxWaitTime(options.getMaxWaitTime(), TimeUnit.MILLISECONDS);
+      }
+      if (options.getMaxConnectionIdleTime() != null) {
+         poolSettings.maxConnectionIdleTime(options.getMaxConnectionIdleTime(), TimeUnit.MILLISECONDS);
+      }
+
+      poolMonitor = new MongoDbPoolMonitor();
+      final MongoClientSettings.Builder settingsBuilder = MongoClientSettings.builder()
+                                                                            .clusterSettings(ClusterSettings.builder().hosts(addresses).description(poolMonitor.getDescription()).build())
+                                                                            .addCommandListener(poolMonitor)
+                                                                            .socketSettings(socketSettings.build())
+                                                                            .connectionPoolSettings(poolSettings.build())
+                                                                            .credentialList(credentials)
+                                                                            .codecRegistry(MongoUtils.getCodecRegistry());
+
+      if (useSsl) {
+         // the asynchronous driver validates certificates against the default trust store of the JVM
+         settingsBuilder.sslSettings(SslSettings.builder().enabled(true).invalidHostNameAllowed(true).build())
+                        .streamFactoryFactory(NettyStreamFactoryFactory.builder().build());
+      }
+
+      this.mongoClient = MongoClients.create(settingsBuilder.build());
+      this.database = mongoClient.getDatabase(database);
+   }
+
+   @Override
+   public void disconnect() {
+      if (mongoClient != null) {
+         mongoClient.close();
+      }
+   }
+
+   @Override
+   public AsyncDataStorage withReadPreference(final ReadPreference readPreference, final long maxStaleness) {
+      final com.mongodb.ReadPreference preference = MongoUtils.convertReadPreference(readPreference, maxStaleness);
+      if (preference.equals(database.getReadPreference())) {
+         return this;
+      }
+
+      return views.computeIfAbsent(preference.toString(), k -> {
+         // the view shares the client, the client is closed only by this storage
+         final MongoDbAsyncStorage view = new MongoDbAsyncStorage();
+         view.database = database.withReadPreference(preference);
+         view.poolMonitor = poolMonitor;
+
+         return view;
+      });
+   }
+
+   @Override
+   public List<ConnectionPoolStats> getConnectionPoolStats() {
+      return poolMonitor != null ? poolMonitor.getStats() : Collections.emptyList();
+   }
+
+   @Override
+   public CompletableFuture<String> createDocument(final String collectionName, final DataDocument document) {
+      final DataDocument doc = new DataDocument(document);
+      final CompletableFuture<Void> future = new CompletableFuture<>();
+
+      database.getCollection(collectionName, DataDocument.class).insertOne(doc, callback(future));
+
+      return future.thenApply(v -> doc.containsKey(LumeerConst.Document.ID) ? doc.get(LumeerConst.Document.ID).toString() : null);
+   }
+
+   @Override
+   public CompletableFuture<List<String>> createDocuments(final String collectionName, final List<DataDocument> dataDocuments) {
+      final List<DataDocument> documents = dataDocuments.stream()
+                                                        .map(DataDocument::new)
+                                                        .collect(Collectors.toList());
+      final CompletableFuture<Void> future = new CompletableFuture<>();
+
+      database.getCollection(collectionName, DataDocument.class).insertMany(documents, new InsertManyOptions().ordered(false), callback(future));
+
+      return future.thenApply(v -> documents.stream().map(d -> d.get(LumeerConst.Document.ID).toString()).collect(Collectors.toList()));
+   }
+
+   @Override
+   public CompletableFuture<DataDocument> readDocument(final String collectionName, final DataFilter filter) {
+      final CompletableFuture<DataDocument> future = new CompletableFuture<>();
+
+      database.getCollection(collectionName, DataDocument.class).find(filter.<Bson>get()).limit(1).first(callback(future));
+
+      return future;
+   }
+
+   @Override
+   public CompletableFuture<DataDocument> readDocumentIncludeAttrs(final String collectionName, final DataFilter filter, final List<String> attributes) {
+      final CompletableFuture<DataDocument> future = new CompletableFuture<>();
+
+      database.getCollection(collectionName, DataDocument.class).find(filter.<Bson>get()).projection(Projections.include(attributes)).limit(1).first(callback(future));
+
+      return future;
+   }
+
+   @Override
+   public CompletableFuture<Void> updateDocument(final String collectionName, final DataDocument updatedDocument, final DataFilter filter) {
+      final DataDocument toUpdate = new DataDocument(updatedDocument);
+      toUpdate.remove(LumeerConst.Document.ID);
+
+      final CompletableFuture<Void> future = new CompletableFuture<>();
+      database.getCollection(collectionName).updateOne(filter.<Bson>get(), new Document("$set", new Document(toUpdate)), new UpdateOptions().upsert(true), completion(future));
+
+      return future;
+   }
+
+   @Override
+   public CompletableFuture<Void> replaceDocument(final String collectionName, final DataDocument replaceDocument, final DataFilter filter) {
+      final DataDocument toReplace = new DataDocument(replaceDocument);
+      toReplace.remove(LumeerConst.Document.ID);
+
+      final CompletableFuture<Void> future = new CompletableFuture<>();
+      database.getCollection(collectionName).replaceOne(filter.<Bson>get(), new Document(toReplace), new UpdateOptions().upsert(true), completion(future));
+
+      return future;
+   }
+
+   @Override
+   public CompletableFuture<Void> dropDocument(final String collectionName, final DataFilter filter) {
+      final CompletableFuture<Void> future = new CompletableFuture<>();
+      database.getCollection(collectionName).deleteOne(filter.<Bson>get(), completion(future));
+
+      return future;
+   }
+
+   @Override
+   public CompletableFuture<Void> dropManyDocuments(final String collectionName, final DataFilter filter) {
+      final CompletableFuture<Void> future = new CompletableFuture<>();
+      database.getCollection(collectionName).deleteMany(filter.<Bson>get(), completion(future));
+
+      return future;
+   }
+
+   @Override
+   public CompletableFuture<List<DataDocument>> search(final String collectionName, final DataFilter filter, final DataSort sort, final List<String> attributes, final int skip, final int limit) {
+      final MongoCollection<DataDocument> collection = database.getCollection(collectionName, DataDocument.class);
+      FindIterable<DataDocument> documents = filter != null ? collection.find(filter.<Bson>get()) : collection.find();
+      if (sort != null) {
+         documents = documents.sort(sort.<Bson>get());
+      }
+      if (attributes != null && !attributes.isEmpty()) {
+         documents = documents.projection(Projections.fields(Projections.include(attributes)));
+      }
+      if (skip > 0) {
+         documents = documents.skip(skip);
+      }
+      if (limit > 0) {
+         documents = documents.limit(limit);
+      }
+
+      final CompletableFuture<List<DataDocument>> future = new CompletableFuture<>();
+      documents.into(new ArrayList<>(), callback(future));
+
+      return future;
+   }
+
+   @Override
+   public CompletableFuture<Long> count(final String collectionName, final DataFilter filter) {
+      final MongoCollection<Document> collection = database.getCollection(collectionName);
+      final CompletableFuture<Long> future = new CompletableFuture<>();
+
+      if (filter != null) {
+         collection.count(filter.<Bson>get(), callback(future));
+      } else {
+         collection.count(callback(future));
+      }
+
+      return future;
+   }
+
+   @Override
+   public CompletableFuture<List<DataDocument>> query(final Query query) {
+      final DataDocument[] stages = MongoUtils.queryStages(query);
+      final List<CompletableFuture<List<DataDocument>>> results = query.getCollections().stream()
+                                                                       .map(collection -> aggregate(collection, stages))
+                                                                       .collect(Collectors.toList());
+
+      return CompletableFuture.allOf(results.toArray(new CompletableFuture[results.size()])).thenApply(v -> {
+         final List<DataDocument> result = new LinkedList<>();
+         results.forEach(r -> result.addAll(r.join()));
+
+         return result;
+      });
+   }
+
+   @Override
+   public CompletableFuture<List<DataDocument>> aggregate(final String collectionName, final DataDocument... stages) {
+      if (stages == null || stages.length == 0) {
+         return CompletableFuture.completedFuture(Collections.emptyList());
+      }
+
+      final List<Document> documents = new LinkedList<>();
+      for (final DataDocument d : stages) {
+         documents.add(new Document(d));
+      }
+
+      final CompletableFuture<List<DataDocument>> future = new CompletableFuture<>();
+      database.getCollection(collectionName, DataDocument.class).aggregate(documents).into(new LinkedList<>(), callback(future));
+
+      return future;
+   }
+
+   private static <T> SingleResultCallback<T> completion(final CompletableFuture<Void> future) {
+      return (result, t) -> {
+         if (t != null) {
+            future.completeExceptionally(t);
+         } else {
+            future.complete(null);
+         }
+      };
+   }
+
+   private static <T> SingleResultCallback<T> callback(final CompletableFuture<? super T> future) {
+      return (result, t) -> {
+         if (t != null) {
+            future.completeExceptionally(t);
+         } else {
+            future.complete(result);
+         }
+      };
+   }
+}
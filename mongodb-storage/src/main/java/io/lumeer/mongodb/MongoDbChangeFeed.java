@@ -0,0 +1,173 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import io.lumeer.engine.api.data.DataChangeEvent;
+
+import com.mongodb.MongoClient;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the changes of a single database to all the storages connected to it. The storages of all organizations usually
+ * connect to the same database, each with its own client, but the oplog is followed by a single {@link MongoDbChangeTailer}
+ * using the client of one of them. When that storage stops watching, the tailer is started again with the client of another one.
+ * The tailer is also started again when a storage needs document changes of collections not watched yet.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+class MongoDbChangeFeed {
+
+   private static final Logger log = Logger.getLogger(MongoDbChangeFeed.class.getName());
+
+   // feeds by the server addresses and the database name, guarded by itself
+   private static final Map<String, MongoDbChangeFeed> feeds = new HashMap<>();
+
+   private final String key;
+   private final String databaseName;
+   private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+   private MongoDbChangeTailer tailer;
+   private MongoClient tailerClient;
+   private Set<String> tailerPrefixes = new HashSet<>();
+   private volatile boolean tailing = false;
+
+   private MongoDbChangeFeed(final String key, final String databaseName) {
+      this.key = key;
+      this.databaseName = databaseName;
+   }
+
+   /**
+    * Starts publishing the changes of the database to the listener.
+    *
+    * @param key
+    *       Identifies the database, equal for all clients connected to the same database on the same servers.
+    * @param client
+    *       The client of the subscribing storage, it must stay open until the subscription is closed.
+    * @param databaseName
+    *       The name of the database to watch.
+    * @param documentCollectionPrefixes
+    *       Prefixes of the names of the collections to publish document changes for.
+    * @param listener
+    *       Receives the changes.
+    * @return The subscription to close when the changes are no longer needed.
+    */
+   static Subscription subscribe(final String key, final MongoClient client, final String databaseName, final Set<String> documentCollectionPrefixes, final Consumer<DataChangeEvent> listener) {
+      final MongoDbChangeFeed feed;
+      final Subscription subscription;
+      final boolean restarted;
+
+      synchronized (feeds) {
+         feed = feeds.computeIfAbsent(key, k -> new MongoDbChangeFeed(k, databaseName));
+         subscription = new Subscription(feed, client, documentCollectionPrefixes, listener);
+         feed.subscriptions.add(subscription);
+         restarted = feed.tailer == null || !feed.tailerPrefixes.containsAll(documentCollectionPrefixes);
+
+         if (restarted) {
+            feed.restart();
+         }
+      }
+
+      // a restarted tailer publishes the resynchronization itself, a running one published it before the subscription
+      if (!restarted && feed.tailing) {
+         subscription.accept(DataChangeEvent.resync());
+      }
+
+      return subscription;
+   }
+
+   // must be called while holding the feeds lock
+   private void restart() {
+      if (tailer != null) {
+         tailer.close();
+         tailer = null;
+      }
+
+      tailing = false;
+      if (subscriptions.isEmpty()) {
+         feeds.remove(key);
+         return;
+      }
+
+      tailerClient = subscriptions.get(0).client;
+      tailerPrefixes = new HashSet<>();
+      subscriptions.forEach(s -> tailerPrefixes.addAll(s.documentCollectionPrefixes));
+
+      tailer = new MongoDbChangeTailer(tailerClient, databaseName, tailerPrefixes, this::publish);
+      tailer.start();
+   }
+
+   private void publish(final DataChangeEvent event) {
+      if (event.getType() == DataChangeEvent.Type.RESYNC) {
+         tailing = true;
+      }
+
+      subscriptions.forEach(s -> s.accept(event));
+   }
+
+   /**
+    * Subscription of a single storage to the changes of its database.
+    */
+   static class Subscription {
+
+      private final MongoDbChangeFeed feed;
+      private final MongoClient client;
+      private final Set<String> documentCollectionPrefixes;
+      private final Consumer<DataChangeEvent> listener;
+
+      private Subscription(final MongoDbChangeFeed feed, final MongoClient client, final Set<String> documentCollectionPrefixes, final Consumer<DataChangeEvent> listener) {
+         this.feed = feed;
+         this.client = client;
+         this.documentCollectionPrefixes = new HashSet<>(documentCollectionPrefixes);
+         this.listener = listener;
+      }
+
+      private void accept(final DataChangeEvent event) {
+         // all the collections watched by any subscriber are published, but this one asked only for some
+         if (event.getType() == DataChangeEvent.Type.DOCUMENT_CHANGED && documentCollectionPrefixes.stream().noneMatch(event.getCollectionName()::startsWith)) {
+            return;
+         }
+
+         try {
+            listener.accept(event);
+         } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Unable to publish change " + event.getType() + " of " + event.getCollectionName(), e);
+         }
+      }
+
+      /**
+       * Stops publishing the changes to the listener.
+       */
+      void close() {
+         synchronized (feeds) {
+            if (feed.subscriptions.remove(this) && (feed.subscriptions.isEmpty() || feed.tailerClient == client)) {
+               feed.restart();
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,205 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import io.lumeer.engine.api.data.DataChangeEvent;
+
+import com.mongodb.CursorType;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Follows the oplog of a replica set and publishes the changes made to a single database by any of its clients.
+ * The oplog is read by a tailable cursor in a background thread. When the cursor fails, it is reopened after a delay
+ * at the last seen position. When the position is no longer in the oplog, a {@link DataChangeEvent.Type#RESYNC} event
+ * is published first, it is also published when the tailing starts.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+class MongoDbChangeTailer implements Runnable, Closeable {
+
+   private static final Logger log = Logger.getLogger(MongoDbChangeTailer.class.getName());
+
+   private static final String OPLOG_DATABASE = "local";
+   private static final String OPLOG_COLLECTION = "oplog.rs";
+   private static final String COMMAND_COLLECTION = "$cmd";
+   private static final String ADMIN_DATABASE = "admin";
+   private static final long MIN_RETRY_DELAY = 1000L;
+   private static final long MAX_RETRY_DELAY = 30000L;
+
+   private final MongoClient client;
+   private final String databaseName;
+   private final Set<String> documentCollectionPrefixes;
+   private final Consumer<DataChangeEvent> listener;
+   private final Thread thread;
+   private volatile boolean running = true;
+   private volatile MongoCursor<Document> cursor;
+
+   /**
+    * Creates a tailer, the tailing starts by calling {@link #start()}.
+    *
+    * @param client
+    *       The client connected to a replica set.
+    * @param databaseName
+    *       The name of the database to watch.
+    * @param documentCollectionPrefixes
+    *       Prefixes of the names of the collections to publish document changes for.
+    * @param listener
+    *       Receives the changes.
+    */
+   MongoDbChangeTailer(final MongoClient client, final String databaseName, final Set<String> documentCollectionPrefixes, final Consumer<DataChangeEvent> listener) {
+      this.client = client;
+      this.databaseName = databaseName;
+      this.documentCollectionPrefixes = documentCollectionPrefixes;
+      this.listener = listener;
+
+      thread = new Thread(this, "mongodb-change-tailer-" + databaseName);
+      thread.setDaemon(true);
+   }
+
+   void start() {
+      thread.start();
+   }
+
+   @Override
+   public void run() {
+      final MongoCollection<Document> oplog = client.getDatabase(OPLOG_DATABASE).getCollection(OPLOG_COLLECTION).withCodecRegistry(MongoClient.getDefaultCodecRegistry());
+      BsonTimestamp position = null;
+      long retryDelay = MIN_RETRY_DELAY;
+
+      while (running) {
+         try {
+            final Document first = oplog.find().sort(new Document("$natural", 1)).limit(1).first();
+            if (first == null) {
+               log.log(Level.SEVERE, "Changes of database " + databaseName + " cannot be watched, the server is not a member of a replica set.");
+               return;
+            }
+
+            if (position == null || position.compareTo(first.get("ts", BsonTimestamp.class)) < 0) {
+               position = oplog.find().sort(new Document("$natural", -1)).limit(1).first().get("ts", BsonTimestamp.class);
+               listener.accept(DataChangeEvent.resync());
+            }
+
+            try (MongoCursor<Document> entries = oplog.find(getFilter(position)).cursorType(CursorType.TailableAwait).noCursorTimeout(true).oplogReplay(true).iterator()) {
+               cursor = entries;
+               while (running && entries.hasNext()) {
+                  final Document entry = entries.next();
+                  position = entry.get("ts", BsonTimestamp.class);
+                  try {
+                     publish(entry);
+                  } catch (RuntimeException e) {
+                     log.log(Level.WARNING, "Unable to publish oplog entry " + entry.toJson(), e);
+                  }
+                  retryDelay = MIN_RETRY_DELAY;
+               }
+            }
+         } catch (MongoException | IllegalStateException e) {
+            if (running) {
+               log.log(Level.WARNING, "Unable to read the oplog, retrying in " + retryDelay + " ms.", e);
+               try {
+                  Thread.sleep(retryDelay);
+               } catch (InterruptedException ie) {
+                  Thread.currentThread().interrupt();
+                  return;
+               }
+               retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+            }
+         }
+      }
+   }
+
+   // selects the collection commands and the document changes in the watched collections of the database
+   private Document getFilter(final BsonTimestamp position) {
+      final List<Document> changes = new ArrayList<>();
+      changes.add(new Document("op", "c").append("ns", new Document("$in", Arrays.asList(databaseName + "." + COMMAND_COLLECTION, ADMIN_DATABASE + "." + COMMAND_COLLECTION))));
+
+      if (!documentCollectionPrefixes.isEmpty()) {
+         final String prefixes = documentCollectionPrefixes.stream().map(Pattern::quote).collect(Collectors.joining("|"));
+         changes.add(new Document("op", new Document("$in", Arrays.asList("i", "u", "d")))
+               .append("ns", new Document("$regex", "^" + Pattern.quote(databaseName + ".") + "(" + prefixes + ")")));
+      }
+
+      return new Document("ts", new Document("$gt", position)).append("$or", changes);
+   }
+
+   private void publish(final Document entry) {
+      final String operation = entry.getString("op");
+      final Document object = entry.get("o", Document.class);
+
+      if ("c".equals(operation)) {
+         if (object.containsKey("create")) {
+            listener.accept(DataChangeEvent.collectionCreated(object.getString("create")));
+         } else if (object.containsKey("drop")) {
+            listener.accept(DataChangeEvent.collectionDropped(object.getString("drop")));
+         } else if (object.containsKey("renameCollection")) {
+            final String from = getCollectionName(object.getString("renameCollection"));
+            final String to = getCollectionName(object.getString("to"));
+
+            if (from != null && to != null) {
+               listener.accept(DataChangeEvent.collectionRenamed(from, to));
+            } else if (from != null) {
+               listener.accept(DataChangeEvent.collectionDropped(from));
+            } else if (to != null) {
+               listener.accept(DataChangeEvent.collectionCreated(to));
+            }
+         } else if (object.containsKey("dropDatabase") && entry.getString("ns").startsWith(databaseName + ".")) {
+            listener.accept(DataChangeEvent.resync());
+         }
+      } else {
+         final Object id = "u".equals(operation) ? entry.get("o2", Document.class).get("_id") : object.get("_id");
+         listener.accept(DataChangeEvent.documentChanged(getCollectionName(entry.getString("ns")), id != null ? id.toString() : null));
+      }
+   }
+
+   // gets the collection name from the namespace when the namespace belongs to the watched database
+   private String getCollectionName(final String namespace) {
+      return namespace != null && namespace.startsWith(databaseName + ".") ? namespace.substring(databaseName.length() + 1) : null;
+   }
+
+   @Override
+   public void close() {
+      running = false;
+      thread.interrupt();
+
+      final MongoCursor<Document> current = cursor;
+      if (current != null) {
+         try {
+            current.close();
+         } catch (MongoException e) {
+            // the cursor is being closed anyway
+         }
+      }
+   }
+}
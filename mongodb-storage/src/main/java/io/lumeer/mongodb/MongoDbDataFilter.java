@@ -21,6 +21,7 @@ package io.lumeer.mongodb;
 
 import io.lumeer.engine.api.data.DataFilter;
 
+import org.bson.BsonDocument;
 import org.bson.conversions.Bson;
 
 /**
@@ -29,6 +30,7 @@ import org.bson.conversions.Bson;
 public class MongoDbDataFilter implements DataFilter {
 
    private final Bson filter;
+   private BsonDocument bsonDocument;
 
    MongoDbDataFilter(final Bson filter) {
       this.filter = filter;
@@ -40,4 +42,29 @@ public class MongoDbDataFilter implements DataFilter {
    public Bson get() {
       return filter;
    }
+
+   @Override
+   public boolean equals(final Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+         return false;
+      }
+
+      return toBsonDocument().equals(((MongoDbDataFilter) o).toBsonDocument());
+   }
+
+   @Override
+   public int hashCode() {
+      return toBsonDocument().hashCode();
+   }
+
+   private BsonDocument toBsonDocument() {
+      if (bsonDocument == null) {
+         bsonDocument = filter.toBsonDocument(BsonDocument.class, MongoUtils.getCodecRegistry());
+      }
+
+      return bsonDocument;
+   }
 }
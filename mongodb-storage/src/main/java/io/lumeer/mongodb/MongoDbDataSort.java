@@ -21,13 +21,17 @@ package io.lumeer.mongodb;
 
 import io.lumeer.engine.api.data.DataSort;
 
+import org.bson.BsonDocument;
 import org.bson.conversions.Bson;
 
+import java.util.ArrayList;
+
 /**
  * @author <a href="alica.kacengova@gmail.com">Alica Kačengová</a>
  */
 public class MongoDbDataSort implements DataSort {
    private final Bson sort;
+   private BsonDocument bsonDocument;
 
    MongoDbDataSort(final Bson sort) {
       this.sort = sort;
@@ -39,4 +43,30 @@ public class MongoDbDataSort implements DataSort {
    public Bson get() {
       return sort;
    }
+
+   @Override
+   public boolean equals(final Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+         return false;
+      }
+
+      // the order of the sort attributes matters
+      return new ArrayList<>(toBsonDocument().entrySet()).equals(new ArrayList<>(((MongoDbDataSort) o).toBsonDocument().entrySet()));
+   }
+
+   @Override
+   public int hashCode() {
+      return new ArrayList<>(toBsonDocument().entrySet()).hashCode();
+   }
+
+   private BsonDocument toBsonDocument() {
+      if (bsonDocument == null) {
+         bsonDocument = sort.toBsonDocument(BsonDocument.class, MongoUtils.getCodecRegistry());
+      }
+
+      return bsonDocument;
+   }
 }
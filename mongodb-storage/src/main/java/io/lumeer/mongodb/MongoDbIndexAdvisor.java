@@ -0,0 +1,410 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.IndexRecommendation;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Observes the filters and sorts of queries and recommends compound indexes that would serve them. The index keys follow
+ * the equality, sort, range rule: fields compared for equality go first, then the sort fields in their order and directions,
+ * then fields compared by ranges. Observations fade out over time, each evaluation halves their frequencies.
+ * When a budget is given, the frequently used recommendations are created automatically and the indexes created this way
+ * are dropped again when they are no longer used or a more frequent recommendation needs their place.
+ * The indexes created by the advisor are named with the {@link #INDEX_PREFIX} and they are recognized among the existing
+ * indexes of a collection, so the budget holds across restarts and multiple engine instances. No other indexes are ever dropped.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class MongoDbIndexAdvisor implements CommandListener {
+
+   private static final Logger log = Logger.getLogger(MongoDbIndexAdvisor.class.getName());
+
+   /**
+    * Prefix of the names of the indexes created by the advisor.
+    */
+   static final String INDEX_PREFIX = "lumeer_auto_";
+
+   private static final long EVALUATION_PERIOD = 60L;
+
+   /**
+    * Minimal frequency of a recommendation to be reported or created.
+    */
+   private static final long MIN_FREQUENCY = 10L;
+
+   /**
+    * A created index is replaced only by a recommendation this many times more frequent.
+    */
+   private static final long REPLACEMENT_FACTOR = 2L;
+
+   private static final int MAX_SHAPES_PER_COLLECTION = 100;
+
+   private static final Set<String> EQUALITY_OPERATORS = new HashSet<>(Arrays.asList("$eq", "$elemMatch", "$all", "$size"));
+
+   private final String databaseName;
+
+   private final int budget;
+
+   /**
+    * Observed index keys and their frequencies per collection, the index keys are identified by their index names.
+    */
+   private final Map<String, Map<String, Observation>> observations = new ConcurrentHashMap<>();
+
+   private final ScheduledExecutorService evaluator;
+
+   private volatile MongoDbStorage storage;
+
+   /**
+    * Creates a new index advisor.
+    *
+    * @param databaseName
+    *       Name of the database whose queries are observed.
+    * @param budget
+    *       Maximal number of indexes created automatically on a single collection, 0 to only recommend them.
+    */
+   public MongoDbIndexAdvisor(final String databaseName, final int budget) {
+      this.databaseName = databaseName;
+      this.budget = budget;
+
+      evaluator = Executors.newSingleThreadScheduledExecutor(r -> {
+         final Thread thread = new Thread(r, "lumeer-index-advisor");
+         thread.setDaemon(true);
+
+         return thread;
+      });
+      evaluator.scheduleWithFixedDelay(this::evaluate, EVALUATION_PERIOD, EVALUATION_PERIOD, TimeUnit.SECONDS);
+   }
+
+   /**
+    * Sets the storage used to list, create and drop indexes.
+    *
+    * @param storage
+    *       The storage whose queries are observed.
+    */
+   public void setStorage(final MongoDbStorage storage) {
+      this.storage = storage;
+   }
+
+   /**
+    * Stops the evaluation of the observed queries.
+    */
+   public void close() {
+      evaluator.shutdownNow();
+   }
+
+   @Override
+   public void commandStarted(final CommandStartedEvent event) {
+      if (!databaseName.equals(event.getDatabaseName())) {
+         return;
+      }
+
+      final BsonValue collection = event.getCommand().get(event.getCommandName());
+      if (collection == null || !collection.isString() || collection.asString().getValue().startsWith("system.")) {
+         return;
+      }
+
+      // the command document is not valid after this method returns, only the keys are kept
+      final DataDocument keys = getIndexKeys(event.getCommandName(), event.getCommand());
+      if (keys.isEmpty() || "_id".equals(keys.keySet().iterator().next())) {
+         return;
+      }
+
+      final Map<String, Observation> collectionObservations = observations.computeIfAbsent(collection.asString().getValue(), k -> new ConcurrentHashMap<>());
+      final String indexName = getIndexName(keys);
+      final Observation observation = collectionObservations.size() < MAX_SHAPES_PER_COLLECTION
+            ? collectionObservations.computeIfAbsent(indexName, k -> new Observation(keys))
+            : collectionObservations.get(indexName);
+
+      if (observation != null) {
+         observation.frequency.incrementAndGet();
+      }
+   }
+
+   @Override
+   public void commandSucceeded(final CommandSucceededEvent event) {
+   }
+
+   @Override
+   public void commandFailed(final CommandFailedEvent event) {
+   }
+
+   /**
+    * Gets the recommended indexes.
+    *
+    * @return The recommended indexes that are not covered by the existing ones, the most frequently used first.
+    */
+   public List<IndexRecommendation> getRecommendations() {
+      final List<IndexRecommendation> recommendations = new ArrayList<>();
+
+      observations.keySet().forEach(collectionName -> {
+         final List<DataDocument> indexes = storage.listIndexes(collectionName);
+         recommendations.addAll(getRecommendations(collectionName, indexes, getCreatedIndexes(indexes), true));
+      });
+      recommendations.sort(Comparator.comparingLong(IndexRecommendation::getFrequency).reversed());
+
+      return recommendations;
+   }
+
+   private List<IndexRecommendation> getRecommendations(final String collectionName, final List<DataDocument> indexes, final Set<String> createdIndexes, final boolean includeCreated) {
+      final Map<String, Observation> collectionObservations = observations.getOrDefault(collectionName, Collections.emptyMap());
+      final List<DataDocument> existingKeys = indexes.stream()
+                                                     .filter(index -> !isCreatedIndex(index))
+                                                     .map(index -> index.getDataDocument("key"))
+                                                     .collect(Collectors.toList());
+
+      return collectionObservations.entrySet().stream()
+                                   .filter(e -> e.getValue().frequency.get() >= MIN_FREQUENCY)
+                                   .filter(e -> includeCreated || !createdIndexes.contains(INDEX_PREFIX + e.getKey()))
+                                   .filter(e -> existingKeys.stream().noneMatch(existing -> covers(existing, e.getValue().keys)))
+                                   .map(e -> {
+                                      final IndexRecommendation recommendation = new IndexRecommendation();
+                                      recommendation.setCollectionName(collectionName);
+                                      recommendation.setIndexName(INDEX_PREFIX + e.getKey());
+                                      recommendation.setKeys(new DataDocument(e.getValue().keys));
+                                      recommendation.setFrequency(e.getValue().frequency.get());
+                                      recommendation.setCreated(createdIndexes.contains(INDEX_PREFIX + e.getKey()));
+
+                                      return recommendation;
+                                   })
+                                   .sorted(Comparator.comparingLong(IndexRecommendation::getFrequency).reversed())
+                                   .collect(Collectors.toList());
+   }
+
+   private void evaluate() {
+      if (storage == null) {
+         return;
+      }
+
+      observations.forEach((collectionName, collectionObservations) -> {
+         try {
+            if (budget > 0) {
+               evaluate(collectionName, collectionObservations);
+            }
+         } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Unable to evaluate index recommendations of " + collectionName + ": ", e);
+         }
+
+         collectionObservations.values().removeIf(observation -> observation.frequency.updateAndGet(frequency -> frequency / 2) == 0);
+      });
+      observations.values().removeIf(Map::isEmpty);
+   }
+
+   private void evaluate(final String collectionName, final Map<String, Observation> collectionObservations) {
+      // the indexes created before, also by other engine instances, are read from the database to keep the budget
+      final List<DataDocument> indexes = storage.listIndexes(collectionName);
+      final Set<String> createdIndexes = getCreatedIndexes(indexes);
+
+      // the indexes no longer used are dropped first
+      new ArrayList<>(createdIndexes).stream().filter(indexName -> getFrequency(collectionObservations, indexName) == 0).forEach(indexName -> drop(collectionName, indexName, createdIndexes));
+
+      for (final IndexRecommendation recommendation : getRecommendations(collectionName, indexes, createdIndexes, false)) {
+         if (createdIndexes.size() >= budget) {
+            final String leastUsed = createdIndexes.stream().min(Comparator.comparingLong(indexName -> getFrequency(collectionObservations, indexName))).get();
+            if (getFrequency(collectionObservations, leastUsed) * REPLACEMENT_FACTOR >= recommendation.getFrequency()) {
+               return;
+            }
+            drop(collectionName, leastUsed, createdIndexes);
+         }
+
+         log.info("Creating index " + recommendation.getIndexName() + " on " + collectionName + " used by " + recommendation.getFrequency() + " queries.");
+         storage.createIndex(collectionName, recommendation.getIndexName(), recommendation.getKeys());
+         createdIndexes.add(recommendation.getIndexName());
+      }
+   }
+
+   private void drop(final String collectionName, final String indexName, final Set<String> createdIndexes) {
+      log.info("Dropping unused index " + indexName + " on " + collectionName + ".");
+      createdIndexes.remove(indexName);
+      storage.dropIndex(collectionName, indexName);
+   }
+
+   private static Set<String> getCreatedIndexes(final List<DataDocument> indexes) {
+      return indexes.stream().filter(MongoDbIndexAdvisor::isCreatedIndex).map(index -> index.getString("name")).collect(Collectors.toSet());
+   }
+
+   private static boolean isCreatedIndex(final DataDocument index) {
+      final String name = index.getString("name");
+
+      return name != null && name.startsWith(INDEX_PREFIX);
+   }
+
+   private static long getFrequency(final Map<String, Observation> collectionObservations, final String indexName) {
+      final Observation observation = collectionObservations.get(indexName.substring(INDEX_PREFIX.length()));
+
+      return observation != null ? observation.frequency.get() : 0;
+   }
+
+   /**
+    * Checks whether the existing index serves the queries the given keys were recommended for, that is the keys are its prefix
+    * with the same or all reversed directions.
+    *
+    * @param existing
+    *       Keys of the existing index.
+    * @param keys
+    *       Recommended keys.
+    * @return True when the existing index covers the recommended one.
+    */
+   static boolean covers(final DataDocument existing, final DataDocument keys) {
+      if (existing == null || existing.size() < keys.size()) {
+         return false;
+      }
+
+      final List<Map.Entry<String, Object>> existingEntries = new ArrayList<>(existing.entrySet());
+      final List<Map.Entry<String, Object>> entries = new ArrayList<>(keys.entrySet());
+      boolean same = true;
+      boolean reversed = true;
+
+      for (int i = 0; i < entries.size(); i++) {
+         if (!entries.get(i).getKey().equals(existingEntries.get(i).getKey()) || !(existingEntries.get(i).getValue() instanceof Number)) {
+            return false;
+         }
+
+         final int direction = ((Number) entries.get(i).getValue()).intValue();
+         final int existingDirection = ((Number) existingEntries.get(i).getValue()).intValue();
+         same &= direction == existingDirection;
+         reversed &= direction == -existingDirection;
+      }
+
+      return same || reversed;
+   }
+
+   /**
+    * Gets the keys of an index that would serve the given command following the equality, sort, range rule.
+    *
+    * @param commandName
+    *       Name of the command.
+    * @param command
+    *       The command.
+    * @return The index keys and their directions, empty when the command does not filter or sort.
+    */
+   static DataDocument getIndexKeys(final String commandName, final BsonDocument command) {
+      BsonDocument filter = null;
+      BsonDocument sort = null;
+
+      switch (commandName) {
+         case "find":
+            filter = command.getDocument("filter", null);
+            sort = command.getDocument("sort", null);
+            break;
+         case "count":
+            filter = command.getDocument("query", null);
+            break;
+         case "aggregate":
+            // only the leading stages can use an index
+            final BsonArray pipeline = command.getArray("pipeline", new BsonArray());
+            if (pipeline.size() > 0 && pipeline.get(0).isDocument() && pipeline.get(0).asDocument().isDocument("$match")) {
+               filter = pipeline.get(0).asDocument().getDocument("$match");
+               if (pipeline.size() > 1 && pipeline.get(1).isDocument() && pipeline.get(1).asDocument().isDocument("$sort")) {
+                  sort = pipeline.get(1).asDocument().getDocument("$sort");
+               }
+            } else if (pipeline.size() > 0 && pipeline.get(0).isDocument() && pipeline.get(0).asDocument().isDocument("$sort")) {
+               sort = pipeline.get(0).asDocument().getDocument("$sort");
+            }
+            break;
+         default:
+      }
+
+      final Set<String> equalities = new TreeSet<>();
+      final Set<String> ranges = new TreeSet<>();
+      if (filter != null) {
+         collectFields(filter, equalities, ranges);
+      }
+
+      final DataDocument keys = new DataDocument();
+      equalities.forEach(field -> keys.put(field, 1));
+      if (sort != null) {
+         sort.forEach((field, direction) -> {
+            if (!keys.containsKey(field) && direction.isNumber()) {
+               keys.put(field, direction.asNumber().intValue() < 0 ? -1 : 1);
+            }
+         });
+      }
+      ranges.stream().filter(field -> !keys.containsKey(field)).forEach(field -> keys.put(field, 1));
+
+      return keys;
+   }
+
+   private static void collectFields(final BsonDocument filter, final Set<String> equalities, final Set<String> ranges) {
+      filter.forEach((key, value) -> {
+         if ("$and".equals(key) && value.isArray()) {
+            value.asArray().stream().filter(BsonValue::isDocument).forEach(condition -> collectFields(condition.asDocument(), equalities, ranges));
+         } else if (!key.startsWith("$")) {
+            // literal values and documents without operators are compared for equality
+            final boolean operators = value.isDocument() && !value.asDocument().isEmpty() && value.asDocument().keySet().iterator().next().startsWith("$");
+            if (!operators || EQUALITY_OPERATORS.containsAll(value.asDocument().keySet())) {
+               equalities.add(key);
+            } else {
+               ranges.add(key);
+            }
+         }
+         // $or, $nor, $text, $where and $expr need other kinds of indexes
+      });
+   }
+
+   /**
+    * Gets the index name the database would use by default for the given keys.
+    *
+    * @param keys
+    *       The index keys.
+    * @return The index name.
+    */
+   static String getIndexName(final DataDocument keys) {
+      return keys.entrySet().stream().map(e -> e.getKey() + "_" + e.getValue()).collect(Collectors.joining("_"));
+   }
+
+   /**
+    * Index keys observed in queries and the number of those queries.
+    */
+   private static class Observation {
+
+      private final DataDocument keys;
+      private final AtomicLong frequency = new AtomicLong();
+
+      private Observation(final DataDocument keys) {
+         this.keys = keys;
+      }
+   }
+}
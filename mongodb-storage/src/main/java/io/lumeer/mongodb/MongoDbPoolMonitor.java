@@ -0,0 +1,138 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import io.lumeer.engine.api.data.ConnectionPoolStats;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects statistics of connection pools of a single client. The driver publishes the state of its pools as JMX beans,
+ * these are identified by the unique client description. Durations of operations are recorded by listening to commands.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class MongoDbPoolMonitor implements CommandListener {
+
+   private static final Logger log = Logger.getLogger(MongoDbPoolMonitor.class.getName());
+
+   /**
+    * Upper bounds of the operation duration buckets in milliseconds.
+    */
+   private static final long[] LATENCY_BUCKETS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, Long.MAX_VALUE };
+
+   private final String description = "lumeer-" + UUID.randomUUID().toString();
+
+   private final Map<ServerAddress, AtomicLongArray> latencies = new ConcurrentHashMap<>();
+
+   /**
+    * Gets the description the client must be configured with so that its pools can be found.
+    *
+    * @return The unique client description.
+    */
+   public String getDescription() {
+      return description;
+   }
+
+   @Override
+   public void commandStarted(final CommandStartedEvent event) {
+      // only finished commands are measured
+   }
+
+   @Override
+   public void commandSucceeded(final CommandSucceededEvent event) {
+      record(event.getConnectionDescription().getServerAddress(), event.getElapsedTime(TimeUnit.MILLISECONDS));
+   }
+
+   @Override
+   public void commandFailed(final CommandFailedEvent event) {
+      record(event.getConnectionDescription().getServerAddress(), event.getElapsedTime(TimeUnit.MILLISECONDS));
+   }
+
+   private void record(final ServerAddress server, final long millis) {
+      final AtomicLongArray histogram = latencies.computeIfAbsent(server, s -> new AtomicLongArray(LATENCY_BUCKETS.length));
+
+      int bucket = 0;
+      while (LATENCY_BUCKETS[bucket] < millis) {
+         bucket++;
+      }
+      histogram.incrementAndGet(bucket);
+   }
+
+   /**
+    * Gets the current statistics of all the connection pools of the client.
+    *
+    * @return Statistics of the connection pool of each server.
+    */
+   public List<ConnectionPoolStats> getStats() {
+      final List<ConnectionPoolStats> stats = new ArrayList<>();
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+      try {
+         for (final ObjectName pool : server.queryNames(new ObjectName("org.mongodb.driver:type=ConnectionPool,description=" + description + ",*"), null)) {
+            final ConnectionPoolStats poolStats = new ConnectionPoolStats();
+            poolStats.setHost((String) server.getAttribute(pool, "Host"));
+            poolStats.setPort((Integer) server.getAttribute(pool, "Port"));
+            poolStats.setMinSize((Integer) server.getAttribute(pool, "MinSize"));
+            poolStats.setMaxSize((Integer) server.getAttribute(pool, "MaxSize"));
+            poolStats.setSize((Integer) server.getAttribute(pool, "Size"));
+            poolStats.setCheckedOutCount((Integer) server.getAttribute(pool, "CheckedOutCount"));
+            poolStats.setWaitQueueSize((Integer) server.getAttribute(pool, "WaitQueueSize"));
+            poolStats.setLatencyHistogram(getLatencyHistogram(new ServerAddress(poolStats.getHost(), poolStats.getPort())));
+
+            stats.add(poolStats);
+         }
+      } catch (JMException e) {
+         log.log(Level.WARNING, "Unable to read connection pool statistics: ", e);
+      }
+
+      return stats;
+   }
+
+   private Map<Long, Long> getLatencyHistogram(final ServerAddress server) {
+      final AtomicLongArray histogram = latencies.get(server);
+      final Map<Long, Long> result = new LinkedHashMap<>();
+
+      for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+         result.put(LATENCY_BUCKETS[i], histogram != null ? histogram.get(i) : 0L);
+      }
+
+      return result;
+   }
+}
@@ -0,0 +1,363 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import io.lumeer.engine.api.data.SlowOperation;
+
+import com.mongodb.MongoClient;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.DecoderContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records database commands that take longer than the given threshold to a bounded ring buffer. Only the shape of the
+ * command filter is kept. When enabled, each slow command is explained in a background thread to find out its winning
+ * query plan and the number of examined documents.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class MongoDbSlowOperationLog implements CommandListener {
+
+   private static final Logger log = Logger.getLogger(MongoDbSlowOperationLog.class.getName());
+
+   private static final String PLACEHOLDER = "?";
+
+   /**
+    * Maximal number of commands waiting for their results. The commands of a closed connection may never finish,
+    * they are forgotten after {@link #STARTED_COMMAND_TIMEOUT} when the limit is reached.
+    */
+   private static final int MAX_STARTED_COMMANDS = 10000;
+
+   private static final long STARTED_COMMAND_TIMEOUT = TimeUnit.MINUTES.toNanos(10);
+
+   /**
+    * Commands that can be explained with execution statistics.
+    */
+   private static final Set<String> EXPLAINABLE_COMMANDS = new HashSet<>(Arrays.asList("find", "count", "distinct", "findAndModify", "update", "delete"));
+
+   private final long threshold;
+
+   private final boolean explain;
+
+   private final AtomicReferenceArray<SlowOperation> operations;
+
+   private final AtomicLong recorded = new AtomicLong();
+
+   private final Map<Integer, StartedCommand> started = new ConcurrentHashMap<>();
+
+   private final ThreadPoolExecutor explainExecutor;
+
+   private volatile MongoClient client;
+
+   /**
+    * Creates a new slow operation log.
+    *
+    * @param threshold
+    *       Minimal duration in milliseconds of recorded operations.
+    * @param capacity
+    *       Maximal number of recorded operations.
+    * @param explain
+    *       Whether to explain the recorded operations.
+    */
+   public MongoDbSlowOperationLog(final long threshold, final int capacity, final boolean explain) {
+      this.threshold = threshold;
+      this.explain = explain;
+      this.operations = new AtomicReferenceArray<>(capacity);
+
+      if (explain) {
+         // explains are best effort, they are dropped when the database cannot keep up
+         explainExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity), r -> {
+            final Thread thread = new Thread(r, "lumeer-slow-operation-explain");
+            thread.setDaemon(true);
+
+            return thread;
+         }, new ThreadPoolExecutor.DiscardPolicy());
+      } else {
+         explainExecutor = null;
+      }
+   }
+
+   /**
+    * Sets the client used to explain slow operations.
+    *
+    * @param client
+    *       The client this log listens to.
+    */
+   public void setClient(final MongoClient client) {
+      this.client = client;
+   }
+
+   /**
+    * Stops explaining of slow operations.
+    */
+   public void close() {
+      if (explainExecutor != null) {
+         explainExecutor.shutdownNow();
+      }
+   }
+
+   @Override
+   public void commandStarted(final CommandStartedEvent event) {
+      if ("explain".equals(event.getCommandName())) {
+         return;
+      }
+
+      final BsonDocument command = event.getCommand();
+      final BsonValue collection = "getMore".equals(event.getCommandName()) ? command.get("collection") : command.get(event.getCommandName());
+
+      if (started.size() >= MAX_STARTED_COMMANDS) {
+         final long cutoff = System.nanoTime() - STARTED_COMMAND_TIMEOUT;
+         started.values().removeIf(startedCommand -> startedCommand.startTime - cutoff < 0);
+
+         // the command is not recorded when too many commands are still running
+         if (started.size() >= MAX_STARTED_COMMANDS) {
+            return;
+         }
+      }
+
+      // the command document is not valid after this method returns, everything needed must be copied
+      started.put(event.getRequestId(), new StartedCommand(
+            event.getDatabaseName(),
+            collection != null && collection.isString() ? collection.asString().getValue() : null,
+            getFilterShape(event.getCommandName(), command),
+            explain && EXPLAINABLE_COMMANDS.contains(event.getCommandName()) ? copyCommand(command) : null));
+   }
+
+   @Override
+   public void commandSucceeded(final CommandSucceededEvent event) {
+      finished(event.getRequestId(), event.getCommandName(), event.getElapsedTime(TimeUnit.MILLISECONDS), false);
+   }
+
+   @Override
+   public void commandFailed(final CommandFailedEvent event) {
+      finished(event.getRequestId(), event.getCommandName(), event.getElapsedTime(TimeUnit.MILLISECONDS), true);
+   }
+
+   private void finished(final int requestId, final String commandName, final long duration, final boolean failed) {
+      final StartedCommand command = started.remove(requestId);
+
+      if (command == null || duration < threshold) {
+         return;
+      }
+
+      final SlowOperation operation = new SlowOperation();
+      operation.setTimestamp(System.currentTimeMillis());
+      operation.setDatabaseName(command.databaseName);
+      operation.setCollectionName(command.collectionName);
+      operation.setCommandName(commandName);
+      operation.setFilterShape(command.filterShape);
+      operation.setDuration(duration);
+      operation.setFailed(failed);
+
+      if (command.command != null && client != null && !failed) {
+         explainExecutor.execute(() -> {
+            explain(operation, command);
+            record(operation);
+         });
+      } else {
+         record(operation);
+      }
+   }
+
+   private void record(final SlowOperation operation) {
+      operations.set((int) (recorded.getAndIncrement() % operations.length()), operation);
+   }
+
+   /**
+    * Gets the recorded slow operations.
+    *
+    * @return The slow operations, the most recent first.
+    */
+   public List<SlowOperation> getOperations() {
+      final List<SlowOperation> result = new ArrayList<>();
+      final long last = recorded.get();
+
+      for (long i = last - 1; i >= 0 && i >= last - operations.length(); i--) {
+         final SlowOperation operation = operations.get((int) (i % operations.length()));
+         if (operation != null) {
+            result.add(operation);
+         }
+      }
+
+      return result;
+   }
+
+   private void explain(final SlowOperation operation, final StartedCommand command) {
+      try {
+         final BsonDocument explained = client.getDatabase(command.databaseName)
+                                              .runCommand(new BsonDocument("explain", command.command).append("verbosity", new BsonString("executionStats")), BsonDocument.class);
+
+         final BsonDocument executionStats = explained.getDocument("executionStats", new BsonDocument());
+         if (executionStats.isNumber("totalDocsExamined")) {
+            operation.setDocumentsExamined(executionStats.getNumber("totalDocsExamined").longValue());
+         }
+         if (executionStats.isNumber("totalKeysExamined")) {
+            operation.setKeysExamined(executionStats.getNumber("totalKeysExamined").longValue());
+         }
+
+         final BsonDocument queryPlanner = explained.getDocument("queryPlanner", new BsonDocument());
+         if (queryPlanner.isDocument("winningPlan")) {
+            operation.setPlan(describePlan(queryPlanner.getDocument("winningPlan")));
+         }
+      } catch (RuntimeException e) {
+         log.log(Level.FINE, "Unable to explain slow operation: ", e);
+      }
+   }
+
+   /**
+    * Describes the plan as a chain of stages from the root to the leaves, e.g. FETCH > IXSCAN(name_1).
+    *
+    * @param plan
+    *       The plan to describe.
+    * @return The plan description.
+    */
+   static String describePlan(final BsonDocument plan) {
+      final StringBuilder description = new StringBuilder(plan.getString("stage", new BsonString(PLACEHOLDER)).getValue());
+
+      if (plan.isString("indexName")) {
+         description.append("(").append(plan.getString("indexName").getValue()).append(")");
+      }
+
+      if (plan.isDocument("inputStage")) {
+         description.append(" > ").append(describePlan(plan.getDocument("inputStage")));
+      } else if (plan.isArray("inputStages")) {
+         final List<String> inputs = new ArrayList<>();
+         plan.getArray("inputStages").forEach(input -> {
+            if (input.isDocument()) {
+               inputs.add(describePlan(input.asDocument()));
+            }
+         });
+         description.append(" > [").append(String.join(", ", inputs)).append("]");
+      }
+
+      return description.toString();
+   }
+
+   private static String getFilterShape(final String commandName, final BsonDocument command) {
+      final BsonValue filter;
+
+      switch (commandName) {
+         case "find":
+            filter = command.get("filter");
+            break;
+         case "aggregate":
+            filter = command.get("pipeline");
+            break;
+         case "count":
+         case "distinct":
+         case "findAndModify":
+            filter = command.get("query");
+            break;
+         case "update":
+            filter = getStatementFilters(command.getArray("updates", new BsonArray()));
+            break;
+         case "delete":
+            filter = getStatementFilters(command.getArray("deletes", new BsonArray()));
+            break;
+         default:
+            filter = null;
+      }
+
+      return filter != null ? new BsonDocument("filter", shape(filter)).toJson() : null;
+   }
+
+   private static BsonArray getStatementFilters(final BsonArray statements) {
+      final BsonArray filters = new BsonArray();
+      statements.forEach(statement -> {
+         if (statement.isDocument() && statement.asDocument().containsKey("q")) {
+            filters.add(statement.asDocument().get("q"));
+         }
+      });
+
+      return filters;
+   }
+
+   /**
+    * Replaces all values in the given document by placeholders while keeping field names and operators.
+    *
+    * @param value
+    *       The value to redact.
+    * @return The shape of the value.
+    */
+   static BsonValue shape(final BsonValue value) {
+      if (value.isDocument()) {
+         final BsonDocument shape = new BsonDocument();
+         value.asDocument().forEach((key, v) -> shape.append(key, shape(v)));
+
+         return shape;
+      } else if (value.isArray() && value.asArray().stream().anyMatch(BsonValue::isDocument)) {
+         final BsonArray shape = new BsonArray();
+         value.asArray().forEach(v -> shape.add(shape(v)));
+
+         return shape;
+      }
+
+      return new BsonString(PLACEHOLDER);
+   }
+
+   private static BsonDocument copyCommand(final BsonDocument command) {
+      final BsonDocument copy = new BsonDocumentCodec().decode(new BsonDocumentReader(command), DecoderContext.builder().build());
+      copy.keySet().removeIf(key -> key.startsWith("$"));
+
+      return copy;
+   }
+
+   /**
+    * Information about a command kept until the command finishes.
+    */
+   private static class StartedCommand {
+
+      private final String databaseName;
+      private final String collectionName;
+      private final String filterShape;
+      private final BsonDocument command;
+      private final long startTime = System.nanoTime();
+
+      private StartedCommand(final String databaseName, final String collectionName, final String filterShape, final BsonDocument command) {
+         this.databaseName = databaseName;
+         this.collectionName = collectionName;
+         this.filterShape = filterShape;
+         this.command = command;
+      }
+   }
+}
@@ -20,6 +20,7 @@
 package io.lumeer.mongodb;
 
 import static com.mongodb.client.model.Aggregates.*;
+import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Filters.exists;
 import static com.mongodb.client.model.Sorts.descending;
@@ -28,39 +29,63 @@ import static com.mongodb.client.model.Updates.*;
 import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.cache.Cache;
 import io.lumeer.engine.api.cache.CacheProvider;
+import io.lumeer.engine.api.data.ConnectionPoolStats;
+import io.lumeer.engine.api.data.DataChangeEvent;
 import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataDocumentComparator;
 import io.lumeer.engine.api.data.DataFilter;
+import io.lumeer.engine.api.data.DataPage;
 import io.lumeer.engine.api.data.DataSort;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.DataStorageStats;
+import io.lumeer.engine.api.data.IndexRecommendation;
 import io.lumeer.engine.api.data.Query;
+import io.lumeer.engine.api.data.ReadPreference;
+import io.lumeer.engine.api.data.SlowOperation;
 import io.lumeer.engine.api.data.StorageConnection;
+import io.lumeer.engine.api.data.StorageConnectionOptions;
+import io.lumeer.engine.api.data.WriteDurability;
+import io.lumeer.engine.api.data.WriteOperation;
+import io.lumeer.engine.api.data.WriteOperationResult;
 import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
-import io.lumeer.mongodb.codecs.BigDecimalCodec;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoCommandException;
 import com.mongodb.MongoCredential;
 import com.mongodb.MongoNamespace;
 import com.mongodb.MongoWriteException;
 import com.mongodb.ServerAddress;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
 import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteManyModel;
+import com.mongodb.client.model.DeleteOneModel;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.InsertOneModel;
 import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateManyModel;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import org.bson.BsonDocument;
+import org.bson.BsonValue;
 import org.bson.Document;
-import org.bson.codecs.configuration.CodecRegistries;
-import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
@@ -68,10 +93,22 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
@@ -83,27 +120,129 @@ public class MongoDbStorage implements DataStorage {
    private static final String CURSOR_KEY = "cursor";
    private static final String FIRST_BATCH_KEY = "firstBatch";
    private static final String COLLECTION_CACHE = "collections";
+   private static final long COLLECTION_CACHE_REFRESH = 5000L;
+   private static final int DEFAULT_SLOW_OPERATION_LOG_SIZE = 100;
+   private static final int UNION_QUERY_BATCH_SIZE = 100;
+   private static final String PAGE_TOKEN_VALUES = "v";
+   private static final String PAGE_TOKEN_COLLECTION = "c";
+   private static final String WRITE_CONCERN_KEY = "writeConcern";
+   private static final Set<String> WRITE_COMMANDS = new HashSet<>(Arrays.asList("insert", "update", "delete", "findAndModify"));
 
    private MongoDatabase database;
    private MongoClient mongoClient = null;
-   private long cacheLastUpdated = 0L;
-   private Cache<List<String>> collectionsCache;
+   private Cache<CollectionRegistry> collectionsCache;
+   private MongoDbPoolMonitor poolMonitor;
+   private MongoDbSlowOperationLog slowOperationLog;
+   private MongoDbIndexAdvisor indexAdvisor;
+   private final Map<String, MongoDbStorage> views = new ConcurrentHashMap<>();
+   private final List<MongoDbChangeFeed.Subscription> changeSubscriptions = new CopyOnWriteArrayList<>();
+   private String changeFeedKey;
+   private AtomicBoolean changesWatched = new AtomicBoolean();
 
    @Override
    public void setCacheProvider(final CacheProvider cacheProvider) {
       this.collectionsCache = cacheProvider.getCache(COLLECTION_CACHE);
    }
 
-   private List<String> getCollectionCache() {
-      return collectionsCache.get();
+   /**
+    * Gets the registry of known collection names, each mapped to the time it was registered. The registry is updated
+    * on collection create, drop and rename and it is reconciled with the database periodically to reflect changes
+    * made by other clients, unless the changes are watched, see {@link #watchChanges(Set, Consumer)}. Only the first
+    * load blocks, later reconciliations run in a single thread while others keep using the current registry.
+    * The registry remembers when it was reconciled, so a registry created again after it was evicted from the cache
+    * is loaded before it is used, and all the views of this storage share the reconciliations.
+    *
+    * @return The registry of collection names or null when no cache is available.
+    */
+   private Map<String, Long> getCollectionRegistry() {
+      if (collectionsCache == null) {
+         return null;
+      }
+
+      final CollectionRegistry registry = collectionsCache.computeIfAbsent(k -> new CollectionRegistry());
+      if (isCollectionRegistryStale(registry)) {
+         if (registry.lastUpdated == 0L) {
+            collectionsCache.lock(COLLECTION_CACHE);
+         } else if (!collectionsCache.tryLock(COLLECTION_CACHE)) {
+            return registry;
+         }
+
+         try {
+            if (isCollectionRegistryStale(registry)) {
+               reconcileCollectionRegistry(registry);
+            }
+         } finally {
+            collectionsCache.unlock(COLLECTION_CACHE);
+         }
+      }
+
+      return registry;
+   }
+
+   private boolean isCollectionRegistryStale(final CollectionRegistry registry) {
+      return registry.lastUpdated == 0L || (!changesWatched.get() && registry.lastUpdated + COLLECTION_CACHE_REFRESH < System.currentTimeMillis());
    }
 
-   private void setCollectionCache(final List<String> collections) {
-      collectionsCache.set(collections);
+   private void reconcileCollectionRegistry(final CollectionRegistry registry) {
+      final long listed = System.currentTimeMillis();
+      final Set<String> collections = database.listCollectionNames().into(new HashSet<>());
+
+      collections.forEach(c -> registry.putIfAbsent(c, listed));
+      // names registered during the listing are kept, they will be verified by the next reconciliation
+      registry.entrySet().removeIf(e -> e.getValue() < listed && !collections.contains(e.getKey()));
+      registry.lastUpdated = listed;
+   }
+
+   // keeps the registry up to date with the changes made by other clients
+   private void updateCollectionRegistry(final DataChangeEvent event) {
+      switch (event.getType()) {
+         case COLLECTION_CREATED:
+            registerCollection(event.getCollectionName());
+            break;
+         case COLLECTION_DROPPED:
+            unregisterCollection(event.getCollectionName());
+            break;
+         case COLLECTION_RENAMED:
+            unregisterCollection(event.getCollectionName());
+            registerCollection(event.getNewCollectionName());
+            break;
+         case RESYNC:
+            if (collectionsCache != null) {
+               collectionsCache.lock(COLLECTION_CACHE);
+               try {
+                  reconcileCollectionRegistry(collectionsCache.computeIfAbsent(k -> new CollectionRegistry()));
+               } finally {
+                  collectionsCache.unlock(COLLECTION_CACHE);
+               }
+            }
+            changesWatched.set(true);
+            break;
+         default:
+            break;
+      }
+   }
+
+   private void registerCollection(final String collectionName) {
+      if (collectionsCache != null) {
+         // a registry that is not loaded yet gets all the names with the first reconciliation
+         final CollectionRegistry registry = collectionsCache.get();
+         if (registry != null && !registry.containsKey(collectionName)) {
+            registry.putIfAbsent(collectionName, System.currentTimeMillis());
+         }
+      }
+   }
+
+   private void unregisterCollection(final String collectionName) {
+      if (collectionsCache != null) {
+         final CollectionRegistry registry = collectionsCache.get();
+         if (registry != null) {
+            registry.remove(collectionName);
+         }
+      }
    }
 
    @Override
-   public void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl) {
+   public void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl, final StorageConnectionOptions options) {
       final List<ServerAddress> addresses = new ArrayList<>();
       final List<MongoCredential> credentials = new ArrayList<>();
 
@@ -114,116 +253,140 @@ public class MongoDbStorage implements DataStorage {
          }
       });
 
-      final MongoClientOptions.Builder optionsBuilder = (new MongoClientOptions.Builder()).connectTimeout(30000);
+      poolMonitor = new MongoDbPoolMonitor();
+      final MongoClientOptions.Builder optionsBuilder = (new MongoClientOptions.Builder()).connectTimeout(30000)
+                                                                                        .description(poolMonitor.getDescription())
+                                                                                        .addCommandListener(poolMonitor);
+
+      if (options.getConnectTimeout() != null) {
+         optionsBuilder.connectTimeout(options.getConnectTimeout());
+      }
+      if (options.getSocketTimeout() != null) {
+         optionsBuilder.socketTimeout(options.getSocketTimeout());
+      }
+      if (options.getMinPoolSize() != null) {
+         optionsBuilder.minConnectionsPerHost(options.getMinPoolSize());
+      }
+      if (options.getMaxPoolSize() != null) {
+         optionsBuilder.connectionsPerHost(options.getMaxPoolSize());
+      }
+      if (options.getMaxWaitTime() != null) {
+         optionsBuilder.maxWaitTime(options.getMaxWaitTime());
+      }
+      if (options.getMaxConnectionIdleTime() != null) {
+         optionsBuilder.maxConnectionIdleTime(options.getMaxConnectionIdleTime());
+      }
+      if (options.getSlowOperationThreshold() != null) {
+         slowOperationLog = new MongoDbSlowOperationLog(options.getSlowOperationThreshold(),
+               options.getSlowOperationLogSize() != null ? options.getSlowOperationLogSize() : DEFAULT_SLOW_OPERATION_LOG_SIZE,
+               Boolean.TRUE.equals(options.getExplainSlowOperations()));
+         optionsBuilder.addCommandListener(slowOperationLog);
+      }
+      if (Boolean.TRUE.equals(options.getIndexAdvisor())) {
+         indexAdvisor = new MongoDbIndexAdvisor(database, options.getAutoIndexBudget() != null ? options.getAutoIndexBudget() : 0);
+         optionsBuilder.addCommandListener(indexAdvisor);
+      }
 
       if (useSsl) {
          optionsBuilder.sslEnabled(true).socketFactory(NaiveTrustManager.getSocketFactory()).sslInvalidHostNameAllowed(true);
       }
 
-      final CodecRegistry defaultRegistry = MongoClient.getDefaultCodecRegistry();
-      final CodecRegistry registry = CodecRegistries.fromRegistries(CodecRegistries.fromCodecs(new BigDecimalCodec()), defaultRegistry);
-
-      this.mongoClient = new MongoClient(addresses, credentials, optionsBuilder.codecRegistry(registry).build());
+      this.mongoClient = new MongoClient(addresses, credentials, optionsBuilder.codecRegistry(MongoUtils.getCodecRegistry()).build());
       this.database = mongoClient.getDatabase(database);
+      this.changeFeedKey = addresses.stream().map(ServerAddress::toString).sorted().collect(Collectors.joining(",")) + "/" + database;
+
+      if (slowOperationLog != null) {
+         slowOperationLog.setClient(mongoClient);
+      }
+      if (indexAdvisor != null) {
+         indexAdvisor.setStorage(this);
+      }
    }
 
    @Override
    public void disconnect() {
+      changeSubscriptions.forEach(MongoDbChangeFeed.Subscription::close);
+      changeSubscriptions.clear();
+
       if (mongoClient != null) {
          mongoClient.close();
+
+         if (slowOperationLog != null) {
+            slowOperationLog.close();
+         }
+         if (indexAdvisor != null) {
+            indexAdvisor.close();
+         }
       }
    }
 
    @Override
-   @SuppressWarnings("unchecked")
-   public List<String> getAllCollections() {
-      if (collectionsCache != null) {
-         collectionsCache.lock(COLLECTION_CACHE);
-         try {
-            if (getCollectionCache() == null || cacheLastUpdated + 5000 < System.currentTimeMillis()) {
-               setCollectionCache(database.listCollectionNames().into(new ArrayList<>()));
-               cacheLastUpdated = System.currentTimeMillis();
-            }
-         } finally {
-            collectionsCache.unlock(COLLECTION_CACHE);
-         }
-
-         return getCollectionCache();
-      } else {
-         return database.listCollectionNames().into(new ArrayList<>());
+   public DataStorage withReadPreference(final ReadPreference readPreference, final long maxStaleness) {
+      final com.mongodb.ReadPreference preference = MongoUtils.convertReadPreference(readPreference, maxStaleness);
+      if (preference.equals(database.getReadPreference())) {
+         return this;
       }
+
+      return views.computeIfAbsent(preference.toString(), k -> createView(database.withReadPreference(preference)));
    }
 
    @Override
-   public void createCollection(final String collectionName) {
-      if (collectionsCache != null) {
-         collectionsCache.lock(COLLECTION_CACHE);
-         try {
-            final List<String> collections = getCollectionCache();
+   public DataStorage withWriteDurability(final WriteDurability writeDurability) {
+      final WriteConcern writeConcern = MongoUtils.convertWriteDurability(writeDurability);
+      if (writeConcern.equals(database.getWriteConcern())) {
+         return this;
+      }
 
-            if (collections != null) {
-               collections.add(collectionName);
-            } else {
-               setCollectionCache(new ArrayList<>(Collections.singletonList(collectionName)));
-            }
+      return views.computeIfAbsent("w:" + writeConcern.toString(), k -> createView(database.withWriteConcern(writeConcern)));
+   }
 
-            database.createCollection(collectionName);
-         } finally {
-            collectionsCache.unlock(COLLECTION_CACHE);
-         }
-      } else {
-         database.createCollection(collectionName);
-      }
+   // the view shares the client, the caches including the collection registry and its reconciliation state, and the monitors;
+   // the client is closed only by this storage
+   private MongoDbStorage createView(final MongoDatabase viewDatabase) {
+      final MongoDbStorage view = new MongoDbStorage();
+      view.database = viewDatabase;
+      view.collectionsCache = collectionsCache;
+      view.changesWatched = changesWatched;
+      view.poolMonitor = poolMonitor;
+      view.slowOperationLog = slowOperationLog;
+      view.indexAdvisor = indexAdvisor;
+
+      return view;
    }
 
    @Override
-   public void dropCollection(final String collectionName) {
-      if (collectionsCache != null) {
-         collectionsCache.lock(COLLECTION_CACHE);
-         try {
-            final List<String> collections = getCollectionCache();
-
-            if (collections != null) {
-               collections.remove(collectionName);
-            }
+   public List<String> getAllCollections() {
+      final Map<String, Long> registry = getCollectionRegistry();
 
-            database.getCollection(collectionName).drop();
-         } finally {
-            collectionsCache.unlock(COLLECTION_CACHE);
-         }
-      } else {
-         database.getCollection(collectionName).drop();
-      }
+      return registry != null ? new ArrayList<>(registry.keySet()) : database.listCollectionNames().into(new ArrayList<>());
    }
 
    @Override
-   public void renameCollection(final String oldCollectionName, final String newCollectionName) {
-      if (collectionsCache != null) {
-         collectionsCache.lock(COLLECTION_CACHE);
-         try {
-            final List<String> collections = getCollectionCache();
+   public void createCollection(final String collectionName) {
+      database.createCollection(collectionName);
+      registerCollection(collectionName);
+   }
 
-            if (collections != null) {
-               collections.remove(oldCollectionName);
-               collections.add(newCollectionName);
-            }
+   @Override
+   public void dropCollection(final String collectionName) {
+      database.getCollection(collectionName).drop();
+      unregisterCollection(collectionName);
+   }
 
-            if (hasCollection(oldCollectionName)) {
-               database.getCollection(oldCollectionName).renameCollection(new MongoNamespace(database.getName(), newCollectionName));
-            }
-         } finally {
-            collectionsCache.unlock(COLLECTION_CACHE);
-         }
-      } else {
-         if (hasCollection(oldCollectionName)) {
-            database.getCollection(oldCollectionName).renameCollection(new MongoNamespace(database.getName(), newCollectionName));
-         }
+   @Override
+   public void renameCollection(final String oldCollectionName, final String newCollectionName) {
+      if (hasCollection(oldCollectionName)) {
+         database.getCollection(oldCollectionName).renameCollection(new MongoNamespace(database.getName(), newCollectionName));
+         unregisterCollection(oldCollectionName);
+         registerCollection(newCollectionName);
       }
    }
 
    @Override
    public boolean hasCollection(final String collectionName) {
-      return getAllCollections().contains(collectionName);
+      final Map<String, Long> registry = getCollectionRegistry();
+
+      return registry != null ? registry.containsKey(collectionName) : database.listCollectionNames().into(new ArrayList<>()).contains(collectionName);
    }
 
    @Override
@@ -233,58 +396,109 @@ public class MongoDbStorage implements DataStorage {
 
    @Override
    public String createDocument(final String collectionName, final DataDocument dataDocument) {
-      Document doc = new Document(dataDocument);
-
-      if (collectionsCache != null) {
-         collectionsCache.lock(COLLECTION_CACHE);
-         try {
-            final List<String> collections = getCollectionCache();
+      DataDocument doc = new DataDocument(dataDocument);
 
-            if (collections != null) {
-               collections.add(collectionName);
-            } else {
-               setCollectionCache(new ArrayList<>(Collections.singletonList(collectionName)));
-            }
+      registerCollection(collectionName);
+      database.getCollection(collectionName, DataDocument.class).insertOne(doc);
 
-            database.getCollection(collectionName).insertOne(doc);
-         } finally {
-            collectionsCache.unlock(COLLECTION_CACHE);
-         }
-      } else {
-         database.getCollection(collectionName).insertOne(doc);
-      }
-      return doc.containsKey(LumeerConst.Document.ID) ? doc.getObjectId(LumeerConst.Document.ID).toString() : null;
+      return doc.containsKey(LumeerConst.Document.ID) ? doc.get(LumeerConst.Document.ID).toString() : null;
    }
 
    @Override
    public List<String> createDocuments(final String collectionName, final List<DataDocument> dataDocuments) {
-      List<Document> documents = dataDocuments.stream()
-                                              .map(MongoUtils::dataDocumentToDocument)
-                                              .collect(Collectors.toList());
+      List<DataDocument> documents = dataDocuments.stream()
+                                                  .map(DataDocument::new)
+                                                  .collect(Collectors.toList());
 
-      if (collectionsCache != null) {
-         collectionsCache.lock(COLLECTION_CACHE);
-         try {
-            final List<String> collections = getCollectionCache();
+      registerCollection(collectionName);
+      database.getCollection(collectionName, DataDocument.class).insertMany(documents, new InsertManyOptions().ordered(false));
 
-            if (collections != null) {
-               collections.add(collectionName);
-            } else {
-               setCollectionCache(new ArrayList<>(Collections.singletonList(collectionName)));
-            }
+      return documents.stream()
+                      .filter(d -> d.containsKey(LumeerConst.Document.ID))
+                      .map(d -> d.get(LumeerConst.Document.ID).toString())
+                      .collect(Collectors.toList());
+   }
 
-            database.getCollection(collectionName).insertMany(documents, new InsertManyOptions().ordered(false));
-         } finally {
-            collectionsCache.unlock(COLLECTION_CACHE);
+   @Override
+   public List<WriteOperationResult> bulkWrite(final String collectionName, final List<WriteOperation> operations, final boolean ordered) {
+      if (operations.isEmpty()) {
+         return Collections.emptyList();
+      }
+
+      final List<WriteModel<DataDocument>> models = operations.stream().map(this::createWriteModel).collect(Collectors.toList());
+      BulkWriteResult writeResult;
+      List<BulkWriteError> writeErrors = Collections.emptyList();
+
+      registerCollection(collectionName);
+      try {
+         writeResult = database.getCollection(collectionName, DataDocument.class).bulkWrite(models, new BulkWriteOptions().ordered(ordered));
+      } catch (MongoBulkWriteException e) {
+         writeResult = e.getWriteResult();
+         writeErrors = e.getWriteErrors();
+      }
+
+      final Map<Integer, String> errors = writeErrors.stream().collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage));
+      final int firstError = ordered && !errors.isEmpty() ? Collections.min(errors.keySet()) : operations.size();
+      final Map<Integer, String> upsertedIds = writeResult.wasAcknowledged() ? writeResult.getUpserts().stream().collect(Collectors.toMap(BulkWriteUpsert::getIndex, u -> idToString(u.getId()))) : Collections.emptyMap();
+
+      final List<WriteOperationResult> results = new ArrayList<>(operations.size());
+      for (int i = 0; i < operations.size(); i++) {
+         final WriteOperation operation = operations.get(i);
+
+         if (errors.containsKey(i)) {
+            results.add(new WriteOperationResult(operation, WriteOperationResult.Status.FAILED, null, errors.get(i)));
+         } else if (i > firstError) {
+            results.add(new WriteOperationResult(operation, WriteOperationResult.Status.NOT_EXECUTED, null, null));
+         } else if (operation.getType() == WriteOperation.Type.CREATE) {
+            final Object id = ((InsertOneModel<DataDocument>) models.get(i)).getDocument().get(LumeerConst.Document.ID);
+            results.add(new WriteOperationResult(operation, WriteOperationResult.Status.SUCCEEDED, id != null ? id.toString() : null, null));
+         } else {
+            results.add(new WriteOperationResult(operation, WriteOperationResult.Status.SUCCEEDED, upsertedIds.get(i), null));
          }
-      } else {
-         database.getCollection(collectionName).insertMany(documents, new InsertManyOptions().ordered(false));
       }
 
-      return documents.stream()
-                      .filter(d -> d.containsKey(LumeerConst.Document.ID))
-                      .map(d -> d.getObjectId(LumeerConst.Document.ID).toString())
-                      .collect(Collectors.toList());
+      return results;
+   }
+
+   private WriteModel<DataDocument> createWriteModel(final WriteOperation operation) {
+      final Bson filter = operation.getFilter() != null ? operation.getFilter().<Bson>get() : new BsonDocument();
+
+      switch (operation.getType()) {
+         case CREATE:
+            return new InsertOneModel<>(new DataDocument(operation.getDocument()));
+         case UPDATE:
+            final DataDocument toUpdate = new DataDocument(operation.getDocument());
+            toUpdate.remove(LumeerConst.Document.ID);
+            return new UpdateOneModel<>(filter, new Document("$set", toUpdate), new UpdateOptions().upsert(true));
+         case REPLACE:
+            final DataDocument toReplace = new DataDocument(operation.getDocument());
+            toReplace.remove(LumeerConst.Document.ID);
+            return new ReplaceOneModel<>(filter, toReplace, new UpdateOptions().upsert(true));
+         case DROP:
+            return new DeleteOneModel<>(filter);
+         case DROP_MANY:
+            return new DeleteManyModel<>(filter);
+         case DROP_ATTRIBUTE:
+            return new UpdateOneModel<>(filter, unset(operation.getAttributeName()));
+         case INCREMENT:
+            return new UpdateOneModel<>(filter, inc(operation.getAttributeName(), operation.getIncBy()));
+         case ADD_ITEMS_TO_ARRAY:
+            return new UpdateOneModel<>(filter, addEachToSet(operation.getAttributeName(), operation.getItems()));
+         case REMOVE_ITEMS_FROM_ARRAY:
+            return new UpdateManyModel<>(filter, pullAll(operation.getAttributeName(), operation.getItems()));
+         default:
+            throw new IllegalArgumentException("Unsupported write operation: " + operation.getType());
+      }
+   }
+
+   private static String idToString(final BsonValue id) {
+      if (id.isObjectId()) {
+         return id.asObjectId().getValue().toString();
+      } else if (id.isString()) {
+         return id.asString().getValue();
+      }
+
+      return id.toString();
    }
 
    @Override
@@ -304,15 +518,12 @@ public class MongoDbStorage implements DataStorage {
 
    @Override
    public DataDocument readDocumentIncludeAttrs(final String collectionName, final DataFilter filter, final List<String> attributes) {
-      Document document = database.getCollection(collectionName).find(filter.<Bson>get()).projection(Projections.include(attributes)).limit(1).first();
-      return document != null ? convertDocument(document) : null;
+      return database.getCollection(collectionName, DataDocument.class).find(filter.<Bson>get()).projection(Projections.include(attributes)).limit(1).first();
    }
 
    @Override
    public DataDocument readDocument(final String collectionName, final DataFilter filter) {
-      Document document = database.getCollection(collectionName).find(filter.<Bson>get()).limit(1).first();
-
-      return document != null ? convertDocument(document) : null;
+      return database.getCollection(collectionName, DataDocument.class).find(filter.<Bson>get()).limit(1).first();
    }
 
    @Override
@@ -345,6 +556,18 @@ public class MongoDbStorage implements DataStorage {
       return database.getCollection(collectionName).count();
    }
 
+   @Override
+   public long estimatedDocumentCount(final String collectionName) {
+      try {
+         final Document collStats = database.runCommand(new Document("collStats", collectionName).append("scale", 1), database.getReadPreference());
+         final Object count = collStats.get("count");
+
+         return count instanceof Number ? ((Number) count).longValue() : 0L;
+      } catch (MongoCommandException e) { // the collection does not exist
+         return 0L;
+      }
+   }
+
    @Override
    public void dropManyDocuments(final String collectionName, final DataFilter filter) {
       database.getCollection(collectionName).deleteMany(filter.<Bson>get());
@@ -436,21 +659,32 @@ public class MongoDbStorage implements DataStorage {
 
    @Override
    public List<DataDocument> run(final DataDocument command) {
-      return run(MongoUtils.dataDocumentToDocument(command));
+      return run(new Document(command));
    }
 
+   @SuppressWarnings("unchecked")
    private List<DataDocument> run(final Bson command) {
-      final List<DataDocument> result = new ArrayList<>();
-
-      Document cursor = (Document) database.runCommand(command).get(CURSOR_KEY);
+      final DataDocument cursor = database.runCommand(withWriteConcern(command), DataDocument.class).getDataDocument(CURSOR_KEY);
 
       if (cursor != null) {
-         ((ArrayList<Document>) cursor.get(FIRST_BATCH_KEY)).forEach(d -> {
-            result.add(convertDocument(d));
-         });
+         return (List<DataDocument>) cursor.get(FIRST_BATCH_KEY);
       }
 
-      return result;
+      return new ArrayList<>();
+   }
+
+   // commands do not take the write concern of the database, write commands get it explicitly unless they specify their own
+   private Bson withWriteConcern(final Bson command) {
+      if (database.getWriteConcern().isServerDefault()) {
+         return command;
+      }
+
+      final BsonDocument document = command.toBsonDocument(BsonDocument.class, database.getCodecRegistry());
+      if (document.isEmpty() || !WRITE_COMMANDS.contains(document.keySet().iterator().next()) || document.containsKey(WRITE_CONCERN_KEY)) {
+         return command;
+      }
+
+      return document.append(WRITE_CONCERN_KEY, database.getWriteConcern().asDocument());
    }
 
    @Override
@@ -465,8 +699,57 @@ public class MongoDbStorage implements DataStorage {
 
    @Override
    public List<DataDocument> search(String collectionName, DataFilter filter, final DataSort sort, List<String> attributes, final int skip, int limit) {
-      MongoCollection<Document> collection = database.getCollection(collectionName);
-      FindIterable<Document> documents = filter != null ? collection.find(filter.<Bson>get()) : collection.find();
+      return convertIterableToList(find(collectionName, filter, sort, attributes, skip, limit));
+   }
+
+   @Override
+   public Stream<DataDocument> searchStream(final String collectionName, final DataFilter filter, final DataSort sort, final List<String> attributes, final int batchSize) {
+      final FindIterable<DataDocument> documents = find(collectionName, filter, sort, attributes, 0, 0);
+      if (batchSize > 0) {
+         documents.batchSize(batchSize);
+      }
+
+      return convertIterableToStream(documents);
+   }
+
+   @Override
+   public DataPage searchPage(final String collectionName, final DataFilter filter, final DataSort sort, final String pageToken, final int limit) {
+      final LinkedHashMap<String, Integer> sortKeys = MongoUtils.getSortKeys(sort != null ? sort.<Bson>get().toBsonDocument(BsonDocument.class, database.getCodecRegistry()) : null);
+      final List<Bson> filters = new ArrayList<>();
+
+      if (filter != null) {
+         filters.add(filter.get());
+      }
+
+      if (pageToken != null) {
+         final Bson seek = MongoUtils.seekFilter(sortKeys, getPageTokenValues(MongoUtils.decodePageToken(pageToken), sortKeys.size()), false);
+         if (seek == null) {
+            return new DataPage(new ArrayList<>(), null);
+         }
+         filters.add(seek);
+      }
+
+      final FindIterable<DataDocument> documents = database.getCollection(collectionName, DataDocument.class)
+                                                           .find(filters.isEmpty() ? new BsonDocument() : and(filters))
+                                                           .sort(new BasicDBObject(sortKeys));
+      if (limit > 0) {
+         documents.limit(limit + 1);
+      }
+
+      final List<DataDocument> result = documents.into(new ArrayList<>());
+      if (limit > 0 && result.size() > limit) {
+         result.remove(limit);
+         final List<Object> position = MongoUtils.getSortValues(result.get(limit - 1), sortKeys.keySet());
+
+         return new DataPage(result, MongoUtils.encodePageToken(new Document(PAGE_TOKEN_VALUES, position)));
+      }
+
+      return new DataPage(result, null);
+   }
+
+   private FindIterable<DataDocument> find(final String collectionName, final DataFilter filter, final DataSort sort, final List<String> attributes, final int skip, final int limit) {
+      MongoCollection<DataDocument> collection = database.getCollection(collectionName, DataDocument.class);
+      FindIterable<DataDocument> documents = filter != null ? collection.find(filter.<Bson>get()) : collection.find();
       if (sort != null) {
          documents = documents.sort(sort.<Bson>get());
       }
@@ -480,7 +763,7 @@ public class MongoDbStorage implements DataStorage {
          documents = documents.limit(limit);
       }
 
-      return convertIterableToList(documents);
+      return documents;
    }
 
    @Override
@@ -492,56 +775,174 @@ public class MongoDbStorage implements DataStorage {
 
    @Override
    public List<DataDocument> query(final Query query) {
-      List<DataDocument> result = new LinkedList<>();
-      List<DataDocument> stages = new LinkedList<>();
+      final List<DataDocument> result = new LinkedList<>();
+      final DataDocument[] stages = MongoUtils.queryStages(query);
+
+      query.getCollections().forEach(collection -> {
+         result.addAll(aggregate(collection, stages));
+      });
+
+      return result;
+   }
 
-      if (query.getFilters().size() > 0) {
-         final DataDocument filters = new DataDocument();
-         filters.put("$match", query.getFilters());
-         stages.add(filters);
+   @Override
+   public List<DataDocument> unionQuery(final Query query) {
+      final int skip = query.getSkip() != null ? Math.max(query.getSkip(), 0) : 0;
+      final int limit = query.getLimit() != null ? Math.max(query.getLimit(), 0) : 0;
+      final Query collectionQuery = new Query(null, query.getFilters(), query.getProjections(), query.getSorting(), limit > 0 ? skip + limit : null, null);
+      final List<Document> stages = new LinkedList<>();
+      for (final DataDocument d : MongoUtils.queryStages(collectionQuery)) {
+         stages.add(new Document(d));
       }
 
-      if (query.getGrouping().size() > 0) {
-         final DataDocument grouping = new DataDocument();
-         grouping.put("$group", query.getGrouping());
-         stages.add(grouping);
+      // cursors are opened lazily and read in small batches so that only the documents reaching the page are transferred
+      final Map<String, Supplier<Iterator<DataDocument>>> sources = new LinkedHashMap<>();
+      query.getCollections().forEach(collection -> sources.put(collection, () ->
+            database.getCollection(collection, DataDocument.class).aggregate(stages).batchSize(limit > 0 ? Math.min(skip + limit, UNION_QUERY_BATCH_SIZE) : UNION_QUERY_BATCH_SIZE).iterator()));
+
+      return new DataDocumentComparator(query.getSorting()).merge(sources, skip, limit);
+   }
+
+   @Override
+   public DataPage unionQueryPage(final Query query, final String pageToken) {
+      final int limit = query.getLimit() != null ? Math.max(query.getLimit(), 0) : 0;
+      final DataDocument sorting = query.getSorting() != null ? query.getSorting() : new DataDocument();
+      final LinkedHashMap<String, Integer> sortKeys = MongoUtils.getSortKeys(sorting);
+
+      // across the collections, the documents are ordered by the query sorting only, the id orders them within a collection
+      final LinkedHashMap<String, Integer> querySortKeys = new LinkedHashMap<>(sortKeys);
+      if (!sorting.containsKey(LumeerConst.Document.ID)) {
+         querySortKeys.remove(LumeerConst.Document.ID);
       }
 
-      if (query.getProjections().size() > 0) {
-         final DataDocument projections = new DataDocument();
-         projections.put("$project", query.getProjections());
-         stages.add(projections);
+      // the sort attributes are projected even when the query does not ask for them, they are removed once the next page token is built
+      final Set<String> hiddenAttributes = new HashSet<>();
+      final Document projection = query.getProjections() != null && !query.getProjections().isEmpty()
+            ? getPageProjection(query.getProjections(), sortKeys.keySet(), hiddenAttributes) : null;
+
+      final List<String> collections = new ArrayList<>(query.getCollections());
+      int pageCollection = -1;
+      List<Object> position = null;
+      if (pageToken != null) {
+         final Document token = MongoUtils.decodePageToken(pageToken);
+         pageCollection = token.getInteger(PAGE_TOKEN_COLLECTION, -1);
+         position = getPageTokenValues(token, sortKeys.size());
       }
 
-      if (query.getSorting().size() > 0) {
-         final DataDocument sorts = new DataDocument();
-         sorts.put("$sort", query.getSorting());
-         stages.add(sorts);
+      final Map<String, Supplier<Iterator<DataDocument>>> sources = new LinkedHashMap<>();
+      for (int i = 0; i < collections.size(); i++) {
+         final List<Bson> filters = new ArrayList<>();
+         if (query.getFilters() != null && !query.getFilters().isEmpty()) {
+            filters.add(new Document(query.getFilters()));
+         }
+
+         if (position != null) {
+            final Bson seek = i == pageCollection ? MongoUtils.seekFilter(sortKeys, position, false)
+                  : MongoUtils.seekFilter(querySortKeys, position.subList(0, querySortKeys.size()), i > pageCollection);
+            if (seek == null) {
+               continue;
+            }
+            filters.add(seek);
+         }
+
+         final List<Bson> stages = new ArrayList<>();
+         stages.add(match(filters.isEmpty() ? new BsonDocument() : and(filters)));
+         stages.add(sort(new BasicDBObject(sortKeys)));
+         if (limit > 0) {
+            stages.add(limit(limit + 1));
+         }
+         if (projection != null) {
+            stages.add(project(projection));
+         }
+
+         final String collection = collections.get(i);
+         sources.put(collection, () -> database.getCollection(collection, DataDocument.class).aggregate(stages)
+                                               .batchSize(limit > 0 ? Math.min(limit + 1, UNION_QUERY_BATCH_SIZE) : UNION_QUERY_BATCH_SIZE).iterator());
       }
 
-      if (query.getSkip() != null && query.getSkip() > 0) {
-         final DataDocument skip = new DataDocument();
-         skip.put("$skip", query.getSkip());
-         stages.add(skip);
+      final List<DataDocument> result = new DataDocumentComparator(sorting).merge(sources, 0, limit > 0 ? limit + 1 : 0);
+      if (limit > 0 && result.size() > limit) {
+         result.remove(limit);
+         final DataDocument last = result.get(limit - 1);
+         final Document token = new Document(PAGE_TOKEN_VALUES, MongoUtils.getSortValues(last, sortKeys.keySet()))
+               .append(PAGE_TOKEN_COLLECTION, collections.indexOf(last.getString(LumeerConst.Document.COLLECTION_NAME)));
+         result.forEach(document -> hiddenAttributes.forEach(attribute -> removeAttribute(document, attribute)));
+
+         return new DataPage(result, MongoUtils.encodePageToken(token));
       }
 
-      if (query.getLimit() != null && query.getLimit() > 0) {
-         final DataDocument limit = new DataDocument();
-         limit.put("$limit", query.getLimit());
-         stages.add(limit);
+      result.forEach(document -> hiddenAttributes.forEach(attribute -> removeAttribute(document, attribute)));
+
+      return new DataPage(result, null);
+   }
+
+   private static List<Object> getPageTokenValues(final Document token, final int size) {
+      final Object values = token.get(PAGE_TOKEN_VALUES);
+
+      if (!(values instanceof List) || ((List<?>) values).size() != size) {
+         throw new IllegalArgumentException("The page token does not match the sort specification.");
       }
 
-      if (query.getOutput() != null && !query.getOutput().isEmpty()) {
-         final DataDocument output = new DataDocument();
-         output.put("$out", query.getOutput());
-         stages.add(output);
+      return new ArrayList<>((List<?>) values);
+   }
+
+   /**
+    * Gets the projection of the documents of a page that keeps the sort attributes, these are needed to merge the collections
+    * and to create the next page token.
+    *
+    * @param projections
+    *       The projection requested by the query.
+    * @param sortAttributes
+    *       The attributes the documents are sorted by.
+    * @param hiddenAttributes
+    *       Collects the attributes projected only because of the sorting, they must be removed from the documents afterwards.
+    * @return The projection of the documents.
+    */
+   private static Document getPageProjection(final DataDocument projections, final Set<String> sortAttributes, final Set<String> hiddenAttributes) {
+      final Document projection = new Document(projections);
+
+      final boolean inclusive = projections.values().stream().anyMatch(MongoDbStorage::isIncluded);
+      for (final String attribute : sortAttributes) {
+         if (inclusive) {
+            // the id is included unless it is excluded explicitly, the nested attributes are included with their parent documents
+            final boolean included = isIncluded(projection.get(attribute)) || (!projection.containsKey(attribute) && LumeerConst.Document.ID.equals(attribute))
+                  || projection.entrySet().stream().anyMatch(e -> attribute.startsWith(e.getKey() + ".") && isIncluded(e.getValue()));
+            if (!included) {
+               projection.put(attribute, 1);
+               hiddenAttributes.add(attribute);
+            }
+         } else {
+            // excluding a parent document excludes the sort attributes nested in it
+            new ArrayList<>(projection.keySet()).stream()
+                                                .filter(excluded -> attribute.equals(excluded) || attribute.startsWith(excluded + "."))
+                                                .forEach(excluded -> {
+                                                   projection.remove(excluded);
+                                                   hiddenAttributes.add(excluded);
+                                                });
+         }
       }
 
-      query.getCollections().forEach(collection -> {
-         result.addAll(aggregate(collection, stages.toArray(new DataDocument[stages.size()])));
-      });
+      return projection;
+   }
 
-      return result;
+   private static boolean isIncluded(final Object value) {
+      return Boolean.TRUE.equals(value) || (value instanceof Number && ((Number) value).intValue() != 0);
+   }
+
+   // nested attributes are separated by dots
+   private static void removeAttribute(final Map<String, Object> document, final String attribute) {
+      final int separator = attribute.indexOf('.');
+
+      if (separator < 0) {
+         document.remove(attribute);
+      } else {
+         final Object parent = document.get(attribute.substring(0, separator));
+         if (parent instanceof Map) {
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> nested = (Map<String, Object>) parent;
+            removeAttribute(nested, attribute.substring(separator + 1));
+         }
+      }
    }
 
    @Override
@@ -550,18 +951,31 @@ public class MongoDbStorage implements DataStorage {
          return Collections.emptyList();
       }
 
-      final List<DataDocument> result = new LinkedList<>();
       final List<Document> documents = new LinkedList<>();
       for (final DataDocument d : stages) {
-         documents.add(MongoUtils.dataDocumentToDocument(d));
+         documents.add(new Document(d));
       }
 
-      AggregateIterable<Document> resultDocuments = database.getCollection(collectionName).aggregate(documents);
-      resultDocuments.into(new LinkedList<>()).forEach(d -> {
-         result.add(convertDocument(d));
-      });
+      return database.getCollection(collectionName, DataDocument.class).aggregate(documents).into(new LinkedList<>());
+   }
 
-      return result;
+   @Override
+   public Stream<DataDocument> aggregateStream(final String collectionName, final int batchSize, final DataDocument... stages) {
+      if (stages == null || stages.length == 0) {
+         return Stream.empty();
+      }
+
+      final List<Document> documents = new LinkedList<>();
+      for (final DataDocument d : stages) {
+         documents.add(new Document(d));
+      }
+
+      final AggregateIterable<DataDocument> resultDocuments = database.getCollection(collectionName, DataDocument.class).aggregate(documents);
+      if (batchSize > 0) {
+         resultDocuments.batchSize(batchSize);
+      }
+
+      return convertIterableToStream(resultDocuments);
    }
 
    @Override
@@ -570,49 +984,61 @@ public class MongoDbStorage implements DataStorage {
    }
 
    @Override
-   public synchronized int getNextSequenceNo(final String collectionName, final String indexAttribute, final String index) {
-      final FindOneAndUpdateOptions options = new FindOneAndUpdateOptions();
-      options.returnDocument(ReturnDocument.AFTER);
-
-      final Document doc = database.getCollection(collectionName).findOneAndUpdate(eq(indexAttribute, index), inc("seq", 1),
-            options);
+   public int getNextSequenceNo(final String collectionName, final String indexAttribute, final String index) {
+      return allocateSequenceBlock(collectionName, indexAttribute, index, 1);
+   }
 
-      if (doc == null) { // the sequence did not exist
-         resetSequence(collectionName, indexAttribute, index);
-         return 0;
-      } else {
-         return doc.getInteger("seq");
-      }
+   @Override
+   public void resetSequence(final String collectionName, final String indexAttribute, final String index) {
+      database.getCollection(collectionName).updateOne(eq(indexAttribute, index), set("seq", 0), new UpdateOptions().upsert(true));
    }
 
    @Override
-   public synchronized void resetSequence(final String collectionName, final String indexAttribute, final String index) {
-      final FindOneAndUpdateOptions options = new FindOneAndUpdateOptions();
-      options.returnDocument(ReturnDocument.AFTER);
+   public int allocateSequenceBlock(final String collectionName, final String indexAttribute, final String index, final int blockSize) {
+      final MongoCollection<Document> collection = database.getCollection(collectionName);
+      final FindOneAndUpdateOptions options = new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER);
 
-      final Document doc = database.getCollection(collectionName).findOneAndUpdate(eq(indexAttribute, index), set("seq", 0),
-            options);
+      while (true) {
+         final Document doc = collection.findOneAndUpdate(eq(indexAttribute, index), inc("seq", blockSize), options);
+
+         if (doc != null) {
+            return doc.getInteger("seq") - blockSize + 1;
+         }
 
-      if (doc == null) {
-         Document newSeq = new Document();
-         newSeq.put(indexAttribute, index);
-         newSeq.put("seq", 0);
-         database.getCollection(collectionName).insertOne(newSeq);
+         try { // the sequence did not exist
+            collection.insertOne(new Document(indexAttribute, index).append("seq", blockSize - 1));
+            return 0;
+         } catch (MongoWriteException e) {
+            if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+               throw e;
+            }
+            // the sequence was created by someone else in the meantime, allocate from there
+         }
       }
    }
 
    @Override
    public void createIndex(final String collectionName, final DataDocument indexAttributes, boolean unique) {
-      database.getCollection(collectionName).createIndex(MongoUtils.dataDocumentToDocument(indexAttributes), new IndexOptions().unique(unique));
+      database.getCollection(collectionName).createIndex(new Document(indexAttributes), new IndexOptions().unique(unique).background(true));
+   }
+
+   /**
+    * Creates an index with the given name. Creating an index with the same name and keys again does nothing.
+    *
+    * @param collectionName
+    *       Name of the collection.
+    * @param indexName
+    *       Name of the index.
+    * @param indexAttributes
+    *       Names of atributes and their index types to create index on.
+    */
+   void createIndex(final String collectionName, final String indexName, final DataDocument indexAttributes) {
+      database.getCollection(collectionName).createIndex(new Document(indexAttributes), new IndexOptions().name(indexName).background(true));
    }
 
    @Override
    public List<DataDocument> listIndexes(final String collectionName) {
-      final List<DataDocument> result = new ArrayList<>();
-
-      ((Iterable<Document>) database.getCollection(collectionName).listIndexes()).forEach(d -> result.add(new DataDocument(d)));
-
-      return result;
+      return database.getCollection(collectionName).listIndexes(DataDocument.class).into(new ArrayList<>());
    }
 
    @Override
@@ -623,13 +1049,13 @@ public class MongoDbStorage implements DataStorage {
    @Override
    public void invalidateCaches() {
       if (collectionsCache != null) {
-         collectionsCache.remove(COLLECTION_CACHE);
+         collectionsCache.remove(Cache.DEFAULT_ENTRY_KEY);
       }
    }
 
    @Override
    public DataStorageStats getDbStats() {
-      final Document dbStats = database.runCommand(Document.parse("{ dbStats: 1, scale: 1 }"));
+      final Document dbStats = database.runCommand(Document.parse("{ dbStats: 1, scale: 1 }"), database.getReadPreference());
       final DataStorageStats dss = new DataStorageStats();
 
       dss.setDatabaseName(dbStats.getString("db"));
@@ -645,7 +1071,7 @@ public class MongoDbStorage implements DataStorage {
 
    @Override
    public DataStorageStats getCollectionStats(final String collectionName) {
-      final Document collStats = database.runCommand(Document.parse("{ collStats: \"" + collectionName + "\", scale: 1, verbose: false }"));
+      final Document collStats = database.runCommand(Document.parse("{ collStats: \"" + collectionName + "\", scale: 1, verbose: false }"), database.getReadPreference());
       final DataStorageStats dss = new DataStorageStats();
 
       final String ns = collStats.getString("ns");
@@ -661,20 +1087,64 @@ public class MongoDbStorage implements DataStorage {
       return dss;
    }
 
-   private List<DataDocument> convertIterableToList(MongoIterable<Document> documents) {
-      final List<DataDocument> result = new ArrayList<>();
-      documents.into(new ArrayList<>()).forEach(d -> {
-         result.add(convertDocument(d));
-      });
+   @Override
+   public List<ConnectionPoolStats> getConnectionPoolStats() {
+      return poolMonitor != null ? poolMonitor.getStats() : Collections.emptyList();
+   }
 
-      return result;
+   @Override
+   public List<SlowOperation> getSlowOperations() {
+      return slowOperationLog != null ? slowOperationLog.getOperations() : Collections.emptyList();
    }
 
-   private DataDocument convertDocument(Document document) {
-      MongoUtils.replaceId(document);
-      DataDocument dataDocument = new DataDocument(document);
-      MongoUtils.convertNestedAndListDocuments(dataDocument);
-      return dataDocument;
+   @Override
+   public List<IndexRecommendation> getIndexRecommendations() {
+      return indexAdvisor != null ? indexAdvisor.getRecommendations() : Collections.emptyList();
+   }
+
+   /**
+    * Watches the changes by following the oplog, so the server must be a member of a replica set. The oplog is followed
+    * only once for all the storages connected to the same database, see {@link MongoDbChangeFeed}. Storages created by
+    * {@link #withReadPreference(ReadPreference, long)} cannot watch the changes, the storage they were created from watches them.
+    */
+   @Override
+   public boolean watchChanges(final Set<String> documentCollectionPrefixes, final Consumer<DataChangeEvent> listener) {
+      if (mongoClient == null) {
+         return false;
+      }
+
+      changeSubscriptions.add(MongoDbChangeFeed.subscribe(changeFeedKey, mongoClient, database.getName(), documentCollectionPrefixes, event -> {
+         // the listener may drop the caches, so the registry is updated afterwards
+         listener.accept(event);
+         updateCollectionRegistry(event);
+      }));
+
+      return true;
+   }
+
+   private List<DataDocument> convertIterableToList(MongoIterable<DataDocument> documents) {
+      return documents.into(new ArrayList<>());
+   }
+
+   private Stream<DataDocument> convertIterableToStream(final MongoIterable<DataDocument> documents) {
+      final MongoCursor<DataDocument> cursor = documents.iterator();
+
+      return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                          .onClose(cursor::close);
+   }
+
+   /**
+    * Known collection names, each mapped to the time it was registered, together with the time of the last reconciliation
+    * with the database.
+    */
+   private static class CollectionRegistry extends ConcurrentHashMap<String, Long> {
+
+      private static final long serialVersionUID = -4529180497165870322L;
+
+      /**
+       * Time of the last reconciliation, 0 when the registry was not loaded yet.
+       */
+      private volatile long lastUpdated = 0L;
    }
 
 }
\ No newline at end of file
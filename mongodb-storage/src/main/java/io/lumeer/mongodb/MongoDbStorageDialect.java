@@ -77,6 +77,15 @@ public class MongoDbStorageDialect implements DataStorageDialect {
             new DataDocument("$project", new DataDocument(LumeerConst.UserGroup.ATTR_USERS_USER, concatFields("$" + LumeerConst.UserGroup.ATTR_USERS, LumeerConst.UserGroup.ATTR_USERS_USER))) };
    }
 
+   @Override
+   public DataDocument[] attributeValueCountsAggregate(final String attributeName, final int limit) {
+      return new DataDocument[] { new DataDocument("$match", new DataDocument(attributeName, new DataDocument("$exists", true))),
+            new DataDocument("$group", new DataDocument(LumeerConst.Document.ID, "$" + attributeName).append("count", new DataDocument("$sum", 1))),
+            new DataDocument("$sort", new DataDocument("count", -1)),
+            new DataDocument("$limit", limit),
+            new DataDocument("$project", new DataDocument("value", "$" + LumeerConst.Document.ID).append("count", 1).append(LumeerConst.Document.ID, 0)) };
+   }
+
    private DataFilter createFilter(final Bson filter) {
       return new MongoDbDataFilter(filter);
    }
@@ -22,10 +22,12 @@ package io.lumeer.mongodb;
 import io.lumeer.engine.api.cache.Cache;
 import io.lumeer.engine.api.cache.CacheFactory;
 import io.lumeer.engine.api.cache.CacheProvider;
+import io.lumeer.engine.api.data.AsyncDataStorage;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.DataStorageFactory;
 import io.lumeer.engine.api.data.StorageConnection;
+import io.lumeer.engine.api.data.StorageConnectionOptions;
 
 import java.util.List;
 import javax.enterprise.context.ApplicationScoped;
@@ -37,10 +39,18 @@ import javax.enterprise.context.ApplicationScoped;
 public class MongoDbStorageFactory implements DataStorageFactory {
 
    @Override
-   public DataStorage getStorage(final CacheProvider cacheProvider, final List<StorageConnection> connections, final String database, final Boolean useSsl) {
+   public DataStorage getStorage(final CacheProvider cacheProvider, final List<StorageConnection> connections, final String database, final Boolean useSsl, final StorageConnectionOptions options) {
       final DataStorage storage = new MongoDbStorage();
       storage.setCacheProvider(cacheProvider);
-      storage.connect(connections, database, useSsl);
+      storage.connect(connections, database, useSsl, options);
+
+      return storage;
+   }
+
+   @Override
+   public AsyncDataStorage getAsyncStorage(final List<StorageConnection> connections, final String database, final Boolean useSsl, final StorageConnectionOptions options) {
+      final AsyncDataStorage storage = new MongoDbAsyncStorage();
+      storage.connect(connections, database, useSsl, options);
 
       return storage;
    }
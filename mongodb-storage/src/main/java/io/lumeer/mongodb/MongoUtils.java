@@ -21,52 +21,272 @@ package io.lumeer.mongodb;
 
 import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.Query;
+import io.lumeer.engine.api.data.WriteDurability;
+import io.lumeer.mongodb.codecs.BigDecimalCodec;
+import io.lumeer.mongodb.codecs.DataDocumentCodecProvider;
 
 import com.mongodb.MongoClient;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.model.Filters;
 import org.bson.BsonDocument;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.codecs.BsonTypeClassMap;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.conversions.Bson;
+import org.bson.json.JsonParseException;
+import org.bson.json.JsonWriterSettings;
 import org.bson.types.ObjectId;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author <a href="kubedo8@gmail.com">Jakub Rodák</a>
  */
 public class MongoUtils {
 
+   private static final CodecRegistry CODEC_REGISTRY = CodecRegistries.fromRegistries(CodecRegistries.fromCodecs(new BigDecimalCodec()),
+         CodecRegistries.fromProviders(new DataDocumentCodecProvider()), MongoClient.getDefaultCodecRegistry());
+
    private MongoUtils() {
 
    }
 
-   public static String convertBsonToJson(Bson object) {
-      return object.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry()).toJson();
+   /**
+    * Gets the codec registry used by both the synchronous and the asynchronous storage.
+    *
+    * @return The codec registry decoding query results straight to {@link DataDocument}.
+    */
+   public static CodecRegistry getCodecRegistry() {
+      return CODEC_REGISTRY;
+   }
+
+   /**
+    * Converts the read preference to the one of the driver.
+    *
+    * @param readPreference
+    *       The read preference to convert.
+    * @param maxStaleness
+    *       Maximal replication lag of secondaries in seconds, 0 means no limit.
+    * @return The driver read preference.
+    */
+   public static ReadPreference convertReadPreference(final io.lumeer.engine.api.data.ReadPreference readPreference, final long maxStaleness) {
+      switch (readPreference) {
+         case PRIMARY_PREFERRED:
+            return maxStaleness > 0 ? ReadPreference.primaryPreferred(maxStaleness, TimeUnit.SECONDS) : ReadPreference.primaryPreferred();
+         case SECONDARY:
+            return maxStaleness > 0 ? ReadPreference.secondary(maxStaleness, TimeUnit.SECONDS) : ReadPreference.secondary();
+         case SECONDARY_PREFERRED:
+            return maxStaleness > 0 ? ReadPreference.secondaryPreferred(maxStaleness, TimeUnit.SECONDS) : ReadPreference.secondaryPreferred();
+         case NEAREST:
+            return maxStaleness > 0 ? ReadPreference.nearest(maxStaleness, TimeUnit.SECONDS) : ReadPreference.nearest();
+         default:
+            return ReadPreference.primary();
+      }
+   }
+
+   /**
+    * Converts the write durability to the write concern of the driver.
+    *
+    * @param writeDurability
+    *       The write durability to convert.
+    * @return The driver write concern.
+    */
+   public static WriteConcern convertWriteDurability(final WriteDurability writeDurability) {
+      switch (writeDurability) {
+         case UNACKNOWLEDGED:
+            return WriteConcern.UNACKNOWLEDGED;
+         case JOURNALED:
+            return WriteConcern.JOURNALED;
+         case MAJORITY:
+            return WriteConcern.MAJORITY;
+         default:
+            return WriteConcern.ACKNOWLEDGED;
+      }
+   }
+
+   /**
+    * Translates the query to the stages of an aggregation pipeline.
+    *
+    * @param query
+    *       The query to translate.
+    * @return The aggregation pipeline stages in the order of filtering, grouping, projection, sorting, skip, limit and output.
+    */
+   public static DataDocument[] queryStages(final Query query) {
+      final List<DataDocument> stages = new ArrayList<>();
+
+      if (query.getFilters().size() > 0) {
+         stages.add(new DataDocument("$match", query.getFilters()));
+      }
+
+      if (query.getGrouping().size() > 0) {
+         stages.add(new DataDocument("$group", query.getGrouping()));
+      }
+
+      if (query.getProjections().size() > 0) {
+         stages.add(new DataDocument("$project", query.getProjections()));
+      }
+
+      if (query.getSorting().size() > 0) {
+         stages.add(new DataDocument("$sort", query.getSorting()));
+      }
+
+      if (query.getSkip() != null && query.getSkip() > 0) {
+         stages.add(new DataDocument("$skip", query.getSkip()));
+      }
+
+      if (query.getLimit() != null && query.getLimit() > 0) {
+         stages.add(new DataDocument("$limit", query.getLimit()));
+      }
+
+      if (query.getOutput() != null && !query.getOutput().isEmpty()) {
+         stages.add(new DataDocument("$out", query.getOutput()));
+      }
+
+      return stages.toArray(new DataDocument[stages.size()]);
+   }
+
+   /**
+    * Gets the attributes and directions of a sort specification completed with the document id as the last attribute,
+    * so that the order of documents is always total as required by keyset pagination.
+    *
+    * @param sort
+    *       The sort specification, either a {@link BsonDocument} or a {@link DataDocument}, null for no sorting.
+    * @return The sort attributes mapped to 1 for ascending and -1 for descending order.
+    */
+   public static LinkedHashMap<String, Integer> getSortKeys(final Map<String, ?> sort) {
+      final LinkedHashMap<String, Integer> keys = new LinkedHashMap<>();
+
+      if (sort != null) {
+         sort.forEach((attribute, direction) -> {
+            final boolean descending = direction instanceof BsonValue ? ((BsonValue) direction).isNumber() && ((BsonValue) direction).asNumber().intValue() < 0
+                  : direction instanceof Number && ((Number) direction).intValue() < 0;
+            keys.put(attribute, descending ? -1 : 1);
+         });
+      }
+      keys.putIfAbsent(LumeerConst.Document.ID, 1);
+
+      return keys;
    }
 
-   public static void convertNestedAndListDocuments(DataDocument dataDocument) {
-      for (String key : dataDocument.keySet()) {
-         Object value = dataDocument.get(key);
-         if (isDocument(value)) {
-            DataDocument converted = new DataDocument((Document) value);
-            dataDocument.replace(key, converted);
-            convertNestedAndListDocuments(converted);
-         } else if (isList(value)) {
-            List l = (List) value;
-            if (!l.isEmpty() && isDocument(l.get(0))) {
-               ArrayList<DataDocument> docs = new ArrayList<>(l.size());
-               dataDocument.replace(key, docs);
-               for (Object o : l) {
-                  if (!isDocument(o)) {
-                     continue;
-                  }
-                  DataDocument d = new DataDocument((Document) o);
-                  docs.add(d);
-                  convertNestedAndListDocuments(d);
-               }
-            }
+   /**
+    * Gets the values of the sort attributes of the given document as they are stored in the database.
+    *
+    * @param document
+    *       The document to read the values from.
+    * @param attributes
+    *       The sort attributes, nested attributes are separated by a dot.
+    * @return The attribute values in the order of the attributes, null for the missing ones.
+    */
+   public static List<Object> getSortValues(final DataDocument document, final Collection<String> attributes) {
+      final List<Object> values = new ArrayList<>();
+
+      for (final String attribute : attributes) {
+         Object value = document;
+         for (final String key : attribute.split("\\.")) {
+            value = value instanceof Map ? ((Map<?, ?>) value).get(key) : null;
+         }
+
+         // the codec exposes the ids as strings, but they are stored as object ids
+         if ((attribute.equals(LumeerConst.Document.ID) || attribute.endsWith("." + LumeerConst.Document.ID)) && value instanceof String && ObjectId.isValid((String) value)) {
+            value = new ObjectId((String) value);
+         }
+
+         values.add(value);
+      }
+
+      return values;
+   }
+
+   /**
+    * Creates a filter matching the documents that follow the given position in the order given by the sort attributes.
+    *
+    * @param sortKeys
+    *       The sort attributes mapped to 1 for ascending and -1 for descending order.
+    * @param values
+    *       The values of the sort attributes at the position.
+    * @param inclusive
+    *       Whether the documents with exactly the given values should match as well.
+    * @return The filter, or null when no document can follow the position.
+    */
+   public static Bson seekFilter(final Map<String, Integer> sortKeys, final List<Object> values, final boolean inclusive) {
+      final List<Bson> alternatives = new ArrayList<>();
+      final List<Bson> equalities = new ArrayList<>();
+      int i = 0;
+
+      for (final Map.Entry<String, Integer> key : sortKeys.entrySet()) {
+         final Object value = values.get(i++);
+         final Bson following;
+
+         if (value == null) { // null and missing values come first in the sort order
+            following = key.getValue() > 0 ? Filters.ne(key.getKey(), null) : null;
+         } else {
+            following = key.getValue() > 0 ? Filters.gt(key.getKey(), value) : Filters.or(Filters.lt(key.getKey(), value), Filters.eq(key.getKey(), null));
          }
+
+         if (following != null) {
+            final List<Bson> alternative = new ArrayList<>(equalities);
+            alternative.add(following);
+            alternatives.add(alternative.size() == 1 ? following : Filters.and(alternative));
+         }
+
+         equalities.add(Filters.eq(key.getKey(), value));
       }
+
+      if (inclusive) {
+         alternatives.add(equalities.isEmpty() ? new BsonDocument() : Filters.and(equalities));
+      }
+
+      if (alternatives.isEmpty()) {
+         return null;
+      }
+
+      return alternatives.size() == 1 ? alternatives.get(0) : Filters.or(alternatives);
+   }
+
+   /**
+    * Encodes the position of a keyset pagination to an opaque token that preserves the types of the values.
+    *
+    * @param position
+    *       The position to encode.
+    * @return The page token.
+    */
+   public static String encodePageToken(final Document position) {
+      final String json = position.toJson(new JsonWriterSettings(), new DocumentCodec(getCodecRegistry(), new BsonTypeClassMap()));
+
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+   }
+
+   /**
+    * Decodes the position of a keyset pagination from a token created by {@link #encodePageToken(Document)}.
+    *
+    * @param pageToken
+    *       The page token to decode.
+    * @return The decoded position.
+    * @throws IllegalArgumentException
+    *       When the token is not valid.
+    */
+   public static Document decodePageToken(final String pageToken) {
+      try {
+         return Document.parse(new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8));
+      } catch (JsonParseException | IllegalArgumentException e) {
+         throw new IllegalArgumentException("Invalid page token: " + pageToken, e);
+      }
+   }
+
+   public static String convertBsonToJson(Bson object) {
+      return object.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry()).toJson();
    }
 
    /**
@@ -86,32 +306,10 @@ public class MongoUtils {
       return new Document(dataDocument);
    }
 
-   public static void replaceId(final Document document) {
-      Object docId = document.get(LumeerConst.Document.ID);
-      if (docId instanceof ObjectId) { // classic document
-         document.replace(LumeerConst.Document.ID, docId.toString());
-      } else if (docId instanceof Document) { // shadow document
-         Document d = (Document) docId;
-         if (d.containsKey(LumeerConst.Document.ID)) {
-            d.replace(LumeerConst.Document.ID, d.getObjectId(LumeerConst.Document.ID).toString());
-         }
-         DataDocument doc = new DataDocument(d);
-         document.replace(LumeerConst.Document.ID, doc);
-      }
-   }
-
    public static boolean isDataDocument(Object obj) {
       return obj != null && obj instanceof DataDocument;
    }
 
-   public static boolean isDocument(Object obj) {
-      return obj != null && obj instanceof Document;
-   }
-
-   public static boolean isList(Object obj) {
-      return obj != null && obj instanceof List;
-   }
-
    public static String concatParams(String... args) {
       if (args.length == 0) {
          return "";
@@ -0,0 +1,199 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb.codecs;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+
+import org.bson.BsonBinarySubType;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.BsonWriter;
+import org.bson.codecs.BsonTypeClassMap;
+import org.bson.codecs.Codec;
+import org.bson.codecs.CollectibleCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.IdGenerator;
+import org.bson.codecs.ObjectIdGenerator;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A codec reading and writing {@link DataDocument} directly without the intermediate {@link org.bson.Document}.
+ * Nested documents are decoded as {@link DataDocument} as well and {@link ObjectId} values of all <code>_id</code> attributes
+ * are converted to their string representation.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class DataDocumentCodec implements CollectibleCodec<DataDocument> {
+
+   private static final BsonTypeClassMap BSON_TYPE_CLASS_MAP = new BsonTypeClassMap();
+
+   private final CodecRegistry registry;
+   private final IdGenerator idGenerator = new ObjectIdGenerator();
+
+   public DataDocumentCodec(final CodecRegistry registry) {
+      this.registry = registry;
+   }
+
+   @Override
+   public void encode(final BsonWriter writer, final DataDocument document, final EncoderContext encoderContext) {
+      writeMap(writer, document, encoderContext);
+   }
+
+   @Override
+   public DataDocument decode(final BsonReader reader, final DecoderContext decoderContext) {
+      final DataDocument document = new DataDocument();
+
+      reader.readStartDocument();
+      while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+         final String name = reader.readName();
+         final Object value = readValue(reader, decoderContext);
+
+         document.put(name, LumeerConst.Document.ID.equals(name) && value instanceof ObjectId ? value.toString() : value);
+      }
+      reader.readEndDocument();
+
+      return document;
+   }
+
+   @Override
+   public Class<DataDocument> getEncoderClass() {
+      return DataDocument.class;
+   }
+
+   @Override
+   public DataDocument generateIdIfAbsentFromDocument(final DataDocument document) {
+      if (!documentHasId(document)) {
+         document.put(LumeerConst.Document.ID, idGenerator.generate());
+      }
+
+      return document;
+   }
+
+   @Override
+   public boolean documentHasId(final DataDocument document) {
+      return document.containsKey(LumeerConst.Document.ID);
+   }
+
+   @Override
+   public BsonValue getDocumentId(final DataDocument document) {
+      if (!documentHasId(document)) {
+         throw new IllegalStateException("The document does not contain an _id");
+      }
+
+      final Object id = document.get(LumeerConst.Document.ID);
+      if (id instanceof BsonValue) {
+         return (BsonValue) id;
+      }
+
+      final BsonDocument idHolder = new BsonDocument();
+      final BsonWriter writer = new BsonDocumentWriter(idHolder);
+      writer.writeStartDocument();
+      writer.writeName(LumeerConst.Document.ID);
+      writeValue(writer, id, EncoderContext.builder().build());
+      writer.writeEndDocument();
+
+      return idHolder.get(LumeerConst.Document.ID);
+   }
+
+   private void writeMap(final BsonWriter writer, final Map<String, Object> map, final EncoderContext encoderContext) {
+      writer.writeStartDocument();
+
+      final boolean idFirst = encoderContext.isEncodingCollectibleDocument() && map.containsKey(LumeerConst.Document.ID);
+      if (idFirst) {
+         writer.writeName(LumeerConst.Document.ID);
+         writeValue(writer, map.get(LumeerConst.Document.ID), encoderContext);
+      }
+
+      for (final Map.Entry<String, Object> entry : map.entrySet()) {
+         if (idFirst && LumeerConst.Document.ID.equals(entry.getKey())) {
+            continue;
+         }
+
+         writer.writeName(entry.getKey());
+         writeValue(writer, entry.getValue(), encoderContext);
+      }
+
+      writer.writeEndDocument();
+   }
+
+   @SuppressWarnings("unchecked")
+   private void writeValue(final BsonWriter writer, final Object value, final EncoderContext encoderContext) {
+      if (value == null) {
+         writer.writeNull();
+      } else if (value instanceof Map) {
+         writeMap(writer, (Map<String, Object>) value, encoderContext.getChildContext());
+      } else if (value instanceof Iterable) {
+         writer.writeStartArray();
+         for (final Object item : (Iterable<Object>) value) {
+            writeValue(writer, item, encoderContext);
+         }
+         writer.writeEndArray();
+      } else {
+         final Codec codec = registry.get(value.getClass());
+         encoderContext.encodeWithChildContext(codec, writer, value);
+      }
+   }
+
+   private Object readValue(final BsonReader reader, final DecoderContext decoderContext) {
+      final BsonType bsonType = reader.getCurrentBsonType();
+
+      if (bsonType == BsonType.NULL) {
+         reader.readNull();
+         return null;
+      } else if (bsonType == BsonType.DOCUMENT) {
+         return decode(reader, decoderContext);
+      } else if (bsonType == BsonType.ARRAY) {
+         return readList(reader, decoderContext);
+      } else if (bsonType == BsonType.BINARY && isUuid(reader)) {
+         return registry.get(UUID.class).decode(reader, decoderContext);
+      }
+
+      return registry.get(BSON_TYPE_CLASS_MAP.get(bsonType)).decode(reader, decoderContext);
+   }
+
+   private List<Object> readList(final BsonReader reader, final DecoderContext decoderContext) {
+      final List<Object> list = new ArrayList<>();
+
+      reader.readStartArray();
+      while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+         list.add(readValue(reader, decoderContext));
+      }
+      reader.readEndArray();
+
+      return list;
+   }
+
+   private static boolean isUuid(final BsonReader reader) {
+      final byte subType = reader.peekBinarySubType();
+
+      return (subType == BsonBinarySubType.UUID_STANDARD.getValue() || subType == BsonBinarySubType.UUID_LEGACY.getValue()) && reader.peekBinarySize() == 16;
+   }
+}
@@ -21,34 +21,65 @@ package io.lumeer.mongodb;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 
+import io.lumeer.cache.simple.SimpleCache;
 import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheManager;
+import io.lumeer.engine.api.cache.CacheProvider;
+import io.lumeer.engine.api.data.ConnectionPoolStats;
+import io.lumeer.engine.api.data.DataChangeEvent;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataFilter;
+import io.lumeer.engine.api.data.DataPage;
+import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.DataStorageStats;
+import io.lumeer.engine.api.data.IndexRecommendation;
 import io.lumeer.engine.api.data.Query;
+import io.lumeer.engine.api.data.ReadPreference;
+import io.lumeer.engine.api.data.SlowOperation;
 import io.lumeer.engine.api.data.StorageConnection;
+import io.lumeer.engine.api.data.StorageConnectionOptions;
+import io.lumeer.engine.api.data.WriteDurability;
+import io.lumeer.engine.api.data.WriteOperation;
+import io.lumeer.engine.api.data.WriteOperationResult;
 
 import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClient;
+import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.Filters;
 import org.assertj.core.api.SoftAssertions;
+import org.bson.BsonDocument;
+import org.bson.Document;
 import org.junit.After;
 import org.junit.AfterClass;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import de.flapdoodle.embed.mongo.MongodExecutable;
 import de.flapdoodle.embed.mongo.MongodStarter;
 import de.flapdoodle.embed.mongo.config.IMongodConfig;
 import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
 import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.config.Storage;
 import de.flapdoodle.embed.mongo.distribution.Version;
 import de.flapdoodle.embed.process.runtime.Network;
 
@@ -64,6 +95,7 @@ public class MongoDbStorageTest {
    private static final String DB_USER = System.getProperty("lumeer.db.user", "");
    private static final String DB_PASSWORD = System.getProperty("lumeer.db.passwd", "");
    private static final Boolean DB_SSL = Boolean.getBoolean("lumeer.db.ssl");
+   private static final String REPLICA_SET = "rs0";
 
    private final String DUMMY_KEY1 = "key1";
    private final String DUMMY_KEY2 = "key2";
@@ -83,6 +115,7 @@ public class MongoDbStorageTest {
    private final String COLLECTION_CREATE_AND_READ_DOCUMENT = "collectionCreateAndReadDocument";
    private final String COLLECTION_CREATE_DOCUMENTS = "collectionCreateDocuments";
    private final String COLLECTION_CREATE_DOCUMENTS_EXCEPTION = "collectionCreateDocumentsWithException";
+   private final String COLLECTION_BULK_WRITE = "collectionBulkWrite";
    private final String COLLECTION_CREATE_AND_READ_OLD_DOCUMENT = "collectionCreateAndReadOldDocument";
    private final String COLLECTION_UPDATE_DOCUMENT = "collectionUpdateDocument";
    private final String COLLECTION_REPLACE_DOCUMENT = "collectionReplaceDocument";
@@ -91,6 +124,16 @@ public class MongoDbStorageTest {
    private final String COLLECTION_DROP_ATTRIBUTE = "collectionRemoveAttribute";
    private final String COLLECTION_SEARCH_ATTRS = "collectionSearchAttrs";
    private final String COLLECTION_SEARCH = "collectionSearch";
+   private final String COLLECTION_SEARCH_STREAM = "collectionSearchStream";
+   private final String COLLECTION_ASYNC_I = "collectionAsync_I";
+   private final String COLLECTION_ASYNC_II = "collectionAsync_II";
+   private final String COLLECTION_READ_PREFERENCE = "collectionReadPreference";
+   private final String COLLECTION_WRITE_DURABILITY = "collectionWriteDurability";
+   private final String COLLECTION_INDEX_ADVISOR = "collectionIndexAdvisor";
+   private final String COLLECTION_SLOW_OPERATIONS = "collectionSlowOperations";
+   private final String COLLECTION_UNION_I = "collectionUnionI";
+   private final String COLLECTION_UNION_II = "collectionUnionII";
+   private final String COLLECTION_PAGES = "collectionPages";
    private final String COLLECTION_SEARCH_PROJECTION = "collectionSearchWithProjection";
    private final String COLLECTION_INDEXES = "collectionIndexes";
    private final String COLLECTION_RUN = "collectionSearchRaw";
@@ -102,7 +145,13 @@ public class MongoDbStorageTest {
    private final String COLLECTION_COMPLEX_ARRAY_MANIPULATION = "collectionComplexArrayManipulation";
    private final String COLLECTION_AGGREGATE = "collectionAggregate";
    private final String COLLECTION_STATS = "collectionStatistics";
+   private final String COLLECTION_SEQUENCES = "collectionSequences";
    private final String COLLECTION_CSTATS = "collectionCStatistics";
+   private final String COLLECTION_WATCH = "collectionWatch";
+   private final String COLLECTION_REGISTRY = "collectionRegistry";
+   private final String COLLECTION_REGISTRY_II = "collectionRegistry_II";
+   private final String COLLECTION_WATCH_RENAMED = "collectionWatchRenamed";
+   private final String COLLECTION_WATCH_DOCUMENTS = "watched.collection";
 
    private static MongodExecutable mongodExecutable;
 
@@ -118,13 +167,29 @@ public class MongoDbStorageTest {
 
       MongodStarter starter = MongodStarter.getDefaultInstance();
 
+      // a single node replica set, so that the changes can be watched in the oplog
       IMongodConfig mongodConfig = new MongodConfigBuilder()
             .version(Version.Main.V3_4)
             .net(new Net(DB_HOST, DB_PORT, Network.localhostIsIPv6()))
+            .replication(new Storage(null, REPLICA_SET, 0))
             .build();
 
       mongodExecutable = starter.prepare(mongodConfig);
       mongodExecutable.start();
+
+      try (MongoClient client = new MongoClient(DB_HOST, DB_PORT)) {
+         final MongoDatabase admin = client.getDatabase("admin");
+         admin.runCommand(new Document("replSetInitiate", new Document("_id", REPLICA_SET)
+               .append("members", Collections.singletonList(new Document("_id", 0).append("host", DB_HOST + ":" + DB_PORT)))));
+
+         final long deadline = System.currentTimeMillis() + 30000L;
+         while (!admin.runCommand(new Document("isMaster", 1)).getBoolean("ismaster", false)) {
+            if (System.currentTimeMillis() > deadline) {
+               throw new IllegalStateException("The replica set " + REPLICA_SET + " has not elected a primary.");
+            }
+            Thread.sleep(100L);
+         }
+      }
    }
 
    @AfterClass
@@ -152,6 +217,7 @@ public class MongoDbStorageTest {
       mongoDbStorage.dropCollection(COLLECTION_CREATE_AND_READ_DOCUMENT);
       mongoDbStorage.dropCollection(COLLECTION_CREATE_DOCUMENTS);
       mongoDbStorage.dropCollection(COLLECTION_CREATE_DOCUMENTS_EXCEPTION);
+      mongoDbStorage.dropCollection(COLLECTION_BULK_WRITE);
       mongoDbStorage.dropCollection(COLLECTION_CREATE_AND_READ_OLD_DOCUMENT);
       mongoDbStorage.dropCollection(COLLECTION_UPDATE_DOCUMENT);
       mongoDbStorage.dropCollection(COLLECTION_DROP_DOCUMENT);
@@ -159,6 +225,16 @@ public class MongoDbStorageTest {
       mongoDbStorage.dropCollection(COLLECTION_DROP_ATTRIBUTE);
       mongoDbStorage.dropCollection(COLLECTION_SEARCH_ATTRS);
       mongoDbStorage.dropCollection(COLLECTION_SEARCH);
+      mongoDbStorage.dropCollection(COLLECTION_SEARCH_STREAM);
+      mongoDbStorage.dropCollection(COLLECTION_ASYNC_I);
+      mongoDbStorage.dropCollection(COLLECTION_ASYNC_II);
+      mongoDbStorage.dropCollection(COLLECTION_SEQUENCES);
+      mongoDbStorage.dropCollection(COLLECTION_READ_PREFERENCE);
+      mongoDbStorage.dropCollection(COLLECTION_WRITE_DURABILITY);
+      mongoDbStorage.dropCollection(COLLECTION_SLOW_OPERATIONS);
+      mongoDbStorage.dropCollection(COLLECTION_UNION_I);
+      mongoDbStorage.dropCollection(COLLECTION_UNION_II);
+      mongoDbStorage.dropCollection(COLLECTION_PAGES);
       mongoDbStorage.dropCollection(COLLECTION_INDEXES);
       mongoDbStorage.dropCollection(COLLECTION_RUN);
       mongoDbStorage.dropCollection(COLLECTION_RENAME_ATTRIBUTE);
@@ -277,6 +353,37 @@ public class MongoDbStorageTest {
       assertThat(search).hasSize(4);
    }
 
+   @Test
+   public void testBulkWrite() throws Exception {
+      mongoDbStorage.createCollection(COLLECTION_BULK_WRITE);
+      mongoDbStorage.createIndex(COLLECTION_BULK_WRITE, new DataDocument(DUMMY_KEY1, 1), true);
+      String id = mongoDbStorage.createDocument(COLLECTION_BULK_WRITE, new DataDocument(DUMMY_KEY1, "a").append(DUMMY_KEY2, 1));
+
+      List<WriteOperation> operations = Arrays.asList(
+            WriteOperation.create(new DataDocument(DUMMY_KEY1, "b")),
+            WriteOperation.increment(mongoDbStorageDialect.documentIdFilter(id), DUMMY_KEY2, 5),
+            WriteOperation.create(new DataDocument(DUMMY_KEY1, "a")),
+            WriteOperation.update(mongoDbStorageDialect.fieldValueFilter(DUMMY_KEY1, "c"), new DataDocument(DUMMY_KEY2, 3)),
+            WriteOperation.addItemsToArray(mongoDbStorageDialect.documentIdFilter(id), "l", Arrays.asList(1, 2)));
+
+      List<WriteOperationResult> results = mongoDbStorage.bulkWrite(COLLECTION_BULK_WRITE, operations, true);
+      SoftAssertions assertions = new SoftAssertions();
+      assertions.assertThat(results).extracting(WriteOperationResult::getStatus).containsExactly(WriteOperationResult.Status.SUCCEEDED, WriteOperationResult.Status.SUCCEEDED,
+            WriteOperationResult.Status.FAILED, WriteOperationResult.Status.NOT_EXECUTED, WriteOperationResult.Status.NOT_EXECUTED);
+      assertions.assertThat(results.get(0).getDocumentId()).isNotNull();
+      assertions.assertThat(mongoDbStorage.readDocument(COLLECTION_BULK_WRITE, mongoDbStorageDialect.documentIdFilter(id)).getInteger(DUMMY_KEY2)).isEqualTo(6);
+      assertions.assertAll();
+
+      results = mongoDbStorage.bulkWrite(COLLECTION_BULK_WRITE, operations.subList(2, 5), false);
+      assertions = new SoftAssertions();
+      assertions.assertThat(results).extracting(WriteOperationResult::getStatus).containsExactly(WriteOperationResult.Status.FAILED, WriteOperationResult.Status.SUCCEEDED,
+            WriteOperationResult.Status.SUCCEEDED);
+      assertions.assertThat(results.get(1).getDocumentId()).isNotNull();
+      assertions.assertThat(mongoDbStorage.readDocument(COLLECTION_BULK_WRITE, mongoDbStorageDialect.documentIdFilter(id)).getArrayList("l", Integer.class)).containsExactly(1, 2);
+      assertions.assertThat(mongoDbStorage.count(COLLECTION_BULK_WRITE, null)).isEqualTo(3);
+      assertions.assertAll();
+   }
+
    @Test
    public void testCreateAndReadOldDocument() throws Exception {
       mongoDbStorage.createCollection(COLLECTION_CREATE_AND_READ_OLD_DOCUMENT);
@@ -458,6 +565,304 @@ public class MongoDbStorageTest {
       assertThat(searchDocuments).hasSize(10);
    }
 
+   @Test
+   public void testSearchStream() throws Exception {
+      mongoDbStorage.createCollection(COLLECTION_SEARCH_STREAM);
+
+      for (int i = 0; i < 100; i++) {
+         mongoDbStorage.createDocument(COLLECTION_SEARCH_STREAM, new DataDocument(DUMMY_KEY1, i).append(DUMMY_KEY2, i % 2));
+      }
+
+      try (Stream<DataDocument> documents = mongoDbStorage.searchStream(COLLECTION_SEARCH_STREAM, null, mongoDbStorageDialect.documentFieldSort(DUMMY_KEY1, -1), Collections.singletonList(DUMMY_KEY1), 7)) {
+         List<DataDocument> result = documents.collect(Collectors.toList());
+         assertThat(result).hasSize(100);
+         assertThat(result.get(0).getInteger(DUMMY_KEY1)).isEqualTo(99);
+         assertThat(result.get(0)).doesNotContainKey(DUMMY_KEY2);
+      }
+
+      try (Stream<DataDocument> documents = mongoDbStorage.searchStream(COLLECTION_SEARCH_STREAM, mongoDbStorageDialect.fieldValueFilter(DUMMY_KEY2, 1), null, null, 0)) {
+         assertThat(documents.count()).isEqualTo(50);
+      }
+
+      final DataDocument match = new DataDocument("$match", new DataDocument(DUMMY_KEY2, 0));
+      final DataDocument limit = new DataDocument("$limit", 10);
+      try (Stream<DataDocument> documents = mongoDbStorage.aggregateStream(COLLECTION_SEARCH_STREAM, 3, match, limit)) {
+         assertThat(documents.filter(d -> d.getInteger(DUMMY_KEY2) == 0).count()).isEqualTo(10);
+      }
+   }
+
+   @Test
+   public void testAsyncStorage() throws Exception {
+      final MongoDbAsyncStorage asyncStorage = new MongoDbAsyncStorage();
+      asyncStorage.connect(new StorageConnection(DB_HOST, DB_PORT, DB_USER, DB_PASSWORD), DB_NAME, DB_SSL);
+
+      try {
+         final List<DataDocument> documents = new LinkedList<>();
+         for (int i = 0; i < 10; i++) {
+            documents.add(new DataDocument(DUMMY_KEY1, i).append(DUMMY_KEY2, i % 2));
+         }
+
+         final CompletableFuture<List<String>> ids = asyncStorage.createDocuments(COLLECTION_ASYNC_I, documents);
+         final CompletableFuture<String> id = asyncStorage.createDocument(COLLECTION_ASYNC_II, new DataDocument(DUMMY_KEY1, DUMMY_VALUE1));
+         assertThat(ids.get()).hasSize(10);
+
+         final String documentId = id.get();
+         assertThat(asyncStorage.readDocument(COLLECTION_ASYNC_II, mongoDbStorageDialect.documentIdFilter(documentId)).get().getString(DUMMY_KEY1)).isEqualTo(DUMMY_VALUE1);
+         assertThat(asyncStorage.readDocument(COLLECTION_ASYNC_II, mongoDbStorageDialect.fieldValueFilter(DUMMY_KEY1, DUMMY_VALUE2)).get()).isNull();
+
+         asyncStorage.updateDocument(COLLECTION_ASYNC_II, new DataDocument(DUMMY_KEY2, DUMMY_VALUE2), mongoDbStorageDialect.documentIdFilter(documentId)).get();
+         assertThat(mongoDbStorage.readDocument(COLLECTION_ASYNC_II, mongoDbStorageDialect.documentIdFilter(documentId))).containsEntry(DUMMY_KEY2, DUMMY_VALUE2);
+
+         final CompletableFuture<List<DataDocument>> sorted = asyncStorage.search(COLLECTION_ASYNC_I, null, mongoDbStorageDialect.documentFieldSort(DUMMY_KEY1, -1), 2, 3);
+         final CompletableFuture<Long> count = asyncStorage.count(COLLECTION_ASYNC_I, mongoDbStorageDialect.fieldValueFilter(DUMMY_KEY2, 1));
+         assertThat(sorted.get()).extracting(d -> d.getInteger(DUMMY_KEY1)).containsExactly(7, 6, 5);
+         assertThat(count.get()).isEqualTo(5L);
+
+         final Query query = new Query(new DataDocument(DUMMY_KEY2, 0));
+         query.setCollections(new HashSet<>(Arrays.asList(COLLECTION_ASYNC_I, COLLECTION_ASYNC_II)));
+         assertThat(asyncStorage.query(query).get()).hasSize(5);
+
+         asyncStorage.dropManyDocuments(COLLECTION_ASYNC_I, mongoDbStorageDialect.fieldValueFilter(DUMMY_KEY2, 0)).get();
+         assertThat(mongoDbStorage.count(COLLECTION_ASYNC_I, null)).isEqualTo(5L);
+      } finally {
+         asyncStorage.disconnect();
+      }
+   }
+
+   @Test
+   public void testSequenceBlocks() {
+      assertThat(mongoDbStorage.allocateSequenceBlock(COLLECTION_SEQUENCES, "name", "blocks", 10)).isEqualTo(0);
+      assertThat(mongoDbStorage.allocateSequenceBlock(COLLECTION_SEQUENCES, "name", "blocks", 10)).isEqualTo(10);
+      assertThat(mongoDbStorage.getNextSequenceNo(COLLECTION_SEQUENCES, "name", "blocks")).isEqualTo(20);
+      assertThat(mongoDbStorage.allocateSequenceBlock(COLLECTION_SEQUENCES, "name", "blocks", 5)).isEqualTo(21);
+
+      assertThat(mongoDbStorage.getNextSequenceNo(COLLECTION_SEQUENCES, "name", "single")).isEqualTo(0);
+      assertThat(mongoDbStorage.getNextSequenceNo(COLLECTION_SEQUENCES, "name", "single")).isEqualTo(1);
+
+      mongoDbStorage.resetSequence(COLLECTION_SEQUENCES, "name", "blocks");
+      assertThat(mongoDbStorage.allocateSequenceBlock(COLLECTION_SEQUENCES, "name", "blocks", 3)).isEqualTo(1);
+      assertThat(mongoDbStorage.count(COLLECTION_SEQUENCES, null)).isEqualTo(2);
+   }
+
+   @Test
+   public void testReadPreference() {
+      mongoDbStorage.createCollection(COLLECTION_READ_PREFERENCE);
+      mongoDbStorage.createDocument(COLLECTION_READ_PREFERENCE, new DataDocument(DUMMY_KEY1, DUMMY_VALUE1));
+
+      assertThat(mongoDbStorage.withReadPreference(ReadPreference.PRIMARY, 0)).isSameAs(mongoDbStorage);
+
+      final DataStorage view = mongoDbStorage.withReadPreference(ReadPreference.SECONDARY_PREFERRED, 0);
+      assertThat(view).isNotSameAs(mongoDbStorage);
+      assertThat(mongoDbStorage.withReadPreference(ReadPreference.SECONDARY_PREFERRED, 0)).isSameAs(view);
+      assertThat(mongoDbStorage.withReadPreference(ReadPreference.SECONDARY_PREFERRED, 120)).isNotSameAs(view);
+
+      assertThat(view.hasCollection(COLLECTION_READ_PREFERENCE)).isTrue();
+      assertThat(view.search(COLLECTION_READ_PREFERENCE, null, null, 0, 0)).extracting(d -> d.getString(DUMMY_KEY1)).containsExactly(DUMMY_VALUE1);
+      assertThat(view.getCollectionStats(COLLECTION_READ_PREFERENCE).getDocuments()).isEqualTo(1);
+   }
+
+   @Test
+   public void testWriteDurability() {
+      mongoDbStorage.createCollection(COLLECTION_WRITE_DURABILITY);
+
+      assertThat(mongoDbStorage.withWriteDurability(WriteDurability.ACKNOWLEDGED)).isSameAs(mongoDbStorage);
+
+      final DataStorage journaled = mongoDbStorage.withWriteDurability(WriteDurability.JOURNALED);
+      assertThat(journaled).isNotSameAs(mongoDbStorage);
+      assertThat(mongoDbStorage.withWriteDurability(WriteDurability.JOURNALED)).isSameAs(journaled);
+
+      final String id = journaled.createDocument(COLLECTION_WRITE_DURABILITY, new DataDocument(DUMMY_KEY1, DUMMY_VALUE1));
+      journaled.run(new DataDocument("update", COLLECTION_WRITE_DURABILITY)
+            .append("updates", Collections.singletonList(new DataDocument("q", new DataDocument())
+                  .append("u", new DataDocument("$set", new DataDocument(DUMMY_KEY2, DUMMY_VALUE2))))));
+      assertThat(mongoDbStorage.readDocument(COLLECTION_WRITE_DURABILITY, mongoDbStorageDialect.documentIdFilter(id)).getString(DUMMY_KEY2)).isEqualTo(DUMMY_VALUE2);
+
+      // unacknowledged writes return before they are applied, the driver still sends them in order over the same connection
+      final DataStorage unacknowledged = mongoDbStorage.withWriteDurability(WriteDurability.UNACKNOWLEDGED);
+      unacknowledged.updateDocument(COLLECTION_WRITE_DURABILITY, new DataDocument(DUMMY_KEY1, DUMMY_CHANGED_VALUE1), mongoDbStorageDialect.documentIdFilter(id));
+      assertThat(unacknowledged.bulkWrite(COLLECTION_WRITE_DURABILITY, Collections.singletonList(WriteOperation.create(new DataDocument(DUMMY_KEY1, DUMMY_VALUE2))), true)).hasSize(1);
+   }
+
+   @Test
+   public void testIndexAdvisorKeys() {
+      final BsonDocument find = BsonDocument.parse("{ find: \"c\", filter: { $and: [ { status: \"open\" }, { age: { $gt: 18 } } ], name: { $eq: \"x\" } }, sort: { created: -1 } }");
+      assertThat(MongoDbIndexAdvisor.getIndexKeys("find", find)).containsExactly(
+            entry("name", 1), entry("status", 1), entry("created", -1), entry("age", 1));
+
+      final BsonDocument aggregate = BsonDocument.parse("{ aggregate: \"c\", pipeline: [ { $match: { tags: { $in: [ \"a\" ] }, $or: [ { a: 1 }, { b: 1 } ] } }, { $sort: { tags: 1 } } ] }");
+      assertThat(MongoDbIndexAdvisor.getIndexKeys("aggregate", aggregate)).containsExactly(entry("tags", 1));
+      assertThat(MongoDbIndexAdvisor.getIndexKeys("insert", BsonDocument.parse("{ insert: \"c\" }"))).isEmpty();
+
+      final DataDocument keys = new DataDocument("status", 1).append("created", -1);
+      assertThat(MongoDbIndexAdvisor.getIndexName(keys)).isEqualTo("status_1_created_-1");
+      assertThat(MongoDbIndexAdvisor.covers(new DataDocument("status", -1).append("created", 1).append("age", 1), keys)).isTrue();
+      assertThat(MongoDbIndexAdvisor.covers(new DataDocument("status", 1).append("created", 1), keys)).isFalse();
+      assertThat(MongoDbIndexAdvisor.covers(new DataDocument("status", 1), keys)).isFalse();
+   }
+
+   @Test
+   public void testIndexAdvisor() {
+      final StorageConnectionOptions options = new StorageConnectionOptions();
+      options.setIndexAdvisor(true);
+
+      final MongoDbStorage storage = new MongoDbStorage();
+      storage.connect(Collections.singletonList(new StorageConnection(DB_HOST, DB_PORT, DB_USER, DB_PASSWORD)), DB_NAME, DB_SSL, options);
+
+      try {
+         storage.createDocument(COLLECTION_INDEX_ADVISOR, new DataDocument(DUMMY_KEY1, DUMMY_VALUE1).append(DUMMY_KEY2, DUMMY_VALUE2));
+         for (int i = 0; i < 20; i++) {
+            storage.search(COLLECTION_INDEX_ADVISOR, mongoDbStorageDialect.fieldValueFilter(DUMMY_KEY1, DUMMY_VALUE1), mongoDbStorageDialect.documentFieldSort(DUMMY_KEY2, -1), 0, 0);
+         }
+
+         assertThat(storage.getIndexRecommendations()).extracting(IndexRecommendation::getIndexName).containsExactly(MongoDbIndexAdvisor.INDEX_PREFIX + DUMMY_KEY1 + "_1_" + DUMMY_KEY2 + "_-1");
+
+         storage.createIndex(COLLECTION_INDEX_ADVISOR, new DataDocument(DUMMY_KEY1, 1).append(DUMMY_KEY2, -1), false);
+         assertThat(storage.getIndexRecommendations()).isEmpty();
+      } finally {
+         storage.dropCollection(COLLECTION_INDEX_ADVISOR);
+         storage.disconnect();
+      }
+   }
+
+   @Test
+   public void testSlowOperationLog() throws Exception {
+      final StorageConnectionOptions options = new StorageConnectionOptions();
+      options.setSlowOperationThreshold(0);
+      options.setSlowOperationLogSize(5);
+      options.setExplainSlowOperations(true);
+
+      final MongoDbStorage storage = new MongoDbStorage();
+      storage.connect(Collections.singletonList(new StorageConnection(DB_HOST, DB_PORT, DB_USER, DB_PASSWORD)), DB_NAME, DB_SSL, options);
+
+      try {
+         storage.createDocument(COLLECTION_SLOW_OPERATIONS, new DataDocument(DUMMY_KEY1, DUMMY_VALUE1));
+         storage.search(COLLECTION_SLOW_OPERATIONS, mongoDbStorageDialect.fieldValueFilter(DUMMY_KEY1, DUMMY_VALUE1), null, 0, 0);
+
+         SlowOperation find = null;
+         for (int i = 0; i < 50 && find == null; i++) {
+            Thread.sleep(100);
+            find = storage.getSlowOperations().stream().filter(o -> "find".equals(o.getCommandName())).findFirst().orElse(null);
+         }
+
+         assertThat(find).isNotNull();
+         assertThat(find.getCollectionName()).isEqualTo(COLLECTION_SLOW_OPERATIONS);
+         assertThat(find.getFilterShape()).contains(DUMMY_KEY1).doesNotContain(DUMMY_VALUE1);
+         assertThat(find.getPlan()).startsWith("COLLSCAN");
+         assertThat(find.getDocumentsExamined()).isEqualTo(1L);
+
+         for (int i = 0; i < 10; i++) {
+            storage.createDocument(COLLECTION_SLOW_OPERATIONS, new DataDocument(DUMMY_KEY1, i));
+         }
+         assertThat(storage.getSlowOperations()).hasSize(5);
+      } finally {
+         storage.disconnect();
+      }
+   }
+
+   @Test
+   public void testSlowOperationShape() {
+      final BsonDocument filter = BsonDocument.parse("{ name: 'Alice', age: { $gt: 30 }, tags: { $in: ['a', 'b'] } }");
+      assertThat(MongoDbSlowOperationLog.shape(filter).toString()).isEqualTo(BsonDocument.parse("{ name: '?', age: { $gt: '?' }, tags: { $in: '?' } }").toString());
+
+      final BsonDocument plan = BsonDocument.parse("{ stage: 'FETCH', inputStage: { stage: 'IXSCAN', indexName: 'name_1' } }");
+      assertThat(MongoDbSlowOperationLog.describePlan(plan)).isEqualTo("FETCH > IXSCAN(name_1)");
+   }
+
+   @Test
+   public void testUnionQuery() {
+      for (int i = 0; i < 10; i++) {
+         mongoDbStorage.createDocument(i % 3 == 0 ? COLLECTION_UNION_I : COLLECTION_UNION_II, new DataDocument(DUMMY_KEY1, i).append(DUMMY_KEY2, i % 2));
+      }
+
+      final Set<String> collections = new LinkedHashSet<>(Arrays.asList(COLLECTION_UNION_I, COLLECTION_UNION_II));
+      final Query sorted = new Query(collections, new DataDocument(), new DataDocument(), new DataDocument(DUMMY_KEY1, -1), 4, 2);
+
+      final List<DataDocument> page = mongoDbStorage.unionQuery(sorted);
+      assertThat(page).extracting(d -> d.getInteger(DUMMY_KEY1)).containsExactly(7, 6, 5, 4);
+      assertThat(page).extracting(d -> d.getString(LumeerConst.Document.COLLECTION_NAME))
+                      .containsExactly(COLLECTION_UNION_II, COLLECTION_UNION_I, COLLECTION_UNION_II, COLLECTION_UNION_II);
+
+      final Query multiSorted = new Query(collections, new DataDocument(), new DataDocument(), new DataDocument(DUMMY_KEY2, 1).append(DUMMY_KEY1, 1), 3, 0);
+      assertThat(mongoDbStorage.unionQuery(multiSorted)).extracting(d -> d.getInteger(DUMMY_KEY1)).containsExactly(0, 2, 4);
+
+      final Query unsorted = new Query(collections, new DataDocument(), new DataDocument(), new DataDocument(), 3, 3);
+      assertThat(mongoDbStorage.unionQuery(unsorted)).extracting(d -> d.getString(LumeerConst.Document.COLLECTION_NAME))
+                                                     .containsExactly(COLLECTION_UNION_I, COLLECTION_UNION_II, COLLECTION_UNION_II);
+   }
+
+   @Test
+   public void testSearchPage() {
+      for (int i = 0; i < 10; i++) {
+         mongoDbStorage.createDocument(COLLECTION_PAGES, new DataDocument(DUMMY_KEY1, i % 4).append(DUMMY_KEY2, i));
+      }
+      mongoDbStorage.createDocument(COLLECTION_PAGES, new DataDocument(DUMMY_KEY2, 10));
+
+      final List<Integer> values = new LinkedList<>();
+      String pageToken = null;
+      int pages = 0;
+      do {
+         final DataPage page = mongoDbStorage.searchPage(COLLECTION_PAGES, null, mongoDbStorageDialect.documentFieldSort(DUMMY_KEY1, -1), pageToken, 3);
+         assertThat(page.getDocuments().size()).isLessThanOrEqualTo(3);
+         page.getDocuments().forEach(d -> values.add(d.getInteger(DUMMY_KEY2)));
+         pageToken = page.getNextPageToken();
+         pages++;
+      } while (pageToken != null);
+
+      assertThat(pages).isEqualTo(4);
+      assertThat(values).containsExactly(3, 7, 2, 6, 1, 5, 9, 0, 4, 8, 10);
+
+      final DataPage filtered = mongoDbStorage.searchPage(COLLECTION_PAGES, mongoDbStorageDialect.fieldValueFilter(DUMMY_KEY1, 1), null, null, 0);
+      assertThat(filtered.getDocuments()).extracting(d -> d.getInteger(DUMMY_KEY2)).containsExactly(1, 5, 9);
+      assertThat(filtered.getNextPageToken()).isNull();
+
+      assertThatThrownBy(() -> mongoDbStorage.searchPage(COLLECTION_PAGES, null, null, "invalid", 3)).isInstanceOf(IllegalArgumentException.class);
+   }
+
+   @Test
+   public void testUnionQueryPage() {
+      for (int i = 0; i < 10; i++) {
+         mongoDbStorage.createDocument(i % 3 == 0 ? COLLECTION_UNION_I : COLLECTION_UNION_II, new DataDocument(DUMMY_KEY1, i % 2).append(DUMMY_KEY2, i));
+      }
+
+      final Set<String> collections = new LinkedHashSet<>(Arrays.asList(COLLECTION_UNION_I, COLLECTION_UNION_II));
+      final Query query = new Query(collections, new DataDocument(), new DataDocument(), new DataDocument(DUMMY_KEY1, 1), 4, null);
+
+      final List<Integer> values = new LinkedList<>();
+      String pageToken = null;
+      do {
+         final DataPage page = mongoDbStorage.unionQueryPage(query, pageToken);
+         page.getDocuments().forEach(d -> values.add(d.getInteger(DUMMY_KEY2)));
+         pageToken = page.getNextPageToken();
+      } while (pageToken != null);
+
+      assertThat(values).containsExactly(0, 6, 2, 4, 8, 3, 9, 1, 5, 7);
+   }
+
+   @Test
+   public void testUnionQueryPageProjectionWithoutSortAttributes() {
+      for (int i = 0; i < 10; i++) {
+         mongoDbStorage.createDocument(i % 3 == 0 ? COLLECTION_UNION_I : COLLECTION_UNION_II, new DataDocument(DUMMY_KEY1, i % 2).append(DUMMY_KEY2, i));
+      }
+
+      final Set<String> collections = new LinkedHashSet<>(Arrays.asList(COLLECTION_UNION_I, COLLECTION_UNION_II));
+      for (final DataDocument projection : Arrays.asList(new DataDocument(DUMMY_KEY1, 0), new DataDocument(DUMMY_KEY2, 1).append(LumeerConst.Document.ID, 0))) {
+         final Query query = new Query(collections, new DataDocument(), projection, new DataDocument(DUMMY_KEY1, 1), 4, null);
+
+         final List<Integer> values = new LinkedList<>();
+         String pageToken = null;
+         do {
+            final DataPage page = mongoDbStorage.unionQueryPage(query, pageToken);
+            page.getDocuments().forEach(d -> {
+               assertThat(d).doesNotContainKey(DUMMY_KEY1);
+               values.add(d.getInteger(DUMMY_KEY2));
+            });
+            pageToken = page.getNextPageToken();
+         } while (pageToken != null);
+
+         assertThat(values).containsExactly(0, 6, 2, 4, 8, 3, 9, 1, 5, 7);
+      }
+   }
+
    @Test
    public void testSearchWithProjection() {
       mongoDbStorage.createCollection(COLLECTION_SEARCH_PROJECTION);
@@ -487,6 +892,7 @@ public class MongoDbStorageTest {
 
       // run() method returns 101 entries due to it is a default value of "batchSize" query key
       assertThat(searchDocuments).hasSize(101);
+      assertThat(searchDocuments.get(0).getId()).isNotEmpty();
    }
 
    @Test
@@ -599,6 +1005,12 @@ public class MongoDbStorageTest {
       // use debug to see nested hierarchy works
       DataDocument nested = mongoDbStorage.readDocument(COLLECTION_NESTED_DOCUMENTS, documentIdFilter);
       assertThat(nested).isNotNull();
+      assertThat(nested.getId()).isEqualTo(id);
+      assertThat(nested.get("c")).isInstanceOf(DataDocument.class);
+      assertThat(nested.getDataDocument("c").get("dn")).isInstanceOf(DataDocument.class);
+      assertThat(nested.getDataDocument("d_d.tn.tnn")).doesNotContainKey(DUMMY_KEY1);
+      assertThat(nested.getArrayList("l", Integer.class)).containsExactly(1, 2, 3, 4);
+      assertThat(nested.getArrayList("ld", DataDocument.class)).hasSize(3).allMatch(ld -> ld.containsKey(DUMMY_KEY1));
    }
 
    @Test
@@ -759,6 +1171,34 @@ public class MongoDbStorageTest {
       mongoDbStorage.dropCollection(COLLECTION_STATS);
    }
 
+   @Test
+   public void connectionPoolStatsTest() {
+      mongoDbStorage.createDocument(COLLECTION_STATS, new DataDocument("stats", 1));
+
+      final List<ConnectionPoolStats> stats = mongoDbStorage.getConnectionPoolStats();
+
+      assertThat(stats).isNotEmpty();
+      assertThat(stats.get(0).getPort()).isEqualTo(DB_PORT);
+      assertThat(stats.get(0).getSize()).isGreaterThan(0);
+      assertThat(stats.get(0).getMaxSize()).isGreaterThanOrEqualTo(stats.get(0).getSize());
+      assertThat(stats.get(0).getLatencyHistogram()).containsKey(Long.MAX_VALUE);
+      assertThat(stats.get(0).getLatencyHistogram().values().stream().mapToLong(Long::longValue).sum()).isGreaterThan(0);
+
+      mongoDbStorage.dropCollection(COLLECTION_STATS);
+   }
+
+   @Test
+   public void estimatedDocumentCountTest() {
+      mongoDbStorage.createCollection(COLLECTION_CSTATS);
+      mongoDbStorage.createDocument(COLLECTION_CSTATS, new DataDocument("stats", 1));
+      mongoDbStorage.createDocument(COLLECTION_CSTATS, new DataDocument("stats", 2));
+
+      assertThat(mongoDbStorage.estimatedDocumentCount(COLLECTION_CSTATS)).isEqualTo(2L);
+      assertThat(mongoDbStorage.estimatedDocumentCount("nonExistingCollection")).isEqualTo(0L);
+
+      mongoDbStorage.dropCollection(COLLECTION_CSTATS);
+   }
+
    @Test
    public void collectionStatsTest() {
       mongoDbStorage.createCollection(COLLECTION_CSTATS);
@@ -778,6 +1218,122 @@ public class MongoDbStorageTest {
       mongoDbStorage.dropCollection(COLLECTION_CSTATS);
    }
 
+   @Test
+   public void collectionRegistryEvictionTest() {
+      final Cache<Object> collections = new SimpleCache<>();
+      mongoDbStorage.setCacheProvider(new CacheProvider() {
+         @Override
+         public void init(final String namespace, final CacheManager cacheManager) {
+         }
+
+         @Override
+         @SuppressWarnings("unchecked")
+         public <T> Cache<T> getCache(final String cacheName) {
+            return (Cache<T>) collections;
+         }
+      });
+
+      mongoDbStorage.createCollection(COLLECTION_REGISTRY);
+      assertThat(mongoDbStorage.hasCollection(COLLECTION_REGISTRY)).isTrue();
+
+      // the registry evicted from the cache is loaded again, a collection created meanwhile does not replace it
+      collections.clear();
+      mongoDbStorage.createCollection(COLLECTION_REGISTRY_II);
+      assertThat(mongoDbStorage.hasCollection(COLLECTION_REGISTRY)).isTrue();
+      assertThat(mongoDbStorage.getAllCollections()).contains(COLLECTION_REGISTRY, COLLECTION_REGISTRY_II);
+
+      // the views share the registry
+      collections.clear();
+      assertThat(mongoDbStorage.withWriteDurability(WriteDurability.UNACKNOWLEDGED).hasCollection(COLLECTION_REGISTRY)).isTrue();
+
+      mongoDbStorage.dropCollection(COLLECTION_REGISTRY);
+      mongoDbStorage.dropCollection(COLLECTION_REGISTRY_II);
+   }
+
+   @Test
+   public void watchChangesTest() throws InterruptedException {
+      final BlockingQueue<DataChangeEvent> events = new LinkedBlockingQueue<>();
+      assertThat(mongoDbStorage.watchChanges(Collections.singleton("watched."), events::add)).isTrue();
+
+      // the changes can be watched only with a replica set, the embedded database is started as one
+      final DataChangeEvent start = events.poll(5, TimeUnit.SECONDS);
+      Assume.assumeTrue(start != null || mongodExecutable != null);
+      assertThat(start).isNotNull();
+      assertThat(start.getType()).isEqualTo(DataChangeEvent.Type.RESYNC);
+
+      mongoDbStorage.createCollection(COLLECTION_WATCH);
+      mongoDbStorage.createDocument(COLLECTION_WATCH, new DataDocument("a", 1));
+      mongoDbStorage.renameCollection(COLLECTION_WATCH, COLLECTION_WATCH_RENAMED);
+      final String id = mongoDbStorage.createDocument(COLLECTION_WATCH_DOCUMENTS, new DataDocument("a", 1));
+      mongoDbStorage.dropCollection(COLLECTION_WATCH_RENAMED);
+      mongoDbStorage.dropCollection(COLLECTION_WATCH_DOCUMENTS);
+
+      final List<String> received = new ArrayList<>();
+      for (int i = 0; i < 6; i++) {
+         final DataChangeEvent event = events.poll(5, TimeUnit.SECONDS);
+         assertThat(event).isNotNull();
+         received.add(event.getType() + " " + event.getCollectionName() + (event.getNewCollectionName() != null ? " " + event.getNewCollectionName() : "")
+               + (event.getDocumentId() != null ? " " + event.getDocumentId() : ""));
+      }
+
+      // the document created in the collection that is not watched is not published
+      assertThat(received).containsExactly(
+            "COLLECTION_CREATED " + COLLECTION_WATCH,
+            "COLLECTION_RENAMED " + COLLECTION_WATCH + " " + COLLECTION_WATCH_RENAMED,
+            "COLLECTION_CREATED " + COLLECTION_WATCH_DOCUMENTS,
+            "DOCUMENT_CHANGED " + COLLECTION_WATCH_DOCUMENTS + " " + id,
+            "COLLECTION_DROPPED " + COLLECTION_WATCH_RENAMED,
+            "COLLECTION_DROPPED " + COLLECTION_WATCH_DOCUMENTS);
+      assertThat(mongoDbStorage.getAllCollections()).doesNotContain(COLLECTION_WATCH, COLLECTION_WATCH_RENAMED, COLLECTION_WATCH_DOCUMENTS);
+   }
+
+   @Test
+   public void watchChangesSharedTest() throws InterruptedException {
+      final MongoDbStorage otherStorage = new MongoDbStorage();
+      otherStorage.connect(new StorageConnection(DB_HOST, DB_PORT, DB_USER, DB_PASSWORD), DB_NAME, DB_SSL);
+
+      try {
+         final BlockingQueue<DataChangeEvent> events = new LinkedBlockingQueue<>();
+         final BlockingQueue<DataChangeEvent> otherEvents = new LinkedBlockingQueue<>();
+         assertThat(mongoDbStorage.watchChanges(Collections.singleton("watched."), events::add)).isTrue();
+
+         final DataChangeEvent start = events.poll(5, TimeUnit.SECONDS);
+         Assume.assumeTrue(start != null || mongodExecutable != null);
+         assertThat(start).isNotNull();
+
+         // the storage joining the watched database gets its own resynchronization, but the oplog is followed only once
+         assertThat(otherStorage.watchChanges(Collections.singleton("watched."), otherEvents::add)).isTrue();
+         assertThat(otherEvents.poll(5, TimeUnit.SECONDS).getType()).isEqualTo(DataChangeEvent.Type.RESYNC);
+         assertThat(countTailers()).isEqualTo(1);
+
+         mongoDbStorage.createCollection(COLLECTION_WATCH);
+         assertThat(events.poll(5, TimeUnit.SECONDS).getCollectionName()).isEqualTo(COLLECTION_WATCH);
+         assertThat(otherEvents.poll(5, TimeUnit.SECONDS).getCollectionName()).isEqualTo(COLLECTION_WATCH);
+         assertThat(otherStorage.hasCollection(COLLECTION_WATCH)).isTrue();
+
+         // the changes are still published when the storage that started the tailing stops watching
+         mongoDbStorage.disconnect();
+         assertThat(otherEvents.poll(5, TimeUnit.SECONDS).getType()).isEqualTo(DataChangeEvent.Type.RESYNC);
+         otherStorage.dropCollection(COLLECTION_WATCH);
+         assertThat(otherEvents.poll(5, TimeUnit.SECONDS).getType()).isEqualTo(DataChangeEvent.Type.COLLECTION_DROPPED);
+      } finally {
+         otherStorage.disconnect();
+      }
+   }
+
+   // the tailers of the previous tests may still be finishing
+   private static long countTailers() throws InterruptedException {
+      final long deadline = System.currentTimeMillis() + 5000L;
+      long tailers;
+
+      while ((tailers = Thread.getAllStackTraces().keySet().stream().filter(t -> t.getName().equals("mongodb-change-tailer-" + DB_NAME)).count()) > 1
+            && System.currentTimeMillis() < deadline) {
+         Thread.sleep(100L);
+      }
+
+      return tailers;
+   }
+
    private DataDocument createDummyDocument() {
       DataDocument dataDocument = new DataDocument();
       dataDocument.put(DUMMY_KEY1, DUMMY_VALUE1);
@@ -0,0 +1,151 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Loads of cache values that are in progress, there is at most one load of each key at a time. A load can be forgotten
+ * when its key is removed from the cache, its value is then not stored when it finishes.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+class AsyncLoads<T> {
+
+   private final Map<String, CompletableFuture<T>> loads = new ConcurrentHashMap<>();
+
+   private final StatsCounter stats;
+
+   AsyncLoads(final StatsCounter stats) {
+      this.stats = stats;
+   }
+
+   /**
+    * Starts loading the key unless it is already being loaded.
+    *
+    * @param key
+    *       Entry key.
+    * @param present
+    *       Reads the value currently stored in the cache, null when a stored value is to be loaded again.
+    * @param loader
+    *       Starts loading a new value.
+    * @param store
+    *       Stores the loaded value to the cache, it is not called for null values, failed loads and forgotten loads.
+    * @return The value being loaded.
+    */
+   CompletableFuture<T> load(final String key, final Function<String, T> present, final Function<String, CompletableFuture<T>> loader, final BiConsumer<String, T> store) {
+      final CompletableFuture<T> result = new CompletableFuture<>();
+      final CompletableFuture<T> running = loads.putIfAbsent(key, result);
+
+      if (running != null) {
+         return running;
+      }
+
+      // a load that finished between the caller's miss and the registration has already stored its value,
+      // loading again would replace the instance the other callers got
+      final T current = present != null ? present.apply(key) : null;
+      if (current != null) {
+         loads.remove(key, result);
+         result.complete(current);
+         return result;
+      }
+
+      final long start = System.nanoTime();
+      CompletableFuture<T> loading;
+      try {
+         loading = loader.apply(key);
+      } catch (RuntimeException | Error e) {
+         // the load must complete, otherwise it would stay registered and all the later loads of the key would wait for it
+         loading = new CompletableFuture<>();
+         loading.completeExceptionally(e);
+      }
+
+      loading.whenComplete((value, error) -> {
+         stats.recordLoad(System.nanoTime() - start);
+
+         // the value is stored while the load is still registered, so a concurrent removal of the key either
+         // forgets the load before the value is stored, or removes the stored value afterwards
+         loads.computeIfPresent(key, (k, load) -> {
+            if (load == result && error == null && value != null) {
+               store.accept(k, value);
+            }
+            return load == result ? null : load;
+         });
+
+         if (error != null) {
+            result.completeExceptionally(error);
+         } else {
+            result.complete(value);
+         }
+      });
+
+      return result;
+   }
+
+   /**
+    * Loads the key in the calling thread and waits for the result, or waits for the load already in progress.
+    * The loader runs outside of any lock, so the loads of other keys are not blocked by it.
+    *
+    * @param key
+    *       Entry key.
+    * @param present
+    *       Reads the value currently stored in the cache.
+    * @param loader
+    *       Computes a new value.
+    * @param store
+    *       Stores the loaded value to the cache, it is not called for null values, failed loads and forgotten loads.
+    * @return The loaded value or the value stored meanwhile.
+    */
+   T get(final String key, final Function<String, T> present, final Function<String, T> loader, final BiConsumer<String, T> store) {
+      try {
+         return load(key, present, k -> CompletableFuture.completedFuture(loader.apply(k)), store).join();
+      } catch (CompletionException e) {
+         if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+         }
+         if (e.getCause() instanceof Error) {
+            throw (Error) e.getCause();
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * Forgets the load of the given key, so that its value is not stored.
+    *
+    * @param key
+    *       Entry key.
+    */
+   void forget(final String key) {
+      loads.remove(key);
+   }
+
+   /**
+    * Forgets all the loads in progress.
+    */
+   void clear() {
+      loads.clear();
+   }
+}
@@ -0,0 +1,488 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheConfiguration;
+import io.lumeer.engine.api.cache.CacheStats;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache limited by the number or the total weight of its entries, whose entries can also expire after they were stored or last read.
+ * The entries to evict are chosen by the W-TinyLFU policy. New entries are kept in a small LRU window first, when they
+ * leave the window, they are admitted to the main area only if they were used more often than the entry that would have
+ * to be evicted for them. The frequencies are estimated by a {@link FrequencySketch}. The main area is a segmented LRU,
+ * the entries read again are protected from eviction until other entries take their place. This keeps the frequently used
+ * entries in the cache even when many entries are read just once.
+ *
+ * The values are stored in a concurrent map, the eviction policy is guarded by a single lock. The reads do not wait for the
+ * lock, so some reads may not be recorded by the policy under heavy load.
+ *
+ * The missing values are computed outside of any lock, only the requests for the same key wait for each other.
+ * The entries read asynchronously are reloaded in the background when they get older than the configured refresh time,
+ * the frequently read entries are thus kept up to date and never expire while they are being read.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class BoundedCache<T> implements Cache<T> {
+
+   private static final long MINIMUM_SWEEP_INTERVAL = 1000L;
+
+   private final CacheConfiguration configuration;
+   private final LongSupplier ticker;
+
+   private final Map<String, Node<T>> data = new ConcurrentHashMap<>();
+   private final StripedLocks locks = new StripedLocks();
+   private final StatsCounter stats = new StatsCounter();
+   private final AsyncLoads<T> loads = new AsyncLoads<>(stats);
+
+   private final Lock policyLock = new ReentrantLock();
+   private final Map<String, Node<T>> window = new LinkedHashMap<>(16, 0.75f, true);
+   private final Map<String, Node<T>> probation = new LinkedHashMap<>(16, 0.75f, true);
+   private final Map<String, Node<T>> protect = new LinkedHashMap<>(16, 0.75f, true);
+   private final FrequencySketch sketch;
+   private final long maximum;
+   private final long windowMaximum;
+   private final long mainMaximum;
+   private final long protectedMaximum;
+   private final long sweepInterval;
+   private long windowWeight;
+   private long probationWeight;
+   private long protectedWeight;
+   private long lastSweep;
+
+   public BoundedCache(final CacheConfiguration configuration) {
+      this(configuration, System::currentTimeMillis);
+   }
+
+   /**
+    * Creates a cache measuring the time by the given ticker.
+    *
+    * @param configuration
+    *       Limits of the cache.
+    * @param ticker
+    *       Provides current time in milliseconds.
+    */
+   BoundedCache(final CacheConfiguration configuration, final LongSupplier ticker) {
+      this.configuration = configuration;
+      this.ticker = ticker;
+
+      final Long limit = configuration.getMaximumWeight() != null ? configuration.getMaximumWeight() : configuration.getMaximumSize();
+      maximum = limit != null ? Math.max(0, limit) : Long.MAX_VALUE;
+      // the window takes 1 % of the capacity, 80 % of the rest is protected
+      mainMaximum = maximum == Long.MAX_VALUE ? Long.MAX_VALUE : maximum - Math.min(maximum, Math.max(1, maximum / 100));
+      windowMaximum = maximum - mainMaximum;
+      protectedMaximum = mainMaximum / 5 * 4;
+      sketch = new FrequencySketch(configuration.getMaximumSize() != null ? configuration.getMaximumSize() : limit != null ? limit : 0);
+
+      final long expiry = Math.min(
+            configuration.getExpireAfterWrite() != null ? configuration.getExpireAfterWrite() : Long.MAX_VALUE,
+            configuration.getExpireAfterAccess() != null ? configuration.getExpireAfterAccess() : Long.MAX_VALUE);
+      sweepInterval = Math.max(MINIMUM_SWEEP_INTERVAL, expiry);
+      lastSweep = ticker.getAsLong();
+   }
+
+   @Override
+   public T get(final String key) {
+      final Node<T> node = data.get(key);
+
+      if (node == null) {
+         stats.recordMiss();
+         return null;
+      }
+
+      final long now = ticker.getAsLong();
+      if (isExpired(node, now)) {
+         if (data.remove(key, node)) {
+            stats.recordEviction();
+            withPolicy(() -> unlink(node));
+         }
+         stats.recordMiss();
+         return null;
+      }
+
+      stats.recordHit();
+
+      node.accessTime = now;
+      if (policyLock.tryLock()) {
+         try {
+            onAccess(node);
+         } finally {
+            policyLock.unlock();
+         }
+      }
+
+      return node.value;
+   }
+
+   @Override
+   public T computeIfAbsent(final String key, final Function<String, T> fce) {
+      final T existing = get(key);
+
+      if (existing != null) {
+         return existing;
+      }
+
+      // the value is computed outside of the map, concurrent requests for the same key wait for the single computation
+      return loads.get(key, this::peek, fce, this::store);
+   }
+
+   @Override
+   public CompletableFuture<T> getAsync(final String key, final Function<String, CompletableFuture<T>> loader) {
+      final Node<T> node = data.get(key);
+      final T t = get(key);
+
+      if (t == null) {
+         return loads.load(key, this::peek, loader, this::store);
+      }
+
+      final Long refreshAfterWrite = configuration.getRefreshAfterWrite();
+      if (refreshAfterWrite != null && node != null && node.value == t && ticker.getAsLong() - node.writeTime >= refreshAfterWrite) {
+         // the current value is served while the new one is being loaded
+         loads.load(key, null, loader, this::store);
+      }
+
+      return CompletableFuture.completedFuture(t);
+   }
+
+   // reads the stored value without recording the access
+   private T peek(final String key) {
+      final Node<T> node = data.get(key);
+
+      return node != null && !isExpired(node, ticker.getAsLong()) ? node.value : null;
+   }
+
+   @Override
+   public void set(final String key, final T t) {
+      loads.forget(key);
+      store(key, t);
+   }
+
+   private void store(final String key, final T t) {
+      final Node<T> node = new Node<>(key, t, weigh(t), ticker.getAsLong());
+      final Node<T> original = data.put(key, node);
+
+      withPolicy(() -> {
+         if (original != null) {
+            unlink(original);
+         }
+         onAdd(node);
+      });
+   }
+
+   @Override
+   public T remove(final String key) {
+      loads.forget(key);
+      final Node<T> node = data.remove(key);
+
+      if (node == null) {
+         return null;
+      }
+
+      withPolicy(() -> unlink(node));
+
+      return isExpired(node, ticker.getAsLong()) ? null : node.value;
+   }
+
+   @Override
+   public void lock(final String key) {
+      locks.lock(key);
+   }
+
+   @Override
+   public void unlock(final String key) {
+      locks.unlock(key);
+   }
+
+   @Override
+   public boolean tryLock(final String key) {
+      return locks.tryLock(key);
+   }
+
+   @Override
+   public boolean tryLock(final String key, final long timeout, final TimeUnit unit) {
+      return locks.tryLock(key, timeout, unit);
+   }
+
+   @Override
+   public void clear() {
+      // the loads store their values while holding their map entry, so they must not be touched under the policy lock
+      loads.clear();
+
+      policyLock.lock();
+      try {
+         data.clear();
+         window.clear();
+         probation.clear();
+         protect.clear();
+         sketch.clear();
+         windowWeight = 0;
+         probationWeight = 0;
+         protectedWeight = 0;
+      } finally {
+         policyLock.unlock();
+      }
+   }
+
+   @Override
+   public CacheConfiguration getConfiguration() {
+      return configuration;
+   }
+
+   @Override
+   public CacheStats getStats() {
+      return stats.snapshot(data.size(), locks.getWaitTime());
+   }
+
+   @Override
+   public void cleanUp() {
+      policyLock.lock();
+      try {
+         sweep(ticker.getAsLong());
+      } finally {
+         policyLock.unlock();
+      }
+   }
+
+   /**
+    * Gets the number of entries currently held by the cache including the expired entries not yet removed.
+    *
+    * @return The number of entries.
+    */
+   public int size() {
+      return data.size();
+   }
+
+   private void withPolicy(final Runnable action) {
+      policyLock.lock();
+      try {
+         action.run();
+
+         final long now = ticker.getAsLong();
+         if (now - lastSweep >= sweepInterval) {
+            sweep(now);
+         }
+      } finally {
+         policyLock.unlock();
+      }
+   }
+
+   private void onAdd(final Node<T> node) {
+      // the entry might have been already replaced or removed by another thread
+      if (data.get(node.key) != node) {
+         return;
+      }
+
+      sketch.increment(node.key);
+      node.queue = Queue.WINDOW;
+      window.put(node.key, node);
+      windowWeight += node.weight;
+
+      evict();
+   }
+
+   private void onAccess(final Node<T> node) {
+      sketch.increment(node.key);
+
+      switch (node.queue) {
+         case WINDOW:
+            window.get(node.key);
+            break;
+         case PROBATION:
+            probation.remove(node.key);
+            probationWeight -= node.weight;
+            node.queue = Queue.PROTECTED;
+            protect.put(node.key, node);
+            protectedWeight += node.weight;
+
+            // the least recently used protected entries get another chance in the probation area
+            while (protectedWeight > protectedMaximum && protect.size() > 1) {
+               final Node<T> demoted = removeFirst(protect);
+               protectedWeight -= demoted.weight;
+               demoted.queue = Queue.PROBATION;
+               probation.put(demoted.key, demoted);
+               probationWeight += demoted.weight;
+            }
+            break;
+         case PROTECTED:
+            protect.get(node.key);
+            break;
+         default:
+            // not tracked by the policy any more
+      }
+   }
+
+   private void unlink(final Node<T> node) {
+      switch (node.queue) {
+         case WINDOW:
+            if (window.remove(node.key, node)) {
+               windowWeight -= node.weight;
+            }
+            break;
+         case PROBATION:
+            if (probation.remove(node.key, node)) {
+               probationWeight -= node.weight;
+            }
+            break;
+         case PROTECTED:
+            if (protect.remove(node.key, node)) {
+               protectedWeight -= node.weight;
+            }
+            break;
+         default:
+            // not tracked by the policy
+      }
+      node.queue = Queue.NONE;
+   }
+
+   private void evict() {
+      while (windowWeight > windowMaximum && !window.isEmpty()) {
+         final Node<T> candidate = removeFirst(window);
+         windowWeight -= candidate.weight;
+         candidate.queue = Queue.NONE;
+         admit(candidate);
+      }
+   }
+
+   /**
+    * Moves the entry leaving the window to the probation area when there is space for it, or when it is used more
+    * often than the entries that would have to be evicted for it. Otherwise the entry itself is evicted.
+    */
+   private void admit(final Node<T> candidate) {
+      if (candidate.weight > mainMaximum) {
+         discard(candidate);
+         return;
+      }
+
+      while (probationWeight + protectedWeight + candidate.weight > mainMaximum) {
+         final Map<String, Node<T>> victims = probation.isEmpty() ? protect : probation;
+         final Node<T> victim = victims.values().iterator().next();
+
+         if (sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+            discard(candidate);
+            return;
+         }
+
+         unlink(victim);
+         discard(victim);
+      }
+
+      candidate.queue = Queue.PROBATION;
+      probation.put(candidate.key, candidate);
+      probationWeight += candidate.weight;
+   }
+
+   private void sweep(final long now) {
+      lastSweep = now;
+
+      sweep(window, now);
+      sweep(probation, now);
+      sweep(protect, now);
+   }
+
+   private void sweep(final Map<String, Node<T>> queue, final long now) {
+      final Iterator<Node<T>> iterator = queue.values().iterator();
+
+      while (iterator.hasNext()) {
+         final Node<T> node = iterator.next();
+
+         if (isExpired(node, now)) {
+            iterator.remove();
+            switch (node.queue) {
+               case WINDOW:
+                  windowWeight -= node.weight;
+                  break;
+               case PROBATION:
+                  probationWeight -= node.weight;
+                  break;
+               default:
+                  protectedWeight -= node.weight;
+            }
+            node.queue = Queue.NONE;
+            discard(node);
+         }
+      }
+   }
+
+   private void discard(final Node<T> node) {
+      if (data.remove(node.key, node)) {
+         stats.recordEviction();
+      }
+   }
+
+   private boolean isExpired(final Node<T> node, final long now) {
+      return (configuration.getExpireAfterWrite() != null && now - node.writeTime >= configuration.getExpireAfterWrite())
+            || (configuration.getExpireAfterAccess() != null && now - node.accessTime >= configuration.getExpireAfterAccess());
+   }
+
+   private long weigh(final T value) {
+      if (configuration.getMaximumWeight() == null || configuration.getWeigher() == null) {
+         return 1;
+      }
+
+      return Math.max(0, configuration.getWeigher().applyAsLong(value));
+   }
+
+   private static <T> Node<T> removeFirst(final Map<String, Node<T>> queue) {
+      final Iterator<Node<T>> iterator = queue.values().iterator();
+      final Node<T> first = iterator.next();
+      iterator.remove();
+
+      return first;
+   }
+
+   /**
+    * Area of the cache where an entry currently is.
+    */
+   private enum Queue {
+      NONE, WINDOW, PROBATION, PROTECTED
+   }
+
+   /**
+    * A cache entry with the information needed by the eviction and expiration.
+    */
+   private static class Node<T> {
+
+      private final String key;
+      private final T value;
+      private final long weight;
+      private final long writeTime;
+      private volatile long accessTime;
+      private Queue queue = Queue.NONE;
+
+      private Node(final String key, final T value, final long weight, final long now) {
+         this.key = key;
+         this.value = value;
+         this.weight = weight;
+         this.writeTime = now;
+         this.accessTime = now;
+      }
+   }
+}
@@ -0,0 +1,72 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheConfiguration;
+import io.lumeer.engine.api.cache.CacheFactory;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Alternative;
+
+/**
+ * Creates {@link BoundedCache bounded caches}. To use them instead of the unbounded ones, the factory needs to be enabled
+ * as an alternative in beans.xml, the engine web application does so. The caches requested without limits hold up to 10000 entries unused for at most an hour.
+ * The caches configured with an off-heap size keep serialized copies of their values in an {@link OffHeapCache} behind
+ * the bounded cache.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@Alternative
+@ApplicationScoped
+public class BoundedCacheFactory implements CacheFactory, Serializable {
+
+   private static final long DEFAULT_MAXIMUM_SIZE = 10000L;
+   private static final long DEFAULT_EXPIRE_AFTER_ACCESS = TimeUnit.HOURS.toMillis(1);
+
+   @Override
+   public <T> Cache<T> getCache() {
+      return new BoundedCache<>(getDefaultConfiguration());
+   }
+
+   @Override
+   public <T> Cache<T> getCache(final CacheConfiguration configuration) {
+      if (configuration == null) {
+         return getCache();
+      }
+
+      final Cache<T> cache = new BoundedCache<>(configuration.isBounded() ? configuration : getDefaultConfiguration());
+      if (configuration.getOffHeapSize() != null && configuration.getOffHeapSize() > 0) {
+         return new TieredCache<>(cache, new OffHeapCache<>(configuration));
+      }
+
+      return cache;
+   }
+
+   private static CacheConfiguration getDefaultConfiguration() {
+      final CacheConfiguration configuration = new CacheConfiguration();
+      configuration.setMaximumSize(DEFAULT_MAXIMUM_SIZE);
+      configuration.setExpireAfterAccess(DEFAULT_EXPIRE_AFTER_ACCESS);
+
+      return configuration;
+   }
+}
@@ -0,0 +1,126 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min sketch estimating how often keys were used recently. It keeps four 4-bit counters per key, so a key can be counted
+ * up to 15 times. All the counters are halved after a number of increments proportional to the sketch size, so the old
+ * popularity fades away and the cache can adapt to a changed workload.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+class FrequencySketch {
+
+   private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+   private static final long RESET_MASK = 0x7777777777777777L;
+   private static final int MINIMUM_SIZE = 4;
+   private static final int MAXIMUM_SIZE = 1 << 12;
+
+   private final long[] table;
+   private final int counterMask;
+   private final int sampleSize;
+   private int size;
+
+   /**
+    * Creates a sketch suitable for a cache of given capacity.
+    *
+    * @param maximum
+    *       Expected maximal number of cache entries.
+    */
+   FrequencySketch(final long maximum) {
+      // one long of 16 counters per entry keeps the collisions rare, the memory is limited for large caches
+      final int size = Math.max(MINIMUM_SIZE, Integer.highestOneBit((int) Math.min(maximum, MAXIMUM_SIZE) - 1) << 1);
+      table = new long[size];
+      counterMask = (size << 4) - 1;
+      sampleSize = 10 * (int) Math.max(MINIMUM_SIZE, Math.min(maximum, Integer.MAX_VALUE / 10));
+   }
+
+   /**
+    * Estimates how many times the key was used recently.
+    *
+    * @param key
+    *       The key to look up.
+    * @return Estimated frequency between 0 and 15.
+    */
+   int frequency(final Object key) {
+      final int hash = key.hashCode();
+      int frequency = Integer.MAX_VALUE;
+
+      for (int i = 0; i < SEEDS.length; i++) {
+         final int counter = counterOf(hash, i);
+         frequency = Math.min(frequency, (int) ((table[counter >>> 4] >>> shiftOf(counter)) & 0xfL));
+      }
+
+      return frequency;
+   }
+
+   /**
+    * Records another use of the key.
+    *
+    * @param key
+    *       The key that was used.
+    */
+   void increment(final Object key) {
+      final int hash = key.hashCode();
+      boolean added = false;
+
+      for (int i = 0; i < SEEDS.length; i++) {
+         final int counter = counterOf(hash, i);
+         final int shift = shiftOf(counter);
+
+         if (((table[counter >>> 4] >>> shift) & 0xfL) < 15) {
+            table[counter >>> 4] += 1L << shift;
+            added = true;
+         }
+      }
+
+      if (added && ++size >= sampleSize) {
+         reset();
+      }
+   }
+
+   /**
+    * Forgets all the recorded uses.
+    */
+   void clear() {
+      Arrays.fill(table, 0L);
+      size = 0;
+   }
+
+   private void reset() {
+      for (int i = 0; i < table.length; i++) {
+         table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      size /= 2;
+   }
+
+   private int counterOf(final int hash, final int i) {
+      long h = (hash + SEEDS[i]) * SEEDS[i];
+      h += h >>> 32;
+
+      return (int) h & counterMask;
+   }
+
+   private static int shiftOf(final int counter) {
+      return (counter & 15) << 2;
+   }
+}
@@ -0,0 +1,339 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheConfiguration;
+import io.lumeer.engine.api.cache.CacheStats;
+import io.lumeer.engine.api.data.BinaryDocumentCodec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache keeping its values serialized outside of the Java heap, so that large values do not burden the garbage collector.
+ * The values are encoded by {@link BinaryDocumentCodec} and appended to direct byte buffers (slabs), every read decodes a new copy
+ * of the value. When all the slabs are full, the oldest slab is emptied and reused, so the least recently written entries
+ * are evicted first. Replaced and removed values keep their space until their slab is reused. The slabs are allocated
+ * only when needed.
+ *
+ * The values that cannot be encoded are not stored. The changes of values done after they were stored are not visible
+ * in the cache.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class OffHeapCache<T> implements Cache<T> {
+
+   private static final int MINIMUM_SLAB_SIZE = 64 * 1024;
+   private static final int MAXIMUM_SLAB_SIZE = 4 * 1024 * 1024;
+   private static final int SLABS = 16;
+
+   private final CacheConfiguration configuration;
+   private final LongSupplier ticker;
+
+   private final ReadWriteLock slabLock = new ReentrantReadWriteLock();
+   private final Map<String, Location> index = new HashMap<>();
+   private final ByteBuffer[] slabs;
+   private final List<List<String>> slabKeys = new ArrayList<>();
+   private final int slabSize;
+   private int currentSlab = -1;
+
+   private final StripedLocks locks = new StripedLocks();
+   private final StatsCounter stats = new StatsCounter();
+
+   /**
+    * Creates a cache with the off-heap size and expiration times given by the configuration.
+    *
+    * @param configuration
+    *       Limits of the cache.
+    */
+   public OffHeapCache(final CacheConfiguration configuration) {
+      this(configuration, System::currentTimeMillis);
+   }
+
+   /**
+    * Creates a cache measuring the time by the given ticker.
+    *
+    * @param configuration
+    *       Limits of the cache.
+    * @param ticker
+    *       Provides current time in milliseconds.
+    */
+   OffHeapCache(final CacheConfiguration configuration, final LongSupplier ticker) {
+      this.configuration = configuration;
+      this.ticker = ticker;
+
+      final long size = configuration.getOffHeapSize() != null ? configuration.getOffHeapSize() : 0;
+      slabSize = (int) Math.max(Math.min(size, MINIMUM_SLAB_SIZE), Math.min(size / SLABS, MAXIMUM_SLAB_SIZE));
+      slabs = new ByteBuffer[slabSize > 0 ? (int) Math.min(size / slabSize, Integer.MAX_VALUE) : 0];
+
+      for (int i = 0; i < slabs.length; i++) {
+         slabKeys.add(new ArrayList<>());
+      }
+   }
+
+   @Override
+   public T get(final String key) {
+      return read(key, true);
+   }
+
+   @Override
+   public T computeIfAbsent(final String key, final Function<String, T> fce) {
+      final T existing = get(key);
+
+      if (existing != null) {
+         return existing;
+      }
+
+      final long start = System.nanoTime();
+      final T t = fce.apply(key);
+      stats.recordLoad(System.nanoTime() - start);
+
+      if (t != null) {
+         set(key, t);
+      }
+
+      return t;
+   }
+
+   @Override
+   public void set(final String key, final T t) {
+      byte[] bytes;
+      try {
+         bytes = BinaryDocumentCodec.encode(t);
+      } catch (IllegalArgumentException e) {
+         bytes = null;
+      }
+
+      slabLock.writeLock().lock();
+      try {
+         if (bytes == null || bytes.length > slabSize) {
+            index.remove(key);
+            return;
+         }
+
+         if (currentSlab < 0 || slabs[currentSlab].remaining() < bytes.length) {
+            nextSlab();
+         }
+
+         final ByteBuffer slab = slabs[currentSlab];
+         index.put(key, new Location(currentSlab, slab.position(), bytes.length, ticker.getAsLong()));
+         slabKeys.get(currentSlab).add(key);
+         slab.put(bytes);
+      } finally {
+         slabLock.writeLock().unlock();
+      }
+   }
+
+   @Override
+   public T remove(final String key) {
+      final T t = read(key, false);
+
+      slabLock.writeLock().lock();
+      try {
+         index.remove(key);
+      } finally {
+         slabLock.writeLock().unlock();
+      }
+
+      return t;
+   }
+
+   @Override
+   public void lock(final String key) {
+      locks.lock(key);
+   }
+
+   @Override
+   public void unlock(final String key) {
+      locks.unlock(key);
+   }
+
+   @Override
+   public boolean tryLock(final String key) {
+      return locks.tryLock(key);
+   }
+
+   @Override
+   public boolean tryLock(final String key, final long timeout, final TimeUnit unit) {
+      return locks.tryLock(key, timeout, unit);
+   }
+
+   @Override
+   public void clear() {
+      slabLock.writeLock().lock();
+      try {
+         index.clear();
+         slabKeys.forEach(List::clear);
+         for (final ByteBuffer slab : slabs) {
+            if (slab != null) {
+               slab.clear();
+            }
+         }
+         currentSlab = -1;
+      } finally {
+         slabLock.writeLock().unlock();
+      }
+   }
+
+   @Override
+   public CacheConfiguration getConfiguration() {
+      return configuration;
+   }
+
+   @Override
+   public CacheStats getStats() {
+      slabLock.readLock().lock();
+      try {
+         return stats.snapshot(index.size(), locks.getWaitTime());
+      } finally {
+         slabLock.readLock().unlock();
+      }
+   }
+
+   @Override
+   public void cleanUp() {
+      final long now = ticker.getAsLong();
+
+      slabLock.writeLock().lock();
+      try {
+         final int before = index.size();
+         index.values().removeIf(location -> isExpired(location, now));
+         for (int i = before - index.size(); i > 0; i--) {
+            stats.recordEviction();
+         }
+      } finally {
+         slabLock.writeLock().unlock();
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   private T read(final String key, final boolean recordStats) {
+      final long now = ticker.getAsLong();
+      final byte[] bytes;
+      boolean expired = false;
+
+      slabLock.readLock().lock();
+      try {
+         final Location location = index.get(key);
+
+         if (location == null) {
+            bytes = null;
+         } else if (isExpired(location, now)) {
+            bytes = null;
+            expired = true;
+         } else {
+            location.accessTime = now;
+            bytes = new byte[location.length];
+
+            final ByteBuffer slab = slabs[location.slab].duplicate();
+            slab.position(location.offset);
+            slab.get(bytes);
+         }
+      } finally {
+         slabLock.readLock().unlock();
+      }
+
+      if (expired) {
+         expire(key, now);
+      }
+
+      if (bytes == null) {
+         if (recordStats) {
+            stats.recordMiss();
+         }
+         return null;
+      }
+
+      if (recordStats) {
+         stats.recordHit();
+      }
+
+      return (T) BinaryDocumentCodec.decode(ByteBuffer.wrap(bytes));
+   }
+
+   // moves to the next slab, allocates it or evicts all the entries stored in it before
+   private void nextSlab() {
+      currentSlab = (currentSlab + 1) % slabs.length;
+
+      if (slabs[currentSlab] == null) {
+         slabs[currentSlab] = ByteBuffer.allocateDirect(slabSize);
+      } else {
+         final int slab = currentSlab;
+         slabKeys.get(slab).forEach(key -> {
+            final Location location = index.get(key);
+            if (location != null && location.slab == slab) {
+               index.remove(key);
+               stats.recordEviction();
+            }
+         });
+         slabs[slab].clear();
+      }
+
+      slabKeys.get(currentSlab).clear();
+   }
+
+   private void expire(final String key, final long now) {
+      slabLock.writeLock().lock();
+      try {
+         final Location location = index.get(key);
+
+         if (location != null && isExpired(location, now)) {
+            index.remove(key);
+            stats.recordEviction();
+         }
+      } finally {
+         slabLock.writeLock().unlock();
+      }
+   }
+
+   private boolean isExpired(final Location location, final long now) {
+      return (configuration.getExpireAfterWrite() != null && now - location.writeTime >= configuration.getExpireAfterWrite())
+            || (configuration.getExpireAfterAccess() != null && now - location.accessTime >= configuration.getExpireAfterAccess());
+   }
+
+   /**
+    * Position of an encoded value in the slabs.
+    */
+   private static class Location {
+
+      private final int slab;
+      private final int offset;
+      private final int length;
+      private final long writeTime;
+      private volatile long accessTime;
+
+      private Location(final int slab, final int offset, final int length, final long now) {
+         this.slab = slab;
+         this.offset = offset;
+         this.length = length;
+         this.writeTime = now;
+         this.accessTime = now;
+      }
+   }
+}
@@ -20,11 +20,12 @@
 package io.lumeer.cache.simple;
 
 import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheStats;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
@@ -34,53 +35,90 @@ public class SimpleCache<T> implements Cache<T> {
 
    private Map<String, T> cache = new ConcurrentHashMap<>();
 
-   private Map<String, Lock> locks = new ConcurrentHashMap<>();
+   private final StripedLocks locks = new StripedLocks();
+
+   private final StatsCounter stats = new StatsCounter();
+
+   private final AsyncLoads<T> loads = new AsyncLoads<>(stats);
 
    @Override
    public T get(final String key) {
-      return cache.get(key);
+      final T t = cache.get(key);
+
+      if (t != null) {
+         stats.recordHit();
+      } else {
+         stats.recordMiss();
+      }
+
+      return t;
    }
 
    @Override
    public T computeIfAbsent(final String key, final Function<String, T> fce) {
-      return cache.computeIfAbsent(key, fce);
+      final T existing = cache.get(key);
+
+      if (existing != null) {
+         stats.recordHit();
+         return existing;
+      }
+
+      stats.recordMiss();
+
+      return loads.get(key, cache::get, fce, cache::put);
+   }
+
+   @Override
+   public CompletableFuture<T> getAsync(final String key, final Function<String, CompletableFuture<T>> loader) {
+      final T t = get(key);
+
+      if (t != null) {
+         return CompletableFuture.completedFuture(t);
+      }
+
+      return loads.load(key, cache::get, loader, cache::put);
    }
 
    @Override
    public void set(final String key, final T t) {
+      loads.forget(key);
       cache.put(key, t);
    }
 
    @Override
    public T remove(final String key) {
+      loads.forget(key);
       return cache.remove(key);
    }
 
    @Override
    public void lock(final String key) {
-      final Lock l = locks.computeIfAbsent(key, k -> new ReentrantLock());
-      l.lock();
+      locks.lock(key);
    }
 
    @Override
    public void unlock(final String key) {
-      final Lock l = locks.get(key);
-
-      if (l != null) {
-         l.unlock();
-      }
+      locks.unlock(key);
    }
 
    @Override
    public boolean tryLock(final String key) {
-      final Lock l = locks.computeIfAbsent(key, k -> new ReentrantLock());
+      return locks.tryLock(key);
+   }
 
-      return l.tryLock();
+   @Override
+   public boolean tryLock(final String key, final long timeout, final TimeUnit unit) {
+      return locks.tryLock(key, timeout, unit);
+   }
+
+   @Override
+   public CacheStats getStats() {
+      return stats.snapshot(cache.size(), locks.getWaitTime());
    }
 
    @Override
    public void clear() {
+      loads.clear();
       cache.clear();
-      locks.clear();
    }
 }
@@ -0,0 +1,77 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import io.lumeer.engine.api.cache.CacheStats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the events of a cache. The counters are cheap to update concurrently, reading them is slower.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+class StatsCounter {
+
+   private final LongAdder hitCount = new LongAdder();
+   private final LongAdder missCount = new LongAdder();
+   private final LongAdder loadCount = new LongAdder();
+   private final LongAdder totalLoadTime = new LongAdder();
+   private final LongAdder evictionCount = new LongAdder();
+
+   void recordHit() {
+      hitCount.increment();
+   }
+
+   void recordMiss() {
+      missCount.increment();
+   }
+
+   void recordLoad(final long loadTime) {
+      loadCount.increment();
+      totalLoadTime.add(loadTime);
+   }
+
+   void recordEviction() {
+      evictionCount.increment();
+   }
+
+   /**
+    * Creates statistics from the current values of the counters.
+    *
+    * @param size
+    *       Current number of cache entries.
+    * @param lockWaitTime
+    *       Total time in nanoseconds spent waiting for entry locks.
+    * @return The cache statistics.
+    */
+   CacheStats snapshot(final long size, final long lockWaitTime) {
+      final CacheStats stats = new CacheStats();
+      stats.setHitCount(hitCount.sum());
+      stats.setMissCount(missCount.sum());
+      stats.setLoadCount(loadCount.sum());
+      stats.setTotalLoadTime(totalLoadTime.sum());
+      stats.setEvictionCount(evictionCount.sum());
+      stats.setSize(size);
+      stats.setLockWaitTime(lockWaitTime);
+
+      return stats;
+   }
+}
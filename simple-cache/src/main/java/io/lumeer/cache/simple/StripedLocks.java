@@ -0,0 +1,149 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks of cache keys. The keys share a fixed number of locks, so the memory needed does not grow with the number
+ * of keys ever locked. Different keys can share the same lock, a thread holding locks of multiple keys should thus
+ * use timed locking to avoid waiting forever for a lock it shares with another thread. The keys currently locked are
+ * remembered with their owners, so a key can only be unlocked by the thread that locked it. The time spent waiting for
+ * locks held by other threads is measured.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+class StripedLocks {
+
+   private static final int STRIPES = 64;
+
+   private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+   private final Map<String, Holder> holders = new ConcurrentHashMap<>();
+
+   private final LongAdder waitTime = new LongAdder();
+
+   StripedLocks() {
+      for (int i = 0; i < STRIPES; i++) {
+         locks[i] = new ReentrantLock();
+      }
+   }
+
+   void lock(final String key) {
+      final ReentrantLock lock = getLock(key);
+
+      if (!lock.tryLock()) {
+         final long start = System.nanoTime();
+         lock.lock();
+         waitTime.add(System.nanoTime() - start);
+      }
+      hold(key);
+   }
+
+   void unlock(final String key) {
+      final Holder holder = holders.get(key);
+
+      // unlocking a key that is not locked is ignored as the locks are not created until needed
+      if (holder == null) {
+         return;
+      }
+
+      // the holder of a key can only change while its stripe is held, so the owner read here is stable for the current thread
+      if (holder.owner != Thread.currentThread()) {
+         throw new IllegalMonitorStateException("The key " + key + " is locked by another thread.");
+      }
+
+      if (--holder.holds == 0) {
+         holders.remove(key);
+      }
+      getLock(key).unlock();
+   }
+
+   boolean tryLock(final String key) {
+      if (getLock(key).tryLock()) {
+         hold(key);
+
+         return true;
+      }
+
+      return false;
+   }
+
+   boolean tryLock(final String key, final long timeout, final TimeUnit unit) {
+      final ReentrantLock lock = getLock(key);
+
+      if (lock.tryLock()) {
+         hold(key);
+
+         return true;
+      }
+
+      final long start = System.nanoTime();
+      try {
+         if (lock.tryLock(timeout, unit)) {
+            hold(key);
+
+            return true;
+         }
+
+         return false;
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+
+         return false;
+      } finally {
+         waitTime.add(System.nanoTime() - start);
+      }
+   }
+
+   /**
+    * Gets the total time spent waiting for the locks.
+    *
+    * @return The wait time in nanoseconds.
+    */
+   long getWaitTime() {
+      return waitTime.sum();
+   }
+
+   // called with the stripe of the key held, so no other thread can hold the key at the same time
+   private void hold(final String key) {
+      holders.computeIfAbsent(key, k -> new Holder()).holds++;
+   }
+
+   private ReentrantLock getLock(final String key) {
+      final int hash = key.hashCode();
+
+      return locks[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+   }
+
+   /**
+    * The thread holding a key and the number of times it locked the key.
+    */
+   private static class Holder {
+
+      private final Thread owner = Thread.currentThread();
+
+      private int holds;
+   }
+}
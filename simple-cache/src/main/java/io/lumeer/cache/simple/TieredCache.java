@@ -0,0 +1,209 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheConfiguration;
+import io.lumeer.engine.api.cache.CacheStats;
+import io.lumeer.engine.api.data.DataDocument;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Two level cache. The first level keeps the recently used values on the heap, the second level keeps a serialized copy
+ * of every stored value off the heap. A value evicted from the first level is still read from the second level,
+ * which is slower than the first level, but much faster than computing the value again.
+ *
+ * Only {@link DataDocument documents} are kept on the second level, and they must not be modified once stored, because
+ * the second level keeps the copy made when they were stored. Any other value would be read back as a different type
+ * or as a stale snapshot of a mutable object, so the first such value stored clears the second level and turns it off
+ * for good, leaving a plain first level cache.
+ *
+ * The values loaded asynchronously are stored on the first level only, because a value loaded while being removed from the cache
+ * could not be reliably kept out of the second level. Locks are provided by the first level. A value moved from the second
+ * level to the first level starts its expiration anew, so it can be served for up to twice the expiration time.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class TieredCache<T> implements Cache<T> {
+
+   private static final Logger log = Logger.getLogger(TieredCache.class.getName());
+
+   private final Cache<T> first;
+   private final OffHeapCache<T> second;
+   private volatile boolean tiered = true;
+
+   /**
+    * Creates a cache with the given levels.
+    *
+    * @param first
+    *       The on-heap first level.
+    * @param second
+    *       The off-heap second level.
+    */
+   public TieredCache(final Cache<T> first, final OffHeapCache<T> second) {
+      this.first = first;
+      this.second = second;
+   }
+
+   @Override
+   public T get(final String key) {
+      final T t = first.get(key);
+
+      if (t != null) {
+         return t;
+      }
+
+      final T stored = tiered ? second.get(key) : null;
+      if (stored != null) {
+         first.set(key, stored);
+      }
+
+      return stored;
+   }
+
+   @Override
+   public T computeIfAbsent(final String key, final Function<String, T> fce) {
+      return first.computeIfAbsent(key, k -> {
+         final T stored = tiered ? second.get(k) : null;
+
+         if (stored != null) {
+            return stored;
+         }
+
+         final T t = fce.apply(k);
+         if (t != null) {
+            store(k, t);
+         }
+
+         return t;
+      });
+   }
+
+   @Override
+   public CompletableFuture<T> getAsync(final String key, final Function<String, CompletableFuture<T>> loader) {
+      return first.getAsync(key, k -> {
+         final T stored = tiered ? second.get(k) : null;
+
+         return stored != null ? CompletableFuture.completedFuture(stored) : loader.apply(k);
+      });
+   }
+
+   @Override
+   public void set(final String key, final T t) {
+      store(key, t);
+      first.set(key, t);
+   }
+
+   @Override
+   public T remove(final String key) {
+      final T stored = second.remove(key);
+      final T t = first.remove(key);
+
+      return t != null ? t : stored;
+   }
+
+   @Override
+   public void lock(final String key) {
+      first.lock(key);
+   }
+
+   @Override
+   public void unlock(final String key) {
+      first.unlock(key);
+   }
+
+   @Override
+   public boolean tryLock(final String key) {
+      return first.tryLock(key);
+   }
+
+   @Override
+   public boolean tryLock(final String key, final long timeout, final TimeUnit unit) {
+      return first.tryLock(key, timeout, unit);
+   }
+
+   @Override
+   public void clear() {
+      second.clear();
+      first.clear();
+   }
+
+   @Override
+   public CacheConfiguration getConfiguration() {
+      return second.getConfiguration();
+   }
+
+   /**
+    * Gets the statistics of both levels. The reads missed by the first level and found by the second level are counted
+    * as hits, the size is the size of the larger level.
+    *
+    * @return The statistics of the cache.
+    */
+   @Override
+   public CacheStats getStats() {
+      final CacheStats firstStats = first.getStats();
+      final CacheStats secondStats = second.getStats();
+      final CacheStats stats = new CacheStats();
+
+      stats.setHitCount(firstStats.getHitCount() + secondStats.getHitCount());
+      stats.setMissCount(Math.max(0, firstStats.getMissCount() - secondStats.getHitCount()));
+      stats.setLoadCount(firstStats.getLoadCount());
+      stats.setTotalLoadTime(firstStats.getTotalLoadTime());
+      stats.setEvictionCount(secondStats.getEvictionCount());
+      stats.setSize(Math.max(firstStats.getSize(), secondStats.getSize()));
+      stats.setLockWaitTime(firstStats.getLockWaitTime());
+
+      return stats;
+   }
+
+   /**
+    * Returns true when the second level is still in use.
+    *
+    * @return True when the values are kept off the heap as well.
+    */
+   public boolean isTiered() {
+      return tiered;
+   }
+
+   @Override
+   public void cleanUp() {
+      first.cleanUp();
+      second.cleanUp();
+   }
+
+   private void store(final String key, final T t) {
+      if (!tiered) {
+         return;
+      }
+
+      if (t == null || t instanceof DataDocument) {
+         second.set(key, t);
+         return;
+      }
+
+      tiered = false;
+      second.clear();
+      log.warning("Cache values of type " + t.getClass().getName() + " are not documents, the off-heap level of the cache is turned off.");
+   }
+}
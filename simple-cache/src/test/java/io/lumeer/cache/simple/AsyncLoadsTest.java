@@ -0,0 +1,111 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class AsyncLoadsTest {
+
+   @Test
+   public void testLoadFinishedBeforeRegistration() {
+      final Map<String, Object> stored = new ConcurrentHashMap<>();
+      final AsyncLoads<Object> loads = new AsyncLoads<>(new StatsCounter());
+      final AtomicInteger computations = new AtomicInteger();
+      final Object first = new Object();
+
+      // the first caller missed, loaded and stored the value, the second caller missed before the value was stored
+      assertThat(loads.get("key", stored::get, k -> first, stored::put)).isSameAs(first);
+      assertThat(loads.get("key", stored::get, k -> {
+         computations.incrementAndGet();
+         return new Object();
+      }, stored::put)).isSameAs(first);
+
+      assertThat(computations.get()).isEqualTo(0);
+      assertThat(stored.get("key")).isSameAs(first);
+   }
+
+   @Test
+   public void testRefreshLoadsAgain() throws Exception {
+      final Map<String, Integer> stored = new ConcurrentHashMap<>();
+      final AsyncLoads<Integer> loads = new AsyncLoads<>(new StatsCounter());
+      stored.put("key", 1);
+
+      assertThat(loads.load("key", null, k -> CompletableFuture.completedFuture(2), stored::put).get()).isEqualTo(2);
+      assertThat(stored.get("key")).isEqualTo(2);
+   }
+
+   @Test
+   public void testSharedLoad() throws Exception {
+      final Map<String, Integer> stored = new ConcurrentHashMap<>();
+      final AsyncLoads<Integer> loads = new AsyncLoads<>(new StatsCounter());
+      final AtomicInteger computations = new AtomicInteger();
+      final CompletableFuture<Integer> loading = new CompletableFuture<>();
+
+      // concurrent callers share a single load
+      final CompletableFuture<Integer> first = loads.load("key", stored::get, k -> {
+         computations.incrementAndGet();
+         return loading;
+      }, stored::put);
+      final CompletableFuture<Integer> second = loads.load("key", stored::get, k -> {
+         computations.incrementAndGet();
+         return CompletableFuture.completedFuture(0);
+      }, stored::put);
+      assertThat(second).isSameAs(first);
+
+      loading.complete(1);
+      assertThat(first.get()).isEqualTo(1);
+      assertThat(stored.get("key")).isEqualTo(1);
+      assertThat(computations.get()).isEqualTo(1);
+   }
+
+   @Test
+   public void testForgottenAndFailedLoads() {
+      final Map<String, Integer> stored = new ConcurrentHashMap<>();
+      final AsyncLoads<Integer> loads = new AsyncLoads<>(new StatsCounter());
+
+      final CompletableFuture<Integer> forgotten = new CompletableFuture<>();
+      loads.load("forgotten", stored::get, k -> forgotten, stored::put);
+      loads.forget("forgotten");
+      forgotten.complete(1);
+      assertThat(stored).doesNotContainKey("forgotten");
+
+      final CompletableFuture<Integer> failed = new CompletableFuture<>();
+      failed.completeExceptionally(new IllegalStateException());
+      assertThat(loads.load("failed", stored::get, k -> failed, stored::put).isCompletedExceptionally()).isTrue();
+      assertThatThrownBy(() -> loads.get("thrown", stored::get, k -> {
+         throw new IllegalStateException();
+      }, stored::put)).isInstanceOf(IllegalStateException.class);
+      assertThat(stored).isEmpty();
+
+      // a failed load is not registered any more
+      assertThat(loads.get("thrown", stored::get, k -> 2, stored::put)).isEqualTo(2);
+   }
+}
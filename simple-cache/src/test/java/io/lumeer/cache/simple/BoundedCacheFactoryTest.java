@@ -0,0 +1,47 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheConfiguration;
+
+import org.junit.Test;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class BoundedCacheFactoryTest {
+
+   @Test
+   public void testFactory() {
+      final BoundedCacheFactory factory = new BoundedCacheFactory();
+      final CacheConfiguration configuration = new CacheConfiguration();
+      configuration.setMaximumSize(10L);
+
+      final Cache<String> configured = factory.getCache(configuration);
+      assertThat(configured.getConfiguration().getMaximumSize()).isEqualTo(10L);
+
+      final Cache<String> defaults = factory.getCache(new CacheConfiguration());
+      assertThat(defaults.getConfiguration().isBounded()).isTrue();
+      assertThat(new SimpleCacheFactory().getCache(configuration).getConfiguration().isBounded()).isFalse();
+   }
+}
@@ -0,0 +1,254 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.lumeer.engine.api.cache.CacheConfiguration;
+import io.lumeer.engine.api.cache.CacheStats;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class BoundedCacheTest {
+
+   private final AtomicLong time = new AtomicLong();
+
+   @Test
+   public void testMaximumSize() {
+      final CacheConfiguration configuration = new CacheConfiguration();
+      configuration.setMaximumSize(100L);
+      final BoundedCache<Integer> cache = new BoundedCache<>(configuration, time::get);
+
+      IntStream.range(0, 1000).forEach(i -> cache.set("key" + i, i));
+
+      assertThat(cache.size()).isLessThanOrEqualTo(100);
+      assertThat(IntStream.range(0, 1000).filter(i -> cache.get("key" + i) != null).count()).isLessThanOrEqualTo(100);
+      assertThat(cache.get("key999")).isEqualTo(999);
+   }
+
+   @Test
+   public void testFrequentEntriesSurviveScan() {
+      final CacheConfiguration configuration = new CacheConfiguration();
+      configuration.setMaximumSize(100L);
+      final BoundedCache<Integer> cache = new BoundedCache<>(configuration, time::get);
+
+      IntStream.range(0, 20).forEach(i -> cache.set("hot" + i, i));
+      IntStream.range(0, 5).forEach(round -> IntStream.range(0, 20).forEach(i -> cache.get("hot" + i)));
+
+      // entries read just once must not push out the frequently read ones, which are still being read from time to time
+      IntStream.range(0, 1000).forEach(i -> {
+         cache.set("cold" + i, i);
+         cache.get("cold" + i);
+         if (i % 100 == 0) {
+            IntStream.range(0, 20).forEach(j -> cache.get("hot" + j));
+         }
+      });
+
+      assertThat(IntStream.range(0, 20).filter(i -> cache.get("hot" + i) != null).count()).isEqualTo(20);
+      assertThat(cache.size()).isLessThanOrEqualTo(100);
+   }
+
+   @Test
+   public void testMaximumWeight() {
+      final CacheConfiguration configuration = new CacheConfiguration();
+      configuration.setMaximumWeight(100L);
+      configuration.setWeigher(value -> ((String) value).length());
+      final BoundedCache<String> cache = new BoundedCache<>(configuration, time::get);
+
+      IntStream.range(0, 100).forEach(i -> cache.set("key" + i, "0123456789"));
+      assertThat(IntStream.range(0, 100).filter(i -> cache.get("key" + i) != null).count()).isLessThanOrEqualTo(10);
+
+      // a value heavier than the whole cache is never kept
+      cache.set("huge", new String(new char[200]));
+      assertThat(cache.get("huge")).isNull();
+   }
+
+   @Test
+   public void testExpireAfterWrite() {
+      final CacheConfiguration configuration = new CacheConfiguration();
+      configuration.setExpireAfterWrite(1000L);
+      final BoundedCache<String> cache = new BoundedCache<>(configuration, time::get);
+
+      cache.set("key", "value");
+      time.addAndGet(600);
+      assertThat(cache.get("key")).isEqualTo("value");
+      time.addAndGet(600);
+      assertThat(cache.get("key")).isNull();
+      assertThat(cache.size()).isZero();
+
+      cache.set("other", "value");
+      time.addAndGet(1000);
+      cache.cleanUp();
+      assertThat(cache.size()).isZero();
+   }
+
+   @Test
+   public void testExpireAfterAccess() {
+      final CacheConfiguration configuration = new CacheConfiguration();
+      configuration.setExpireAfterAccess(1000L);
+      final BoundedCache<String> cache = new BoundedCache<>(configuration, time::get);
+
+      cache.set("key", "value");
+      IntStream.range(0, 5).forEach(i -> {
+         time.addAndGet(600);
+         assertThat(cache.get("key")).isEqualTo("value");
+      });
+
+      time.addAndGet(1000);
+      assertThat(cache.get("key")).isNull();
+   }
+
+   @Test
+   public void testComputeIfAbsent() {
+      final CacheConfiguration configuration = new CacheConfiguration();
+      configuration.setExpireAfterWrite(1000L);
+      final BoundedCache<Integer> cache = new BoundedCache<>(configuration, time::get);
+      final AtomicInteger computations = new AtomicInteger();
+
+      assertThat(cache.computeIfAbsent("key", k -> computations.incrementAndGet())).isEqualTo(1);
+      assertThat(cache.computeIfAbsent("key", k -> computations.incrementAndGet())).isEqualTo(1);
+
+      time.addAndGet(1000);
+      assertThat(cache.computeIfAbsent("key", k -> computations.incrementAndGet())).isEqualTo(2);
+      assertThat(cache.remove("key")).isEqualTo(2);
+      assertThat(cache.get("key")).isNull();
+   }
+
+   @Test
+   public void testConcurrentComputeIfAbsent() throws Exception {
+      final BoundedCache<Integer> cache = new BoundedCache<>(new CacheConfiguration(), time::get);
+      final AtomicInteger computations = new AtomicInteger();
+      final CountDownLatch computing = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+
+      final CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> cache.computeIfAbsent("key", k -> {
+         computations.incrementAndGet();
+         computing.countDown();
+         await(release);
+         return 1;
+      }));
+      computing.await();
+
+      // a concurrent request waits for the computation in progress, the other keys are computed meanwhile
+      final CompletableFuture<Integer> second = CompletableFuture.supplyAsync(() -> cache.computeIfAbsent("key", k -> computations.incrementAndGet()));
+      assertThat(cache.computeIfAbsent("other", k -> cache.computeIfAbsent("nested", n -> 2) + 1)).isEqualTo(3);
+      assertThat(second.isDone()).isFalse();
+
+      release.countDown();
+      assertThat(first.get()).isEqualTo(1);
+      assertThat(second.get()).isEqualTo(1);
+      assertThat(computations.get()).isEqualTo(1);
+
+      // a failed computation is not stored
+      assertThatThrownBy(() -> cache.computeIfAbsent("failed", k -> {
+         throw new IllegalStateException();
+      })).isInstanceOf(IllegalStateException.class);
+      assertThat(cache.computeIfAbsent("failed", k -> 4)).isEqualTo(4);
+   }
+
+   @Test
+   public void testComputeIfAbsentSharesInstance() throws Exception {
+      final BoundedCache<AtomicInteger> cache = new BoundedCache<>(new CacheConfiguration(), time::get);
+
+      for (int round = 0; round < 200; round++) {
+         final String key = "key" + round;
+         final CompletableFuture<?>[] callers = new CompletableFuture<?>[4];
+
+         // every caller increments the counter it got, no increment may be lost on a replaced instance
+         for (int i = 0; i < callers.length; i++) {
+            callers[i] = CompletableFuture.runAsync(() -> cache.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet());
+         }
+         CompletableFuture.allOf(callers).get();
+
+         assertThat(cache.get(key).get()).isEqualTo(callers.length);
+      }
+   }
+
+   @Test
+   public void testStats() {
+      final CacheConfiguration configuration = new CacheConfiguration();
+      configuration.setMaximumSize(10L);
+      final BoundedCache<Integer> cache = new BoundedCache<>(configuration, time::get);
+
+      cache.computeIfAbsent("key", k -> 1);
+      cache.computeIfAbsent("key", k -> 2);
+      cache.get("key");
+      cache.get("missing");
+      IntStream.range(0, 100).forEach(i -> cache.set("key" + i, i));
+
+      final CacheStats stats = cache.getStats();
+      assertThat(stats.getHitCount()).isEqualTo(2);
+      assertThat(stats.getMissCount()).isEqualTo(2);
+      assertThat(stats.getLoadCount()).isEqualTo(1);
+      assertThat(stats.getHitRate()).isEqualTo(0.5);
+      assertThat(stats.getSize()).isLessThanOrEqualTo(10);
+      assertThat(stats.getEvictionCount()).isEqualTo(101 - stats.getSize());
+
+      final CacheStats simpleStats = new SimpleCache<Integer>().getStats();
+      assertThat(simpleStats.add(stats).getHitCount()).isEqualTo(2);
+   }
+
+   @Test
+   public void testGetAsync() throws Exception {
+      final CacheConfiguration configuration = new CacheConfiguration();
+      configuration.setRefreshAfterWrite(1000L);
+      final BoundedCache<Integer> cache = new BoundedCache<>(configuration, time::get);
+
+      final CompletableFuture<Integer> loading = new CompletableFuture<>();
+      final CompletableFuture<Integer> first = cache.getAsync("key", k -> loading);
+      assertThat(first.isDone()).isFalse();
+      loading.complete(1);
+      assertThat(first.get()).isEqualTo(1);
+      assertThat(cache.get("key")).isEqualTo(1);
+
+      // an old value is served while it is being refreshed
+      time.addAndGet(1000);
+      final CompletableFuture<Integer> refresh = new CompletableFuture<>();
+      assertThat(cache.getAsync("key", k -> refresh).get()).isEqualTo(1);
+      assertThat(cache.get("key")).isEqualTo(1);
+      refresh.complete(2);
+      assertThat(cache.get("key")).isEqualTo(2);
+
+      // a value removed while being loaded is not stored
+      final CompletableFuture<Integer> removed = new CompletableFuture<>();
+      cache.getAsync("other", k -> removed);
+      cache.remove("other");
+      removed.complete(3);
+      assertThat(cache.get("other")).isNull();
+   }
+
+   private static void await(final CountDownLatch latch) {
+      try {
+         latch.await();
+      } catch (InterruptedException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+}
@@ -0,0 +1,67 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.cache.CacheConfiguration;
+import io.lumeer.engine.api.data.DataDocument;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class OffHeapCacheTest {
+
+   private final AtomicLong time = new AtomicLong();
+
+   @Test
+   public void testOffHeapCache() {
+      final CacheConfiguration configuration = new CacheConfiguration();
+      configuration.setOffHeapSize(64L * 1024);
+      configuration.setExpireAfterWrite(1000L);
+      final OffHeapCache<Object> cache = new OffHeapCache<>(configuration, time::get);
+
+      final DataDocument document = new DataDocument("name", "value");
+      cache.set("document", document);
+      document.put("name", "changed");
+      assertThat(cache.get("document")).isEqualTo(new DataDocument("name", "value"));
+
+      // values that cannot be serialized are not stored
+      cache.set("unsupported", new AtomicLong());
+      assertThat(cache.get("unsupported")).isNull();
+
+      // the oldest entries are evicted when the memory is full
+      final String large = new String(new char[1000]).replace('\0', 'x');
+      IntStream.range(0, 200).forEach(i -> cache.set("large" + i, new DataDocument("value", large)));
+      assertThat(cache.get("document")).isNull();
+      assertThat(cache.get("large199")).isEqualTo(new DataDocument("value", large));
+      assertThat(cache.getStats().getEvictionCount()).isPositive();
+
+      time.addAndGet(1000);
+      assertThat(cache.get("large199")).isNull();
+      cache.cleanUp();
+      assertThat(cache.getStats().getSize()).isZero();
+   }
+}
@@ -0,0 +1,85 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class StripedLocksTest {
+
+   @Test
+   public void testLocks() throws Exception {
+      final StripedLocks locks = new StripedLocks();
+
+      locks.lock("key");
+      assertThat(locks.tryLock("key")).isTrue();
+      assertThat(CompletableFuture.supplyAsync(() -> locks.tryLock("key", 10, TimeUnit.MILLISECONDS)).get()).isFalse();
+
+      // keys can only be unlocked by their holder, even when another key of the same stripe is held
+      assertThat(CompletableFuture.supplyAsync(() -> {
+         try {
+            locks.unlock("key");
+            return false;
+         } catch (IllegalMonitorStateException e) {
+            return true;
+         }
+      }).get()).isTrue();
+      final String sameStripe = IntStream.range(0, 10000).mapToObj(i -> "key" + i).filter(k -> stripe(k) == stripe("key")).findFirst().get();
+      locks.unlock(sameStripe);
+      assertThat(CompletableFuture.supplyAsync(() -> locks.tryLock("key", 10, TimeUnit.MILLISECONDS)).get()).isFalse();
+
+      locks.unlock("key");
+      locks.unlock("key");
+      // unlocking keys not locked is ignored
+      locks.unlock("key");
+      locks.unlock("other");
+
+      assertThat(CompletableFuture.supplyAsync(() -> {
+         final boolean locked = locks.tryLock("key", 10, TimeUnit.MILLISECONDS);
+         locks.unlock("key");
+         return locked;
+      }).get()).isTrue();
+   }
+
+   @Test
+   public void testWaitTime() throws Exception {
+      final StripedLocks locks = new StripedLocks();
+
+      locks.lock("key");
+      assertThat(CompletableFuture.supplyAsync(() -> locks.tryLock("key", 10, TimeUnit.MILLISECONDS)).get()).isFalse();
+      locks.unlock("key");
+
+      assertThat(locks.getWaitTime()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+   }
+
+   private static int stripe(final String key) {
+      final int hash = key.hashCode();
+
+      return (hash ^ (hash >>> 16)) & 63;
+   }
+}
@@ -0,0 +1,72 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheConfiguration;
+import io.lumeer.engine.api.data.DataDocument;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class TieredCacheTest {
+
+   @Test
+   public void testTieredCache() {
+      final CacheConfiguration configuration = new CacheConfiguration();
+      configuration.setMaximumSize(10L);
+      configuration.setOffHeapSize(1024L * 1024);
+      final Cache<DataDocument> cache = new BoundedCacheFactory().getCache(configuration);
+      assertThat(cache).isInstanceOf(TieredCache.class);
+
+      IntStream.range(0, 100).forEach(i -> cache.set("key" + i, new DataDocument("value", i)));
+
+      // the values evicted from the heap are read from the off-heap level
+      assertThat(IntStream.range(0, 100).filter(i -> new DataDocument("value", i).equals(cache.get("key" + i))).count()).isEqualTo(100);
+      assertThat(cache.computeIfAbsent("key0", k -> new DataDocument())).isEqualTo(new DataDocument("value", 0));
+
+      cache.remove("key0");
+      assertThat(cache.get("key0")).isNull();
+      assertThat(cache.getStats().getHitCount()).isEqualTo(101);
+   }
+
+   @Test
+   public void testTieredCacheRefusesMutableValues() {
+      final CacheConfiguration configuration = new CacheConfiguration();
+      configuration.setMaximumSize(10L);
+      configuration.setOffHeapSize(1024L * 1024);
+      final TieredCache<Object> cache = (TieredCache<Object>) new BoundedCacheFactory().getCache(configuration);
+
+      IntStream.range(0, 10).forEach(i -> cache.set("key" + i, new DataDocument("value", i)));
+      cache.set("counter", new AtomicLong(1));
+      assertThat(cache.isTiered()).isFalse();
+
+      // without the off-heap level the values evicted from the heap are gone
+      IntStream.range(10, 100).forEach(i -> cache.set("key" + i, new DataDocument("value", i)));
+      assertThat(IntStream.range(0, 100).filter(i -> cache.get("key" + i) != null).count()).isLessThanOrEqualTo(10);
+   }
+}
@@ -20,18 +20,21 @@
 package io.lumeer.engine.controller;
 
 import io.lumeer.engine.annotation.UserDataStorage;
+import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.batch.Batch;
 import io.lumeer.engine.api.batch.MergeBatch;
 import io.lumeer.engine.api.batch.SplitBatch;
 import io.lumeer.engine.api.constraint.InvalidConstraintException;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.DataStorageDialect;
 import io.lumeer.engine.api.exception.DbException;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.List;
+import java.util.Iterator;
+import java.util.stream.Stream;
 import javax.enterprise.context.SessionScoped;
 import javax.inject.Inject;
 
@@ -49,15 +52,13 @@ public class BatchFacade implements Serializable {
    @UserDataStorage
    private DataStorage dataStorage;
 
+   @Inject
+   private DataStorageDialect dataStorageDialect;
+
    @Inject
    private DocumentFacade documentFacade;
 
    public void executeBatch(final Batch batch) throws DbException, InvalidConstraintException {
-      // first check collection size
-      if (dataStorage.count(batch.getCollectionName(), null) > 10000) {
-         throw new UnsupportedOperationException("Cannot run a batch process on collections with more than 10000 documents.");
-      }
-
       if (batch instanceof MergeBatch) {
          internalExecuteBatch((MergeBatch) batch);
       } else if (batch instanceof SplitBatch) {
@@ -66,131 +67,155 @@ public class BatchFacade implements Serializable {
    }
 
    private void internalExecuteBatch(final MergeBatch batch) throws DbException, InvalidConstraintException {
-      List<DataDocument> documents = dataStorage.search(batch.getCollectionName(), null, null, 0, 0);
+      try (final Stream<DataDocument> documents = streamAllDocuments(batch.getCollectionName())) {
+         final Iterator<DataDocument> iterator = documents.iterator();
 
-      for (final DataDocument doc : documents) {
-         if (batch.getMergeType() == MergeBatch.MergeType.JOIN) {
-            final StringBuilder sb = new StringBuilder();
+         while (iterator.hasNext()) {
+            mergeDocument(batch, iterator.next());
+         }
+      }
+   }
 
-            batch.getAttributes().forEach(attr -> {
-               final Object value = doc.get(attr);
+   private void mergeDocument(final MergeBatch batch, final DataDocument doc) throws DbException, InvalidConstraintException {
+      if (batch.getMergeType() == MergeBatch.MergeType.JOIN) {
+         final StringBuilder sb = new StringBuilder();
 
-               if (value != null) {
-                  if (sb.length() > 0) {
-                     sb.append(batch.getJoin());
-                  }
+         batch.getAttributes().forEach(attr -> {
+            final Object value = doc.get(attr);
 
-                  sb.append(value);
+            if (value != null) {
+               if (sb.length() > 0) {
+                  sb.append(batch.getJoin());
                }
-            });
-
-            doc.put(batch.getResultAttribute(), sb.toString());
-         } else if (batch.getMergeType() == MergeBatch.MergeType.SUM) {
-            double sum = 0d;
-            long longSum = 0l;
-            BigDecimal bigDecimal = new BigDecimal("0");
-            BigInteger bigInteger = new BigInteger("0");
-            boolean wasFloating = false;
-            boolean onlyBigDecimal = true;
-            boolean onlyBigInteger = true;
-
-            for (final String attr : batch.getAttributes()) {
-               final Object value = doc.get(attr);
-
-               if (value != null) {
-                  if (value instanceof Double) {
-                     sum = sum + (double) value;
-                     wasFloating = true;
-                     onlyBigDecimal = false;
-                  } else if (value instanceof Integer) {
-                     sum = sum + (int) value;
-                     longSum = longSum + (int) value;
-                     onlyBigDecimal = false;
-                  } else if (value instanceof Long) {
-                     sum = sum + (long) value;
-                     longSum = longSum + (long) value;
-                     onlyBigDecimal = false;
-                  } else if (value instanceof Float) {
-                     sum = sum + (float) value;
-                     wasFloating = true;
-                     onlyBigDecimal = false;
-                  } else if (value instanceof Byte) {
-                     sum = sum + (byte) value;
-                     longSum = longSum + (byte) value;
-                     onlyBigDecimal = false;
-                  } else if (value instanceof BigDecimal) {
-                     bigDecimal = bigDecimal.add((BigDecimal) value);
-                     sum = sum + ((BigDecimal) value).doubleValue();
-                     onlyBigInteger = false;
-                  } else if (value instanceof BigInteger) {
-                     bigDecimal = bigDecimal.add(new BigDecimal((BigInteger) value));
-                     bigInteger = bigInteger.add((BigInteger) value);
-                     sum = sum + ((BigInteger) value).longValue();
-                  }
+
+               sb.append(value);
+            }
+         });
+
+         doc.put(batch.getResultAttribute(), sb.toString());
+      } else if (batch.getMergeType() == MergeBatch.MergeType.SUM) {
+         double sum = 0d;
+         long longSum = 0l;
+         BigDecimal bigDecimal = new BigDecimal("0");
+         BigInteger bigInteger = new BigInteger("0");
+         boolean wasFloating = false;
+         boolean onlyBigDecimal = true;
+         boolean onlyBigInteger = true;
+
+         for (final String attr : batch.getAttributes()) {
+            final Object value = doc.get(attr);
+
+            if (value != null) {
+               if (value instanceof Double) {
+                  sum = sum + (double) value;
+                  wasFloating = true;
+                  onlyBigDecimal = false;
+               } else if (value instanceof Integer) {
+                  sum = sum + (int) value;
+                  longSum = longSum + (int) value;
+                  onlyBigDecimal = false;
+               } else if (value instanceof Long) {
+                  sum = sum + (long) value;
+                  longSum = longSum + (long) value;
+                  onlyBigDecimal = false;
+               } else if (value instanceof Float) {
+                  sum = sum + (float) value;
+                  wasFloating = true;
+                  onlyBigDecimal = false;
+               } else if (value instanceof Byte) {
+                  sum = sum + (byte) value;
+                  longSum = longSum + (byte) value;
+                  onlyBigDecimal = false;
+               } else if (value instanceof BigDecimal) {
+                  bigDecimal = bigDecimal.add((BigDecimal) value);
+                  sum = sum + ((BigDecimal) value).doubleValue();
+                  onlyBigInteger = false;
+               } else if (value instanceof BigInteger) {
+                  bigDecimal = bigDecimal.add(new BigDecimal((BigInteger) value));
+                  bigInteger = bigInteger.add((BigInteger) value);
+                  sum = sum + ((BigInteger) value).longValue();
                }
             }
+         }
 
-            // now see what types we had and try to be as restrictive as possible
-            if (onlyBigInteger) {
-               doc.put(batch.getResultAttribute(), bigInteger);
-            } else if (onlyBigDecimal) {
-               doc.put(batch.getResultAttribute(), bigDecimal);
-            } else if (!wasFloating) {
-               doc.put(batch.getResultAttribute(), longSum);
-            } else {
-               doc.put(batch.getResultAttribute(), sum);
-            }
+         // now see what types we had and try to be as restrictive as possible
+         if (onlyBigInteger) {
+            doc.put(batch.getResultAttribute(), bigInteger);
+         } else if (onlyBigDecimal) {
+            doc.put(batch.getResultAttribute(), bigDecimal);
+         } else if (!wasFloating) {
+            doc.put(batch.getResultAttribute(), longSum);
          } else {
-            final DataDocument subDoc = new DataDocument();
-
-            batch.getAttributes().forEach(attr -> {
-               final Object value = doc.get(attr);
+            doc.put(batch.getResultAttribute(), sum);
+         }
+      } else {
+         final DataDocument subDoc = new DataDocument();
 
-               if (value != null) {
-                  subDoc.put(attr, doc.get(attr));
-               }
-            });
+         batch.getAttributes().forEach(attr -> {
+            final Object value = doc.get(attr);
 
-            doc.put(batch.getResultAttribute(), subDoc);
-         }
+            if (value != null) {
+               subDoc.put(attr, doc.get(attr));
+            }
+         });
 
-         if (!batch.isKeepOriginal()) {
-            batch.getAttributes().forEach(a -> {
-               try {
-                  documentFacade.dropAttribute(batch.getCollectionName(), doc.getId(), a);
-               } catch (DbException e) {
-                  // nps, we cannot do m ore
-               }
-               doc.remove(a); // TODO check - for future compatibility but has no effect now
-            });
-         }
+         doc.put(batch.getResultAttribute(), subDoc);
+      }
 
-         documentFacade.updateDocument(batch.getCollectionName(), doc);
+      if (!batch.isKeepOriginal()) {
+         batch.getAttributes().forEach(a -> {
+            try {
+               documentFacade.dropAttribute(batch.getCollectionName(), doc.getId(), a);
+            } catch (DbException e) {
+               // nps, we cannot do m ore
+            }
+            doc.remove(a); // TODO check - for future compatibility but has no effect now
+         });
       }
+
+      documentFacade.updateDocument(batch.getCollectionName(), doc);
    }
 
    private void internalExecuteBatch(final SplitBatch batch) throws DbException, InvalidConstraintException {
-      List<DataDocument> documents = dataStorage.search(batch.getCollectionName(), null, null, 0, 0);
+      try (final Stream<DataDocument> documents = streamAllDocuments(batch.getCollectionName())) {
+         final Iterator<DataDocument> iterator = documents.iterator();
 
-      for (final DataDocument doc : documents) {
-         final Object value = doc.get(batch.getAttribute());
+         while (iterator.hasNext()) {
+            splitDocument(batch, iterator.next());
+         }
+      }
+   }
 
-         if (value != null) {
-            final String original = value instanceof String ? (String) value : value.toString();
-            final String[] parts = original.split(batch.getDelimiter(), batch.getSplitAttributes().size());
+   private void splitDocument(final SplitBatch batch, final DataDocument doc) throws DbException, InvalidConstraintException {
+      final Object value = doc.get(batch.getAttribute());
 
-            for (int i = 0; i < parts.length; i++) {
-               doc.put(batch.getSplitAttributes().get(i), batch.isTrim() ? parts[i].trim() : parts[i]);
-            }
-         }
+      if (value != null) {
+         final String original = value instanceof String ? (String) value : value.toString();
+         final String[] parts = original.split(batch.getDelimiter(), batch.getSplitAttributes().size());
 
-         if (!batch.isKeepOriginal()) {
-            documentFacade.dropAttribute(batch.getCollectionName(), doc.getId(), batch.getAttribute());
-            doc.remove(batch.getAttribute()); // TODO check - for future compatibility
+         for (int i = 0; i < parts.length; i++) {
+            doc.put(batch.getSplitAttributes().get(i), batch.isTrim() ? parts[i].trim() : parts[i]);
          }
+      }
 
-         documentFacade.updateDocument(batch.getCollectionName(), doc);
+      if (!batch.isKeepOriginal()) {
+         documentFacade.dropAttribute(batch.getCollectionName(), doc.getId(), batch.getAttribute());
+         doc.remove(batch.getAttribute()); // TODO check - for future compatibility
       }
+
+      documentFacade.updateDocument(batch.getCollectionName(), doc);
+   }
+
+   /**
+    * Streams all documents of the given collection ordered by their ids. Documents updated by the batch
+    * keep their ids, so each of them is visited exactly once even when it is rewritten while the cursor is open.
+    *
+    * @param collectionName
+    *       internal name of the collection
+    * @return stream of all documents in the collection that must be closed after use
+    */
+   private Stream<DataDocument> streamAllDocuments(final String collectionName) {
+      return dataStorage.searchStream(collectionName, null, dataStorageDialect.documentFieldSort(LumeerConst.Document.ID, LumeerConst.SORT_ASCENDING_ORDER), null, LumeerConst.DEFAULT_BATCH_SIZE);
    }
 
 }
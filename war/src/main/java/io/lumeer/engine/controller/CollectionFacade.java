@@ -19,16 +19,19 @@
  */
 package io.lumeer.engine.controller;
 
+import io.lumeer.engine.annotation.SearchDataStorage;
 import io.lumeer.engine.annotation.UserDataStorage;
 import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheManager;
 import io.lumeer.engine.api.constraint.Constraint;
 import io.lumeer.engine.api.constraint.ConstraintManager;
 import io.lumeer.engine.api.constraint.InvalidConstraintException;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.DataStorageDialect;
+import io.lumeer.engine.api.data.WriteOperation;
 import io.lumeer.engine.api.dto.Attribute;
-import io.lumeer.engine.api.event.ChangeCollectionName;
 import io.lumeer.engine.api.event.CreateCollection;
 import io.lumeer.engine.api.event.DropCollection;
 import io.lumeer.engine.api.exception.AttributeAlreadyExistsException;
@@ -36,20 +39,29 @@ import io.lumeer.engine.api.exception.AttributeNotFoundException;
 import io.lumeer.engine.api.exception.CollectionMetadataDocumentNotFoundException;
 import io.lumeer.engine.api.exception.CollectionNotFoundException;
 import io.lumeer.engine.api.exception.DbException;
+import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
 import io.lumeer.engine.api.exception.UserCollectionAlreadyExistsException;
+import io.lumeer.engine.controller.search.QueryResultCache;
+import io.lumeer.engine.util.AttributeValueSummary;
 import io.lumeer.engine.util.ErrorMessageBuilder;
+import io.lumeer.engine.util.Utils;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 import javax.enterprise.context.SessionScoped;
 import javax.enterprise.event.Event;
-import javax.enterprise.event.Observes;
-import javax.enterprise.event.Reception;
 import javax.inject.Inject;
 import javax.inject.Named;
 
@@ -64,10 +76,20 @@ public class CollectionFacade implements Serializable {
 
    private static final long serialVersionUID = 8967474543742743308L;
 
+   private static final String DOCUMENT_COUNTS_CACHE = "documentCounts";
+   private static final long DOCUMENT_COUNT_TTL = TimeUnit.MINUTES.toMillis(5);
+   private static final String ATTRIBUTE_VALUES_CACHE = "attributeValues";
+   private static final int ATTRIBUTE_VALUES_LIMIT = 100;
+   private static final int ATTRIBUTE_VALUES_CAPACITY = 1000;
+
    @Inject
    @UserDataStorage
    private DataStorage dataStorage;
 
+   @Inject
+   @SearchDataStorage
+   private DataStorage searchDataStorage;
+
    @Inject
    private DataStorageDialect dataStorageDialect;
 
@@ -101,8 +123,11 @@ public class CollectionFacade implements Serializable {
    @Inject
    private SecurityFacade securityFacade;
 
-   // cache of collections - keys are internal names, values are original names
-   private Map<String, String> collections;
+   @Inject
+   private CacheManager cacheManager;
+
+   @Inject
+   private QueryResultCache queryResultCache;
 
    /**
     * Returns a Map object of collection names for current project.
@@ -110,10 +135,7 @@ public class CollectionFacade implements Serializable {
     * @return the map of collection names. Keys are internal names, values are original names.
     */
    public Map<String, String> getAllCollections() {
-      Map<String, String> collections = getAllCollections(projectFacade.getCurrentProjectCode());
-
-      this.collections = collections;
-      return collections;
+      return getAllCollections(projectFacade.getCurrentProjectCode());
    }
 
    /**
@@ -204,10 +226,141 @@ public class CollectionFacade implements Serializable {
       dropCollectionMetadata(collectionName);
       dataStorage.dropCollection(collectionName);
       versionFacade.trashShadowCollection(collectionName);
+      getDocumentCountCache().remove(collectionName);
+      getAttributeValueSummaries().remove(collectionName);
+      queryResultCache.invalidate(collectionName);
 
       dropCollectionEvent.fire(new DropCollection(null, collectionName));
    }
 
+   /**
+    * Gets the number of documents in the given collection. The number is read from the collection metadata and then
+    * kept up to date by the document changes done through {@link DocumentFacade}, so no documents are read. The number
+    * is read again after {@link #DOCUMENT_COUNT_TTL} to include the changes done by other engine instances.
+    *
+    * @param collectionName
+    *       internal collection name
+    * @return number of documents in the collection
+    */
+   public long getDocumentCount(final String collectionName) {
+      final Cache<DocumentCount> documentCounts = getDocumentCountCache();
+      final DocumentCount count = documentCounts.computeIfAbsent(collectionName, this::readDocumentCount);
+
+      if (count.isStale()) {
+         final DocumentCount current = readDocumentCount(collectionName);
+         documentCounts.set(collectionName, current);
+
+         return current.get();
+      }
+
+      return count.get();
+   }
+
+   /**
+    * Gets the number of documents in each of the given collections.
+    *
+    * @param collectionNames
+    *       internal collection names
+    * @return map of internal collection names to the numbers of their documents
+    * @see #getDocumentCount(String)
+    */
+   public Map<String, Long> getDocumentCounts(final Set<String> collectionNames) {
+      final Map<String, Long> counts = new HashMap<>();
+      collectionNames.forEach(collectionName -> counts.put(collectionName, getDocumentCount(collectionName)));
+
+      return counts;
+   }
+
+   /**
+    * Updates the remembered number of documents in the given collection after documents were created or dropped.
+    *
+    * @param collectionName
+    *       internal collection name
+    * @param delta
+    *       number of created documents, negative for dropped documents
+    */
+   public void updateDocumentCount(final String collectionName, final long delta) {
+      final DocumentCount count = getDocumentCountCache().get(collectionName);
+
+      if (count != null) {
+         count.add(delta);
+      }
+   }
+
+   private DocumentCount readDocumentCount(final String collectionName) {
+      return new DocumentCount(searchDataStorage.estimatedDocumentCount(collectionName));
+   }
+
+   private Cache<DocumentCount> getDocumentCountCache() {
+      return cacheManager.getCache(DOCUMENT_COUNTS_CACHE);
+   }
+
+   /**
+    * Updates the remembered values of attributes after a document changed. Only the attributes whose values were already
+    * requested are updated, the others are read from the collection on the first request.
+    *
+    * @param collectionName
+    *       internal collection name
+    * @param originalDocument
+    *       the document before the change, null for a created document
+    * @param changedDocument
+    *       the document after the change, null for a dropped document
+    */
+   public void updateAttributeValues(final String collectionName, final DataDocument originalDocument, final DataDocument changedDocument) {
+      final Map<String, AttributeValueSummary> summaries = getAttributeValueSummaries().get(collectionName);
+
+      if (summaries == null) {
+         return;
+      }
+
+      summaries.forEach((attributeName, summary) -> {
+         final Object originalValue = getAttributeValue(originalDocument, attributeName);
+         final Object changedValue = getAttributeValue(changedDocument, attributeName);
+
+         if (!Objects.equals(originalValue, changedValue)) {
+            summary.remove(originalValue);
+            summary.add(changedValue);
+         }
+      });
+   }
+
+   private void forgetAttributeValues(final String collectionName, final String... attributeNames) {
+      final Map<String, AttributeValueSummary> summaries = getAttributeValueSummaries().get(collectionName);
+
+      if (summaries != null) {
+         Arrays.asList(attributeNames).forEach(summaries::remove);
+      }
+   }
+
+   private AttributeValueSummary readAttributeValueSummary(final String collectionName, final String attributeName) {
+      final AttributeValueSummary summary = new AttributeValueSummary(ATTRIBUTE_VALUES_CAPACITY);
+
+      // the most frequent values are read with their counts, so the values already frequent stay ahead of the new ones;
+      // the values are read from the search storage, the later changes are applied by the document writes
+      searchDataStorage.aggregate(collectionName, dataStorageDialect.attributeValueCountsAggregate(attributeName, ATTRIBUTE_VALUES_CAPACITY))
+                 .forEach(valueCount -> summary.add(valueCount.get("value"), ((Number) valueCount.get("count")).longValue()));
+
+      return summary;
+   }
+
+   private Cache<Map<String, AttributeValueSummary>> getAttributeValueSummaries() {
+      return cacheManager.getCache(ATTRIBUTE_VALUES_CACHE);
+   }
+
+   // nested attributes are separated by dots, missing attributes have null value
+   private static Object getAttributeValue(final DataDocument document, final String attributeName) {
+      Object value = document;
+
+      for (final String key : attributeName.split("\\.")) {
+         if (!(value instanceof DataDocument)) {
+            return null;
+         }
+         value = ((DataDocument) value).get(key);
+      }
+
+      return value;
+   }
+
    /**
     * Reads all attributes of given collection.
     *
@@ -246,9 +399,32 @@ public class CollectionFacade implements Serializable {
     *       if attribute was not found in metadata collection
     */
    public Set<String> getAttributeValues(final String collectionName, final String attributeName) throws CollectionNotFoundException, AttributeNotFoundException {
+      return getAttributeValues(collectionName, attributeName, null);
+   }
+
+   /**
+    * Gets the 100 most frequent values of the given attribute in the given collection that start with the given prefix.
+    * The values are read from the collection once and then kept up to date by the document changes done through {@link DocumentFacade},
+    * only the most frequent values are remembered.
+    *
+    * @param collectionName
+    *       the internal name of the collection where documents contain the given attribute
+    * @param attributeName
+    *       the name of the attribute
+    * @param prefix
+    *       the case insensitive prefix of the values, null or empty for all values
+    * @return the distinct set of values of the given attribute ordered from the most frequent one
+    * @throws CollectionNotFoundException
+    *       if collection was not found in database
+    * @throws AttributeNotFoundException
+    *       if attribute was not found in metadata collection
+    */
+   public Set<String> getAttributeValues(final String collectionName, final String attributeName, final String prefix) throws CollectionNotFoundException, AttributeNotFoundException {
       if (dataStorage.hasCollection(collectionName)) {
          if (collectionMetadataFacade.getAttributesNames(collectionName).contains(attributeName)) {
-            return dataStorage.getAttributeValues(collectionName, attributeName);
+            return getAttributeValueSummaries().computeIfAbsent(collectionName, name -> new ConcurrentHashMap<>())
+                                               .computeIfAbsent(attributeName, name -> readAttributeValueSummary(collectionName, name))
+                                               .getTopValues(prefix, ATTRIBUTE_VALUES_LIMIT);
          } else {
             throw new AttributeNotFoundException(ErrorMessageBuilder.attributeNotFoundInColString(attributeName, collectionName));
          }
@@ -266,14 +442,26 @@ public class CollectionFacade implements Serializable {
     *       name of the attribute to remove
     * @throws CollectionNotFoundException
     *       if collection was not found in database
+    * @throws UnsuccessfulOperationException
+    *       if the attribute could not be removed from some of the documents
     */
-   public void dropAttribute(final String collectionName, final String attributeName) throws CollectionNotFoundException {
+   public void dropAttribute(final String collectionName, final String attributeName) throws CollectionNotFoundException, UnsuccessfulOperationException {
       if (dataStorage.hasCollection(collectionName)) {
          collectionMetadataFacade.dropAttribute(collectionName, attributeName);
-         List<DataDocument> documents = getAllDocuments(collectionName);
-
-         for (DataDocument document : documents) {
-            dataStorage.dropAttribute(collectionName, dataStorageDialect.documentIdFilter(document.getId()), attributeName);
+         try (Stream<DataDocument> documents = streamAllDocuments(collectionName, LumeerConst.Document.ID)) {
+            final List<WriteOperation> operations = new ArrayList<>(LumeerConst.DEFAULT_BATCH_SIZE);
+            final Iterator<DataDocument> iterator = documents.iterator();
+            while (iterator.hasNext()) {
+               operations.add(WriteOperation.dropAttribute(dataStorageDialect.documentIdFilter(iterator.next().getId()), attributeName));
+               if (operations.size() == LumeerConst.DEFAULT_BATCH_SIZE || !iterator.hasNext()) {
+                  Utils.checkWriteResults(dataStorage.bulkWrite(collectionName, operations, false));
+                  operations.clear();
+               }
+            }
+         } finally {
+            // some of the documents might have been changed even when the removal failed
+            forgetAttributeValues(collectionName, attributeName);
+            queryResultCache.invalidate(collectionName);
          }
 
          collectionMetadataFacade.setLastTimeUsedNow(collectionName);
@@ -300,6 +488,8 @@ public class CollectionFacade implements Serializable {
       if (dataStorage.hasCollection(collectionName)) {
          collectionMetadataFacade.renameAttribute(collectionName, origName, newName);
          dataStorage.renameAttribute(collectionName, origName, newName);
+         forgetAttributeValues(collectionName, origName, newName);
+         queryResultCache.invalidate(collectionName);
 
          collectionMetadataFacade.setLastTimeUsedNow(collectionName);
       } else {
@@ -330,14 +520,12 @@ public class CollectionFacade implements Serializable {
          // we check if attribute value in all existing documents satisfies new constraint
          ConstraintManager constraintManager = new ConstraintManager(Collections.singletonList(constraintConfiguration));
 
-         List<DataDocument> allDocuments = getAllDocuments(collectionName);
-         for (DataDocument document : allDocuments) {
+         try (Stream<DataDocument> documents = streamAllDocuments(collectionName, attributeName)) {
             // TODO: fix fixable value
-            String value = document.get(attributeName).toString();
-            if (value == null) { // document does not contain given attribute
-               continue;
-            }
-            if (!(constraintManager.isValid(value) == Constraint.ConstraintResult.VALID)) {
+            final boolean allValid = documents.map(document -> document.get(attributeName))
+                                              .filter(Objects::nonNull) // document does not contain given attribute
+                                              .allMatch(value -> constraintManager.isValid(value.toString()) == Constraint.ConstraintResult.VALID);
+            if (!allValid) {
                return false; // we have found invalid value, so the constraint cannot be added
             }
          }
@@ -374,33 +562,43 @@ public class CollectionFacade implements Serializable {
       }
    }
 
-   public void onCollectionCreate(@Observes(notifyObserver = Reception.IF_EXISTS) final CreateCollection event) {
-      if (collections != null) {
-         collections.put(event.getInternalName(), event.getUserName());
-      }
-   }
-
-   public void onCollectionDrop(@Observes(notifyObserver = Reception.IF_EXISTS) final DropCollection event) {
-      if (collections != null) {
-         collections.remove(event.getInternalName());
-      }
-   }
-
-   public void onCollectionRename(@Observes(notifyObserver = Reception.IF_EXISTS) final ChangeCollectionName event) {
-      if (collections != null) {
-         collections.put(event.getInternalName(), event.getUserName());
-      }
-   }
-
    /**
-    * Returns a list of all DataDocument objects in given collection.
+    * Returns a stream of all DataDocument objects in given collection. The stream must be closed after use.
     *
     * @param collectionName
     *       name of the collection
-    * @return list of all documents
+    * @param attribute
+    *       the only attribute the documents need to contain
+    * @return stream of all documents
     */
-   private List<DataDocument> getAllDocuments(String collectionName) {
-      return dataStorage.search(collectionName, null, null, 0, 0);
+   private Stream<DataDocument> streamAllDocuments(final String collectionName, final String attribute) {
+      return dataStorage.searchStream(collectionName, null, null, Collections.singletonList(attribute), LumeerConst.DEFAULT_BATCH_SIZE);
    }
 
+   /**
+    * Number of documents in a collection together with the time it was read from the database.
+    */
+   private static class DocumentCount implements Serializable {
+
+      private static final long serialVersionUID = -3384923707473452061L;
+
+      private final AtomicLong count;
+      private final long readTime = System.currentTimeMillis();
+
+      private DocumentCount(final long count) {
+         this.count = new AtomicLong(count);
+      }
+
+      private long get() {
+         return count.get();
+      }
+
+      private void add(final long delta) {
+         count.addAndGet(delta);
+      }
+
+      private boolean isStale() {
+         return System.currentTimeMillis() - readTime > DOCUMENT_COUNT_TTL;
+      }
+   }
 }
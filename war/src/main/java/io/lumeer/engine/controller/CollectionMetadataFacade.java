@@ -29,12 +29,14 @@ import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataFilter;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.DataStorageDialect;
+import io.lumeer.engine.api.data.WriteOperation;
 import io.lumeer.engine.api.dto.Attribute;
 import io.lumeer.engine.api.dto.CollectionMetadata;
 import io.lumeer.engine.api.event.ChangeCollectionName;
 import io.lumeer.engine.api.exception.AttributeAlreadyExistsException;
 import io.lumeer.engine.api.exception.CollectionMetadataDocumentNotFoundException;
 import io.lumeer.engine.api.exception.InvalidValueException;
+import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
 import io.lumeer.engine.api.exception.UserCollectionAlreadyExistsException;
 import io.lumeer.engine.api.exception.UserCollectionNotFoundException;
 import io.lumeer.engine.util.ErrorMessageBuilder;
@@ -320,24 +322,52 @@ public class CollectionMetadataFacade implements Serializable {
     *       internal collection name
     * @param attributeName
     *       attribute's name
+    * @throws UnsuccessfulOperationException
+    *       when the metadata could not be updated
     */
-   public void addOrIncrementAttribute(String collectionName, String attributeName) {
-      Attribute attribute = getAttributeInfo(collectionName, attributeName);
+   public void addOrIncrementAttribute(String collectionName, String attributeName) throws UnsuccessfulOperationException {
+      addOrIncrementAttributes(collectionName, Collections.singleton(attributeName));
+   }
 
-      if (attribute != null) {
-         String updateKey = dialect.concatFields(Collection.ATTRIBUTES_KEY, "$", Collection.ATTRIBUTE_COUNT_KEY);
-         DataDocument renameDocument = new DataDocument(updateKey, attribute.getCount() + 1);
-         dataStorage.updateDocument(metadataCollection(), renameDocument, attributeFilter(collectionName, attributeName));
-      } else {
-         dataStorage.addItemToArray(metadataCollection(),
-               internalNameFilter(collectionName),
-               Collection.ATTRIBUTES_KEY,
-               new DataDocument()
-                     .append(Collection.ATTRIBUTE_FULL_NAME_KEY, attributeName)
-                     .append(Collection.ATTRIBUTE_NAME_KEY, attributeName(attributeName))
-                     .append(Collection.ATTRIBUTE_CONSTRAINTS_KEY, new ArrayList<String>())
-                     .append(Collection.ATTRIBUTE_COUNT_KEY, 1));
+   /**
+    * Adds attributes to metadata collection, if the attributes already aren't there.
+    * Otherwise just increments their counts. All changes are written in a single bulk write.
+    * This should be called only when adding/updating document.
+    *
+    * @param collectionName
+    *       internal collection name
+    * @param attributeNames
+    *       set of attributes' names
+    * @throws UnsuccessfulOperationException
+    *       when the metadata could not be updated
+    */
+   public void addOrIncrementAttributes(String collectionName, Set<String> attributeNames) throws UnsuccessfulOperationException {
+      if (attributeNames.isEmpty()) {
+         return;
       }
+
+      Map<String, Attribute> attributes = getAttributesInfo(collectionName);
+      String countKey = dialect.concatFields(Collection.ATTRIBUTES_KEY, "$", Collection.ATTRIBUTE_COUNT_KEY);
+      List<WriteOperation> operations = new ArrayList<>();
+      List<DataDocument> newAttributes = new ArrayList<>();
+
+      for (String attributeName : attributeNames) {
+         if (attributes.containsKey(attributeName)) {
+            operations.add(WriteOperation.increment(attributeFilter(collectionName, attributeName), countKey, 1));
+         } else {
+            newAttributes.add(new DataDocument()
+                  .append(Collection.ATTRIBUTE_FULL_NAME_KEY, attributeName)
+                  .append(Collection.ATTRIBUTE_NAME_KEY, attributeName(attributeName))
+                  .append(Collection.ATTRIBUTE_CONSTRAINTS_KEY, new ArrayList<String>())
+                  .append(Collection.ATTRIBUTE_COUNT_KEY, 1));
+         }
+      }
+
+      if (!newAttributes.isEmpty()) {
+         operations.add(WriteOperation.addItemsToArray(internalNameFilter(collectionName), Collection.ATTRIBUTES_KEY, newAttributes));
+      }
+
+      Utils.checkWriteResults(usageStorage().bulkWrite(metadataCollection(), operations, true));
    }
 
    /**
@@ -349,23 +379,49 @@ public class CollectionMetadataFacade implements Serializable {
     *       internal collection name
     * @param attributeName
     *       set of attributes' names
+    * @throws UnsuccessfulOperationException
+    *       when the metadata could not be updated
     */
-   public void dropOrDecrementAttribute(String collectionName, String attributeName) {
-      Attribute attribute = getAttributeInfo(collectionName, attributeName);
+   public void dropOrDecrementAttribute(String collectionName, String attributeName) throws UnsuccessfulOperationException {
+      dropOrDecrementAttributes(collectionName, Collections.singleton(attributeName));
+   }
 
-      if (attribute == null) {
+   /**
+    * Drops attributes if there is no other document with that attribute in the collection (count is 1),
+    * otherwise just decrements their counts. All decrements are written in a single bulk write.
+    * This should be called only when adding/updating document.
+    *
+    * @param collectionName
+    *       internal collection name
+    * @param attributeNames
+    *       set of attributes' names
+    * @throws UnsuccessfulOperationException
+    *       when the metadata could not be updated
+    */
+   public void dropOrDecrementAttributes(String collectionName, Set<String> attributeNames) throws UnsuccessfulOperationException {
+      if (attributeNames.isEmpty()) {
          return;
       }
 
-      if (attribute.getCount() <= 1L) {
-         dropAttribute(collectionName, attributeName);
-         return;
-      }
+      Map<String, Attribute> attributes = getAttributesInfo(collectionName);
+      String countKey = dialect.concatFields(Collection.ATTRIBUTES_KEY, "$", Collection.ATTRIBUTE_COUNT_KEY);
+      List<WriteOperation> operations = new ArrayList<>();
 
-      String updateKey = dialect.concatFields(Collection.ATTRIBUTES_KEY, "$", Collection.ATTRIBUTE_COUNT_KEY);
-      DataDocument renameDocument = new DataDocument(updateKey, attribute.getCount() - 1);
+      for (String attributeName : attributeNames) {
+         Attribute attribute = attributes.get(attributeName);
 
-      dataStorage.updateDocument(metadataCollection(), renameDocument, attributeFilter(collectionName, attributeName));
+         if (attribute == null) {
+            continue;
+         }
+
+         if (attribute.getCount() <= 1L) {
+            dropAttribute(collectionName, attributeName);
+         } else {
+            operations.add(WriteOperation.increment(attributeFilter(collectionName, attributeName), countKey, -1));
+         }
+      }
+
+      Utils.checkWriteResults(usageStorage().bulkWrite(metadataCollection(), operations, true));
    }
 
    /**
@@ -473,7 +529,7 @@ public class CollectionMetadataFacade implements Serializable {
     *       internal collection name
     */
    public void setLastTimeUsedNow(String collectionName) {
-      dataStorage.updateDocument(
+      usageStorage().updateDocument(
             metadataCollection(),
             new DataDocument(
                   Collection.LAST_TIME_USED_KEY,
@@ -797,7 +853,8 @@ public class CollectionMetadataFacade implements Serializable {
     *       document id
     */
    public void addRecentlyUsedDocumentId(String collectionName, String id) {
-      dataStorage.removeItemFromArray(
+      DataStorage usageStorage = usageStorage();
+      usageStorage.removeItemFromArray(
             metadataCollection(),
             internalNameFilter(collectionName),
             Collection.RECENTLY_USED_DOCUMENTS_KEY,
@@ -808,7 +865,7 @@ public class CollectionMetadataFacade implements Serializable {
 
       DataDocument query = dialect.addRecentlyUsedDocumentQuery(metadataCollection(), collectionName, id, listSize);
 
-      dataStorage.run(query);
+      usageStorage.run(query);
    }
 
    /**
@@ -820,13 +877,20 @@ public class CollectionMetadataFacade implements Serializable {
     *       document id
     */
    public void removeRecentlyUsedDocumentId(String collectionName, String id) {
-      dataStorage.removeItemFromArray(
+      usageStorage().removeItemFromArray(
             metadataCollection(),
             internalNameFilter(collectionName),
             Collection.RECENTLY_USED_DOCUMENTS_KEY,
             id);
    }
 
+   /**
+    * @return data storage for bookkeeping writes, such as usage times and attribute counts, that can trade durability for latency
+    */
+   private DataStorage usageStorage() {
+      return dataStorage.withWriteDurability(configurationFacade.getUsageWriteDurability());
+   }
+
    /**
     * @return name of metadata collection for current organisation
     */
@@ -21,7 +21,10 @@ package io.lumeer.engine.controller;
 
 import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.ReadPreference;
 import io.lumeer.engine.api.data.StorageConnection;
+import io.lumeer.engine.api.data.StorageConnectionOptions;
+import io.lumeer.engine.api.data.WriteDurability;
 import io.lumeer.engine.api.dto.Config;
 import io.lumeer.engine.controller.configuration.ConfigurationManipulator;
 import io.lumeer.engine.controller.configuration.DefaultConfigurationProducer;
@@ -47,9 +50,14 @@ public class ConfigurationFacade implements Serializable {
 
    private static Logger log = Resources.produceLog(ConfigurationLevel.class.getName());
 
-   protected static final String USER_CONFIG_COLLECTION = "_config_user";
-   protected static final String PROJECT_CONFIG_COLLECTION = "_config_project";
-   protected static final String ORGANIZATION_CONFIG_COLLECTION = "_config_organization";
+   protected static final String USER_CONFIG_COLLECTION = LumeerConst.Configuration.COLLECTION_PREFIX + "user";
+   protected static final String PROJECT_CONFIG_COLLECTION = LumeerConst.Configuration.COLLECTION_PREFIX + "project";
+   protected static final String ORGANIZATION_CONFIG_COLLECTION = LumeerConst.Configuration.COLLECTION_PREFIX + "organization";
+
+   /**
+    * The lowest max staleness in seconds accepted by MongoDB.
+    */
+   private static final int MIN_MAX_STALENESS = 90;
 
    @Inject
    private UserFacade userFacade;
@@ -87,6 +95,100 @@ public class ConfigurationFacade implements Serializable {
       return Boolean.valueOf(getConfigurationString(LumeerConst.DB_USE_SSL).orElse("false"));
    }
 
+   /**
+    * Gets the connection options of the user data storage.
+    *
+    * @return Pre-configured connection options of the user data storage.
+    */
+   public StorageConnectionOptions getDataStorageOptions() {
+      final StorageConnectionOptions options = new StorageConnectionOptions();
+      options.setMinPoolSize(getConfigurationInteger(LumeerConst.DB_POOL_MIN_SIZE_PROPERTY).orElse(null));
+      options.setMaxPoolSize(getConfigurationInteger(LumeerConst.DB_POOL_MAX_SIZE_PROPERTY).orElse(null));
+      options.setMaxWaitTime(getConfigurationInteger(LumeerConst.DB_POOL_MAX_WAIT_TIME_PROPERTY).orElse(null));
+      options.setMaxConnectionIdleTime(getConfigurationInteger(LumeerConst.DB_POOL_MAX_IDLE_TIME_PROPERTY).orElse(null));
+      options.setConnectTimeout(getConfigurationInteger(LumeerConst.DB_CONNECT_TIMEOUT_PROPERTY).orElse(null));
+      options.setSocketTimeout(getConfigurationInteger(LumeerConst.DB_SOCKET_TIMEOUT_PROPERTY).orElse(null));
+      options.setSlowOperationThreshold(getConfigurationInteger(LumeerConst.DB_SLOW_OPERATION_THRESHOLD_PROPERTY).orElse(null));
+      options.setSlowOperationLogSize(getConfigurationInteger(LumeerConst.DB_SLOW_OPERATION_LOG_SIZE_PROPERTY).orElse(null));
+      options.setExplainSlowOperations(Boolean.valueOf(getConfigurationString(LumeerConst.DB_EXPLAIN_SLOW_OPERATIONS_PROPERTY).orElse("false")));
+      options.setDataDirectory(getConfigurationString(LumeerConst.DB_DATA_DIRECTORY_PROPERTY).orElse(null));
+      options.setIndexAdvisor(Boolean.valueOf(getConfigurationString(LumeerConst.DB_INDEX_ADVISOR_PROPERTY).orElse("false")));
+      options.setAutoIndexBudget(getConfigurationInteger(LumeerConst.DB_AUTO_INDEX_BUDGET_PROPERTY).orElse(null));
+
+      return options;
+   }
+
+   /**
+    * Gets whether the changes of the user data storage made by other nodes are watched to invalidate the caches precisely.
+    *
+    * @return True when the changes should be watched, the data storage must support it.
+    */
+   public boolean getDataStorageWatchChanges() {
+      return Boolean.valueOf(getConfigurationString(LumeerConst.DB_WATCH_CHANGES_PROPERTY).orElse("false"));
+   }
+
+   /**
+    * Gets the durability of writes of user data, such as documents, collections and their metadata.
+    *
+    * @return The configured write durability, {@link Optional#empty()} when the data storage default should be kept.
+    */
+   public Optional<WriteDurability> getDataStorageWriteDurability() {
+      return getConfigurationString(LumeerConst.DB_WRITE_DURABILITY_PROPERTY).map(this::parseWriteDurability);
+   }
+
+   /**
+    * Gets the durability of bookkeeping writes that can be lost without harm, such as usage timestamps, recently used documents
+    * and attribute counters.
+    *
+    * @return The configured write durability, {@link WriteDurability#ACKNOWLEDGED} when none is configured.
+    */
+   public WriteDurability getUsageWriteDurability() {
+      return getConfigurationString(LumeerConst.DB_USAGE_WRITE_DURABILITY_PROPERTY).map(this::parseWriteDurability).orElse(WriteDurability.ACKNOWLEDGED);
+   }
+
+   private WriteDurability parseWriteDurability(final String writeDurability) {
+      try {
+         return WriteDurability.valueOf(writeDurability.trim().toUpperCase());
+      } catch (IllegalArgumentException e) {
+         log.log(Level.WARNING, "Unknown write durability " + writeDurability, e);
+         return WriteDurability.ACKNOWLEDGED;
+      }
+   }
+
+   /**
+    * Gets the read preference for searches and other reads that tolerate slightly stale data.
+    *
+    * @return The configured read preference, {@link ReadPreference#PRIMARY} when none or an unknown one is configured.
+    */
+   public ReadPreference getSearchReadPreference() {
+      final Optional<String> readPreference = getConfigurationString(LumeerConst.SEARCH_READ_PREFERENCE_PROPERTY);
+
+      try {
+         // accepts both secondaryPreferred and SECONDARY_PREFERRED
+         return readPreference.isPresent() ? ReadPreference.valueOf(readPreference.get().trim().replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase()) : ReadPreference.PRIMARY;
+      } catch (IllegalArgumentException e) {
+         log.log(Level.WARNING, "Unknown read preference " + readPreference.get(), e);
+         return ReadPreference.PRIMARY;
+      }
+   }
+
+   /**
+    * Gets the maximal replication lag of secondaries used for searches. MongoDB does not accept a limit lower than
+    * {@link #MIN_MAX_STALENESS} seconds, lower values are raised to it.
+    *
+    * @return The maximal replication lag in seconds, 0 means no limit.
+    */
+   public long getSearchMaxStaleness() {
+      final int maxStaleness = getConfigurationInteger(LumeerConst.SEARCH_MAX_STALENESS_PROPERTY).orElse(0);
+
+      if (maxStaleness > 0 && maxStaleness < MIN_MAX_STALENESS) {
+         log.warning("The search max staleness of " + maxStaleness + " seconds is below the minimum, " + MIN_MAX_STALENESS + " seconds are used instead.");
+         return MIN_MAX_STALENESS;
+      }
+
+      return Math.max(maxStaleness, 0);
+   }
+
    /**
     * Never ever replace the way of getting data storage here. Data storage configuration depends on this bean and this bean cannot inject it directly.
     *
@@ -108,6 +210,38 @@ public class ConfigurationFacade implements Serializable {
       return Boolean.valueOf(defaultConfigurationProducer.get(LumeerConst.SYSTEM_DB_USE_SSL));
    }
 
+   /**
+    * Gets the connection options of the system data storage.
+    *
+    * @return Pre-configured connection options of the system data storage.
+    */
+   public StorageConnectionOptions getSystemDataStorageOptions() {
+      final StorageConnectionOptions options = new StorageConnectionOptions();
+      options.setMinPoolSize(getDefaultConfigurationInteger(LumeerConst.DB_POOL_MIN_SIZE_PROPERTY).orElse(null));
+      options.setMaxPoolSize(getDefaultConfigurationInteger(LumeerConst.DB_POOL_MAX_SIZE_PROPERTY).orElse(null));
+      options.setMaxWaitTime(getDefaultConfigurationInteger(LumeerConst.DB_POOL_MAX_WAIT_TIME_PROPERTY).orElse(null));
+      options.setMaxConnectionIdleTime(getDefaultConfigurationInteger(LumeerConst.DB_POOL_MAX_IDLE_TIME_PROPERTY).orElse(null));
+      options.setConnectTimeout(getDefaultConfigurationInteger(LumeerConst.DB_CONNECT_TIMEOUT_PROPERTY).orElse(null));
+      options.setSocketTimeout(getDefaultConfigurationInteger(LumeerConst.DB_SOCKET_TIMEOUT_PROPERTY).orElse(null));
+      options.setSlowOperationThreshold(getDefaultConfigurationInteger(LumeerConst.DB_SLOW_OPERATION_THRESHOLD_PROPERTY).orElse(null));
+      options.setSlowOperationLogSize(getDefaultConfigurationInteger(LumeerConst.DB_SLOW_OPERATION_LOG_SIZE_PROPERTY).orElse(null));
+      options.setExplainSlowOperations(Boolean.valueOf(defaultConfigurationProducer.get(LumeerConst.DB_EXPLAIN_SLOW_OPERATIONS_PROPERTY)));
+      options.setDataDirectory(defaultConfigurationProducer.get(LumeerConst.DB_DATA_DIRECTORY_PROPERTY));
+      options.setIndexAdvisor(Boolean.valueOf(defaultConfigurationProducer.get(LumeerConst.DB_INDEX_ADVISOR_PROPERTY)));
+      options.setAutoIndexBudget(getDefaultConfigurationInteger(LumeerConst.DB_AUTO_INDEX_BUDGET_PROPERTY).orElse(null));
+
+      return options;
+   }
+
+   /**
+    * Gets whether the changes of the system data storage made by other nodes are watched to invalidate the caches precisely.
+    *
+    * @return True when the changes should be watched, the data storage must support it.
+    */
+   public boolean getSystemDataStorageWatchChanges() {
+      return Boolean.valueOf(defaultConfigurationProducer.get(LumeerConst.DB_WATCH_CHANGES_PROPERTY));
+   }
+
    /**
     * Returns an Optional String value of the given key.
     *
@@ -646,6 +780,10 @@ public class ConfigurationFacade implements Serializable {
       return config != null && config.getValue() != null ? Optional.of(config.getValue().toString()) : Optional.empty();
    }
 
+   private Optional<Integer> getDefaultConfigurationInteger(final String key) {
+      return createOptionalInteger(new Config(key, defaultConfigurationProducer.get(key)));
+   }
+
    private static Optional<Integer> createOptionalInteger(Config config) {
       if (config == null || config.getValue() == null) {
          return Optional.empty();
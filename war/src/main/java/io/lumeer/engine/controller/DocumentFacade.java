@@ -29,6 +29,7 @@ import io.lumeer.engine.api.event.DropDocument;
 import io.lumeer.engine.api.exception.DbException;
 import io.lumeer.engine.api.exception.InvalidDocumentKeyException;
 import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
+import io.lumeer.engine.controller.search.QueryResultCache;
 import io.lumeer.engine.util.ErrorMessageBuilder;
 import io.lumeer.engine.util.Utils;
 
@@ -38,6 +39,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 import javax.enterprise.context.SessionScoped;
 import javax.enterprise.event.Event;
 import javax.inject.Inject;
@@ -76,6 +78,9 @@ public class DocumentFacade implements Serializable {
    @Inject
    private UserFacade userFacade;
 
+   @Inject
+   private QueryResultCache queryResultCache;
+
    /**
     * Creates and inserts a new document to specified collection and create collection if not exists
     *
@@ -99,6 +104,9 @@ public class DocumentFacade implements Serializable {
       }
 
       addOrIncrementAttributes(collectionName, documentCleaned);
+      collectionFacade.updateDocumentCount(collectionName, 1);
+      collectionFacade.updateAttributeValues(collectionName, null, documentCleaned);
+      queryResultCache.invalidate(collectionName);
 
       collectionMetadataFacade.addRecentlyUsedDocumentId(collectionName, documentId);
       collectionMetadataFacade.setLastTimeUsedNow(collectionName);
@@ -142,6 +150,11 @@ public class DocumentFacade implements Serializable {
       Set<String> updateAttributes = getDocumentAttributes(updateDocumentCleaned);
       addOrIncrementAttributes(collectionName, updateAttributes, existingAttributes);
 
+      final DataDocument updatedDocumentWhole = new DataDocument(existingDocument);
+      updatedDocumentWhole.putAll(updateDocumentCleaned);
+      collectionFacade.updateAttributeValues(collectionName, existingDocument, updatedDocumentWhole);
+      queryResultCache.invalidate(collectionName);
+
       collectionMetadataFacade.addRecentlyUsedDocumentId(collectionName, existingDocument.getId());
       collectionMetadataFacade.setLastTimeUsedNow(collectionName);
    }
@@ -168,6 +181,8 @@ public class DocumentFacade implements Serializable {
 
       addOrIncrementAttributes(collectionName, replacedAttributes, existingAttributes);
       dropOrDecrementAttributes(collectionName, existingAttributes, replacedAttributes);
+      collectionFacade.updateAttributeValues(collectionName, existingDocument, replacedDocumentCleaned);
+      queryResultCache.invalidate(collectionName);
 
       collectionMetadataFacade.addRecentlyUsedDocumentId(collectionName, existingDocument.getId());
       collectionMetadataFacade.setLastTimeUsedNow(collectionName);
@@ -195,6 +210,9 @@ public class DocumentFacade implements Serializable {
       } else {
          dropDocumentEvent.fire(new DropDocument(collectionName, dataDocument));
          dropOrDecrementAttributes(collectionName, dataDocument);
+         collectionFacade.updateDocumentCount(collectionName, -1);
+         collectionFacade.updateAttributeValues(collectionName, dataDocument, null);
+         queryResultCache.invalidate(collectionName);
       }
 
       collectionMetadataFacade.removeRecentlyUsedDocumentId(collectionName, documentId);
@@ -228,6 +246,8 @@ public class DocumentFacade implements Serializable {
 
       addOrIncrementAttributes(collectionName, revertedAttributes, existingAttributes);
       dropOrDecrementAttributes(collectionName, existingAttributes, revertedAttributes);
+      collectionFacade.updateAttributeValues(collectionName, existingDocument, revertDocument);
+      queryResultCache.invalidate(collectionName);
 
       collectionMetadataFacade.addRecentlyUsedDocumentId(collectionName, documentId);
       collectionMetadataFacade.setLastTimeUsedNow(collectionName);
@@ -251,6 +271,11 @@ public class DocumentFacade implements Serializable {
       versionFacade.dropDocumentAttribute(collectionName, existingDocument, attributeName);
       collectionMetadataFacade.dropOrDecrementAttribute(collectionName, attributeName);
 
+      final DataDocument droppedAttributeDocument = new DataDocument(existingDocument);
+      droppedAttributeDocument.remove(attributeName);
+      collectionFacade.updateAttributeValues(collectionName, existingDocument, droppedAttributeDocument);
+      queryResultCache.invalidate(collectionName);
+
       collectionMetadataFacade.addRecentlyUsedDocumentId(collectionName, documentId);
       collectionMetadataFacade.setLastTimeUsedNow(collectionName);
    }
@@ -299,30 +324,22 @@ public class DocumentFacade implements Serializable {
       return attrs;
    }
 
-   private void addOrIncrementAttributes(final String collectionName, DataDocument doc) {
+   private void addOrIncrementAttributes(final String collectionName, DataDocument doc) throws UnsuccessfulOperationException {
       // we add all document attributes to collection metadata
-      getDocumentAttributes(doc).forEach(attribute -> {
-         collectionMetadataFacade.addOrIncrementAttribute(collectionName, attribute);
-      });
+      collectionMetadataFacade.addOrIncrementAttributes(collectionName, getDocumentAttributes(doc));
    }
 
-   private void addOrIncrementAttributes(final String collectionName, Set<String> attributes, Set<String> filter) {
-      attributes.stream().filter(attribute -> !filter.contains(attribute)).forEach(attribute -> {
-         collectionMetadataFacade.addOrIncrementAttribute(collectionName, attribute);
-      });
+   private void addOrIncrementAttributes(final String collectionName, Set<String> attributes, Set<String> filter) throws UnsuccessfulOperationException {
+      collectionMetadataFacade.addOrIncrementAttributes(collectionName, attributes.stream().filter(attribute -> !filter.contains(attribute)).collect(Collectors.toSet()));
    }
 
-   private void dropOrDecrementAttributes(final String collectionName, DataDocument doc) {
+   private void dropOrDecrementAttributes(final String collectionName, DataDocument doc) throws UnsuccessfulOperationException {
       // we add all document attributes to collection metadata
-      getDocumentAttributes(doc).forEach(attribute -> {
-         collectionMetadataFacade.dropOrDecrementAttribute(collectionName, attribute);
-      });
+      collectionMetadataFacade.dropOrDecrementAttributes(collectionName, getDocumentAttributes(doc));
    }
 
-   private void dropOrDecrementAttributes(final String collectionName, Set<String> attributes, Set<String> filter) {
-      attributes.stream().filter(attribute -> !filter.contains(attribute)).forEach(attribute -> {
-         collectionMetadataFacade.dropOrDecrementAttribute(collectionName, attribute);
-      });
+   private void dropOrDecrementAttributes(final String collectionName, Set<String> attributes, Set<String> filter) throws UnsuccessfulOperationException {
+      collectionMetadataFacade.dropOrDecrementAttributes(collectionName, attributes.stream().filter(attribute -> !filter.contains(attribute)).collect(Collectors.toSet()));
    }
 
    private DataDocument checkDocumentKeysValidity(DataDocument dataDocument) throws InvalidDocumentKeyException {
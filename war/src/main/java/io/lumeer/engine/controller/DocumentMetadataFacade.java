@@ -24,6 +24,7 @@ import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.DataStorageDialect;
+import io.lumeer.engine.controller.search.QueryResultCache;
 import io.lumeer.engine.util.ErrorMessageBuilder;
 import io.lumeer.engine.util.Utils;
 
@@ -45,6 +46,9 @@ public class DocumentMetadataFacade implements Serializable {
    @Inject
    private DataStorageDialect dataStorageDialect;
 
+   @Inject
+   private QueryResultCache queryResultCache;
+
    /**
     * Reads specified metadata value
     *
@@ -115,6 +119,7 @@ public class DocumentMetadataFacade implements Serializable {
          }
       }
       dataStorage.updateDocument(collectionName, metadata, dataStorageDialect.documentIdFilter(documentId));
+      queryResultCache.invalidate(collectionName);
    }
 
    /**
@@ -134,6 +139,7 @@ public class DocumentMetadataFacade implements Serializable {
          throw new IllegalArgumentException(ErrorMessageBuilder.invalidMetadataKeyString(key));
       }
       dataStorage.dropAttribute(collectionName, dataStorageDialect.documentIdFilter(documentId), key);
+      queryResultCache.invalidate(collectionName);
    }
 
    public void putInitDocumentMetadataInternally(DataDocument dataDocument, String userEmail) {
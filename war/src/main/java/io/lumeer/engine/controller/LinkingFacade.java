@@ -22,13 +22,17 @@ package io.lumeer.engine.controller;
 import static io.lumeer.engine.api.LumeerConst.*;
 
 import io.lumeer.engine.annotation.UserDataStorage;
+import io.lumeer.engine.api.data.AsyncDataStorage;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataFilter;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.DataStorageDialect;
+import io.lumeer.engine.api.data.WriteOperation;
 import io.lumeer.engine.api.event.DropDocument;
+import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
 import io.lumeer.engine.rest.dao.LinkInstance;
 import io.lumeer.engine.rest.dao.LinkType;
+import io.lumeer.engine.util.Utils;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -36,6 +40,8 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.SessionScoped;
@@ -53,13 +59,17 @@ public class LinkingFacade implements Serializable {
    @UserDataStorage
    private DataStorage dataStorage;
 
+   @Inject
+   @UserDataStorage
+   private AsyncDataStorage asyncDataStorage;
+
    @Inject
    private DataStorageDialect dataStorageDialect;
 
    @Inject
    private ProjectFacade projectFacade;
 
-   public void onDropDocument(@Observes(notifyObserver = Reception.IF_EXISTS) final DropDocument dropDocument) {
+   public void onDropDocument(@Observes(notifyObserver = Reception.IF_EXISTS) final DropDocument dropDocument) throws UnsuccessfulOperationException {
       dropLinksForDocument(dropDocument.getCollectionName(), dropDocument.getDocument().getId(), null, Linking.LinkDirection.FROM);
       dropLinksForDocument(dropDocument.getCollectionName(), dropDocument.getDocument().getId(), null, Linking.LinkDirection.TO);
    }
@@ -212,8 +222,10 @@ public class LinkingFacade implements Serializable {
     *       Role name.
     * @param linkDirection
     *       Direction of link.
+    * @throws UnsuccessfulOperationException
+    *       When some of the links could not be dropped.
     */
-   public void dropLinksForDocument(final String collectionName, final String documentId, final String role, final Linking.LinkDirection linkDirection) {
+   public void dropLinksForDocument(final String collectionName, final String documentId, final String role, final Linking.LinkDirection linkDirection) throws UnsuccessfulOperationException {
       List<DataDocument> linkingDocs = readLinkingTypesForCollection(collectionName, role, linkDirection);
       dropLinksForDocument(linkingDocs, documentId, linkDirection);
    }
@@ -227,15 +239,20 @@ public class LinkingFacade implements Serializable {
     *       Role name.
     * @param linkDirection
     *       Direction of link.
+    * @throws UnsuccessfulOperationException
+    *       When some of the links could not be dropped.
     */
-   public void dropLinksForCollection(final String collectionName, final String role, final Linking.LinkDirection linkDirection) {
+   public void dropLinksForCollection(final String collectionName, final String role, final Linking.LinkDirection linkDirection) throws UnsuccessfulOperationException {
       List<DataDocument> linkingTypes = readLinkingTypesForCollection(collectionName, role, linkDirection);
-      String linkingCollectionName = buildCollectionName();
+      List<WriteOperation> instanceOperations = new ArrayList<>();
+      List<WriteOperation> typeOperations = new ArrayList<>();
       for (DataDocument lt : linkingTypes) {
          String id = lt.getId();
-         dataStorage.dropManyDocuments(linkingCollectionName, filterLinkingInstance(id));
-         dataStorage.dropDocument(Linking.Type.NAME, dataStorageDialect.documentIdFilter(id));
+         instanceOperations.add(WriteOperation.dropMany(filterLinkingInstance(id)));
+         typeOperations.add(WriteOperation.drop(dataStorageDialect.documentIdFilter(id)));
       }
+      Utils.checkWriteResults(dataStorage.bulkWrite(buildCollectionName(), instanceOperations, false));
+      Utils.checkWriteResults(dataStorage.bulkWrite(Linking.Type.NAME, typeOperations, false));
    }
 
    /**
@@ -279,8 +296,10 @@ public class LinkingFacade implements Serializable {
     *       Role name.
     * @param linkDirection
     *       Direction of link.
+    * @throws UnsuccessfulOperationException
+    *       When some of the links could not be dropped.
     */
-   public void dropLinksBetweenDocumentAndCollection(final String firstCollectionName, final String firstDocumentId, final String secondCollectionName, final String role, final Linking.LinkDirection linkDirection) {
+   public void dropLinksBetweenDocumentAndCollection(final String firstCollectionName, final String firstDocumentId, final String secondCollectionName, final String role, final Linking.LinkDirection linkDirection) throws UnsuccessfulOperationException {
       List<DataDocument> linkingTypes = readLinkingTypesBetweenCollections(firstCollectionName, secondCollectionName, role, linkDirection);
       dropLinksForDocument(linkingTypes, firstDocumentId, linkDirection);
    }
@@ -346,32 +365,42 @@ public class LinkingFacade implements Serializable {
    }
 
    private List<DataDocument> readDocumentsFromLinkInstances(final List<DataDocument> linkingDocs, final String documentId, final Linking.LinkDirection linkDirection) {
-      List<DataDocument> links = new ArrayList<>();
       String collectionName = buildCollectionName();
-      for (DataDocument lt : linkingDocs) {
+      String param = linkDirection == Linking.LinkDirection.FROM ? Linking.Instance.ATTR_TO_ID : Linking.Instance.ATTR_FROM_ID;
+
+      // search link instances of all the link types at once
+      List<CompletableFuture<List<DataDocument>>> instances = linkingDocs.stream()
+                                                                         .map(lt -> asyncDataStorage.search(collectionName, filterLinkingInstanceForDocument(lt.getId(), documentId, linkDirection), null, 0, 0))
+                                                                         .collect(Collectors.toList());
+
+      // then read all the linked documents at once
+      List<CompletableFuture<DataDocument>> docs = new ArrayList<>();
+      for (int i = 0; i < linkingDocs.size(); i++) {
+         DataDocument lt = linkingDocs.get(i);
          String readCollectionName = linkDirection == Linking.LinkDirection.FROM ? lt.getString(Linking.Type.ATTR_TO_COLLECTION) : lt.getString(Linking.Type.ATTR_FROM_COLLECTION);
-         String param = linkDirection == Linking.LinkDirection.FROM ? Linking.Instance.ATTR_TO_ID : Linking.Instance.ATTR_FROM_ID;
-         List<DataDocument> docs = dataStorage.search(collectionName, filterLinkingInstanceForDocument(lt.getId(), documentId, linkDirection), null, 0, 0);
-         for (DataDocument dc : docs) {
-            String id = dc.getString(param);
-            DataDocument doc = dataStorage.readDocument(readCollectionName, dataStorageDialect.documentIdFilter(id));
-            if (doc != null) {
-               links.add(doc);
-            }
+         for (DataDocument dc : instances.get(i).join()) {
+            docs.add(asyncDataStorage.readDocument(readCollectionName, dataStorageDialect.documentIdFilter(dc.getString(param))));
          }
       }
-      return links;
+
+      return docs.stream()
+                 .map(CompletableFuture::join)
+                 .filter(Objects::nonNull)
+                 .collect(Collectors.toList());
    }
 
-   private void dropLinksForDocument(final List<DataDocument> linkingDocs, final String documentId, final Linking.LinkDirection linkDirection) {
-      String collectionName = buildCollectionName();
-      for (DataDocument lt : linkingDocs) {
-         String id = lt.getId();
-         dataStorage.dropManyDocuments(collectionName, filterLinkingInstanceForDocument(id, documentId, linkDirection));
-         if (linkTypeIsEmpty(id)) {
-            dataStorage.dropDocument(Linking.Type.NAME, dataStorageDialect.documentIdFilter(id));
-         }
-      }
+   private void dropLinksForDocument(final List<DataDocument> linkingDocs, final String documentId, final Linking.LinkDirection linkDirection) throws UnsuccessfulOperationException {
+      List<WriteOperation> instanceOperations = linkingDocs.stream()
+                                                           .map(lt -> WriteOperation.dropMany(filterLinkingInstanceForDocument(lt.getId(), documentId, linkDirection)))
+                                                           .collect(Collectors.toList());
+      Utils.checkWriteResults(dataStorage.bulkWrite(buildCollectionName(), instanceOperations, false));
+
+      List<WriteOperation> typeOperations = linkingDocs.stream()
+                                                       .map(DataDocument::getId)
+                                                       .filter(this::linkTypeIsEmpty)
+                                                       .map(id -> WriteOperation.drop(dataStorageDialect.documentIdFilter(id)))
+                                                       .collect(Collectors.toList());
+      Utils.checkWriteResults(dataStorage.bulkWrite(Linking.Type.NAME, typeOperations, false));
    }
 
    private boolean linkTypeIsEmpty(final String id) {
@@ -19,20 +19,27 @@
  */
 package io.lumeer.engine.controller;
 
+import io.lumeer.engine.annotation.SearchDataStorage;
 import io.lumeer.engine.annotation.UserDataStorage;
 import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataFilter;
+import io.lumeer.engine.api.data.DataPage;
 import io.lumeer.engine.api.data.DataSort;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.Query;
 import io.lumeer.engine.api.exception.CollectionNotFoundException;
 import io.lumeer.engine.api.exception.InvalidQueryException;
+import io.lumeer.engine.controller.search.QueryResultCache;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import javax.enterprise.context.SessionScoped;
 import javax.inject.Inject;
 
@@ -46,6 +53,10 @@ public class SearchFacade implements Serializable {
    @UserDataStorage
    private DataStorage dataStorage;
 
+   @Inject
+   @SearchDataStorage
+   private DataStorage searchDataStorage;
+
    @Inject
    private CollectionMetadataFacade collectionMetadataFacade;
 
@@ -58,6 +69,9 @@ public class SearchFacade implements Serializable {
    @Inject
    private SecurityFacade securityFacade;
 
+   @Inject
+   private QueryResultCache queryResultCache;
+
    /**
     * Searches the specified collection for specified documents using filter, sort, skip and limit option.
     *
@@ -76,7 +90,33 @@ public class SearchFacade implements Serializable {
     *       When the collection in which we want to search does not exist. TODO Think about simply returning an empty result.
     */
    public List<DataDocument> search(final String collectionName, final DataFilter filter, final DataSort sort, int skip, int limit) throws CollectionNotFoundException {
-      return dataStorage.search(collectionName, filter, sort, skip, limit);
+      return queryResultCache.get(Collections.singleton(collectionName), Arrays.asList("search", collectionName, filter, sort, skip, limit),
+            () -> searchDataStorage.search(collectionName, filter, sort, skip, limit));
+   }
+
+   /**
+    * Searches the specified collection for specified documents page by page. Reading a page costs the same regardless of its depth.
+    *
+    * @param collectionName
+    *       the name of the collection where the search will be performed
+    * @param filter
+    *       the query predicate. If unspecified, then all documents in the collection will match the predicate.
+    * @param sort
+    *       the sort specification for the ordering of the results
+    * @param pageToken
+    *       the token returned with the previous page, null to read the first page
+    * @param limit
+    *       the maximum number of documents on the page
+    * @return the page of the found documents
+    * @throws InvalidQueryException
+    *       When the page token is not valid.
+    */
+   public DataPage searchPage(final String collectionName, final DataFilter filter, final DataSort sort, final String pageToken, final int limit) throws InvalidQueryException {
+      try {
+         return searchDataStorage.searchPage(collectionName, filter, sort, pageToken, limit);
+      } catch (IllegalArgumentException e) {
+         throw new InvalidQueryException(e.getMessage(), e);
+      }
    }
 
    /**
@@ -93,7 +133,8 @@ public class SearchFacade implements Serializable {
 
    /**
     * Queries the data storage in a flexible way. Allows for none or multiple collection names to be specified,
-    * automatically sets limit to default values.
+    * automatically sets limit to default values. The collections are queried as a whole, i.e. the sorting, skip and limit
+    * apply to the documents of all the collections together.
     *
     * @param query
     *       Query to execute.
@@ -102,8 +143,37 @@ public class SearchFacade implements Serializable {
     *       When it was not possible to execute the query.
     */
    public List<DataDocument> query(final Query query) throws InvalidQueryException {
-      final List<String> collections = new ArrayList<>();
-      final List<DataDocument> result = new ArrayList<>();
+      // one merged execution with the sorting, skip and limit applied across all the collections
+      final Query internalQuery = createInternalQuery(query);
+
+      // the order of the sorting attributes matters, the order of the collections does not
+      return queryResultCache.get(internalQuery.getCollections(), Arrays.asList("query", new TreeSet<>(internalQuery.getCollections()), internalQuery.getFilters(),
+            internalQuery.getProjections(), new ArrayList<>(internalQuery.getSorting().entrySet()), internalQuery.getSkip(), internalQuery.getLimit()),
+            () -> searchDataStorage.unionQuery(internalQuery));
+   }
+
+   /**
+    * Queries the data storage like {@link #query(Query)} but reads the result page by page. Reading a page costs the same
+    * regardless of its depth. The skip of the query is ignored.
+    *
+    * @param query
+    *       Query to execute.
+    * @param pageToken
+    *       The token returned with the previous page, null to read the first page.
+    * @return The page of the query result.
+    * @throws InvalidQueryException
+    *       When it was not possible to execute the query or the page token is not valid.
+    */
+   public DataPage queryPage(final Query query, final String pageToken) throws InvalidQueryException {
+      try {
+         return searchDataStorage.unionQueryPage(createInternalQuery(query), pageToken);
+      } catch (IllegalArgumentException e) {
+         throw new InvalidQueryException(e.getMessage(), e);
+      }
+   }
+
+   private Query createInternalQuery(final Query query) throws InvalidQueryException {
+      final Set<String> collections = new LinkedHashSet<>();
       final Query internalQuery = new Query();
 
       try {
@@ -132,15 +202,9 @@ public class SearchFacade implements Serializable {
          internalQuery.setSkip(query.getSkip());
       }
 
-      for (final String collection : collections) {
-         internalQuery.setCollections(Collections.singleton(collection));
-         dataStorage.query(internalQuery).stream().forEach(d -> {
-            d.put(LumeerConst.Document.COLLECTION_NAME, collection);
-            result.add(d);
-         });
-      }
+      internalQuery.setCollections(collections);
 
-      return result;
+      return internalQuery;
    }
 
 }
@@ -23,18 +23,30 @@ import io.lumeer.engine.annotation.SystemDataStorage;
 import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.controller.configuration.DefaultConfigurationProducer;
 
 import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
-import javax.enterprise.context.SessionScoped;
+import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 /**
  * Can obtain a new unique number in a named row (sequence).
  *
+ * Values are reserved in the database in blocks and handed out from memory, so that the database is contacted only
+ * once per block. The block size is configured by {@link LumeerConst#SEQUENCE_BLOCK_SIZE_PROPERTY} and it can be set for
+ * each sequence separately. Values are unique even among multiple engine instances, however, they are not necessarily
+ * consecutive and the unused values of a block are lost when the application stops.
+ *
  * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
  */
-@SessionScoped
+@ApplicationScoped
 public class SequenceFacade implements Serializable {
 
    /**
@@ -51,14 +63,54 @@ public class SequenceFacade implements Serializable {
    @SystemDataStorage
    private DataStorage systemDataStorage;
 
+   @Inject
+   private DefaultConfigurationProducer defaultConfigurationProducer;
+
+   @Inject
+   private Logger log;
+
+   /**
+    * Blocks of values reserved for the sequences.
+    */
+   private final Map<String, SequenceBlock> blocks = new ConcurrentHashMap<>();
+
+   /**
+    * Locks held while reserving new blocks, one per sequence.
+    */
+   private final Map<String, Lock> locks = new ConcurrentHashMap<>();
+
    /**
     * Initializes collections needed for storing sequences.
+    *
+    * The sequence names must be backed by a unique index because concurrent reservations of the same new sequence
+    * rely on the duplicate key error. An existing non-unique index is therefore replaced by a unique one.
+    *
+    * @throws IllegalStateException
+    *       When the unique index cannot be created, e.g. because the collection contains duplicate sequences.
     */
    @PostConstruct
    public void init() {
       if (!systemDataStorage.hasCollection(SEQUENCE_COLLECTION)) {
          systemDataStorage.createCollection(SEQUENCE_COLLECTION);
-         systemDataStorage.createIndex(SEQUENCE_COLLECTION, new DataDocument(SEQUENCE_INDEX_ATTR, LumeerConst.Index.ASCENDING), false);
+      }
+
+      final DataDocument indexAttributes = new DataDocument(SEQUENCE_INDEX_ATTR, LumeerConst.Index.ASCENDING);
+      for (final DataDocument index : systemDataStorage.listIndexes(SEQUENCE_COLLECTION)) {
+         final DataDocument key = index.getDataDocument("key");
+         if (key != null && key.size() == 1 && key.containsKey(SEQUENCE_INDEX_ATTR)) {
+            if (Boolean.TRUE.equals(index.getBoolean("unique"))) {
+               return;
+            }
+
+            log.warning("Replacing the non-unique index " + index.getString("name") + " on " + SEQUENCE_COLLECTION + " with a unique one.");
+            systemDataStorage.dropIndex(SEQUENCE_COLLECTION, index.getString("name"));
+         }
+      }
+
+      try {
+         systemDataStorage.createIndex(SEQUENCE_COLLECTION, indexAttributes, true);
+      } catch (RuntimeException e) {
+         throw new IllegalStateException("Unable to create the unique index on " + SEQUENCE_COLLECTION + "." + SEQUENCE_INDEX_ATTR + ", sequences cannot be allocated safely.", e);
       }
    }
 
@@ -70,17 +122,99 @@ public class SequenceFacade implements Serializable {
     * @return The next value of the sequence.
     */
    public int getNext(final String sequenceName) {
-      return systemDataStorage.getNextSequenceNo(SEQUENCE_COLLECTION, SEQUENCE_INDEX_ATTR, sequenceName);
+      final SequenceBlock block = blocks.get(sequenceName);
+      if (block != null) {
+         final long value = block.next();
+         if (value >= 0) {
+            return (int) value;
+         }
+      }
+
+      // only a single thread reserves a new block when the current one is exhausted, the others wait for it
+      final Lock lock = getLock(sequenceName);
+      lock.lock();
+      try {
+         while (true) {
+            final SequenceBlock current = blocks.get(sequenceName);
+            if (current != null) {
+               final long value = current.next();
+               if (value >= 0) {
+                  return (int) value;
+               }
+            }
+
+            blocks.put(sequenceName, allocateBlock(sequenceName));
+         }
+      } finally {
+         lock.unlock();
+      }
    }
 
    /**
-    * Resets the sequence to zero.
+    * Resets the sequence to zero. Blocks already reserved by other engine instances are not affected.
     *
     * @param sequenceName
     *       The name of the sequence to reset.
     */
    public void resetSequence(final String sequenceName) {
-      systemDataStorage.resetSequence(SEQUENCE_COLLECTION, SEQUENCE_INDEX_ATTR, sequenceName);
+      final Lock lock = getLock(sequenceName);
+      lock.lock();
+      try {
+         systemDataStorage.resetSequence(SEQUENCE_COLLECTION, SEQUENCE_INDEX_ATTR, sequenceName);
+         blocks.remove(sequenceName);
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   private Lock getLock(final String sequenceName) {
+      return locks.computeIfAbsent(sequenceName, name -> new ReentrantLock());
+   }
+
+   private SequenceBlock allocateBlock(final String sequenceName) {
+      final int blockSize = getBlockSize(sequenceName);
+      final int first = systemDataStorage.allocateSequenceBlock(SEQUENCE_COLLECTION, SEQUENCE_INDEX_ATTR, sequenceName, blockSize);
+
+      return new SequenceBlock(first, first + blockSize - 1);
+   }
+
+   private int getBlockSize(final String sequenceName) {
+      String blockSize = defaultConfigurationProducer.get(LumeerConst.SEQUENCE_BLOCK_SIZE_PROPERTY + "." + sequenceName);
+      if (blockSize == null) {
+         blockSize = defaultConfigurationProducer.get(LumeerConst.SEQUENCE_BLOCK_SIZE_PROPERTY);
+      }
+
+      try {
+         return blockSize != null ? Math.max(1, Integer.parseInt(blockSize.trim())) : 1;
+      } catch (NumberFormatException e) {
+         return 1;
+      }
+   }
+
+   /**
+    * A range of reserved sequence values.
+    */
+   private static class SequenceBlock implements Serializable {
+
+      private final AtomicLong next;
+
+      private final long last;
+
+      private SequenceBlock(final long first, final long last) {
+         this.next = new AtomicLong(first);
+         this.last = last;
+      }
+
+      /**
+       * Gets the next value from the block.
+       *
+       * @return The next value or -1 when the block is exhausted.
+       */
+      private long next() {
+         final long value = next.getAndIncrement();
+
+         return value <= last ? value : -1;
+      }
    }
 
 }
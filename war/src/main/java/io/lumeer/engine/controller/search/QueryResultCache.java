@@ -0,0 +1,196 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.controller.search;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheManager;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.controller.ConfigurationFacade;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+/**
+ * Remembers the results of searches and queries of the current organization and project. Each result is tagged with the write
+ * generations of the collections it was read from, the generation of a collection changes with every write to it, so a result
+ * is used only until any of its collections is written to. The writes done by other nodes are not always known, so the results
+ * also expire after the configured time. The least recently used results are forgotten when the total number of remembered documents
+ * exceeds the configured size. The callers always get their own copies of the documents.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@ApplicationScoped
+public class QueryResultCache {
+
+   private static final String RESULTS_CACHE = "queryResults";
+   private static final String WRITE_GENERATIONS_CACHE = "writeGenerations";
+   private static final int DEFAULT_SIZE = 10000;
+   private static final int DEFAULT_TTL = 30;
+
+   /**
+    * Source of the write generations. The generations are unique across all collections and tenants, so a generation
+    * forgotten and created again never matches a result read before.
+    */
+   private final AtomicLong lastGeneration = new AtomicLong();
+
+   @Inject
+   private CacheManager cacheManager;
+
+   @Inject
+   private ConfigurationFacade configurationFacade;
+
+   /**
+    * Gets the remembered result or executes the query and remembers its result.
+    *
+    * @param collections
+    *       Names of the collections read by the query.
+    * @param key
+    *       Normalized query parameters, equal parameters must identify equal queries.
+    * @param query
+    *       Executes the query.
+    * @return The query result.
+    */
+   public List<DataDocument> get(final Collection<String> collections, final List<Object> key, final Supplier<List<DataDocument>> query) {
+      final int size = configurationFacade.getConfigurationInteger(LumeerConst.QUERY_CACHE_SIZE_PROPERTY).orElse(DEFAULT_SIZE);
+      if (size <= 0) {
+         return query.get();
+      }
+
+      // the generations are read before the query runs, so a write done meanwhile makes the result outdated
+      final Map<String, Long> readGenerations = collections.stream().distinct().collect(Collectors.toMap(c -> c, this::getWriteGeneration));
+      final ResultStore store = getResultStore();
+
+      final List<DataDocument> remembered = store.get(key, readGenerations);
+      if (remembered != null) {
+         return copy(remembered);
+      }
+
+      final List<DataDocument> result = query.get();
+      final long ttl = TimeUnit.SECONDS.toMillis(configurationFacade.getConfigurationInteger(LumeerConst.QUERY_CACHE_TTL_PROPERTY).orElse(DEFAULT_TTL));
+      store.put(key, new Result(readGenerations, System.currentTimeMillis() + ttl, copy(result)), size);
+
+      return result;
+   }
+
+   /**
+    * Makes the remembered results read from the given collection outdated. Must be called after each write to the collection.
+    *
+    * @param collectionName
+    *       Name of the written collection.
+    */
+   public void invalidate(final String collectionName) {
+      getWriteGenerations().computeIfAbsent(collectionName, k -> new AtomicLong()).set(lastGeneration.incrementAndGet());
+   }
+
+   private long getWriteGeneration(final String collectionName) {
+      return getWriteGenerations().computeIfAbsent(collectionName, k -> new AtomicLong(lastGeneration.incrementAndGet())).get();
+   }
+
+   private Cache<AtomicLong> getWriteGenerations() {
+      return cacheManager.getCache(WRITE_GENERATIONS_CACHE);
+   }
+
+   private ResultStore getResultStore() {
+      final Cache<ResultStore> cache = cacheManager.getCache(RESULTS_CACHE);
+
+      return cache.computeIfAbsent(k -> new ResultStore());
+   }
+
+   private static List<DataDocument> copy(final List<DataDocument> documents) {
+      return documents.stream().map(DataDocument::deepCopy).collect(Collectors.toList());
+   }
+
+   /**
+    * A remembered result with the write generations of its collections.
+    */
+   private static class Result {
+
+      private final Map<String, Long> generations;
+      private final long expires;
+      private final List<DataDocument> documents;
+
+      private Result(final Map<String, Long> generations, final long expires, final List<DataDocument> documents) {
+         this.generations = generations;
+         this.expires = expires;
+         this.documents = documents;
+      }
+   }
+
+   /**
+    * Results of a single tenant in the least recently used order.
+    */
+   private static class ResultStore {
+
+      private final Map<List<Object>, Result> results = new LinkedHashMap<>(16, 0.75f, true);
+
+      private long documents = 0;
+
+      private synchronized List<DataDocument> get(final List<Object> key, final Map<String, Long> generations) {
+         final Result result = results.get(key);
+
+         if (result == null) {
+            return null;
+         }
+
+         if (!result.generations.equals(generations) || result.expires < System.currentTimeMillis()) {
+            remove(key);
+            return null;
+         }
+
+         return result.documents;
+      }
+
+      private synchronized void put(final List<Object> key, final Result result, final int size) {
+         remove(key);
+
+         // a single huge result would push out all the others
+         if (result.documents.size() > size / 2) {
+            return;
+         }
+
+         results.put(key, result);
+         documents += result.documents.size();
+
+         final Iterator<Result> leastRecentlyUsed = results.values().iterator();
+         while (documents > size && leastRecentlyUsed.hasNext()) {
+            documents -= leastRecentlyUsed.next().documents.size();
+            leastRecentlyUsed.remove();
+         }
+      }
+
+      private void remove(final List<Object> key) {
+         final Result removed = results.remove(key);
+
+         if (removed != null) {
+            documents -= removed.documents.size();
+         }
+      }
+   }
+}
@@ -19,7 +19,7 @@
  */
 package io.lumeer.engine.controller.search;
 
-import io.lumeer.engine.annotation.UserDataStorage;
+import io.lumeer.engine.annotation.SearchDataStorage;
 import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataFilter;
@@ -50,7 +50,7 @@ public class QuerySuggester {
    static final int SUGGESTIONS_LIMIT = 12;
 
    @Inject
-   @UserDataStorage
+   @SearchDataStorage
    private DataStorage userDataStorage;
 
    @Inject
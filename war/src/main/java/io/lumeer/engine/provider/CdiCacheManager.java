@@ -19,29 +19,47 @@
  */
 package io.lumeer.engine.provider;
 
+import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheConfiguration;
 import io.lumeer.engine.api.cache.CacheFactory;
 import io.lumeer.engine.api.cache.CacheManager;
 import io.lumeer.engine.api.cache.CacheProvider;
+import io.lumeer.engine.api.cache.CacheStats;
+import io.lumeer.engine.api.data.DataChangeEvent;
 import io.lumeer.engine.controller.OrganizationFacade;
 import io.lumeer.engine.controller.ProjectFacade;
+import io.lumeer.engine.controller.configuration.DefaultConfigurationProducer;
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 /**
+ * Keeps the caches of each organization and project. The caches of a project not used for {@link #TENANT_IDLE_TIME}
+ * are forgotten. The caches obtained through a {@link CacheProvider} are held by the data storages for their whole life,
+ * the projects holding them are thus never forgotten.
+ *
  * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
  */
 @ApplicationScoped
 public class CdiCacheManager implements CacheManager, Serializable {
 
+   private static final long TENANT_IDLE_TIME = TimeUnit.HOURS.toMillis(1);
+   private static final long EVICTION_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
    @Inject
    private CacheFactory cacheFactory;
 
-   private Map<String, Map<String, Cache>> caches = new ConcurrentHashMap<>();
+   private Map<String, TenantCaches> caches = new ConcurrentHashMap<>();
+
+   private final AtomicLong lastEviction = new AtomicLong(System.currentTimeMillis());
 
    @Inject
    private OrganizationFacade organizationFacade;
@@ -49,6 +67,9 @@ public class CdiCacheManager implements CacheManager, Serializable {
    @Inject
    private ProjectFacade projectFacade;
 
+   @Inject
+   private DefaultConfigurationProducer defaultConfigurationProducer;
+
    @Override
    public CacheProvider getCacheProvider(final String namespace) {
       final CacheProvider provider = new DefaultCacheProvider();
@@ -59,10 +80,143 @@ public class CdiCacheManager implements CacheManager, Serializable {
 
    public <T> Cache<T> getCache(final String name) {
       final String key = organizationFacade.getOrganizationCode() + "/" + projectFacade.getCurrentProjectCode();
-      final Map<String, Cache> localCaches = caches.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
-      final Cache<T> cache = localCaches.computeIfAbsent(name, k -> cacheFactory.getCache());
+      final long now = System.currentTimeMillis();
+      evictIdleTenants(now);
+
+      // the access is recorded atomically with the tenant lookup, so a tenant cannot be evicted while it is obtained
+      final TenantCaches tenantCaches = caches.compute(key, (k, current) -> {
+         final TenantCaches tenant = current != null ? current : new TenantCaches();
+         tenant.lastAccess = now;
+         tenant.pinned |= name.indexOf('/') > 0;
+
+         return tenant;
+      });
+      final Cache<T> cache = tenantCaches.caches.computeIfAbsent(name, k -> cacheFactory.getCache(getCacheConfiguration(name)));
 
       return cache;
    }
 
+   private void evictIdleTenants(final long now) {
+      final long last = lastEviction.get();
+      if (now - last < EVICTION_PERIOD || !lastEviction.compareAndSet(last, now)) {
+         return;
+      }
+
+      caches.keySet().forEach(key -> caches.computeIfPresent(key, (k, tenant) -> !tenant.pinned && now - tenant.lastAccess > TENANT_IDLE_TIME ? null : tenant));
+   }
+
+   @Override
+   public void invalidate(final DataChangeEvent event) {
+      invalidate(tenant -> true, event);
+   }
+
+   @Override
+   public void invalidate(final String organizationCode, final DataChangeEvent event) {
+      final String tenantPrefix = organizationCode + "/";
+
+      invalidate(tenant -> tenant.startsWith(tenantPrefix), event);
+   }
+
+   private void invalidate(final Predicate<String> tenants, final DataChangeEvent event) {
+      switch (event.getType()) {
+         case RESYNC:
+            // the caches obtained before are still used by their holders, so they are not cleared, just forgotten
+            caches.keySet().removeIf(tenants);
+            break;
+         case COLLECTION_RENAMED:
+            remove(tenants, event.getCollectionName());
+            remove(tenants, event.getNewCollectionName());
+            break;
+         case DOCUMENT_CHANGED:
+            remove(tenants, event.getCollectionName());
+            if (event.getDocumentId() != null) {
+               remove(tenants, event.getDocumentId());
+            }
+            break;
+         default:
+            remove(tenants, event.getCollectionName());
+      }
+   }
+
+   @Override
+   public Map<String, Map<String, CacheStats>> getCacheStats() {
+      final Map<String, Map<String, CacheStats>> stats = new TreeMap<>();
+
+      caches.forEach((tenant, tenantCaches) -> {
+         final Map<String, CacheStats> tenantStats = stats.computeIfAbsent(tenant, k -> new TreeMap<>());
+         tenantCaches.caches.forEach((name, cache) -> tenantStats.computeIfAbsent(getNamespace(name), k -> new CacheStats()).add(cache.getStats()));
+      });
+
+      return stats;
+   }
+
+   // the caches obtained through a cache provider are named by the provider's namespace and the cache name
+   private static String getNamespace(final String name) {
+      final int separator = name.indexOf('/');
+
+      return separator > 0 ? name.substring(0, separator) : name;
+   }
+
+   private CacheConfiguration getCacheConfiguration(final String name) {
+      final CacheConfiguration configuration = new CacheConfiguration();
+      configuration.setMaximumSize(getCacheLimit(LumeerConst.CACHE_MAXIMUM_SIZE_PROPERTY, name));
+
+      final Long expireAfterWrite = getCacheLimit(LumeerConst.CACHE_EXPIRE_AFTER_WRITE_PROPERTY, name);
+      configuration.setExpireAfterWrite(expireAfterWrite != null ? TimeUnit.SECONDS.toMillis(expireAfterWrite) : null);
+
+      final Long expireAfterAccess = getCacheLimit(LumeerConst.CACHE_EXPIRE_AFTER_ACCESS_PROPERTY, name);
+      configuration.setExpireAfterAccess(expireAfterAccess != null ? TimeUnit.SECONDS.toMillis(expireAfterAccess) : null);
+
+      final Long refreshAfterWrite = getCacheLimit(LumeerConst.CACHE_REFRESH_AFTER_WRITE_PROPERTY, name);
+      configuration.setRefreshAfterWrite(refreshAfterWrite != null ? TimeUnit.SECONDS.toMillis(refreshAfterWrite) : null);
+
+      // off-heap copies are kept only for the caches named explicitly, most caches hold values that cannot be serialized
+      final Long offHeapSize = parseCacheLimit(defaultConfigurationProducer.get(LumeerConst.CACHE_OFF_HEAP_SIZE_PROPERTY + "." + name));
+      configuration.setOffHeapSize(offHeapSize != null ? offHeapSize * 1024 * 1024 : null);
+
+      return configuration;
+   }
+
+   private Long getCacheLimit(final String property, final String name) {
+      String limit = defaultConfigurationProducer.get(property + "." + name);
+      if (limit == null) {
+         limit = defaultConfigurationProducer.get(property);
+      }
+
+      return parseCacheLimit(limit);
+   }
+
+   private static Long parseCacheLimit(final String limit) {
+      try {
+         return limit != null && !limit.trim().isEmpty() ? Long.valueOf(limit.trim()) : null;
+      } catch (NumberFormatException e) {
+         return null;
+      }
+   }
+
+   private void remove(final Predicate<String> tenants, final String key) {
+      caches.forEach((tenant, tenantCaches) -> {
+         if (tenants.test(tenant)) {
+            tenantCaches.caches.values().forEach(cache -> cache.remove(key));
+         }
+      });
+   }
+
+   /**
+    * The caches of a single organization and project.
+    */
+   private static class TenantCaches implements Serializable {
+
+      private static final long serialVersionUID = 5310718307458016437L;
+
+      private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+      private volatile long lastAccess;
+
+      /**
+       * Whether the caches are held outside of this manager and they must not be forgotten.
+       */
+      private volatile boolean pinned;
+   }
+
 }
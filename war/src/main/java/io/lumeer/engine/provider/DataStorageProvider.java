@@ -19,14 +19,26 @@
  */
 package io.lumeer.engine.provider;
 
+import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.cache.CacheManager;
+import io.lumeer.engine.api.data.AsyncDataStorage;
+import io.lumeer.engine.api.data.ConnectionPoolStats;
+import io.lumeer.engine.api.data.DataChangeEvent;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.DataStorageFactory;
 import io.lumeer.engine.controller.ConfigurationFacade;
 import io.lumeer.engine.controller.OrganizationFacade;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
@@ -39,8 +51,20 @@ public class DataStorageProvider {
 
    private static final String SYSTEM_CONNECTION = "/SYSTEM/"; // organisation cannot have / in its name
 
+   // collections read by the caches, their document changes made by other nodes must be watched
+   private static final Set<String> WATCHED_DOCUMENT_COLLECTIONS = new HashSet<>(Arrays.asList(
+         LumeerConst.Collection.METADATA_COLLECTION_PREFIX,
+         LumeerConst.View.METADATA_COLLECTION_PREFIX,
+         LumeerConst.Configuration.COLLECTION_PREFIX,
+         LumeerConst.Security.ROLES_COLLECTION_NAME,
+         LumeerConst.Security.ORGANIZATION_ROLES_COLLECTION_NAME));
+
+   private static final Logger log = Logger.getLogger(DataStorageProvider.class.getName());
+
    private Map<String, DataStorage> connections = new ConcurrentHashMap<>();
 
+   private Map<String, AsyncDataStorage> asyncConnections = new ConcurrentHashMap<>();
+
    @Inject
    private DataStorageFactory dataStorageFactory;
 
@@ -54,17 +78,73 @@ public class DataStorageProvider {
    private CacheManager cacheManager;
 
    public DataStorage getUserStorage() {
-      return connections.computeIfAbsent(organizationFacade.getOrganizationCode(),
-            k -> dataStorageFactory.getStorage(cacheManager.getCacheProvider("userDataStorage"), configurationFacade.getDataStorage(), configurationFacade.getDataStorageDatabase(), configurationFacade.getDataStorageUseSsl()));
+      final DataStorage storage = connections.computeIfAbsent(organizationFacade.getOrganizationCode(),
+            organizationCode -> watchChanges(dataStorageFactory.getStorage(cacheManager.getCacheProvider("userDataStorage"), configurationFacade.getDataStorage(), configurationFacade.getDataStorageDatabase(), configurationFacade.getDataStorageUseSsl(), configurationFacade.getDataStorageOptions()),
+                  configurationFacade.getDataStorageWatchChanges(), event -> cacheManager.invalidate(organizationCode, event)));
+
+      // the connection keeps the storage itself, only the storage can be disconnected, not its view
+      return configurationFacade.getDataStorageWriteDurability().map(storage::withWriteDurability).orElse(storage);
+   }
+
+   public AsyncDataStorage getUserAsyncStorage() {
+      return asyncConnections.computeIfAbsent(organizationFacade.getOrganizationCode(),
+            k -> dataStorageFactory.getAsyncStorage(configurationFacade.getDataStorage(), configurationFacade.getDataStorageDatabase(), configurationFacade.getDataStorageUseSsl(), configurationFacade.getDataStorageOptions()));
+   }
+
+   public DataStorage getUserSearchStorage() {
+      return getUserStorage().withReadPreference(configurationFacade.getSearchReadPreference(), configurationFacade.getSearchMaxStaleness());
+   }
+
+   public AsyncDataStorage getUserSearchAsyncStorage() {
+      return getUserAsyncStorage().withReadPreference(configurationFacade.getSearchReadPreference(), configurationFacade.getSearchMaxStaleness());
    }
 
    public DataStorage getSystemStorage() {
       return connections.computeIfAbsent(SYSTEM_CONNECTION,
-            k -> dataStorageFactory.getStorage(cacheManager.getCacheProvider("systemDataStorage"), configurationFacade.getSystemDataStorage(), configurationFacade.getSystemDataStorageDatabase(), configurationFacade.getSystemDataStorageUseSsl()));
+            k -> watchChanges(dataStorageFactory.getStorage(cacheManager.getCacheProvider("systemDataStorage"), configurationFacade.getSystemDataStorage(), configurationFacade.getSystemDataStorageDatabase(), configurationFacade.getSystemDataStorageUseSsl(), configurationFacade.getSystemDataStorageOptions()),
+                  configurationFacade.getSystemDataStorageWatchChanges(), cacheManager::invalidate));
+   }
+
+   // publishes the changes made by other nodes to the cache manager, otherwise the caches rely on their own expiration;
+   // the changes of a user storage invalidate the caches of its organization only, the system storage is shared by all of them
+   private DataStorage watchChanges(final DataStorage storage, final boolean watch, final Consumer<DataChangeEvent> invalidation) {
+      if (watch && !storage.watchChanges(WATCHED_DOCUMENT_COLLECTIONS, invalidation)) {
+         log.warning("The data storage is not able to watch changes, the caches of other nodes will not be invalidated.");
+      }
+
+      return storage;
+   }
+
+   /**
+    * Gets statistics of connection pools of all the open data storages. The pools of the synchronous and asynchronous
+    * storages of an organization connected to the same server are added together.
+    *
+    * @return Connection pool statistics of each server keyed by organization code, the system storage is keyed by {@value #SYSTEM_CONNECTION}.
+    */
+   public Map<String, List<ConnectionPoolStats>> getConnectionPoolStats() {
+      final Map<String, Map<String, ConnectionPoolStats>> servers = new TreeMap<>();
+      connections.forEach((k, v) -> addConnectionPoolStats(servers.computeIfAbsent(k, key -> new TreeMap<>()), v.getConnectionPoolStats()));
+      asyncConnections.forEach((k, v) -> addConnectionPoolStats(servers.computeIfAbsent(k, key -> new TreeMap<>()), v.getConnectionPoolStats()));
+
+      final Map<String, List<ConnectionPoolStats>> stats = new TreeMap<>();
+      servers.forEach((k, v) -> stats.put(k, new ArrayList<>(v.values())));
+
+      return stats;
+   }
+
+   private static void addConnectionPoolStats(final Map<String, ConnectionPoolStats> servers, final List<ConnectionPoolStats> stats) {
+      stats.forEach(pool -> servers.computeIfAbsent(pool.getHost() + ":" + pool.getPort(), k -> {
+         final ConnectionPoolStats server = new ConnectionPoolStats();
+         server.setHost(pool.getHost());
+         server.setPort(pool.getPort());
+
+         return server;
+      }).add(pool));
    }
 
    @PreDestroy
    public void closeConnections() {
       connections.forEach((k, v) -> v.disconnect());
+      asyncConnections.forEach((k, v) -> v.disconnect());
    }
 }
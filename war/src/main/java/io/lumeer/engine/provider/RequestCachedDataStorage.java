@@ -0,0 +1,446 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.provider;
+
+import io.lumeer.engine.api.cache.CacheProvider;
+import io.lumeer.engine.api.data.ConnectionPoolStats;
+import io.lumeer.engine.api.data.DataChangeEvent;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataFilter;
+import io.lumeer.engine.api.data.DataPage;
+import io.lumeer.engine.api.data.DataSort;
+import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.DataStorageStats;
+import io.lumeer.engine.api.data.IndexRecommendation;
+import io.lumeer.engine.api.data.Query;
+import io.lumeer.engine.api.data.ReadPreference;
+import io.lumeer.engine.api.data.SlowOperation;
+import io.lumeer.engine.api.data.StorageConnection;
+import io.lumeer.engine.api.data.StorageConnectionOptions;
+import io.lumeer.engine.api.data.WriteDurability;
+import io.lumeer.engine.api.data.WriteOperation;
+import io.lumeer.engine.api.data.WriteOperationResult;
+import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Identity map of a single request layered around the user data storage. Repeated reads of the same documents
+ * within the request are served from memory, writes through this storage drop the remembered reads of the collections they touch.
+ * The callers always get their own copies of the documents, so they are free to modify them.
+ * Writes done in other requests or through other storages are not visible in the remembered reads,
+ * which is why an instance must never outlive a single request.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class RequestCachedDataStorage implements DataStorage {
+
+   private static final long serialVersionUID = -2883925452187442431L;
+
+   private final DataStorage dataStorage;
+
+   /**
+    * Remembered reads per collection, the keys identify the read method and its arguments.
+    */
+   private final Map<String, Map<List<Object>, Optional<Object>>> reads;
+
+   /**
+    * Wraps the given data storage.
+    *
+    * @param dataStorage
+    *       The data storage to read the documents from.
+    */
+   public RequestCachedDataStorage(final DataStorage dataStorage) {
+      this(dataStorage, new ConcurrentHashMap<>());
+   }
+
+   private RequestCachedDataStorage(final DataStorage dataStorage, final Map<String, Map<List<Object>, Optional<Object>>> reads) {
+      this.dataStorage = dataStorage;
+      this.reads = reads;
+   }
+
+   @SuppressWarnings("unchecked")
+   private <T> T read(final String collectionName, final Supplier<T> reader, final Object... key) {
+      final Map<List<Object>, Optional<Object>> collectionReads = reads.computeIfAbsent(collectionName, k -> new ConcurrentHashMap<>());
+      final List<Object> readKey = Arrays.asList(key);
+      final Optional<Object> remembered = collectionReads.get(readKey);
+
+      if (remembered != null) {
+         return (T) copy(remembered.orElse(null));
+      }
+
+      final T result = reader.get();
+      collectionReads.put(readKey, Optional.ofNullable(copy(result)));
+
+      return result;
+   }
+
+   @SuppressWarnings("unchecked")
+   private static <T> T copy(final T value) {
+      if (value instanceof DataDocument) {
+         return (T) ((DataDocument) value).deepCopy();
+      } else if (value instanceof List) {
+         return (T) ((List<?>) value).stream().map(RequestCachedDataStorage::copy).collect(Collectors.toCollection(ArrayList::new));
+      }
+
+      return value;
+   }
+
+   private void written(final String collectionName) {
+      reads.remove(collectionName);
+   }
+
+   private void writtenAll() {
+      reads.clear();
+   }
+
+   @Override
+   public void setCacheProvider(final CacheProvider cacheProvider) {
+      dataStorage.setCacheProvider(cacheProvider);
+   }
+
+   @Override
+   public void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl, final StorageConnectionOptions options) {
+      dataStorage.connect(connections, database, useSsl, options);
+   }
+
+   @Override
+   public void disconnect() {
+      writtenAll();
+      dataStorage.disconnect();
+   }
+
+   @Override
+   public DataStorage withReadPreference(final ReadPreference readPreference, final long maxStaleness) {
+      return dataStorage.withReadPreference(readPreference, maxStaleness);
+   }
+
+   @Override
+   public DataStorage withWriteDurability(final WriteDurability writeDurability) {
+      final DataStorage view = dataStorage.withWriteDurability(writeDurability);
+
+      // the view shares the remembered reads so that its writes drop them as well
+      return view == dataStorage ? this : new RequestCachedDataStorage(view, reads);
+   }
+
+   @Override
+   public List<String> getAllCollections() {
+      return dataStorage.getAllCollections();
+   }
+
+   @Override
+   public void createCollection(final String collectionName) {
+      written(collectionName);
+      dataStorage.createCollection(collectionName);
+   }
+
+   @Override
+   public void dropCollection(final String collectionName) {
+      written(collectionName);
+      dataStorage.dropCollection(collectionName);
+   }
+
+   @Override
+   public void renameCollection(final String oldCollectionName, final String newCollectionName) {
+      written(oldCollectionName);
+      written(newCollectionName);
+      dataStorage.renameCollection(oldCollectionName, newCollectionName);
+   }
+
+   @Override
+   public boolean hasCollection(final String collectionName) {
+      return dataStorage.hasCollection(collectionName);
+   }
+
+   @Override
+   public long documentCount(final String collectionName) {
+      return dataStorage.documentCount(collectionName);
+   }
+
+   @Override
+   public long estimatedDocumentCount(final String collectionName) {
+      return dataStorage.estimatedDocumentCount(collectionName);
+   }
+
+   @Override
+   public boolean collectionHasDocument(final String collectionName, final DataFilter filter) {
+      return read(collectionName, () -> dataStorage.collectionHasDocument(collectionName, filter), "collectionHasDocument", filter);
+   }
+
+   @Override
+   public String createDocument(final String collectionName, final DataDocument document) {
+      written(collectionName);
+      return dataStorage.createDocument(collectionName, document);
+   }
+
+   @Override
+   public List<String> createDocuments(final String collectionName, final List<DataDocument> dataDocuments) {
+      written(collectionName);
+      return dataStorage.createDocuments(collectionName, dataDocuments);
+   }
+
+   @Override
+   public List<WriteOperationResult> bulkWrite(final String collectionName, final List<WriteOperation> operations, final boolean ordered) {
+      written(collectionName);
+      return dataStorage.bulkWrite(collectionName, operations, ordered);
+   }
+
+   @Override
+   public void createOldDocument(final String collectionName, final DataDocument document, final String documentId, final int version) throws UnsuccessfulOperationException {
+      written(collectionName);
+      dataStorage.createOldDocument(collectionName, document, documentId, version);
+   }
+
+   @Override
+   public DataDocument readDocumentIncludeAttrs(final String collectionName, final DataFilter filter, final List<String> attributes) {
+      return read(collectionName, () -> dataStorage.readDocumentIncludeAttrs(collectionName, filter, attributes), "readDocumentIncludeAttrs", filter, attributes);
+   }
+
+   @Override
+   public DataDocument readDocument(final String collectionName, final DataFilter filter) {
+      return read(collectionName, () -> dataStorage.readDocument(collectionName, filter), "readDocument", filter);
+   }
+
+   @Override
+   public void updateDocument(final String collectionName, final DataDocument updatedDocument, final DataFilter filter) {
+      written(collectionName);
+      dataStorage.updateDocument(collectionName, updatedDocument, filter);
+   }
+
+   @Override
+   public void replaceDocument(final String collectionName, final DataDocument replaceDocument, final DataFilter filter) {
+      written(collectionName);
+      dataStorage.replaceDocument(collectionName, replaceDocument, filter);
+   }
+
+   @Override
+   public void dropDocument(final String collectionName, final DataFilter filter) {
+      written(collectionName);
+      dataStorage.dropDocument(collectionName, filter);
+   }
+
+   @Override
+   public void dropManyDocuments(final String collectionName, final DataFilter filter) {
+      written(collectionName);
+      dataStorage.dropManyDocuments(collectionName, filter);
+   }
+
+   @Override
+   public void renameAttribute(final String collectionName, final String oldName, final String newName) {
+      written(collectionName);
+      dataStorage.renameAttribute(collectionName, oldName, newName);
+   }
+
+   @Override
+   public void dropAttribute(final String collectionName, final DataFilter filter, final String attributeName) {
+      written(collectionName);
+      dataStorage.dropAttribute(collectionName, filter, attributeName);
+   }
+
+   @Override
+   public <T> void addItemToArray(final String collectionName, final DataFilter filter, final String attributeName, final T item) {
+      written(collectionName);
+      dataStorage.addItemToArray(collectionName, filter, attributeName, item);
+   }
+
+   @Override
+   public <T> void addItemsToArray(final String collectionName, final DataFilter filter, final String attributeName, final List<T> items) {
+      written(collectionName);
+      dataStorage.addItemsToArray(collectionName, filter, attributeName, items);
+   }
+
+   @Override
+   public <T> void removeItemFromArray(final String collectionName, final DataFilter filter, final String attributeName, final T item) {
+      written(collectionName);
+      dataStorage.removeItemFromArray(collectionName, filter, attributeName, item);
+   }
+
+   @Override
+   public <T> void removeItemsFromArray(final String collectionName, final DataFilter filter, final String attributeName, final List<T> items) {
+      written(collectionName);
+      dataStorage.removeItemsFromArray(collectionName, filter, attributeName, items);
+   }
+
+   @Override
+   public Set<String> getAttributeValues(final String collectionName, final String attributeName) {
+      return dataStorage.getAttributeValues(collectionName, attributeName);
+   }
+
+   @Override
+   public List<DataDocument> run(final String command) {
+      writtenAll(); // the command can do anything
+      return dataStorage.run(command);
+   }
+
+   @Override
+   public List<DataDocument> run(final DataDocument command) {
+      writtenAll();
+      return dataStorage.run(command);
+   }
+
+   @Override
+   public List<DataDocument> search(final String collectionName, final DataFilter filter, final List<String> attributes) {
+      return read(collectionName, () -> dataStorage.search(collectionName, filter, attributes), "search", filter, null, attributes, 0, 0);
+   }
+
+   @Override
+   public List<DataDocument> search(final String collectionName, final DataFilter filter, final DataSort sort, final int skip, final int limit) {
+      return read(collectionName, () -> dataStorage.search(collectionName, filter, sort, skip, limit), "search", filter, sort, null, skip, limit);
+   }
+
+   @Override
+   public List<DataDocument> search(final String collectionName, final DataFilter filter, final DataSort sort, final List<String> attributes, final int skip, final int limit) {
+      return read(collectionName, () -> dataStorage.search(collectionName, filter, sort, attributes, skip, limit), "search", filter, sort, attributes, skip, limit);
+   }
+
+   @Override
+   public Stream<DataDocument> searchStream(final String collectionName, final DataFilter filter, final DataSort sort, final List<String> attributes, final int batchSize) {
+      return dataStorage.searchStream(collectionName, filter, sort, attributes, batchSize);
+   }
+
+   @Override
+   public DataPage searchPage(final String collectionName, final DataFilter filter, final DataSort sort, final String pageToken, final int limit) {
+      return dataStorage.searchPage(collectionName, filter, sort, pageToken, limit);
+   }
+
+   @Override
+   public long count(final String collectionName, final DataFilter filter) {
+      return read(collectionName, () -> dataStorage.count(collectionName, filter), "count", filter);
+   }
+
+   @Override
+   public List<DataDocument> query(final Query query) {
+      if (query.getOutput() != null && !query.getOutput().isEmpty()) {
+         written(query.getOutput());
+      }
+      return dataStorage.query(query);
+   }
+
+   @Override
+   public List<DataDocument> unionQuery(final Query query) {
+      return dataStorage.unionQuery(query);
+   }
+
+   @Override
+   public DataPage unionQueryPage(final Query query, final String pageToken) {
+      return dataStorage.unionQueryPage(query, pageToken);
+   }
+
+   @Override
+   public List<DataDocument> aggregate(final String collectionName, final DataDocument... stages) {
+      if (Arrays.stream(stages).anyMatch(stage -> stage.containsKey("$out"))) {
+         writtenAll();
+      }
+      return dataStorage.aggregate(collectionName, stages);
+   }
+
+   @Override
+   public Stream<DataDocument> aggregateStream(final String collectionName, final int batchSize, final DataDocument... stages) {
+      if (Arrays.stream(stages).anyMatch(stage -> stage.containsKey("$out"))) {
+         writtenAll();
+      }
+      return dataStorage.aggregateStream(collectionName, batchSize, stages);
+   }
+
+   @Override
+   public void incrementAttributeValueBy(final String collectionName, final DataFilter filter, final String attributeName, final int incBy) {
+      written(collectionName);
+      dataStorage.incrementAttributeValueBy(collectionName, filter, attributeName, incBy);
+   }
+
+   @Override
+   public int getNextSequenceNo(final String collectionName, final String indexAttribute, final String index) {
+      written(collectionName);
+      return dataStorage.getNextSequenceNo(collectionName, indexAttribute, index);
+   }
+
+   @Override
+   public void resetSequence(final String collectionName, final String indexAttribute, final String index) {
+      written(collectionName);
+      dataStorage.resetSequence(collectionName, indexAttribute, index);
+   }
+
+   @Override
+   public int allocateSequenceBlock(final String collectionName, final String indexAttribute, final String index, final int blockSize) {
+      written(collectionName);
+      return dataStorage.allocateSequenceBlock(collectionName, indexAttribute, index, blockSize);
+   }
+
+   @Override
+   public void createIndex(final String collectionName, final DataDocument indexAttributes, final boolean unique) {
+      dataStorage.createIndex(collectionName, indexAttributes, unique);
+   }
+
+   @Override
+   public List<DataDocument> listIndexes(final String collectionName) {
+      return dataStorage.listIndexes(collectionName);
+   }
+
+   @Override
+   public void dropIndex(final String collectionName, final String indexName) {
+      dataStorage.dropIndex(collectionName, indexName);
+   }
+
+   @Override
+   public void invalidateCaches() {
+      writtenAll();
+      dataStorage.invalidateCaches();
+   }
+
+   @Override
+   public DataStorageStats getDbStats() {
+      return dataStorage.getDbStats();
+   }
+
+   @Override
+   public DataStorageStats getCollectionStats(final String collectionName) {
+      return dataStorage.getCollectionStats(collectionName);
+   }
+
+   @Override
+   public List<ConnectionPoolStats> getConnectionPoolStats() {
+      return dataStorage.getConnectionPoolStats();
+   }
+
+   @Override
+   public List<SlowOperation> getSlowOperations() {
+      return dataStorage.getSlowOperations();
+   }
+
+   @Override
+   public List<IndexRecommendation> getIndexRecommendations() {
+      return dataStorage.getIndexRecommendations();
+   }
+
+   @Override
+   public boolean watchChanges(final Set<String> documentCollectionPrefixes, final Consumer<DataChangeEvent> listener) {
+      return dataStorage.watchChanges(documentCollectionPrefixes, listener);
+   }
+}
@@ -23,13 +23,16 @@ import io.lumeer.engine.annotation.UserDataStorage;
 import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.constraint.InvalidConstraintException;
 import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataPage;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.DataStorageDialect;
 import io.lumeer.engine.api.dto.CollectionMetadata;
 import io.lumeer.engine.api.exception.AttributeAlreadyExistsException;
 import io.lumeer.engine.api.exception.CollectionNotFoundException;
 import io.lumeer.engine.api.exception.DbException;
+import io.lumeer.engine.api.exception.InvalidQueryException;
 import io.lumeer.engine.api.exception.UnauthorizedAccessException;
+import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
 import io.lumeer.engine.api.exception.UserCollectionAlreadyExistsException;
 import io.lumeer.engine.api.exception.UserCollectionNotFoundException;
 import io.lumeer.engine.controller.CollectionFacade;
@@ -43,6 +46,7 @@ import io.lumeer.engine.util.ErrorMessageBuilder;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -131,6 +135,25 @@ public class CollectionService implements Serializable {
       return collections;
    }
 
+   /**
+    * Returns the number of documents in each collection of the project the current user can read. The numbers are
+    * estimated from the collection metadata.
+    *
+    * @return map of collection names to the numbers of their documents
+    */
+   @GET
+   @Path("/counts")
+   public Map<String, Long> getAllDocumentCounts() {
+      final String projectId = projectFacade.getCurrentProjectId();
+      final Map<String, String> collections = collectionFacade.getAllCollections().entrySet().stream()
+                                                             .filter(c -> securityFacade.hasCollectionRole(projectId, c.getKey(), LumeerConst.Security.ROLE_READ))
+                                                             .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+      final Map<String, Long> counts = new HashMap<>();
+      collectionFacade.getDocumentCounts(collections.keySet()).forEach((internalName, count) -> counts.put(collections.get(internalName), count));
+
+      return counts;
+   }
+
    /**
     * Creates a new collection including its metadata collection with the specified name given by user.
     *
@@ -222,10 +245,12 @@ public class CollectionService implements Serializable {
     *       When the given collection does not exist.
     * @throws UnauthorizedAccessException
     *       When current user is not allowed to write to the collection.
+    * @throws UnsuccessfulOperationException
+    *       When the attribute could not be removed from some of the documents.
     */
    @DELETE
    @Path("/{collectionName}/attributes/{attributeName}")
-   public void dropAttribute(final @PathParam("collectionName") String collectionName, final @PathParam("attributeName") String attributeName) throws CollectionNotFoundException, UnauthorizedAccessException {
+   public void dropAttribute(final @PathParam("collectionName") String collectionName, final @PathParam("attributeName") String attributeName) throws CollectionNotFoundException, UnauthorizedAccessException, UnsuccessfulOperationException {
       if (collectionName == null || attributeName == null) {
          throw new BadRequestException();
       }
@@ -268,6 +293,39 @@ public class CollectionService implements Serializable {
       return searchFacade.search(internalCollectionName, dialect.documentFilter(filter == null ? "{}" : filter), dialect.documentSort(sort == null ? "{}" : sort), skip, limit);
    }
 
+   /**
+    * Searches the specified collection for specified documents page by page. Unlike skipping the documents, reading a page
+    * costs the same regardless of its depth.
+    *
+    * @param collectionName
+    *       name of the collection where the search will be performed
+    * @param filter
+    *       query predicate. If unspecified, then all documents in the collection will match the predicate.
+    * @param sort
+    *       sort specification for the ordering of the results
+    * @param pageToken
+    *       token returned with the previous page, unspecified for the first page
+    * @param limit
+    *       maximum number of documents on the page
+    * @return page of the found documents with the token to read the next page
+    * @throws CollectionNotFoundException
+    *       When the collection in which we want to search does not exist.
+    * @throws InvalidQueryException
+    *       When the page token is not valid.
+    */
+   @POST
+   @Path("/{collectionName}/search/page")
+   public DataPage searchPage(final @PathParam("collectionName") String collectionName, final @QueryParam("filter") String filter, final @QueryParam("sort") String sort, final @QueryParam("pageToken") String pageToken, final @QueryParam("limit") int limit) throws CollectionNotFoundException, InvalidQueryException {
+      if (collectionName == null) {
+         throw new BadRequestException();
+      }
+      String internalCollectionName = getInternalName(collectionName);
+      if (!dataStorage.hasCollection(internalCollectionName)) {
+         throw new CollectionNotFoundException(ErrorMessageBuilder.collectionNotFoundString(collectionName));
+      }
+      return searchFacade.searchPage(internalCollectionName, dialect.documentFilter(filter == null ? "{}" : filter), dialect.documentSort(sort == null ? "{}" : sort), pageToken, limit);
+   }
+
    /**
     * Executes a query to find and return documents.
     *
@@ -360,6 +418,32 @@ public class CollectionService implements Serializable {
       collectionMetadataFacade.setCustomMetadata(getInternalName(collectionName), metadataDocument);
    }
 
+   /**
+    * Gets the number of documents in given collection without reading the documents.
+    *
+    * @param collectionName
+    *       collection name
+    * @return number of documents in the collection
+    * @throws CollectionNotFoundException
+    *       When the given collection does not exist.
+    * @throws UnauthorizedAccessException
+    *       When current user is not allowed to read the collection.
+    */
+   @GET
+   @Path("/{collectionName}/count")
+   public long getDocumentCount(final @PathParam("collectionName") String collectionName) throws CollectionNotFoundException, UnauthorizedAccessException {
+      if (collectionName == null) {
+         throw new BadRequestException();
+      }
+
+      final String internalName = getInternalName(collectionName);
+      if (!securityFacade.hasCollectionRole(projectFacade.getCurrentProjectId(), internalName, LumeerConst.Security.ROLE_READ)) {
+         throw new UnauthorizedAccessException();
+      }
+
+      return collectionFacade.getDocumentCount(internalName);
+   }
+
    /**
     * Reads all collection attributes of given collection.
     *
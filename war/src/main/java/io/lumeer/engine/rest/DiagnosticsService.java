@@ -0,0 +1,153 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.rest;
+
+import io.lumeer.engine.annotation.UserDataStorage;
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.cache.CacheManager;
+import io.lumeer.engine.api.cache.CacheStats;
+import io.lumeer.engine.api.data.ConnectionPoolStats;
+import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.IndexRecommendation;
+import io.lumeer.engine.api.data.SlowOperation;
+import io.lumeer.engine.api.exception.UnauthorizedAccessException;
+import io.lumeer.engine.controller.OrganizationFacade;
+import io.lumeer.engine.controller.SecurityFacade;
+import io.lumeer.engine.provider.DataStorageProvider;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Exposes diagnostic information about the data storage of an organization.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@Path("/organizations/{organization}/diagnostics")
+@RequestScoped
+public class DiagnosticsService implements Serializable {
+
+   private static final long serialVersionUID = -2356431768574625870L;
+
+   @PathParam("organization")
+   private String organizationCode;
+
+   @Inject
+   @UserDataStorage
+   private DataStorage dataStorage;
+
+   @Inject
+   private DataStorageProvider dataStorageProvider;
+
+   @Inject
+   private CacheManager cacheManager;
+
+   @Inject
+   private OrganizationFacade organizationFacade;
+
+   @Inject
+   private SecurityFacade securityFacade;
+
+   @PostConstruct
+   public void init() {
+      organizationFacade.setOrganizationCode(organizationCode);
+   }
+
+   /**
+    * Gets the most recent operations that exceeded the configured slow operation threshold.
+    *
+    * @return The slow operations, newest first.
+    * @throws UnauthorizedAccessException
+    *       When the user is not allowed to manage the organization.
+    */
+   @GET
+   @Path("/slow-operations")
+   @Produces(MediaType.APPLICATION_JSON)
+   public List<SlowOperation> getSlowOperations() throws UnauthorizedAccessException {
+      checkManageRole();
+      return dataStorage.getSlowOperations();
+   }
+
+   /**
+    * Gets the statistics of the connection pools used by the organization's data storages, both synchronous and asynchronous.
+    *
+    * @return The connection pool statistics of each server.
+    * @throws UnauthorizedAccessException
+    *       When the user is not allowed to manage the organization.
+    */
+   @GET
+   @Path("/connection-pools")
+   @Produces(MediaType.APPLICATION_JSON)
+   public List<ConnectionPoolStats> getConnectionPoolStats() throws UnauthorizedAccessException {
+      checkManageRole();
+      return dataStorageProvider.getConnectionPoolStats().getOrDefault(organizationCode, Collections.emptyList());
+   }
+
+   /**
+    * Gets the indexes that would serve the frequently observed queries, including those created automatically.
+    *
+    * @return The recommended indexes, the most frequently used first.
+    * @throws UnauthorizedAccessException
+    *       When the user is not allowed to manage the organization.
+    */
+   @GET
+   @Path("/index-recommendations")
+   @Produces(MediaType.APPLICATION_JSON)
+   public List<IndexRecommendation> getIndexRecommendations() throws UnauthorizedAccessException {
+      checkManageRole();
+      return dataStorage.getIndexRecommendations();
+   }
+
+   /**
+    * Gets the statistics of the caches used by the organization's projects.
+    *
+    * @return The cache statistics by namespace by project.
+    * @throws UnauthorizedAccessException
+    *       When the user is not allowed to manage the organization.
+    */
+   @GET
+   @Path("/caches")
+   @Produces(MediaType.APPLICATION_JSON)
+   public Map<String, Map<String, CacheStats>> getCacheStats() throws UnauthorizedAccessException {
+      checkManageRole();
+
+      final String tenantPrefix = organizationCode + "/";
+      return cacheManager.getCacheStats().entrySet().stream()
+                         .filter(e -> e.getKey().startsWith(tenantPrefix))
+                         .collect(Collectors.toMap(e -> e.getKey().substring(tenantPrefix.length()), Map.Entry::getValue));
+   }
+
+   private void checkManageRole() throws UnauthorizedAccessException {
+      if (!securityFacade.hasOrganizationRole(organizationCode, LumeerConst.Security.ROLE_MANAGE)) {
+         throw new UnauthorizedAccessException();
+      }
+   }
+}
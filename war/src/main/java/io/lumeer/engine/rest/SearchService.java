@@ -20,6 +20,7 @@
 package io.lumeer.engine.rest;
 
 import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataPage;
 import io.lumeer.engine.api.data.Query;
 import io.lumeer.engine.api.dto.SearchSuggestion;
 import io.lumeer.engine.api.exception.InvalidQueryException;
@@ -108,4 +109,25 @@ public class SearchService implements Serializable {
       }
       return searchFacade.query(query);
    }
+
+   /**
+    * Queries the data storage like {@link #runQuery(Query)} but reads the result page by page.
+    * Unlike skipping the documents, reading a page costs the same regardless of its depth.
+    *
+    * @param query
+    *       Query to execute, its skip is ignored
+    * @param pageToken
+    *       Token returned with the previous page, unspecified for the first page
+    * @return The page of the query result with the token to read the next page.
+    * @throws InvalidQueryException
+    *       When it was not possible to execute the query or the page token is not valid.
+    */
+   @POST
+   @Path("query/page")
+   public DataPage runQueryPage(final Query query, final @QueryParam("pageToken") String pageToken) throws InvalidQueryException {
+      if (query == null) {
+         throw new BadRequestException();
+      }
+      return searchFacade.queryPage(query, pageToken);
+   }
 }
@@ -0,0 +1,135 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.util;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded summary of the most frequent values of a single attribute, maintained by the Space-Saving algorithm.
+ * At most the given number of values is tracked, a new value replaces the least frequent one and inherits its count,
+ * so the frequent values stay in the summary and their counts are overestimated by at most the count of the replaced value.
+ * Values can be removed again, their counts are decremented and they are forgotten when no occurrence is left.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class AttributeValueSummary implements Serializable {
+
+   private static final long serialVersionUID = -5528409766301915836L;
+
+   private final int capacity;
+
+   private final Map<String, Long> counts = new HashMap<>();
+
+   /**
+    * Creates an empty summary.
+    *
+    * @param capacity
+    *       Maximal number of tracked values.
+    */
+   public AttributeValueSummary(final int capacity) {
+      this.capacity = capacity;
+   }
+
+   /**
+    * Counts a new occurrence of the value.
+    *
+    * @param value
+    *       The value that occurred, null is ignored.
+    */
+   public void add(final Object value) {
+      add(value, 1);
+   }
+
+   /**
+    * Counts the given number of occurrences of the value.
+    *
+    * @param value
+    *       The value that occurred, null is ignored.
+    * @param occurrences
+    *       The number of occurrences, values that did not occur are ignored.
+    */
+   public synchronized void add(final Object value, final long occurrences) {
+      if (value == null || occurrences <= 0) {
+         return;
+      }
+
+      final String key = value.toString();
+      final Long count = counts.get(key);
+
+      if (count != null) {
+         counts.put(key, count + occurrences);
+      } else if (counts.size() < capacity) {
+         counts.put(key, occurrences);
+      } else {
+         final Map.Entry<String, Long> least = counts.entrySet().stream().min(Map.Entry.comparingByValue()).get();
+         counts.remove(least.getKey());
+         counts.put(key, least.getValue() + occurrences);
+      }
+   }
+
+   /**
+    * Forgets an occurrence of the value.
+    *
+    * @param value
+    *       The value that is no longer present, null is ignored.
+    */
+   public synchronized void remove(final Object value) {
+      if (value == null) {
+         return;
+      }
+
+      counts.computeIfPresent(value.toString(), (key, count) -> count > 1 ? count - 1 : null);
+   }
+
+   /**
+    * Gets the most frequent values.
+    *
+    * @param prefix
+    *       Only the values starting with this prefix are returned, case insensitive, null or empty for all values.
+    * @param limit
+    *       Maximal number of returned values.
+    * @return The values ordered from the most frequent one.
+    */
+   public synchronized Set<String> getTopValues(final String prefix, final int limit) {
+      final String lowerCasePrefix = prefix == null ? "" : prefix.toLowerCase();
+
+      return counts.entrySet().stream()
+                   .filter(e -> e.getKey().toLowerCase().startsWith(lowerCasePrefix))
+                   .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()))
+                   .limit(limit)
+                   .map(Map.Entry::getKey)
+                   .collect(Collectors.toCollection(LinkedHashSet::new));
+   }
+
+   /**
+    * Gets the number of tracked values.
+    *
+    * @return The number of tracked values.
+    */
+   public synchronized int size() {
+      return counts.size();
+   }
+}
@@ -19,12 +19,15 @@
  */
 package io.lumeer.engine.util;
 
+import io.lumeer.engine.annotation.SearchDataStorage;
 import io.lumeer.engine.annotation.SystemDataStorage;
 import io.lumeer.engine.annotation.UserDataStorage;
+import io.lumeer.engine.api.data.AsyncDataStorage;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.DataStorageFactory;
 import io.lumeer.engine.controller.configuration.DefaultConfigurationProducer;
 import io.lumeer.engine.provider.DataStorageProvider;
+import io.lumeer.engine.provider.RequestCachedDataStorage;
 
 import java.util.logging.Logger;
 import javax.annotation.Resource;
@@ -73,11 +76,38 @@ public class Resources {
       return dataStorageProvider.getSystemStorage();
    }
 
+   /**
+    * Produces the user data storage of the current request. Repeated reads of the same documents within the request
+    * are served from memory.
+    *
+    * @return The user data storage.
+    */
    @Produces
    @UserDataStorage
    @RequestScoped
    public DataStorage getDataStorage() {
-      return dataStorageProvider.getUserStorage();
+      return new RequestCachedDataStorage(dataStorageProvider.getUserStorage());
+   }
+
+   @Produces
+   @UserDataStorage
+   @RequestScoped
+   public AsyncDataStorage getAsyncDataStorage() {
+      return dataStorageProvider.getUserAsyncStorage();
+   }
+
+   @Produces
+   @SearchDataStorage
+   @RequestScoped
+   public DataStorage getSearchDataStorage() {
+      return dataStorageProvider.getUserSearchStorage();
+   }
+
+   @Produces
+   @SearchDataStorage
+   @RequestScoped
+   public AsyncDataStorage getSearchAsyncDataStorage() {
+      return dataStorageProvider.getUserSearchAsyncStorage();
    }
 
 }
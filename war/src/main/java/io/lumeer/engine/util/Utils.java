@@ -20,11 +20,15 @@
 package io.lumeer.engine.util;
 
 import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.WriteOperationResult;
+import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
 
 import java.text.DateFormat;
 import java.text.Normalizer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * @author <a href="mailto:kubedo8@gmail.com">Jakub Rodák</a>
@@ -53,4 +57,21 @@ public class Utils {
    public static boolean isAttributeNameValid(String attributeName) {
       return attributeName.equals(LumeerConst.Document.ID) || !(attributeName.startsWith("$") || attributeName.startsWith("_") || attributeName.contains("."));
    }
+
+   /**
+    * Checks that all the operations of a bulk write succeeded.
+    *
+    * @param results
+    *       results of the bulk write
+    * @throws UnsuccessfulOperationException
+    *       when any of the operations failed or was not executed, with the error message of the first such operation
+    */
+   public static void checkWriteResults(final List<WriteOperationResult> results) throws UnsuccessfulOperationException {
+      final Optional<WriteOperationResult> unsuccessful = results.stream().filter(result -> !result.isSucceeded()).findFirst();
+
+      if (unsuccessful.isPresent()) {
+         final WriteOperationResult result = unsuccessful.get();
+         throw new UnsuccessfulOperationException(result.getErrorMessage() != null ? result.getErrorMessage() : "Write operation " + result.getOperation() + " was " + result.getStatus());
+      }
+   }
 }
@@ -31,6 +31,7 @@ import org.jboss.arquillian.junit.Arquillian;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -53,6 +54,9 @@ public class CollectionFacadeIntegrationTest extends IntegrationTestBase {
    private final String COLLECTION_GET_ATTRIBUTE_VALUES = "CollectionFacadeCollectionGetAttributeValues";
    private final String COLLECTION_RENAME_ATTRIBUTE = "CollectionFacadeCollectionRenameAttribute";
    private final String COLLECTION_ADD_DROP_CONSTRAINT = "CollectionFacadeCollectionAddDropConstraint";
+   private final String COLLECTION_DOCUMENT_COUNT = "CollectionFacadeCollectionDocumentCount";
+   private final String COLLECTION_ATTRIBUTE_VALUE_SUGGESTIONS = "CollectionFacadeCollectionAttributeValueSuggestions";
+   private final String COLLECTION_ATTRIBUTE_VALUE_SUGGESTIONS_SEEDED = "CollectionFacadeCollectionAttributeValueSuggestionsSeeded";
 
    @Inject
    private CollectionFacade collectionFacade;
@@ -64,6 +68,9 @@ public class CollectionFacadeIntegrationTest extends IntegrationTestBase {
    @Inject
    private CollectionMetadataFacade collectionMetadataFacade;
 
+   @Inject
+   private DocumentFacade documentFacade;
+
    @Test
    public void testGetAllCollections() throws Exception {
       setUpCollection(COLLECTION_GET_ALL_COLLECTIONS);
@@ -99,6 +106,26 @@ public class CollectionFacadeIntegrationTest extends IntegrationTestBase {
       collectionFacade.dropCollection(collection);
    }
 
+   @Test
+   public void testGetDocumentCount() throws Exception {
+      setUpCollection(COLLECTION_DOCUMENT_COUNT);
+
+      String collection = collectionFacade.createCollection(COLLECTION_DOCUMENT_COUNT);
+      dataStorage.createDocument(collection, new DataDocument("a", 1));
+      assertThat(collectionFacade.getDocumentCount(collection)).isEqualTo(1);
+
+      String documentId = documentFacade.createDocument(collection, new DataDocument("a", 2));
+      documentFacade.createDocument(collection, new DataDocument("a", 3));
+      assertThat(collectionFacade.getDocumentCount(collection)).isEqualTo(3);
+
+      documentFacade.dropDocument(collection, documentId);
+      assertThat(collectionFacade.getDocumentCount(collection)).isEqualTo(2);
+      assertThat(collectionFacade.getDocumentCounts(Collections.singleton(collection))).containsEntry(collection, 2L);
+
+      collectionFacade.dropCollection(collection);
+      assertThat(collectionFacade.getDocumentCount(collection)).isEqualTo(0);
+   }
+
    @Test
    public void testReadCollectionAttributes() throws Exception {
       setUpCollection(COLLECTION_READ_COLLECTION_ATTRIBUTES);
@@ -150,6 +177,50 @@ public class CollectionFacadeIntegrationTest extends IntegrationTestBase {
       assertThat(values).doesNotContain(v3);
    }
 
+   @Test
+   public void testAttributeValueSuggestions() throws Exception {
+      setUpCollection(COLLECTION_ATTRIBUTE_VALUE_SUGGESTIONS);
+
+      String collection = collectionFacade.createCollection(COLLECTION_ATTRIBUTE_VALUE_SUGGESTIONS);
+      documentFacade.createDocument(collection, new DataDocument("city", "Brno"));
+      assertThat(collectionFacade.getAttributeValues(collection, "city", "b")).containsExactly("Brno");
+
+      // the remembered values follow the changes made through the document facade
+      String pragueId = documentFacade.createDocument(collection, new DataDocument("city", "Prague"));
+      documentFacade.createDocument(collection, new DataDocument("city", "Prague"));
+      String bratislavaId = documentFacade.createDocument(collection, new DataDocument("city", "Bratislava"));
+      assertThat(collectionFacade.getAttributeValues(collection, "city")).containsExactly("Prague", "Bratislava", "Brno");
+      assertThat(collectionFacade.getAttributeValues(collection, "city", "br")).containsExactly("Bratislava", "Brno");
+
+      DataDocument update = new DataDocument("city", "Pilsen");
+      update.setId(bratislavaId);
+      documentFacade.updateDocument(collection, update);
+      documentFacade.dropDocument(collection, pragueId);
+      assertThat(collectionFacade.getAttributeValues(collection, "city", "p")).containsExactly("Pilsen", "Prague");
+      assertThat(collectionFacade.getAttributeValues(collection, "city", "br")).containsExactly("Brno");
+   }
+
+   @Test
+   public void testAttributeValueSuggestionsOfExistingDocuments() throws Exception {
+      setUpCollection(COLLECTION_ATTRIBUTE_VALUE_SUGGESTIONS_SEEDED);
+
+      String collection = collectionFacade.createCollection(COLLECTION_ATTRIBUTE_VALUE_SUGGESTIONS_SEEDED);
+      for (int i = 0; i < 3; i++) {
+         dataStorage.createDocument(collection, new DataDocument("city", "Prague"));
+      }
+      dataStorage.createDocument(collection, new DataDocument("city", "Brno"));
+      dataStorage.createDocument(collection, new DataDocument("city", "Brno"));
+      dataStorage.createDocument(collection, new DataDocument("city", "Bratislava"));
+
+      // the values already stored are remembered with their counts
+      assertThat(collectionFacade.getAttributeValues(collection, "city")).containsExactly("Prague", "Brno", "Bratislava");
+
+      for (int i = 0; i < 3; i++) {
+         documentFacade.createDocument(collection, new DataDocument("city", "Bratislava"));
+      }
+      assertThat(collectionFacade.getAttributeValues(collection, "city")).containsExactly("Bratislava", "Prague", "Brno");
+   }
+
    @Test
    public void testDropAttribute() throws Exception {
       setUpCollection(COLLECTION_DROP_COLLECTION_ATTRIBUTE);
@@ -43,6 +43,7 @@ public class SearchFacadeIntegrationTest extends IntegrationTestBase {
    private final String COLLECTION_SEARCH = "collectionSearch";
    private final String COLLECTION_SEARCH_RAW = "collectionSearchRaw";
    private final String COLLECTION_QUERY = "collectionQuery";
+   private final String COLLECTION_CACHED_SEARCH = "collectionCachedSearch";
 
    @Inject
    private SearchFacade searchFacade;
@@ -102,6 +103,23 @@ public class SearchFacadeIntegrationTest extends IntegrationTestBase {
       final Query q = new Query();
    }
 
+   @Test
+   public void testCachedSearch() throws Exception {
+      setUpCollection(COLLECTION_CACHED_SEARCH);
+      documentFacade.createDocument(COLLECTION_CACHED_SEARCH, new DataDocument("a", 1));
+
+      List<DataDocument> searchDocuments = searchFacade.search(COLLECTION_CACHED_SEARCH, null, null, 0, 0);
+      assertThat(searchDocuments).hasSize(1);
+
+      // the callers get their own copies of the remembered documents
+      searchDocuments.get(0).put("a", 2);
+      assertThat(searchFacade.search(COLLECTION_CACHED_SEARCH, null, null, 0, 0)).extracting(d -> d.getInteger("a")).containsExactly(1);
+
+      // writes through the facades make the remembered result outdated
+      documentFacade.createDocument(COLLECTION_CACHED_SEARCH, new DataDocument("a", 3));
+      assertThat(searchFacade.search(COLLECTION_CACHED_SEARCH, null, null, 0, 0)).hasSize(2);
+   }
+
    private void setUpCollection(final String collection) {
       dataStorage.dropCollection(collection);
       dataStorage.createCollection(collection);
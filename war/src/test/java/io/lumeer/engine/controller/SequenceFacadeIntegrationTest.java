@@ -23,12 +23,16 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import io.lumeer.engine.IntegrationTestBase;
 import io.lumeer.engine.annotation.SystemDataStorage;
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
 
 import org.jboss.arquillian.junit.Arquillian;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.List;
+import java.util.stream.Collectors;
 import javax.inject.Inject;
 
 /**
@@ -55,4 +59,18 @@ public class SequenceFacadeIntegrationTest extends IntegrationTestBase {
       sequenceFacade.resetSequence("abcd");
       assertThat(sequenceFacade.getNext("abcd")).isEqualTo(1);
    }
-}
\ No newline at end of file
+
+   @Test
+   public void testNonUniqueIndexReplaced() {
+      systemDataStorage.dropCollection("_sequences");
+      systemDataStorage.createCollection("_sequences");
+      systemDataStorage.createIndex("_sequences", new DataDocument("name", LumeerConst.Index.ASCENDING), false);
+      sequenceFacade.init();
+
+      final List<DataDocument> indexes = systemDataStorage.listIndexes("_sequences").stream()
+                                                          .filter(index -> index.getDataDocument("key").containsKey("name"))
+                                                          .collect(Collectors.toList());
+      assertThat(indexes).hasSize(1);
+      assertThat(indexes.get(0).getBoolean("unique")).isTrue();
+   }
+}
@@ -0,0 +1,93 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.provider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.DataStorageDialect;
+import io.lumeer.mongodb.MongoDbStorageDialect;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class RequestCachedDataStorageTest {
+
+   private static final String COLLECTION = "collection";
+   private static final String OTHER_COLLECTION = "otherCollection";
+
+   private final DataStorageDialect dialect = new MongoDbStorageDialect();
+
+   private final List<String> calls = new ArrayList<>();
+
+   private final DataStorage storage = new RequestCachedDataStorage((DataStorage) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataStorage.class }, (proxy, method, args) -> {
+      calls.add(method.getName());
+
+      if (method.getName().equals("readDocument")) {
+         return new DataDocument("name", "value").append("nested", new DataDocument("a", 1));
+      } else if (method.getName().equals("search")) {
+         return Collections.singletonList(new DataDocument("name", "value"));
+      }
+
+      return null;
+   }));
+
+   @Test
+   public void testRepeatedReads() {
+      final DataDocument first = storage.readDocument(COLLECTION, dialect.documentIdFilter("5919ae2a5c6bb5d6f5fbb8f3"));
+      first.getDataDocument("nested").put("a", 2);
+
+      final DataDocument second = storage.readDocument(COLLECTION, dialect.documentIdFilter("5919ae2a5c6bb5d6f5fbb8f3"));
+      assertThat(second.getDataDocument("nested").getInteger("a")).isEqualTo(1);
+      second.put("name", "changed");
+
+      assertThat(storage.readDocument(COLLECTION, dialect.documentIdFilter("5919ae2a5c6bb5d6f5fbb8f3")).getString("name")).isEqualTo("value");
+      assertThat(calls).containsExactly("readDocument");
+
+      storage.readDocument(COLLECTION, dialect.documentIdFilter("5919ae2a5c6bb5d6f5fbb8f4"));
+      storage.search(COLLECTION, dialect.fieldValueFilter("name", "value"), Collections.singletonList("name"));
+      storage.search(COLLECTION, dialect.fieldValueFilter("name", "value"), Collections.singletonList("name"));
+      storage.search(COLLECTION, dialect.fieldValueFilter("name", "value"), null, Collections.singletonList("name"), 0, 0);
+      assertThat(calls).containsExactly("readDocument", "readDocument", "search");
+   }
+
+   @Test
+   public void testWritesInvalidateReads() {
+      storage.readDocument(COLLECTION, dialect.documentIdFilter("5919ae2a5c6bb5d6f5fbb8f3"));
+      storage.readDocument(OTHER_COLLECTION, dialect.documentIdFilter("5919ae2a5c6bb5d6f5fbb8f3"));
+
+      storage.updateDocument(COLLECTION, new DataDocument("name", "new"), dialect.documentIdFilter("5919ae2a5c6bb5d6f5fbb8f3"));
+      storage.readDocument(COLLECTION, dialect.documentIdFilter("5919ae2a5c6bb5d6f5fbb8f3"));
+      storage.readDocument(OTHER_COLLECTION, dialect.documentIdFilter("5919ae2a5c6bb5d6f5fbb8f3"));
+      assertThat(calls).containsExactly("readDocument", "readDocument", "updateDocument", "readDocument");
+
+      storage.run("{ dropDatabase: 1 }");
+      storage.readDocument(OTHER_COLLECTION, dialect.documentIdFilter("5919ae2a5c6bb5d6f5fbb8f3"));
+      assertThat(calls).containsExactly("readDocument", "readDocument", "updateDocument", "readDocument", "run", "readDocument");
+   }
+}
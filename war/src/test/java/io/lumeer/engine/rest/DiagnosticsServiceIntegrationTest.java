@@ -0,0 +1,120 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.IntegrationTestBase;
+import io.lumeer.engine.annotation.SystemDataStorage;
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.DataStorageDialect;
+import io.lumeer.engine.api.dto.Organization;
+import io.lumeer.engine.controller.OrganizationFacade;
+
+import org.jboss.arquillian.junit.Arquillian;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Diagnostics service tests.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@RunWith(Arquillian.class)
+public class DiagnosticsServiceIntegrationTest extends IntegrationTestBase {
+
+   @Inject
+   @SystemDataStorage
+   private DataStorage dataStorage;
+
+   @Inject
+   private DataStorageDialect dataStorageDialect;
+
+   @Inject
+   private OrganizationFacade organizationFacade;
+
+   private final String TARGET_URI = "http://localhost:8080";
+   private final String ORGANIZATION = "DiagnosticsServiceIntegrationTest";
+
+   @Before
+   public void init() throws Exception {
+      dataStorage.dropDocument(LumeerConst.Organization.COLLECTION_NAME, dataStorageDialect.documentFilter("{}"));
+      organizationFacade.createOrganization(new Organization(ORGANIZATION, "Organization"));
+   }
+
+   @Test
+   public void testGetSlowOperations() throws Exception {
+      final Response response = ClientBuilder.newBuilder().build()
+                                              .target(TARGET_URI)
+                                              .path(pathPrefix() + "slow-operations")
+                                              .request(MediaType.APPLICATION_JSON)
+                                              .buildGet()
+                                              .invoke();
+
+      assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+   }
+
+   @Test
+   public void testGetConnectionPoolStats() throws Exception {
+      final Response response = ClientBuilder.newBuilder().build()
+                                              .target(TARGET_URI)
+                                              .path(pathPrefix() + "connection-pools")
+                                              .request(MediaType.APPLICATION_JSON)
+                                              .buildGet()
+                                              .invoke();
+
+      assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+   }
+
+   @Test
+   public void testGetIndexRecommendations() throws Exception {
+      final Response response = ClientBuilder.newBuilder().build()
+                                              .target(TARGET_URI)
+                                              .path(pathPrefix() + "index-recommendations")
+                                              .request(MediaType.APPLICATION_JSON)
+                                              .buildGet()
+                                              .invoke();
+
+      assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+   }
+
+   @Test
+   public void testGetCacheStats() throws Exception {
+      final Response response = ClientBuilder.newBuilder().build()
+                                              .target(TARGET_URI)
+                                              .path(pathPrefix() + "caches")
+                                              .request(MediaType.APPLICATION_JSON)
+                                              .buildGet()
+                                              .invoke();
+
+      assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+   }
+
+   private String pathPrefix() {
+      return PATH_CONTEXT + "/rest/organizations/" + ORGANIZATION + "/diagnostics/";
+   }
+}
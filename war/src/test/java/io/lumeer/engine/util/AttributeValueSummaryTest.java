@@ -0,0 +1,98 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class AttributeValueSummaryTest {
+
+   @Test
+   public void testTopValues() {
+      final AttributeValueSummary summary = new AttributeValueSummary(10);
+
+      summary.add("Prague");
+      summary.add("Brno");
+      summary.add("prague");
+      summary.add("Prague");
+      summary.add(42);
+      summary.add(null);
+
+      assertThat(summary.size()).isEqualTo(4);
+      assertThat(summary.getTopValues(null, 10)).containsExactly("Prague", "42", "Brno", "prague");
+      assertThat(summary.getTopValues("PR", 10)).containsExactly("Prague", "prague");
+      assertThat(summary.getTopValues("", 1)).containsExactly("Prague");
+   }
+
+   @Test
+   public void testAddCounts() {
+      final AttributeValueSummary summary = new AttributeValueSummary(2);
+
+      summary.add("Prague", 5);
+      summary.add("Brno", 2);
+      summary.add("Pilsen", 0);
+      summary.add("Brno");
+
+      assertThat(summary.getTopValues(null, 10)).containsExactly("Prague", "Brno");
+
+      // a new value inherits the count of the least frequent one
+      summary.add("Pilsen", 1);
+      assertThat(summary.getTopValues(null, 10)).containsExactly("Prague", "Pilsen");
+   }
+
+   @Test
+   public void testRemove() {
+      final AttributeValueSummary summary = new AttributeValueSummary(10);
+
+      summary.add("a");
+      summary.add("a");
+      summary.add("b");
+
+      summary.remove("a");
+      summary.remove("b");
+      summary.remove("c");
+
+      assertThat(summary.getTopValues(null, 10)).containsExactly("a");
+
+      summary.remove("a");
+      assertThat(summary.size()).isEqualTo(0);
+   }
+
+   @Test
+   public void testFrequentValuesSurviveEviction() {
+      final AttributeValueSummary summary = new AttributeValueSummary(3);
+
+      // a value is guaranteed to stay when it occurs more often than the number of all occurrences divided by the capacity
+      for (int i = 0; i < 60; i++) {
+         summary.add("frequent");
+      }
+      for (int i = 0; i < 100; i++) {
+         summary.add("rare" + i);
+      }
+
+      assertThat(summary.size()).isEqualTo(3);
+      assertThat(summary.getTopValues(null, 3)).contains("frequent");
+      assertThat(summary.getTopValues("rare", 3)).hasSize(2);
+   }
+}
@@ -0,0 +1,57 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.util;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.WriteOperation;
+import io.lumeer.engine.api.data.WriteOperationResult;
+import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class UtilsTest {
+
+   @Test
+   public void testCheckWriteResults() throws Exception {
+      final WriteOperation operation = WriteOperation.create(new DataDocument("a", 1));
+
+      Utils.checkWriteResults(Collections.emptyList());
+      Utils.checkWriteResults(Collections.singletonList(new WriteOperationResult(operation, WriteOperationResult.Status.SUCCEEDED, "1", null)));
+
+      assertThatThrownBy(() -> Utils.checkWriteResults(Arrays.asList(
+            new WriteOperationResult(operation, WriteOperationResult.Status.SUCCEEDED, "1", null),
+            new WriteOperationResult(operation, WriteOperationResult.Status.FAILED, null, "duplicate key"),
+            new WriteOperationResult(operation, WriteOperationResult.Status.NOT_EXECUTED, null, null))))
+            .isInstanceOf(UnsuccessfulOperationException.class)
+            .hasMessage("duplicate key");
+
+      assertThatThrownBy(() -> Utils.checkWriteResults(Collections.singletonList(new WriteOperationResult(operation, WriteOperationResult.Status.NOT_EXECUTED, null, null))))
+            .isInstanceOf(UnsuccessfulOperationException.class)
+            .hasMessageContaining("NOT_EXECUTED");
+   }
+}